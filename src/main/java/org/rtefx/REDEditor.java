@@ -20,6 +20,7 @@ package org.rtefx;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.io.File;
+import java.nio.CharBuffer;
 import java.text.CharacterIterator;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -28,6 +29,8 @@ import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
 
 import org.rtefx.file.REDFile;
+import org.rtefx.linetree.REDCompactMarkTree;
+import org.rtefx.linetree.REDIntervalTree;
 import org.rtefx.linetree.REDMarkTree;
 import org.rtefx.rexparser.REDRexLineSource;
 import org.rtefx.util.REDGLog;
@@ -46,6 +49,7 @@ public class REDEditor {
 	  */
 	public REDEditor(String filename, boolean privateCopy) {
 		fText = REDTextServer.acquireText(filename, privateCopy);
+		fLineCursor = fText.createLineCursor();
 		fView = new REDView(fText);
  		setController(new REDViewController());
 		fListeners = new ArrayList<>(REDAuxiliary.fcListenerSize);
@@ -73,6 +77,7 @@ public class REDEditor {
 		}
 		REDTextServer.releaseText(fText);
 		fText = null;
+		fLineCursor = null;
 		fView = null;		
 	}
 	
@@ -151,6 +156,18 @@ public class REDEditor {
 		return fText.asString(from, to);
 	}
 	
+	/** Copy contents of text into char buffer without intermediate allocations.
+	  * Each byte of the text is widened to one char.
+	  * @param from start of stretch to copy
+	  * @param end end of stretch to copy
+	  * @param dest The buffer to copy [from, to[ into; its position is advanced by the number of chars copied.
+	  * @return The number of chars copied.
+	  * @pre dest.remaining() >= to - from
+	  */
+	public int copy(int from, int to, CharBuffer dest) {
+		return fText.copyInto(from, to, dest);
+	}
+	
 	/** Get single byte from text.
 	  * @param pos byte to get
 	  * @return the character [pos, pos+1]
@@ -164,7 +181,11 @@ public class REDEditor {
 	  * @return a non-null string containing the requested line (including trailing linebreak)
 	  */
 	public String copyLine(int line) {
-		return fText.asString(fText.getLineStart(line), fText.getLineStart(line+1));
+		if (line < 0 || line >= fText.getNrOfLines()) {
+			return "";
+		}
+		fLineCursor.setLine(line);
+		return fText.asString(fLineCursor.getLineStart(), fLineCursor.getNextLineStart());
 	}
 	
 	/** Create a stream.
@@ -221,6 +242,15 @@ public class REDEditor {
 		return fText.getLineForPosition(pos);
 	}
 
+	/** Create line cursor.
+	  * Line cursors allow to walk through consecutive lines without looking up each line from scratch.
+	  * The cursor is bound to the text currently loaded into the editor.
+	  * @return A new line cursor, positioned at line 0.
+	  */
+	public REDLineCursor createLineCursor() {
+		return fText.createLineCursor();
+	}
+	
 	/** Return start of line.
 	  * The parameter lineNr is normalized to be in range: [0, nrLines] 
 	  * @param lineNr Number of line to get start position for. First line has number 0.
@@ -450,7 +480,7 @@ public class REDEditor {
 
 	/** Get height of line (in pixel).
 	  * @param lineNr The line to get height for.
-	  * @return The height of the line. 
+	  * @return The height of the line; the height of all its rows, if lines are wrapped. 
 	  */
 	public int getLineHeight(int lineNr) {
 		return fView.getLineHeight(lineNr);
@@ -509,6 +539,37 @@ public class REDEditor {
 		return fView.getVisualizeWhitespace();
 	}
 	
+	/** Switch soft line wrapping on or off.
+	  * Wrapped lines are broken into rows which fit into the width of the editor's view, preferably behind whitespace. 
+	  * Line numbers and positions are not affected; only the display changes. The rows of lines are determined lazily, as lines become visible.
+	  * @param wrap <Code>true</Code> to wrap lines, <Code>false</Code> to display each line in one row, which is the default.
+	  */
+	public void setLineWrap(boolean wrap) {
+		fView.setLineWrap(wrap);
+	}
+	
+	/** Get soft line wrapping status.
+	  * @return <br>&nbsp;true: lines are wrapped <br>&nbsp;false: each line is displayed in one row
+	  */
+	public boolean getLineWrap() {
+		return fView.getLineWrap();
+	}
+	
+	/** Set pixel budget for rendered line images. With a budget, the editor keeps images of the lines it painted and copies them 
+	  * to the screen when it has to repaint unchanged lines, e.g. on scrolling or caret blinking. The cache is disabled by default.
+	  * @param pixels The maximum number of pixels of all cached line images together; 0 disables the cache.
+	  */
+	public void setLineImageBudget(int pixels) {
+		fView.setLineImageBudget(pixels);
+	}
+	
+	/** Get pixel budget for rendered line images.
+	  * @return The maximum number of pixels of all cached line images together; 0 if the cache is disabled.
+	  */
+	public int getLineImageBudget() {
+		return fView.getLineImageBudget();
+	}
+	
 	/** Get word constituent status of character. By default only letters and digits are word constituents. This can be controlled using <Code>setWordConstituents</Code>.
 	  * @return <Code>True</Code>, if the passed byte is a word constituent for this editor. <Code>false</Code> otherwise.
 	  */
@@ -723,7 +784,12 @@ public class REDEditor {
 	  * @param mode The mode to adjust this line to. ASIS will have no effect.
 	  */
 	public void adjustIndentation(int line, REDIndentMode mode) {
-		fView.adjustIndentation(fText.getLineStart(line), mode);
+		if (line >= fText.getNrOfLines()) {
+			fView.adjustIndentation(fText.length(), mode);
+			return;
+		}
+		fLineCursor.setLine(line);
+		fView.adjustIndentation(fLineCursor.getLineStart(), mode);
 	}
 
 	// --- clipboard ---	
@@ -810,7 +876,7 @@ public class REDEditor {
 		callListeners(LI_BEFORESAVE, filename);
 		if (!privateCopy && REDTextServer.isTextLoaded(filename, false)) {
 			REDText into  = REDTextServer.acquireText(filename, false);
-			into.replace(0, into.length(), asString());
+			into.replace(0, into.length(), fText, 0, fText.length());
 			into.getCommandProcessor().finish();
 			into.save();
 			REDTextServer.releaseText(into);
@@ -849,6 +915,7 @@ public class REDEditor {
 		}			
 		REDTextServer.releaseText(fText);
 		fText = REDTextServer.acquireText(filename, privateCopy);
+		fLineCursor = fText.createLineCursor();
 		iter = fListeners.iterator();
 		while (iter.hasNext()) {
 			REDEventListener l = iter.next();
@@ -996,12 +1063,75 @@ public class REDEditor {
 		}
 	}
 	
+	/** Create mark tree.
+	  * The mark tree is registered weakly with the text of this editor, i.e. it is updated upon text changes as long as it or 
+	  * any of its marks is reachable. Call REDMarkTree.dispose() as soon as the tree is no longer needed to stop updating it right away.
+	  * @return A new, empty mark tree.
+	  */
 	public REDMarkTree createMarkTree() {
 		REDMarkTree t = new REDMarkTree(this);
-		fText.addREDTextEventListener(t);
+		fText.addWeakREDTextEventListener(t);
+		return t;
+	}
+	
+	/** Unregister mark tree from text.
+	  * Note: do not call this method directly. Use REDMarkTree.dispose() instead.
+	  * @param t The mark tree to unregister.
+	  */
+	public void releaseMarkTree(REDMarkTree t) {
+		if (fText != null) {
+			fText.removeREDTextEventListener(t);
+		}
+	}
+	
+	/** Create compact mark tree.
+	  * Like createMarkTree(), but for large numbers of marks with int values, cf. REDCompactMarkTree.
+	  * @return A new, empty compact mark tree.
+	  */
+	public REDCompactMarkTree createCompactMarkTree() {
+		REDCompactMarkTree t = new REDCompactMarkTree(this);
+		fText.addWeakREDTextEventListener(t);
 		return t;
 	}
 	
+	/** Unregister compact mark tree from text.
+	  * Note: do not call this method directly. Use REDCompactMarkTree.dispose() instead.
+	  * @param t The mark tree to unregister.
+	  */
+	public void releaseMarkTree(REDCompactMarkTree t) {
+		if (fText != null) {
+			fText.removeREDTextEventListener(t);
+		}
+	}
+	
+	/** Create interval tree.
+	  * Like createMarkTree(), the interval tree is registered weakly with the text of this editor; it is kept alive by any of its intervals, too.
+	  * @return A new, empty interval tree.
+	  */
+	public REDIntervalTree createIntervalTree() {
+		REDIntervalTree t = new REDIntervalTree(this);
+		fText.addWeakREDTextEventListener(t);
+		return t;
+	}
+	
+	/** Unregister interval tree from text.
+	  * Note: do not call this method directly. Use REDIntervalTree.dispose() instead.
+	  * @param t The interval tree to unregister.
+	  */
+	public void releaseIntervalTree(REDIntervalTree t) {
+		if (fText != null) {
+			fText.removeREDTextEventListener(t);
+		}
+	}
+	
+	/** Get number of text listeners.
+	  * This is meant for monitoring, e.g. to find plugins which leak mark trees.
+	  * @return The number of listeners registered with the text of this editor (which may be shared with other editors).
+	  */
+	public int getTextListenerCount() {
+		return fText.getREDTextEventListenerCount();
+	}
+	
 	
 	/** Get line source for regular expression parsing.
 	  * @return A line source object
@@ -1010,6 +1140,24 @@ public class REDEditor {
 		return fText;
 	}
 	
+	/** Get line source for reading from a background thread.
+	  * The text behind the line source is kept in memory (i.e. it will not be hibernated), until the line source is handed back by 
+	  * releaseBackgroundLineSource(). 
+	  * @return The line source of the text currently loaded into the editor.
+	  */
+	public REDRexLineSource acquireBackgroundLineSource() {
+		fText.beginBackgroundRead();
+		return fText;
+	}
+	
+	/** Hand back line source acquired for reading from a background thread.
+	  * @param src The line source to hand back.
+	  * @pre src has been returned by acquireBackgroundLineSource()
+	  */
+	public void releaseBackgroundLineSource(REDRexLineSource src) {
+		((REDText) src).endBackgroundRead();
+	}
+	
 	/** Start style batch notification mode.
 	  * After style batch notification mode has been entered,  notifications about style changes in the text will not be sent out to listeners until batchStyleNotificationEnd is called.
 	  * You must not call batchStyleNotificationStart, if this mode is already in place (i.e. nested calls are disallowed).
@@ -1032,8 +1180,23 @@ public class REDEditor {
 	public boolean hasStyleBatchNotification() {
 		return fText.hasStyleBatchNotification();
 	}
+	
+	/** Get start of the styles changed in style batch notification mode.
+	  * @return The start position of the range changed since the last call of batchStyleNotificationStart; &gt; getStyleBatchTo(), if no style has been changed.
+	  */
+	public int getStyleBatchFrom() {
+		return fText.getStyleBatchFrom();
+	}
+	
+	/** Get end of the styles changed in style batch notification mode.
+	  * @return The end position of the range changed since the last call of batchStyleNotificationStart; &lt; getStyleBatchFrom(), if no style has been changed.
+	  */
+	public int getStyleBatchTo() {
+		return fText.getStyleBatchTo();
+	}
 
 	private REDText fText;
+	private REDLineCursor fLineCursor;	// used by copyLine() and adjustIndentation(), which are often called for consecutive lines
 	private REDView fView;
 	private REDViewController fController;
 	private ArrayList<REDEventListener> fListeners;
@@ -17,6 +17,7 @@
  
 package org.rtefx;
 
+import java.nio.CharBuffer;
 import java.util.Iterator;
 import java.util.TreeSet;
 
@@ -133,6 +134,7 @@ public class REDFinder implements REDRexLineSource {
 		}
 		fParseStart = from;
 		fParseStartLine = fEditor.getLineForPosition(from);
+		fLineCursor = fEditor.createLineCursor();
 		fParseReverse = direction == REDFinderDirection.BACKWARD;
 		
 		OneMatchStopper stopper = null;
@@ -223,9 +225,11 @@ public class REDFinder implements REDRexLineSource {
 			
 			if (withinSelection) {
 				expungeMatchesOutsideSelection();
-				REDMarkTree markTree = fEditor.createMarkTree();
-				selStart = markTree.createMark(fEditor.getSelectionStart(), null);
-				selEnd = markTree.createMark(fEditor.getSelectionEnd(), null);				
+				if (fSelectionMarks == null) {
+					fSelectionMarks = fEditor.createMarkTree();
+				}
+				selStart = fSelectionMarks.createMark(fEditor.getSelectionStart(), null);
+				selEnd = fSelectionMarks.createMark(fEditor.getSelectionEnd(), null);				
 			}
 			int nrReplacements = fMatches.size();
 			if (fMatches.size() > 1) {
@@ -246,6 +250,7 @@ public class REDFinder implements REDRexLineSource {
 			}
 			if (withinSelection) {
 				fEditor.setSelection(selStart.getPosition(), selEnd.getPosition());
+				fSelectionMarks.clear();
 			}
 			else {
 				if (fMatches.size() == 1) {
@@ -351,7 +356,12 @@ public class REDFinder implements REDRexLineSource {
 	  * @param editor The editor to associate this finder with.
 	  */
 	public void setEditor(REDEditor editor) {
+		if (fSelectionMarks != null) {
+			fSelectionMarks.dispose();
+			fSelectionMarks = null;
+		}
 		fEditor = editor;
+		fLineCursor = null;
 	}
 	
 	/** Get editor.
@@ -378,33 +388,79 @@ public class REDFinder implements REDRexLineSource {
 		if (lineNr == 0 && !fParseReverse || lineNr == fEditor.getNrOfLines() && fParseReverse) {
 			return fParseStart + offset;
 		}
-		else {
-			return fEditor.getLineStart(getRealLine(lineNr)) + offset;
+		else {	// matches are reported line by line, so the cursor mostly moves to the next line
+			if (fLineCursor == null) {
+				fLineCursor = fEditor.createLineCursor();
+			}
+			fLineCursor.setLine(getRealLine(lineNr));
+			return fLineCursor.getLineStart() + offset;
 		}
 	}
 	
+	/** Check if line is the part of the start line after the parse start. */
+	private boolean isStartLineTail(int lineNr, int nrOfLines) {
+		return lineNr == 0 && !fParseReverse || lineNr == nrOfLines && fParseReverse;
+	}
+	
+	/** Check if line is the part of the start line before the parse start. */
+	private boolean isStartLineHead(int lineNr, int nrOfLines) {
+		return lineNr == 0 && fParseReverse || lineNr == nrOfLines && !fParseReverse;
+	}
+	
 	// REDRexLineSource interface	
-	public char [] getLine(int lineNr, char [] reuse) {
+	public int getLine(int lineNr, CharBuffer dest) {
+		int nrOfLines = fEditor.getNrOfLines();
+		if (lineNr < 0 || lineNr > nrOfLines) {
+			return -1;
+		}
+		
+		int from, to;
+		if (isStartLineTail(lineNr, nrOfLines)) {
+			from = fParseStart; 
+			to = fEditor.getLineStart(fParseStartLine+1);
+		}
+		else if (isStartLineHead(lineNr, nrOfLines)) {
+			from = fEditor.getLineStart(fParseStartLine);
+			to = fParseStart;
+		}
+		else {
+			return fEditor.getLineSource().getLine(getRealLine(lineNr), dest);
+		}
+		if (to - from <= dest.remaining()) {
+			fEditor.copy(from, to, dest);
+		}
+		return to - from;
+	}
+	
+	public int getLineHead(int lineNr, CharBuffer dest) {
 		int nrOfLines = fEditor.getNrOfLines();
 		if (lineNr < 0 || lineNr > nrOfLines) {
-			return null;
+			return -1;
 		}
 		
-		if (lineNr == 0 && !fParseReverse || lineNr == nrOfLines && fParseReverse) {
-			String line = fEditor.copy(fParseStart, fEditor.getLineStart(fParseStartLine+1));
-			return line.toCharArray();	// tbd: reuse
+		int from, to;
+		if (isStartLineTail(lineNr, nrOfLines)) {
+			from = fParseStart; 
+			to = fEditor.getLineStart(fParseStartLine+1);
+		}
+		else if (isStartLineHead(lineNr, nrOfLines)) {
+			from = fEditor.getLineStart(fParseStartLine);
+			to = fParseStart;
 		}
 		else {
-			return fEditor.getLineSource().getLine(getRealLine(lineNr), reuse);
+			return fEditor.getLineSource().getLineHead(getRealLine(lineNr), dest);
 		}
+		to = Math.min(to, from + dest.remaining());
+		fEditor.copy(from, to, dest);
+		return to - from;
 	}
 	
 	public int getLineLength(int lineNr) {
 		int nrOfLines = fEditor.getNrOfLines();
-		if (lineNr == 0 && !fParseReverse || lineNr == nrOfLines && fParseReverse) {
+		if (isStartLineTail(lineNr, nrOfLines)) {
 			return fEditor.getLineStart(fParseStartLine+1) - fParseStart;
 		}
-		else if (lineNr == 0 && fParseReverse || lineNr == nrOfLines && !fParseReverse) {
+		else if (isStartLineHead(lineNr, nrOfLines)) {
 			return fParseStart - fEditor.getLineStart(fParseStartLine);
 		}
 		else {
@@ -412,6 +468,16 @@ public class REDFinder implements REDRexLineSource {
 		}
 	}
 	
+	public int getLineTerminator(int lineNr) {
+		int nrOfLines = fEditor.getNrOfLines();
+		if (isStartLineHead(lineNr, nrOfLines)) {
+			return LT_NONE;
+		}
+		else {
+			return fEditor.getLineSource().getLineTerminator(getRealLine(lineNr));
+		}
+	}
+	
 	/** Get factory for find & replace dialog elements. */
 	public REDFinderDialogFactory getREDFinderDialogFactory() {
 		if (fFactory == null) {
@@ -422,6 +488,8 @@ public class REDFinder implements REDRexLineSource {
 	
 	protected static REDFinder fgInstance = new REDFinder();
 	private REDEditor fEditor;
+	private REDLineCursor fLineCursor;
+	private REDMarkTree fSelectionMarks;	// keeps selection bounds during replace within selection; reused
 	private REDRexParser fParser;
 	private int fParseStart, fParseStartLine;
 	private boolean fParseReverse;
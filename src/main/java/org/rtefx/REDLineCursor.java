@@ -0,0 +1,112 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import org.rtefx.linetree.REDLineTree;
+import org.rtefx.linetree.REDLineTreeCursor;
+
+/** Cursor for walking through consecutive lines of a text.
+  * Moving to the next or previous line takes O(1), so code walking through lines one by one does not need to look up each line 
+  * start from scratch. The cursor stays usable across modifications of the text; it then positions itself from scratch at its line number.
+  * A cursor must not be shared between threads.
+  * @author rli@chello.at
+  * @tier API
+  */
+public class REDLineCursor {
+	/** @pre text != null */
+	REDLineCursor(REDText text) {
+		fText = text;
+		fLine = 0;
+	}
+	
+	/** Move cursor to line.
+	  * @param lineNr is normalized to be in range [0, nrLines - 1]
+	  */
+	public void setLine(int lineNr) {
+		getCursor().setLine(lineNr);
+		fLine = fCursor.getLine();
+	}
+	
+	/** Move cursor to next line.
+	  * @return false, if the cursor is already at the last line
+	  */
+	public boolean next() {
+		boolean retVal = getCursor().next();
+		fLine = fCursor.getLine();
+		return retVal;
+	}
+	
+	/** Move cursor to previous line.
+	  * @return false, if the cursor is already at line 0
+	  */
+	public boolean prev() {
+		boolean retVal = getCursor().prev();
+		fLine = fCursor.getLine();
+		return retVal;
+	}
+	
+	/** Get number of the line the cursor is at. */
+	public int getLine() {
+		return fLine;
+	}
+	
+	/** Get start position of the line the cursor is at. */
+	public int getLineStart() {
+		return getCursor().getLineStart();
+	}
+	
+	/** Get end position of the line the cursor is at, including line terminator.
+	  * @return The start position of the next line or the text length, if the cursor is at the last line.
+	  */
+	public int getNextLineStart() {
+		int next = getCursor().getNextLineStart();
+		return next == -1 ? fText.length() : next;
+	}
+	
+	/** Get end position of the line the cursor is at, without line terminator. */
+	public int getLineEnd() {
+		return getNextLineStart() - getTerminatorLength();
+	}
+	
+	/** Get length of the line terminator of the line the cursor is at.
+	  * @return 0 for the last line, 1 for LF or CR and 2 for CRLF.
+	  */
+	public int getTerminatorLength() {
+		int next = getCursor().getNextLineStart();
+		if (next == -1) {
+			return 0;
+		}
+		return fText.getLineTerminatorLength(fCursor.getLineStart(), next);
+	}
+	
+	/** Get cursor of current line index; line indices are replaced by loading and hibernation. */
+	private REDLineTreeCursor getCursor() {
+		REDLineTree tree = fText.getLineTree();
+		if (tree != fTree) {
+			fTree = tree;
+			fCursor = tree.createCursor();
+			fCursor.setLine(fLine);
+		}
+		return fCursor;
+	}
+	
+	private final REDText fText;
+	private REDLineTree fTree;
+	private REDLineTreeCursor fCursor;
+	private int fLine;
+}
@@ -17,6 +17,8 @@
  
 package org.rtefx;
 
+import java.nio.CharBuffer;
+
 import org.rtefx.file.REDFileRider;
 
 // TBD: Refine exception handling
@@ -87,6 +89,31 @@ final class REDRun {
 		return readAmount - fBuffer.getRes();
 	}
 	
+	/** copy parts of run into char buffer
+	  * Bytes are widened to chars one by one, so positions within the run map directly to buffer positions.
+	  * @param dest buffer to copy into; its position is advanced by the number of chars copied
+	  * @param myOff offset of run to start reading at
+	  * @param len max number of chars to copy
+	  * @return the number of chars copied
+	  * @pre dest.remaining() >= Math.min(len, fLength - myOff)
+	  */
+	public int copyInto(CharBuffer dest, int myOff, int len) {
+		fBuffer.seek(fOrg + myOff);
+		int readAmount = Math.min(len, fLength - myOff);
+		if (dest.hasArray()) {
+			int pos = dest.position();
+			fBuffer.readChars(dest.array(), dest.arrayOffset() + pos, readAmount);
+			readAmount -= fBuffer.getRes();
+			dest.position(pos + readAmount);
+		}
+		else {
+			for (int i = 0; i < readAmount; i++) {
+				dest.put((char) (fBuffer.read() & 0xff));
+			}
+		}
+		return readAmount;
+	}
+
 	/** tbd make more efficient */
 	public void copyInto(REDFileRider dest) {
 		byte [] buf = new byte[(int) fLength];
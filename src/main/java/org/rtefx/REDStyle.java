@@ -56,6 +56,8 @@ public class REDStyle implements REDXMLReadable {
 	private HashMap<Object, Object> mappings;	
 	private String fName, fDisplayName, fDescription;
 	private REDStyleManagerImpl fManager;
+	private REDStyleResources fResources;
+	private static volatile int fgResourceGeneration;
 	
 	/** Create a style.
 	  * You should not call this constructor directly. Ask the REDStyleManager for a shared style.
@@ -146,6 +148,7 @@ public class REDStyle implements REDXMLReadable {
 		ThemeEntry e = getOrCreateThemeEntry(theme);
 		fManager.doSendBeforeStyleChange(this);
 		e.foreground = c;
+		invalidateResources();
 		fManager.doSendAfterStyleChange(this);
 		return true;		
 	}
@@ -160,6 +163,7 @@ public class REDStyle implements REDXMLReadable {
 		ThemeEntry e = getOrCreateThemeEntry(theme);
 		fManager.doSendBeforeStyleChange(this);
 		e.background = c;
+		invalidateResources();
 		fManager.doSendAfterStyleChange(this);
 		return true;
 	}
@@ -180,6 +184,7 @@ public class REDStyle implements REDXMLReadable {
 			fManager.doSendBeforeStyleChange(this);
 			e.superStyle = newSuper;
 			e.fontCache = null;
+			invalidateResources();
 			fManager.doSendAfterStyleChange(this);
 		}
 		return true;
@@ -200,6 +205,7 @@ public class REDStyle implements REDXMLReadable {
 			fManager.doSendBeforeStyleChange(this);
 			e.fontFace = fontFace;
 			e.fontCache = null;
+			invalidateResources();
 			fManager.doSendAfterStyleChange(this);
 		}
 		return true;
@@ -212,6 +218,7 @@ public class REDStyle implements REDXMLReadable {
 			fManager.doSendBeforeStyleChange(this);
 			e.fontSize = fontSize;
 			e.fontCache = null;
+			invalidateResources();
 			fManager.doSendAfterStyleChange(this);
 		}
 		return true;
@@ -224,6 +231,7 @@ public class REDStyle implements REDXMLReadable {
 			fManager.doSendBeforeStyleChange(this);
 			e.fontPosture = fontPosture;
 			e.fontCache = null;
+			invalidateResources();
 			fManager.doSendAfterStyleChange(this);
 		}
 		return true;
@@ -236,6 +244,7 @@ public class REDStyle implements REDXMLReadable {
 			fManager.doSendBeforeStyleChange(this);
 			e.fontWeight = fontWeight;
 			e.fontCache = null;
+			invalidateResources();
 			fManager.doSendAfterStyleChange(this);
 		}
 		return true;
@@ -327,6 +336,7 @@ public class REDStyle implements REDXMLReadable {
 	
 	public void installTheme(String theme) {
 		curTheme = getThemeEntrySafe(theme);		
+		invalidateResources();
 	}
 	
 	/** Set backing store for theme of style. If the given theme name does not exist, the method has no effect.
@@ -547,6 +557,24 @@ public class REDStyle implements REDXMLReadable {
 		return curTheme.fontCache;
 	}
 
+	/** Get render resources of style for active theme.
+	  * The resources are cached until any style or theme changes, as a change may affect substyles as well.
+	  * @return The render resources of this style.
+	  */
+	REDStyleResources getResources() {
+		REDStyleResources r = fResources;
+		if (r == null || r.fGeneration != fgResourceGeneration) {
+			r = new REDStyleResources(this, fgResourceGeneration);
+			fResources = r;
+		}
+		return r;
+	}
+	
+	/** Mark render resources of all styles as stale. */
+	static void invalidateResources() {
+		fgResourceGeneration++;
+	}
+	
 	/** Get superstyle. 
 	  * @param theme The theme to look up superstyle for. If the theme does not exist, the default theme is used.
 	  * @return The superstyle of this style or <Code>null</Code> if this style has no superstyle.
@@ -576,6 +604,7 @@ public class REDStyle implements REDXMLReadable {
 				if (newSuper != null) {
 					e.superStyle = newSuper;
 					e.fontCache = null;
+					invalidateResources();
 				}
 			}
 		}
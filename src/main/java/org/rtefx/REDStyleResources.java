@@ -0,0 +1,123 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+
+import javafx.scene.text.FontPosture;
+import javafx.scene.text.FontWeight;
+
+/** Render resources of a style.
+  * Holds the resolved JavaFX font and colors of a style for the active theme together with their AWT equivalents, so 
+  * painting and measuring text needs neither string parsing nor object allocation per stretch. 
+  * Resources are created lazily by REDStyle.getResources() and become stale upon any style or theme change.
+  * @author rli@chello.at
+  * @tier system
+  * @see REDStyle#getResources
+  */
+final class REDStyleResources {
+	/** @pre style != null */
+	REDStyleResources(REDStyle style, int generation) {
+		fGeneration = generation;
+		fFXFont = javafx.scene.text.Font.font(style.getFontFace(), style.getFontWeight(), style.getFontPosture(), style.getFontSize());	// font cache of style is not cleared upon changes of superstyles
+		fFXForeground = style.getForeground();
+		fFXBackground = style.getBackground();
+		fFont = new Font(style.getFontFace(), convertStyle(style.getFontWeight(), style.getFontPosture()), 1).deriveFont((float) style.getFontSize());
+	}
+	
+	/** Get AWT style (i.e. Font.PLAIN, Font.BOLD, Font.ITALIC or Font.BOLD | Font.ITALIC) for JavaFX weight and posture; both may be null. */
+	private static int convertStyle(FontWeight weight, FontPosture posture) {
+		int awtStyle = Font.PLAIN;
+		if (weight != null && weight.getWeight() >= FontWeight.BOLD.getWeight()) {
+			awtStyle |= Font.BOLD;
+		}
+		if (posture == FontPosture.ITALIC) {
+			awtStyle |= Font.ITALIC;
+		}
+		return awtStyle;
+	}
+	
+	private static Color convert(javafx.scene.paint.Color c) {
+		return new Color((float) c.getRed(), (float) c.getGreen(), (float) c.getBlue(), (float) c.getOpacity());
+	}
+	
+	javafx.scene.text.Font getFXFont() {
+		return fFXFont;
+	}
+	
+	javafx.scene.paint.Color getFXForeground() {
+		return fFXForeground;
+	}
+	
+	javafx.scene.paint.Color getFXBackground() {
+		return fFXBackground;
+	}
+	
+	Font getFont() {
+		return fFont;
+	}
+	
+	Color getForeground() {
+		if (fForeground == null) {
+			fForeground = convert(fFXForeground);
+		}
+		return fForeground;
+	}
+	
+	Color getBackground() {
+		if (fBackground == null) {
+			fBackground = convert(fFXBackground);
+		}
+		return fBackground;
+	}
+	
+	/** Get font metrics.
+	  * The metrics are taken from the first component asking for them; all views share the default font render context.
+	  * @pre c != null
+	  */
+	FontMetrics getFontMetrics(Component c) {
+		if (fMetrics == null) {
+			fMetrics = c.getFontMetrics(fFont);
+		}
+		return fMetrics;
+	}
+	
+	/** Get advances of the characters 0 to 255, as needed for measuring the single byte characters of a text one by one.
+	  * @pre c != null
+	  * @post return.length == 256
+	  */
+	int [] getCharWidths(Component c) {
+		if (fCharWidths == null) {
+			fCharWidths = getFontMetrics(c).getWidths();
+		}
+		return fCharWidths;
+	}
+	
+	final int fGeneration;
+	private final javafx.scene.text.Font fFXFont;
+	private final javafx.scene.paint.Color fFXForeground;
+	private final javafx.scene.paint.Color fFXBackground;
+	private final Font fFont;
+	private Color fForeground;	// AWT colors are converted lazily, as measuring text does not need them
+	private Color fBackground;
+	private FontMetrics fMetrics;
+	private int [] fCharWidths;
+}
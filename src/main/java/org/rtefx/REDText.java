@@ -18,12 +18,14 @@
 package org.rtefx;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.rtefx.file.REDFile;
 import org.rtefx.file.REDFileRider;
 import org.rtefx.linetree.REDLineTree;
-import org.rtefx.linetree.REDLineTreeData;
 import org.rtefx.rexparser.REDRexLineSource;
 
 /** Piece list text implementation.
@@ -42,12 +44,15 @@ class REDText implements REDRexLineSource {
 		fDefaultStyle = REDStyleManager.getDefaultStyle();
 		fLineTree = new REDLineTree();
 		fListeners = new ArrayList<>(REDAuxiliary.fcListenerSize);
+		fWeakListeners = new ArrayList<>(REDAuxiliary.fcListenerSize);
 		fCmdP = new REDCommandProcessor(this);	// TBD: make cmdP optional
 		fModLock = false;
 		fOpQ = new ArrayList<>(3);
 		fCachePos = -1;
 		fFilename = filename;
 		fStyleBatchNotification = false;
+		fStyleBatchFrom = Integer.MAX_VALUE;
+		fStyleBatchTo = -1;
 		if (fFilename != "") {
 			load();
 		}
@@ -59,6 +64,7 @@ class REDText implements REDRexLineSource {
 	 * @post return.length() == length()
 	 */
 	public String asString() {
+		ensureResident();
 		StringBuffer buf = new StringBuffer((int) length());
 		REDRun cur = fHead;
 		while (cur != null) {
@@ -77,6 +83,7 @@ class REDText implements REDRexLineSource {
 	  * @post return != null
 	  */
 	public String asString(int from, int to) {
+		ensureResident();
 		from = Math.max(from, 0); from = Math.min(from, fLength);
 		to = Math.max(to, 0); to = Math.min(to, fLength); to = Math.max(to, from);
 		if (from >= to) {
@@ -103,6 +110,7 @@ class REDText implements REDRexLineSource {
 	  * @return An array containing [from, to[ or null, if [from, to[ would be empty.
 	  */
 	public byte[] asBytes(int from, int to, byte[] arr) {
+		ensureResident();
 		from = Math.max(from, 0); from = Math.min(from, fLength);
 		to = Math.max(to, 0); to = Math.min(to, fLength); to = Math.max(to, from);
 		if (from >= to) {
@@ -121,11 +129,38 @@ class REDText implements REDRexLineSource {
 		return arr;
 	}
 
+	/** Copy part of the text into char buffer.
+	  * The stretch is copied in bulk from the runs; each byte is widened to one char.
+	  * The parameters from and to are normalized to be in range: [0, fLength] 
+	  * @param from The beginning of the stretch of text to be copied; for from == n, the nth character is included.
+	  * @param to The end of the stretch of text to be copied; for to == n, the nth character is not included.
+	  * @param dest The buffer to copy into. The stretch is copied to the current position of dest, which is advanced accordingly.
+	  * @return The number of chars copied.
+	  * @pre dest.remaining() >= to - from
+	  */
+	public int copyInto(int from, int to, CharBuffer dest) {
+		ensureResident();
+		from = Math.max(from, 0); from = Math.min(from, fLength);
+		to = Math.max(to, 0); to = Math.min(to, fLength); to = Math.max(to, from);
+		int size = to - from;
+		if (size == 0) {
+			return 0;
+		}
+		REDRunSpec spec = findNextRun(from, null);
+		int done = spec.fRun.copyInto(dest, spec.fOff, size);
+		while (done < size) {
+			spec.fRun = spec.fRun.fNext;
+			done += spec.fRun.copyInto(dest, 0, size - done);
+		}
+		return done;
+	}
+
 	/** Get character at position.
 	  * @param pos The position to get character for
 	  * @return The character at the given position or \0, if pos >= length
 	  */
 	public byte charAt(int pos) {
+		ensureResident();
 		if (pos >= length()) {
 			return '\0';
 		}
@@ -146,6 +181,7 @@ class REDText implements REDRexLineSource {
 	   <br>&nbsp;false: operation has been queued for deferred execution
 	 */
 	public boolean replace(int from, int to, String s) {
+		ensureResident();
 		// parameter normalization
 		from = Math.max(from, 0); from = Math.min(from, fLength);
 		to = Math.max(to, 0); to = Math.min(to, fLength); to = Math.max(to, from);
@@ -153,6 +189,7 @@ class REDText implements REDRexLineSource {
 			queueOperation(new ReplaceQueueEntry(from, to, s));
 			return false;
 		}
+		fLineHint = -1;
 		
 		if (to > from) {
 			delete(from, to);
@@ -176,6 +213,7 @@ class REDText implements REDRexLineSource {
 			style = getDefaultStyle();
 		}
 		REDRun r = new REDRun(fScratchRider, s, style);
+		fNrRuns++;
 		r.fPrev = split.fBefore;
 		r.fNext = split.fAfter;
 		fLength += r.length();
@@ -196,14 +234,185 @@ class REDText implements REDRexLineSource {
 		else {
 			mergeRuns(r, split.fAfter);
 		}
-		fLineTree.notifyInsert(from, s.length(), tokenize(from, to));
-//		fLineTree.notifyInsert(from, s.length(), tokenize(s));
+		int nrLineStarts = tokenize(from, to);
+		fLineTree.notifyInsert(from, s.length(), fLineStarts, nrLineStarts);
+		adjustStyleBatchRange(from, from, to);
 		callListeners(LI_AFTERINSERT, from, to);				
 		releaseModificationLock();
 		return true;
 	}
 	
+	/** Replace text by a stretch of another text.
+	 * This method deletes the stretch [from, to[ and inserts the stretch [srcFrom, srcTo[ of src at from, keeping the styles of src.
+	 * The content is streamed blockwise from the runs of src into the scratch file of this text, so no String is built and the memory 
+	 * needed is independent of the size of the stretch.
+	 * from and to are normalized to be in range: [0, fLength] and to is normalized to be >= from; srcFrom and srcTo likewise for src.
+	 * @param from Position to replace from
+	 * @param to Position to replace to
+	 * @param src Text to copy from. may be this text
+	 * @param srcFrom Position of src to copy from
+	 * @param srcTo Position of src to copy to
+	 * @return <br>&nbsp;true: operation has been executed
+	   <br>&nbsp;false: operation has been queued for deferred execution
+	 * @pre src != null
+	 */
+	public boolean replace(int from, int to, REDText src, int srcFrom, int srcTo) {
+		return replace(from, to, src, srcFrom, srcTo, true);
+	}
+	
+	/** Replace text by a stretch of another text.
+	 * Like replace(int, int, REDText, int, int), but the inserted stretch may optionally get the style of its surroundings, just like a 
+	 * String inserted by replace(int, int, String) would.
+	 * @param keepStyles <CODE>true</CODE>: keep the styles of src; <CODE>false</CODE>: use style of surrounding text
+	 * @pre src != null
+	 */
+	public boolean replace(int from, int to, REDText src, int srcFrom, int srcTo, boolean keepStyles) {
+		if (src == this) {	// stretch might be affected by delete => take a snapshot first
+			REDText snapshot = createSnapshot(srcFrom, srcTo);
+			if (fModLock) {	// the queued operation owns the snapshot and disposes of it after execution
+				queueOperation(new TransferQueueEntry(from, to, snapshot, 0, snapshot.length(), keepStyles, true));
+				return false;
+			}
+			replace(from, to, snapshot, 0, snapshot.length(), keepStyles);
+			snapshot.disposeSnapshot();
+			return true;
+		}
+		ensureResident();
+		src.ensureResident();
+		// parameter normalization
+		from = Math.max(from, 0); from = Math.min(from, fLength);
+		to = Math.max(to, 0); to = Math.min(to, fLength); to = Math.max(to, from);
+		srcFrom = Math.max(srcFrom, 0); srcFrom = Math.min(srcFrom, src.fLength);
+		srcTo = Math.max(srcTo, 0); srcTo = Math.min(srcTo, src.fLength); srcTo = Math.max(srcTo, srcFrom);
+		if (!acquireModificationLock()) {
+			queueOperation(new TransferQueueEntry(from, to, src, srcFrom, srcTo, keepStyles, false));
+			return false;
+		}
+		fLineHint = -1;
+		
+		if (to > from) {
+			delete(from, to);
+		}
+		if (srcTo == srcFrom) {
+			releaseModificationLock();
+			return true;
+		}
+		
+		int len = srcTo - srcFrom;
+		to = from + len;
+		callListeners(LI_BEFOREINSERT, from, to);
+		REDRunPair split = splitRun(from);
+		REDStyle style;	// style of surrounding text
+		if (split.fBefore != null) {
+			style = split.fBefore.fStyle;
+		}
+		else if (split.fAfter != null) {
+			style = split.fAfter.fStyle;
+		}
+		else {
+			style = getDefaultStyle();
+		}
+		
+		// copy runs
+		byte [] buf = new byte[fcCopyBufferSize];
+		REDRunSpec spec = src.findNextRun(srcFrom, null);
+		REDRun cur = spec.fRun;
+		int off = spec.fOff;
+		REDRun first = null, last = null;
+		int done = 0;
+		while (done < len) {
+			int runLen = Math.min(cur.fLength - off, len - done);
+			REDRun r = copyRun(cur, off, runLen, keepStyles ? cur.fStyle : style, buf);
+			fNrRuns++;
+			r.fPrev = last;
+			if (last != null) {
+				last.fNext = r;
+			}
+			else {
+				first = r;
+			}
+			last = r;
+			done += runLen;
+			off = 0;
+			cur = cur.fNext;
+		}
+
+		// link copied runs
+		first.fPrev = split.fBefore;
+		last.fNext = split.fAfter;
+		fLength += len;
+		if (split.fBefore != null) {
+			split.fBefore.fNext = first;
+		}
+		else {
+			fHead = first;
+		}
+		if (split.fAfter != null) {
+			split.fAfter.fPrev = last;
+		}
+		fCache = first;
+		fCachePos = from;
+		if (split.fBefore != null) {
+			mergeRuns(split.fBefore, split.fAfter);
+		}
+		else {
+			mergeRuns(first, split.fAfter);
+		}
+		int nrLineStarts = tokenize(from, to);
+		fLineTree.notifyInsert(from, len, fLineStarts, nrLineStarts);
+		adjustStyleBatchRange(from, from, to);
+		callListeners(LI_AFTERINSERT, from, to);
+		releaseModificationLock();
+		return true;
+	}
+	
+	/** Copy part of a run into the scratch file of this text.
+	  * @param run The run to copy from. may belong to another text
+	  * @param off The offset of run to start copying at
+	  * @param len The number of bytes to copy
+	  * @param style The style of the new run
+	  * @param buf Buffer to use for copying
+	  * @return A new, unlinked run which represents the copied bytes.
+	  * @pre off + len <= run.fLength
+	  * @pre len > 0
+	  */
+	private REDRun copyRun(REDRun run, int off, int len, REDStyle style, byte [] buf) {
+		int org = fScratchRider.getFile().length();
+		int done = 0;
+		while (done < len) {
+			int amount = run.copyInto(buf, 0, Math.min(buf.length, len - done), off + done);
+			fScratchRider.seek(org + done);
+			fScratchRider.writeBytes(buf, amount);
+			done += amount;
+		}
+		return new REDRun(fScratchRider, org, len, style);
+	}
+	
+	/** Create snapshot of a stretch of this text.
+	  * The snapshot is a private text of its own which is not affected by later modifications of this text. The content is 
+	  * transferred run by run, so no String is built.
+	  * @param from Start of stretch to take snapshot of
+	  * @param to End of stretch to take snapshot of
+	  * @return A new text containing [from, to[ of this text with its styles.
+	  * @post return != null
+	  */
+	REDText createSnapshot(int from, int to) {
+		REDText snapshot = new REDText("");
+		snapshot.replace(0, 0, this, from, to);
+		return snapshot;
+	}
+	
+	/** Release the scratch file of a snapshot which is no longer needed.
+	  * The snapshot must not be used afterwards.
+	  */
+	private void disposeSnapshot() {
+		REDFile scratch = fScratchRider.getFile();
+		scratch.purge();
+		scratch.close();
+	}
+	
 	boolean hasStyle(int from, int to, REDStyle style) {
+		ensureResident();
 		REDRunSpec spec = findPrevRun(from, null);
 		REDRun cur = spec.fRun;
 		int curPos = spec.fOrg;
@@ -228,6 +437,7 @@ class REDText implements REDRexLineSource {
 	  * @post return == true implies forall int x in from+1 .. to | getStyle(x) == style
 	  */
 	public boolean setStyle(int from, int to, REDStyle style) {
+		ensureResident();
 		// parameter normalization
 		from = Math.max(from, 0); from = Math.min(from, fLength);
 		to = Math.max(to, 0); to = Math.min(to, fLength); to = Math.max(to, from);
@@ -270,6 +480,10 @@ class REDText implements REDRexLineSource {
 		}
 		REDAssert.ensure(s != null && e != null);
 		mergeRuns(s, e);
+		if (fStyleBatchNotification) {
+			fStyleBatchFrom = Math.min(fStyleBatchFrom, from);
+			fStyleBatchTo = Math.max(fStyleBatchTo, to);
+		}
 		callListeners(LI_AFTERSTYLECHANGE, from, to, style);
 		releaseModificationLock();
 		return true;
@@ -283,6 +497,7 @@ class REDText implements REDRexLineSource {
 	  * @post return != null
 	  */
 	REDStyle getStyle(int pos) {
+		ensureResident();
 		pos = Math.max(pos, 0); pos = Math.min(pos, fLength);
 		REDRunSpec r = findPrevRun(pos, null);
 		if (r.isValid()) {
@@ -303,7 +518,9 @@ class REDText implements REDRexLineSource {
 	/** (Re)load file from disk. */
 	public void load() {
 		// this routine could be much faster (O(1)), if only windows hadn't such a $&@! locking semantics
+		ensureResident();
 		callListeners(LI_BEFORELOAD);				
+		fLineHint = -1;
 		File f = new File(fFilename); 
 		if (!f.canRead()) return;	// @tbd throw an exception if we cannot read
 		REDFile srcFile = new REDFile(fFilename, true);
@@ -312,11 +529,15 @@ class REDText implements REDRexLineSource {
 		fLength = (int) fScratchRider.getFile().length();
 		if (fLength > 0) {
 			fHead = new REDRun(fScratchRider, 0, fLength, getDefaultStyle());
+			fNrRuns = 1;
 			fCache = fHead; fCachePos = 0;
-			fLineTree.notifyInsert(0, fLength, tokenize(0, fLength));
+			int nrLineStarts = tokenize(0, fLength);
+			fLineTree = new REDLineTree(fLineStarts, nrLineStarts);
+			fLineStarts = new int[fcInitialLineStarts];	// do not keep the line starts of a whole file around
 		}
 		else {
 			fHead = null;
+			fNrRuns = 0;
 			fCache = fHead; fCachePos = 0;
 			fLineTree = new REDLineTree();
 		}
@@ -332,6 +553,7 @@ class REDText implements REDRexLineSource {
 	  * @param filename The name of the file to save this text's content into.
 	  */
 	public void saveInto(String filename) {
+		ensureResident();
 		callListeners(LI_BEFORESAVEINTO, filename);				
 		REDFile saveFile = new REDFile(filename);
 		REDFileRider saveRider = new REDFileRider(saveFile); 
@@ -350,6 +572,7 @@ class REDText implements REDRexLineSource {
 	  * @pre !fFilename.equals("")
 	  */
 	public void save() {
+		ensureResident();
 		callListeners(LI_BEFORESAVE);		
 		REDFile saveFile = new REDFile(fFilename);
 		REDFileRider saveRider = new REDFileRider(saveFile); 
@@ -388,6 +611,7 @@ class REDText implements REDRexLineSource {
 	 * @post return >= 0 && return <= length()
 	 */
 	public int getLineStart(int lineNr) {
+		ensureResident();
 		if (lineNr < 0) lineNr = 0;
 		if (lineNr >= getNrOfLines()) {
 			return length();
@@ -405,14 +629,8 @@ class REDText implements REDRexLineSource {
 		if (lineNr+1 >= getNrOfLines()) {
 			return length();
 		}
-		int retVal = getLineStart(lineNr+1);
-		if (retVal > 1 && asString(retVal-2, retVal).equals("\r\n")) {
-			retVal -= 2;
-		}
-		else if (retVal > 0 && asString(retVal-1, retVal).equals("\r") || asString(retVal-1, retVal).equals("\n")) {
-			retVal--;
-		}
-		return retVal;
+		int next = getLineStart(lineNr+1);
+		return next - getTerminatorLength(getLineTerminator(lineNr, next));
 	}
 	
 	/** Get length of line.
@@ -440,6 +658,7 @@ class REDText implements REDRexLineSource {
 	  * @return The line number, <CODE>pos</CODE> is currently in.
 	  */
 	public int getLineForPosition(int pos) {
+		ensureResident();
 		if (pos < 0) pos = 0;
 		return fLineTree.getLineForPosition(pos);
 	}
@@ -462,7 +681,52 @@ class REDText implements REDRexLineSource {
 	  * @pre listener != null
 	  */
 	public boolean removeREDTextEventListener(REDTextEventListener listener) {
-		return fListeners.remove(listener);
+		boolean retVal = fListeners.remove(listener);
+		for (int j = fWeakListeners.size() - 1; j >= 0; j--) {
+			REDTextEventListener l = fWeakListeners.get(j).get();
+			if (l == null || l == listener) {
+				fWeakListeners.remove(j);
+				retVal |= l != null;
+			}
+		}
+		return retVal;
+	}
+	
+	/** Add a listener to this text without keeping it alive.
+	  * The text only keeps a weak reference to the listener. Once the listener is no longer reachable otherwise, it is 
+	  * dropped from the text automatically. Use this for listeners with an unclear lifetime, like mark trees.
+	  * @param listener The listener to be added to the text
+	  * @return true if successful, false otherwise	
+	  * @pre listener != null
+	  */
+	public boolean addWeakREDTextEventListener(REDTextEventListener listener) {
+		if (fListeners.contains(listener)) {
+			return false;
+		}
+		for (int j = fWeakListeners.size() - 1; j >= 0; j--) {
+			REDTextEventListener l = fWeakListeners.get(j).get();
+			if (l == null) {
+				fWeakListeners.remove(j);
+			}
+			else if (l == listener) {
+				return false;
+			}
+		}
+		return fWeakListeners.add(new WeakReference<>(listener));
+	}
+	
+	/** Get number of listeners.
+	  * This is meant for monitoring, e.g. to find listeners which are never removed.
+	  * @return The number of listeners registered with this text, including weakly registered listeners which have not been garbage collected yet.
+	  */
+	public int getREDTextEventListenerCount() {
+		int count = fListeners.size();
+		for (int j = 0; j < fWeakListeners.size(); j++) {
+			if (fWeakListeners.get(j).get() != null) {
+				count++;
+			}
+		}
+		return count;
 	}
 	
 	/** Return number of lines in text.
@@ -470,9 +734,24 @@ class REDText implements REDRexLineSource {
 	  * @post return >= 1
 	  */
 	public int getNrOfLines() {
+		ensureResident();
 		return fLineTree.getNrNodes();
 	}
 
+	/** Create line cursor.
+	  * Line cursors allow to walk through consecutive lines without looking up each line from scratch.
+	  * @return A new line cursor, positioned at line 0.
+	  */
+	public REDLineCursor createLineCursor() {
+		return new REDLineCursor(this);
+	}
+	
+	/** Get line index; for use by REDLineCursor. */
+	REDLineTree getLineTree() {
+		ensureResident();
+		return fLineTree;
+	}
+	
 	/** Get view stretch.
 	  * @param pos start of stretch
 	  * @param stretch if this parameter != null then the passed stretch object is reused
@@ -497,6 +776,7 @@ class REDText implements REDRexLineSource {
 	  * @post stretch != null implies return == stretch
 	  */
 	public REDViewStretch getViewStretch(int pos, REDViewStretch stretch, boolean whiteSpaceViz) {
+		ensureResident();
 		if (stretch == null) {
 			stretch = new REDViewStretch();
 		}
@@ -528,8 +808,12 @@ class REDText implements REDRexLineSource {
 		else if (c == '\r' || c == '\n') {
 			stretch.fType = REDViewStretch.LINEBREAK;
 			stretch.fLength = 1;
-			if (c == '\r' && stretch.fRunSpec.fOff < stretch.fRunSpec.fRun.fLength && stretch.fRunSpec.fRun.getCharAt(stretch.fRunSpec.fOff+1) == '\n') {
-				stretch.fLength++;
+			if (c == '\r') {
+				REDRun run = stretch.fRunSpec.fRun;
+				int off = stretch.fRunSpec.fOff + 1;
+				if (off < run.fLength ? run.getCharAt(off) == '\n' : run.fNext != null && run.fNext.getCharAt(0) == '\n') {
+					stretch.fLength++;
+				}
 			}
 		}
 		else {
@@ -544,6 +828,18 @@ class REDText implements REDRexLineSource {
 		return stretch;
 	}
 	
+	/** Find the run containing given position for sequential readers.
+	  * Positions between two runs yield the latter run.
+	  * @see REDViewStretchCursor
+	  * @pre pos >= 0
+	  * @pre pos <= length()
+	  * @post return != null
+	  */
+	REDRunSpec findRun(int pos, REDRunSpec spec) {
+		ensureResident();
+		return findNextRun(pos, spec);
+	}
+	
 	/** Set current typing command.
 	  * A typing command combines consecutive input characters.
 	  * This method allows to set the current typing command. Most of the time this will be called with <CODE>null</CODE> to end the
@@ -595,38 +891,48 @@ class REDText implements REDRexLineSource {
 	}	
 	
 	// --- REDRexLineSource interface
-	public char [] getLine(int lineNr, char [] reuse) {
-		if (lineNr < 0 || lineNr >= getNrOfLines()) {
-			return null;
+	public int getLine(int lineNr, CharBuffer dest) {
+		int nrOfLines = getNrOfLines();
+		if (lineNr < 0 || lineNr >= nrOfLines) {
+			return -1;
+		}
+		long hint = fLineHint;
+		int start;
+		if (hint != -1 && (int) (hint >>> 32) == lineNr - 1) {	// sequential access: line starts where its predecessor ended
+			start = (int) hint;
 		}
 		else {
-			int len = getLineLength(lineNr);
-			if (reuse == null || reuse.length < len) {
-				reuse = new char[len];
-			}
-			// tbd: optimize me !!!
-			int idx = 0;
-			int pos = getLineStart(lineNr);
-			char c = (char) charAt(pos);
-			while (c != '\0' && !REDAuxiliary.isLineBreak((byte) c)) {
-				reuse[idx++] = c; 
-				pos++;
-				c = (char) charAt(pos);
-			}
-			while (c != '\0' && idx < len && REDAuxiliary.isLineBreak((byte) c)) {
-				reuse[idx++] = c; 
-				pos++;
-				c = (char) charAt(pos);
-			}
-
-			return reuse;
+			start = getLineStart(lineNr);
+		}
+		int end = getLineStart(lineNr+1);
+		fLineHint = (long) lineNr << 32 | end;
+		if (end - start <= dest.remaining()) {
+			copyInto(start, end, dest);
+		}
+		return end - start;
+	}
+	
+	public int getLineHead(int lineNr, CharBuffer dest) {
+		if (lineNr < 0 || lineNr >= getNrOfLines()) {
+			return -1;
 		}
+		int start = getLineStart(lineNr);
+		int end = Math.min(getLineStart(lineNr+1), start + dest.remaining());
+		copyInto(start, end, dest);
+		return end - start;
 	}
 	
 	public int getLineLength(int lineNr) {
 		return getLineLength(lineNr, true);
 	}
 	
+	public int getLineTerminator(int lineNr) {
+		if (lineNr < 0 || lineNr+1 >= getNrOfLines()) {
+			return LT_NONE;
+		}
+		return getLineTerminator(lineNr, getLineStart(lineNr+1));
+	}
+	
 	/** Start style batch notification mode.
 	  * After style batch notification mode has been entered,  notifications about style changes in the text will not be sent out to listeners until batchStyleNotificationEnd is called.
 	  * You must not call batchStyleNotificationStart, if this mode is already in place (i.e. nested calls are disallowed).
@@ -637,6 +943,8 @@ class REDText implements REDRexLineSource {
 		}
 		callListeners(LI_BEFOREBATCHNOTIFICATION);
 		fStyleBatchNotification = true;
+		fStyleBatchFrom = Integer.MAX_VALUE;
+		fStyleBatchTo = -1;
 	}
 	
 	/** End style batch notification mode.
@@ -657,7 +965,150 @@ class REDText implements REDRexLineSource {
 	public boolean hasStyleBatchNotification() {
 		return fStyleBatchNotification;
 	}
-		
+	
+	/** Get start of the styles changed in style batch notification mode.
+	  * Listeners may use this in afterStyleBatchNotification to update only the part of the text whose styles have changed.
+	  * The range covers all style changes since the last call of batchStyleNotificationStart and is adjusted to insertions and deletions made meanwhile.
+	  * @return The start position of the changed range. If no style has been changed, return &gt; getStyleBatchTo().
+	  */
+	public int getStyleBatchFrom() {
+		return fStyleBatchFrom;
+	}
+	
+	/** Get end of the styles changed in style batch notification mode.
+	  * @see #getStyleBatchFrom
+	  * @return The end position of the changed range. If no style has been changed, return &lt; getStyleBatchFrom().
+	  */
+	public int getStyleBatchTo() {
+		return fStyleBatchTo;
+	}
+	
+	/** Auxiliary method to adjust range of style batch to replacement of [from, to[ by text ending at newTo. */
+	private void adjustStyleBatchRange(int from, int to, int newTo) {
+		if (fStyleBatchNotification && fStyleBatchFrom <= fStyleBatchTo) {
+			if (fStyleBatchFrom > from) {
+				fStyleBatchFrom = Math.max(from, fStyleBatchFrom + newTo - to);
+			}
+			if (fStyleBatchTo >= from) {
+				fStyleBatchTo = Math.max(from, fStyleBatchTo + newTo - to);
+			}
+		}
+	}
+
+	/** Hibernate text.
+	  * The content of the text is compacted into a fresh temporary file together with its run table and line index.
+	  * Afterwards the run list, the line tree and all file buffers are released.
+	  * Any subsequent access to the text will transparently rehydrate it.
+	  * Listeners (and thus mark trees) are not affected, since a hibernated text cannot change.
+	  * @return <CODE>true</CODE>, if the text has been hibernated; <CODE>false</CODE> if it is already hibernated or currently busy
+	  * (modification lock held, deferred operations pending, style batch notification mode in place or read by a background thread).
+	  */
+	public synchronized boolean hibernate() {
+		if (fHibernationFile != null || fModLock || fOpQ.size() > 0 || fStyleBatchNotification || fBackgroundReaders > 0) {
+			return false;
+		}
+		REDFile file = REDFile.getUniqueTmpFile();
+		REDFileRider rider = new REDFileRider(file);
+		byte [] buf = new byte[fcCopyBufferSize];
+
+		// 1. content
+		REDRun cur = fHead;
+		while (cur != null) {
+			int done = 0;
+			while (done < cur.fLength) {
+				int amount = cur.copyInto(buf, 0, buf.length, done);
+				rider.writeBytes(buf, amount);
+				done += amount;
+			}
+			cur = cur.fNext;
+		}
+
+		// 2. run table; consecutive runs of same style are contiguous now and can be coalesced
+		ArrayList<REDStyle> styles = new ArrayList<>();
+		int nrRuns = 0;
+		cur = fHead;
+		while (cur != null) {
+			int len = cur.fLength;
+			while (cur.fNext != null && cur.fNext.fStyle == cur.fStyle) {
+				cur = cur.fNext;
+				len += cur.fLength;
+			}
+			int styleIdx = styles.indexOf(cur.fStyle);
+			if (styleIdx == -1) {
+				styleIdx = styles.size();
+				styles.add(cur.fStyle);
+			}
+			writeInt(rider, len, buf);
+			writeInt(rider, styleIdx, buf);
+			nrRuns++;
+			cur = cur.fNext;
+		}
+
+		// 3. line index (line 0 always starts at 0 and is not stored)
+		int nrLines = fLineTree.getNrNodes();
+		for (int line = 1; line < nrLines; line++) {
+			writeInt(rider, fLineTree.getLineStart(line), buf);
+		}
+
+		// release everything that can be reconstructed
+		REDFile scratch = fScratchRider.getFile();
+		scratch.purge();
+		scratch.close();
+		file.releaseBuffers();
+		fScratchRider = null;
+		fHead = null;
+		fNrRuns = 0;
+		fCache = null;
+		fCachePos = -1;
+		fLineTree = null;
+		fHibernationFile = file;
+		fHibernatedStyles = styles.toArray(new REDStyle[styles.size()]);
+		fHibernatedRuns = nrRuns;
+		fHibernatedLines = nrLines;
+		return true;
+	}
+
+	/** Get hibernation status.
+	  * @return <CODE>true</CODE>, if the text is currently hibernated; <CODE>false</CODE> otherwise.
+	  */
+	public boolean isHibernated() {
+		return fHibernationFile != null;
+	}
+
+	/** Get estimated heap footprint of this text.
+	  * The estimate covers run list, line index and file buffers; it does not rehydrate a hibernated text and takes constant time.
+	  * @return The estimated number of bytes this text currently occupies on heap.
+	  */
+	long getResidentSize() {
+		if (fHibernationFile != null) {
+			return fcTextFootprint + fHibernatedStyles.length * fcReferenceFootprint;
+		}
+		return fcTextFootprint + fScratchRider.getFile().getBufferFootprint() + (long) fNrRuns * fcRunFootprint + fLineTree.getFootprint();
+	}
+
+	/** Start reading from a background thread.
+	  * Reading is not synchronized with hibernation, so background threads must announce their reading. The text is made resident 
+	  * and will not be hibernated until the matching call of endBackgroundRead().
+	  */
+	synchronized void beginBackgroundRead() {
+		ensureResident();
+		fBackgroundReaders++;
+	}
+	
+	/** End reading from a background thread.
+	  * @pre a matching call of beginBackgroundRead() has been made
+	  */
+	synchronized void endBackgroundRead() {
+		fBackgroundReaders--;
+	}
+
+	/** Get last access stamp.
+	  * @return A stamp which is increased monotonically by accessing any text; greater values mean more recent access.
+	  */
+	long getLastAccess() {
+		return fLastAccess;
+	}
+
 	// *******************************************************************************************************************************************************
 	// P R I V A T E - L I N E
 	// *******************************************************************************************************************************************************
@@ -705,58 +1156,72 @@ class REDText implements REDRexLineSource {
 			for (int j = 0; j < fListeners.size(); j++) {
 				REDTextEventListener listener = (REDTextEventListener) fListeners.get(j);
 				if (listener.getListenerLevel() == i) {
-					switch (op) {
-						case LI_BEFOREDELETE:
-							listener.beforeDelete(from, to);
-						break;
-						case LI_AFTERDELETE:
-							listener.afterDelete(from, to);
-						break;
-						case LI_BEFOREINSERT:
-							listener.beforeInsert(from, to);
-						break;
-						case LI_AFTERINSERT:
-							listener.afterInsert(from, to);
-						break;
-						case LI_BEFORESTYLECHANGE:
-							if (!fStyleBatchNotification) {
-								listener.beforeStyleChange(from, to, style);
-							}
-						break;
-						case LI_AFTERSTYLECHANGE:
-							if (!fStyleBatchNotification) {
-								listener.afterStyleChange(from, to, style);
-							}
-						break;
-						case LI_BEFORELOAD:
-							listener.beforeLoad();
-						break;
-						case LI_AFTERLOAD:
-							listener.afterLoad();
-						break;
-						case LI_BEFORESAVE:
-							listener.beforeSave();
-						break;
-						case LI_AFTERSAVE:
-							listener.afterSave();
-						break;
-						case LI_BEFORESAVEINTO:
-							listener.beforeSaveInto(filename);
-						break;
-						case LI_AFTERSAVEINTO:
-							listener.afterSaveInto(filename);
-						break;
-						case LI_BEFOREBATCHNOTIFICATION:
-							listener.beforeStyleBatchNotification();
-						break;
-						case LI_AFTERBATCHNOTIFICATION:
-							listener.afterStyleBatchNotification();
-						break;							
-					}
+					callListener(listener, op, from, to, style, filename);
+				}
+			}
+			for (int j = 0; j < fWeakListeners.size(); j++) {
+				REDTextEventListener listener = fWeakListeners.get(j).get();
+				if (listener == null) {
+					fWeakListeners.remove(j--);
+				}
+				else if (listener.getListenerLevel() == i) {
+					callListener(listener, op, from, to, style, filename);
 				}
 			}
 		}
 	}
+
+	/** Auxiliary method to call one listener. */
+	private void callListener(REDTextEventListener listener, int op, int from, int to, REDStyle style, String filename) {
+		switch (op) {
+			case LI_BEFOREDELETE:
+				listener.beforeDelete(from, to);
+			break;
+			case LI_AFTERDELETE:
+				listener.afterDelete(from, to);
+			break;
+			case LI_BEFOREINSERT:
+				listener.beforeInsert(from, to);
+			break;
+			case LI_AFTERINSERT:
+				listener.afterInsert(from, to);
+			break;
+			case LI_BEFORESTYLECHANGE:
+				if (!fStyleBatchNotification) {
+					listener.beforeStyleChange(from, to, style);
+				}
+			break;
+			case LI_AFTERSTYLECHANGE:
+				if (!fStyleBatchNotification) {
+					listener.afterStyleChange(from, to, style);
+				}
+			break;
+			case LI_BEFORELOAD:
+				listener.beforeLoad();
+			break;
+			case LI_AFTERLOAD:
+				listener.afterLoad();
+			break;
+			case LI_BEFORESAVE:
+				listener.beforeSave();
+			break;
+			case LI_AFTERSAVE:
+				listener.afterSave();
+			break;
+			case LI_BEFORESAVEINTO:
+				listener.beforeSaveInto(filename);
+			break;
+			case LI_AFTERSAVEINTO:
+				listener.afterSaveInto(filename);
+			break;
+			case LI_BEFOREBATCHNOTIFICATION:
+				listener.beforeStyleBatchNotification();
+			break;
+			case LI_AFTERBATCHNOTIFICATION:
+				listener.afterStyleBatchNotification();
+			break;							
+		}
+	}
 	
 	/** Auxiliary method to delete part of the text. 
 	  * from and to have gap semantics.
@@ -767,6 +1232,9 @@ class REDText implements REDRexLineSource {
 		callListeners(LI_BEFOREDELETE, from, to);				
 		REDRunPair start = splitRun(from);
 		REDRunPair end = splitRun(to);
+		for (REDRun cur = start.fAfter; cur != end.fAfter; cur = cur.fNext) {
+			fNrRuns--;
+		}
 		if (start.fBefore != null) {
 			start.fBefore.fNext = end.fAfter;
 			if (end.fAfter != null) {
@@ -792,6 +1260,7 @@ class REDText implements REDRexLineSource {
 			fScratchRider.getFile().purge();
 		}
 		fLineTree.notifyDelete(from, to);
+		adjustStyleBatchRange(from, to, from);
 		callListeners(LI_AFTERDELETE, from, to);				
 	}
 	
@@ -875,6 +1344,7 @@ class REDText implements REDRexLineSource {
 			if (spec.fOff != len) { // need to split
 				p.fAfter = new REDRun(p.fBefore.fBuffer, p.fBefore.fOrg + spec.fOff, p.fBefore.fLength - spec.fOff, p.fBefore.fStyle);
 				p.fBefore.fLength = spec.fOff;
+				fNrRuns++;
 				p.fAfter.fNext = p.fBefore.fNext;
 				if (p.fAfter.fNext != null) {
 					p.fAfter.fNext.fPrev = p.fAfter;
@@ -904,6 +1374,7 @@ class REDText implements REDRexLineSource {
 					fCachePos -= cur.fLength;
 				}
 				cur.fLength += next.fLength;
+				fNrRuns--;
 				cur.fNext = next.fNext;
 				if (cur.fNext != null) {
 					cur.fNext.fPrev = cur;
@@ -924,26 +1395,86 @@ class REDText implements REDRexLineSource {
 		}
 	}
 	
+	/** Get line terminator kind by examining the characters in front of the next line's start.
+	  * @param lineNr The line to get terminator kind for.
+	  * @param next The start position of line <CODE>lineNr + 1</CODE>.
+	  * @return One of the <CODE>LT_...</CODE> constants of REDRexLineSource.
+	  */
+	private int getLineTerminator(int lineNr, int next) {
+		byte c = charAt(next - 1);
+		if (c == '\r') {
+			return LT_CR;
+		}
+		else if (c != '\n') {
+			return LT_NONE;
+		}
+		else if (next - 2 >= getLineStart(lineNr) && charAt(next - 2) == '\r') {
+			return LT_CRLF;
+		}
+		return LT_LF;
+	}
+
+	/** Get length of line terminator of a line with known boundaries.
+	  * @param start The start position of the line.
+	  * @param next The start position of the following line.
+	  * @return The number of characters the line terminator of the line has.
+	  */
+	int getLineTerminatorLength(int start, int next) {
+		byte c = charAt(next - 1);
+		if (c == '\r') {
+			return 1;
+		}
+		else if (c != '\n') {
+			return 0;
+		}
+		return next - 2 >= start && charAt(next - 2) == '\r' ? 2 : 1;
+	}
+
+	/** Get length of line terminator.
+	  * @param kind One of the <CODE>LT_...</CODE> constants of REDRexLineSource.
+	  * @return The number of characters the given kind of line terminator has.
+	  */
+	static int getTerminatorLength(int kind) {
+		switch (kind) {
+			case LT_LF:
+			case LT_CR:
+				return 1;
+			case LT_CRLF:
+				return 2;
+			default:
+				return 0;
+		}
+	}
+	
 	/** Split String into lines including linebreak character, adapt line tree.
 	  * StringTokenizer wont cut it: It cannot use \r\n as delimiter :-(
-	  * @post forall REDLineTreeData e in return | e.getPosition() >= from@pre && e.getPosition() <= to@pre
+	  * The start positions of the lines following the first one are stored in fLineStarts.
+	  * @return the number of line starts stored in fLineStarts
+	  * @post forall i in [0, return[ | fLineStarts[i] > from@pre && fLineStarts[i] <= to@pre
 	  */
-	private ArrayList<REDLineTreeData> tokenize(int from, int to) {
-		int nrLines = 1;
-		ArrayList<REDLineTreeData> retVal = new ArrayList<>();
+	private int tokenize(int from, int to) {
+		int nrLines = 0;
 		REDRunSpec runSpec = null;
 		while (from < to) {
 			runSpec = findNextRun(from, runSpec);
 			from = runSpec.fRun.findNextLine(runSpec.fOff) + runSpec.fOrg;
-
-			retVal.add(new REDLineTreeData(Math.min(from, to), nrLines));
-			nrLines++;
+			addLineStart(nrLines++, Math.min(from, to));
 		}
 		String lastChar = asString(to-1, to);
 		if (lastChar.equals("\n") || lastChar.equals("\r") && !asString(to, to+1).equals("\n")) {
-			retVal.add(new REDLineTreeData(to, nrLines));
+			addLineStart(nrLines++, to);
 		}
-		return retVal;
+		return Math.max(nrLines - 1, 0);	// last line start found is the end of the tokenized range
+	}
+	
+	/** Store line start at index idx of fLineStarts, growing it if necessary. */
+	private void addLineStart(int idx, int pos) {
+		if (idx == fLineStarts.length) {
+			int [] starts = new int[fLineStarts.length * 2];
+			System.arraycopy(fLineStarts, 0, starts, 0, idx);
+			fLineStarts = starts;
+		}
+		fLineStarts[idx] = pos;
 	}
 	
 	// --- Deferred execution
@@ -982,6 +1513,32 @@ class REDText implements REDRexLineSource {
 		String fString;
 	}
 	
+	/** TransferQueueEntry represents deferred replace method calls with a text stretch as source */
+	class TransferQueueEntry extends QueueEntry {
+		/** @param ownsSrc true, if src is a snapshot which is to be disposed of after execution */
+		public TransferQueueEntry(int from, int to, REDText src, int srcFrom, int srcTo, boolean keepStyles, boolean ownsSrc) {
+			fFrom = from; 
+			fTo = to;
+			fSrc = src;
+			fSrcFrom = srcFrom;
+			fSrcTo = srcTo;
+			fKeepStyles = keepStyles;
+			fOwnsSrc = ownsSrc;
+		}
+		
+		public void execute() {
+			replace(fFrom, fTo, fSrc, fSrcFrom, fSrcTo, fKeepStyles);
+			if (fOwnsSrc) {
+				fSrc.disposeSnapshot();
+			}
+		}
+		int fFrom, fTo;
+		REDText fSrc;
+		int fSrcFrom, fSrcTo;
+		boolean fKeepStyles;
+		boolean fOwnsSrc;
+	}
+	
 	/** Try to acquire the modification lock of this text.
 	  * @return <CODE>true</CODE>, if lock could be acquired, <CODE>false</CODE> otherwise.
 	  */
@@ -1012,6 +1569,80 @@ class REDText implements REDRexLineSource {
 	private void queueOperation(QueueEntry e) {
 		fOpQ.add(e);
 	}
+
+	// --- Hibernation
+	/** Make sure the text is resident and stamp the access.
+	  * This method must be called by every operation which accesses runs or the line tree.
+	  */
+	private void ensureResident() {
+		fLastAccess = fgAccessClock.incrementAndGet();
+		if (fHibernationFile != null) {
+			rehydrate();
+		}
+	}
+
+	/** Rebuild run list and line index from the hibernation file.
+	  * The hibernation file is cut back to the text content and becomes the new scratch file.
+	  */
+	private synchronized void rehydrate() {
+		if (fHibernationFile == null) {
+			return;
+		}
+		REDFileRider rider = new REDFileRider(fHibernationFile);
+		byte [] buf = new byte[4];
+		rider.seek(fLength);
+		
+		// 1. run table
+		REDRun prev = null;
+		int org = 0;
+		fHead = null;
+		for (int i = 0; i < fHibernatedRuns; i++) {
+			int len = readInt(rider, buf);
+			REDRun r = new REDRun(rider, org, len, fHibernatedStyles[readInt(rider, buf)]);
+			r.fPrev = prev;
+			if (prev != null) {
+				prev.fNext = r;
+			}
+			else {
+				fHead = r;
+			}
+			prev = r;
+			org += len;
+		}
+		fNrRuns = fHibernatedRuns;
+		fCache = fHead; fCachePos = 0;
+
+		// 2. line index
+		int [] starts = new int[Math.max(fHibernatedLines - 1, 0)];
+		for (int line = 1; line < fHibernatedLines; line++) {
+			starts[line - 1] = readInt(rider, buf);
+		}
+		fLineTree = new REDLineTree(starts, starts.length);
+		
+		fHibernationFile.truncate(fLength);
+		fScratchRider = rider;
+		fHibernationFile = null;
+		fHibernatedStyles = null;
+	}
+	
+	/** Write int in big endian byte order. 
+	  * @param buf auxiliary buffer with length >= 4
+	  */
+	private static void writeInt(REDFileRider rider, int v, byte [] buf) {
+		buf[0] = (byte) (v >>> 24);
+		buf[1] = (byte) (v >>> 16);
+		buf[2] = (byte) (v >>> 8);
+		buf[3] = (byte) v;
+		rider.writeBytes(buf, 4);
+	}
+
+	/** Read int in big endian byte order. 
+	  * @param buf auxiliary buffer with length >= 4
+	  */
+	private static int readInt(REDFileRider rider, byte [] buf) {
+		rider.readBytes(buf, 4);
+		return (buf[0] & 0xff) << 24 | (buf[1] & 0xff) << 16 | (buf[2] & 0xff) << 8 | buf[3] & 0xff;
+	}
 	
 //	/** Test the class invariant.
 //	 * @return true, if invariant is ok, false otherwise.
@@ -1057,6 +1688,7 @@ class REDText implements REDRexLineSource {
 	 * empty REDText.
 	 */
 	String getStructure() {
+		ensureResident();
 		REDRun cur = fHead;
 		String structure = "";
 		while (cur != null) {
@@ -1096,6 +1728,7 @@ class REDText implements REDRexLineSource {
 	}
 	
 	private REDRun fHead;
+	private int fNrRuns;	// number of runs in list starting at fHead; kept up to date for getResidentSize()
 	private REDRun fCache;
 	private int fCachePos;
 	private int fLength;
@@ -1103,11 +1736,28 @@ class REDText implements REDRexLineSource {
 	private String fFilename;
 	private REDStyle fDefaultStyle;
 	protected REDLineTree fLineTree;	// @TBD make me private again.
+	private int [] fLineStarts = new int[fcInitialLineStarts];	// line starts found by tokenize()
 	private ArrayList<REDTextEventListener> fListeners;
+	private ArrayList<WeakReference<REDTextEventListener>> fWeakListeners;
 	private REDTextCommand fCurTypingCmd;
 	private REDView fUndoRedoView;
 	private REDCommandProcessor fCmdP;
 	private boolean fModLock;	// modification locked
 	private ArrayList<QueueEntry> fOpQ;	// operation queue
 	private boolean fStyleBatchNotification;
+	private int fStyleBatchFrom, fStyleBatchTo;	// range of style changes in batch notification mode
+	private volatile long fLineHint = -1;	// line number (high word) and start of following line (low word) of last getLine() call; -1 if unknown
+	private volatile long fLastAccess;	// access stamp for LRU hibernation
+	private REDFile fHibernationFile;	// != null iff text is hibernated
+	private REDStyle [] fHibernatedStyles;
+	private int fBackgroundReaders;	// number of background threads reading the text; guarded by this
+	private int fHibernatedRuns;
+	private int fHibernatedLines;
+	private static final AtomicLong fgAccessClock = new AtomicLong();	// ensureResident() is also called by background readers
+	private static final int fcCopyBufferSize = 4096;
+	private static final int fcInitialLineStarts = 64;
+	// rough heap footprints used by getResidentSize()
+	private static final int fcTextFootprint = 256;
+	private static final int fcRunFootprint = 48;
+	private static final int fcReferenceFootprint = 8;
 }
@@ -33,6 +33,16 @@ class REDTextCommand extends REDCommand {
 		fDelayed = false;
 	}
 	
+	/** Create command which replaces a stretch of text by the content of another text.
+	  * The replacement is spliced in run by run and gets the style of the surrounding text, just like a replacement String would.
+	  * @param replacement the text to insert. It must not be modified afterwards, since the command may still be queued.
+	  */
+	static REDTextCommand createTransfer(String description, REDView view, REDText text, int from, int len, REDText replacement) {
+		REDTextCommand cmd = new REDTextCommand(description, view, text, from, len, null);
+		cmd.fReplacedSnapshot = replacement;
+		return cmd;
+	}
+	
 	public void undoIt() {
 		redoIt();
 	}
@@ -50,24 +60,33 @@ class REDTextCommand extends REDCommand {
 	
 	public void doIt() {
 		String replaced = null;
+		REDText replacedSnapshot = null;
 		
-		// make backup of text to be destroyed
-		if (fLength != 0) {
+		// make backup of text to be destroyed; large stretches are backed up as snapshot text instead of String
+		if (fLength > fcSnapshotThreshold) {
+			replacedSnapshot = fText.createSnapshot(fFrom, fFrom + fLength);
+		}
+		else if (fLength != 0) {
 			replaced = fText.asString(fFrom, fFrom + fLength);
 		}
 		
-		// replace
-		fDelayed = !fText.replace(fFrom, fFrom + fLength, fReplacedText);
-		
-		// reset length
-		if (fReplacedText != null) {
-			fLength = fReplacedText.length();
+		// replace and reset length
+		if (fReplacedSnapshot != null) {
+			fDelayed = !fText.replace(fFrom, fFrom + fLength, fReplacedSnapshot, 0, fReplacedSnapshot.length(), false);
+			fLength = fReplacedSnapshot.length();
 		}
 		else {
-			fLength = 0;
+			fDelayed = !fText.replace(fFrom, fFrom + fLength, fReplacedText);
+			if (fReplacedText != null) {
+				fLength = fReplacedText.length();
+			}
+			else {
+				fLength = 0;
+			}
 		}
 		
 		fReplacedText = replaced;
+		fReplacedSnapshot = replacedSnapshot;
 		
 		if (fView != null && !fIsUndoRedo) {
 			fView.setSelection(Math.min(fFrom + fLength, fText.length()));
@@ -85,7 +104,12 @@ class REDTextCommand extends REDCommand {
 	public void backspace() {
 		int oldFrom = fFrom;
 		fFrom = fView.charLeft(fFrom);
-		fReplacedText = fText.asString(fFrom, oldFrom) + fReplacedText; 	// TBD: maybe use a stringbuf (?)
+		if (fReplacedSnapshot != null) {
+			fReplacedSnapshot.replace(0, 0, fText, fFrom, oldFrom);
+		}
+		else {
+			fReplacedText = fText.asString(fFrom, oldFrom) + fReplacedText; 	// TBD: maybe use a stringbuf (?)
+		}
 	}
 	
 	/**
@@ -93,7 +117,12 @@ class REDTextCommand extends REDCommand {
 	  * @pre fFrom < fText.length()
 	  */
 	public void delete() {
-		fReplacedText = fReplacedText + fText.asString(fFrom, fView.charRight(fFrom));
+		if (fReplacedSnapshot != null) {
+			fReplacedSnapshot.replace(fReplacedSnapshot.length(), fReplacedSnapshot.length(), fText, fFrom, fView.charRight(fFrom));
+		}
+		else {
+			fReplacedText = fReplacedText + fText.asString(fFrom, fView.charRight(fFrom));
+		}
 	}
 	
 	public REDView getView() {
@@ -108,6 +137,8 @@ class REDTextCommand extends REDCommand {
 	int fFrom, fLength;
 	REDText fText;
 	String fReplacedText;
+	REDText fReplacedSnapshot;	// used instead of fReplacedText for large stretches
 	REDView fView;
 	boolean fDelayed;
+	static final int fcSnapshotThreshold = 65536;
 }
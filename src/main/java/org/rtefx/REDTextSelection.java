@@ -0,0 +1,127 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.ClipboardOwner;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/** Clipboard content of a text stretch.
+  * The stretch is copied into a snapshot text when the selection is created, which does not build a String. 
+  * Data for other applications is produced only when they request it; rtefx views paste the snapshot directly.
+  * @author rli@chello.at
+  * @tier system
+  */
+class REDTextSelection implements Transferable, ClipboardOwner {
+	/** Flavor for pasting between rtefx views of the same VM. Transfer data is the snapshot REDText. */
+	static final DataFlavor fcTextFlavor = new DataFlavor(DataFlavor.javaJVMLocalObjectMimeType + ";class=" + REDText.class.getName(), "RTEFX text");
+	
+	/** Flavor for streaming plain text. Transfer data is an InputStream reading the bytes of the snapshot. */
+	static final DataFlavor fcStreamFlavor = new DataFlavor("text/plain;charset=" + Charset.defaultCharset().name() + ";class=java.io.InputStream", "Plain text");
+	
+	private static final DataFlavor [] fgFlavors = { fcTextFlavor, DataFlavor.stringFlavor, fcStreamFlavor };
+	
+	/** Create selection by taking a snapshot of a stretch of text.
+	  * @pre text != null
+	  */
+	REDTextSelection(REDText text, int from, int to) {
+		fSnapshot = text.createSnapshot(from, to);
+	}
+	
+	/** Get snapshot of selection.
+	  * @post return != null
+	  */
+	REDText getSnapshot() {
+		return fSnapshot;
+	}
+	
+	public DataFlavor[] getTransferDataFlavors() {
+		return fgFlavors.clone();
+	}
+	
+	public boolean isDataFlavorSupported(DataFlavor flavor) {
+		for (int i = 0; i < fgFlavors.length; i++) {
+			if (fgFlavors[i].equals(flavor)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+		if (fcTextFlavor.equals(flavor)) {
+			return fSnapshot;
+		}
+		else if (DataFlavor.stringFlavor.equals(flavor)) {
+			return fSnapshot.asString();
+		}
+		else if (fcStreamFlavor.equals(flavor)) {
+			return new SnapshotInputStream(fSnapshot);
+		}
+		throw new UnsupportedFlavorException(flavor);
+	}
+	
+	public void lostOwnership(Clipboard clipboard, Transferable contents) {
+		// snapshot may still be used by pending paste operations => keep it
+	}
+	
+	/** Input stream reading the bytes of a snapshot block by block. */
+	static class SnapshotInputStream extends InputStream {
+		SnapshotInputStream(REDText snapshot) {
+			fText = snapshot;
+			fPos = 0;
+		}
+		
+		public int read() {
+			byte [] b = new byte[1];
+			if (read(b, 0, 1) == -1) {
+				return -1;
+			}
+			return b[0] & 0xff;
+		}
+		
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			int amount = Math.min(Math.min(len, fcBlockSize), fText.length() - fPos);
+			if (amount <= 0) {
+				return -1;
+			}
+			fBuffer = fText.asBytes(fPos, fPos + amount, fBuffer);
+			System.arraycopy(fBuffer, 0, b, off, amount);
+			fPos += amount;
+			return amount;
+		}
+		
+		public int available() {
+			return fText.length() - fPos;
+		}
+		
+		private REDText fText;
+		private int fPos;
+		private byte [] fBuffer;
+		private static final int fcBlockSize = 4096;
+	}
+	
+	private REDText fSnapshot;
+}
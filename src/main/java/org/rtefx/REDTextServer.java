@@ -57,6 +57,7 @@ public class REDTextServer {
 				}
 			}
 		}
+		enforceMemoryBudget();
 		return text;
 	}
 	
@@ -123,6 +124,72 @@ public class REDTextServer {
 		return fModels.keySet().iterator();
 	}
 	
+	// Hibernation start
+	/** Set memory budget for shared texts.
+	  * If the estimated heap footprint of all shared texts exceeds this budget, the least recently used texts are hibernated, until the
+	  * budget is met again. Hibernated texts are rehydrated transparently upon their next access.
+	  * @param bytes The budget in bytes. Pass <CODE>Long.MAX_VALUE</CODE> to disable hibernation by budget (which is the default).
+	  */
+	public static void setMemoryBudget(long bytes) {
+		fMemoryBudget = bytes;
+		enforceMemoryBudget();
+	}
+	
+	/** Get memory budget for shared texts.
+	  * @return The budget in bytes.
+	  */
+	public static long getMemoryBudget() {
+		return fMemoryBudget;
+	}
+	
+	/** Hibernate least recently used shared texts until their estimated heap footprint fits into the memory budget.
+	  * Texts which are busy (i.e. in the middle of a modification) are skipped.
+	  */
+	public static void enforceMemoryBudget() {
+		if (fMemoryBudget == Long.MAX_VALUE) {
+			return;
+		}
+		ArrayList<REDText> texts = new ArrayList<>(fModels.size());
+		long total = 0;
+		for (REDTextWrapper w : fModels.values()) {
+			REDText text = w.getText();
+			if (text != null) {
+				texts.add(text);
+				total += text.getResidentSize();
+			}
+		}
+		if (total <= fMemoryBudget) {
+			return;
+		}
+		texts.sort((a, b) -> Long.compare(a.getLastAccess(), b.getLastAccess()));
+		for (int i = 0; i < texts.size() && total > fMemoryBudget; i++) {
+			REDText text = texts.get(i);
+			long size = text.getResidentSize();
+			if (text.hibernate()) {
+				total += text.getResidentSize() - size;
+			}
+		}
+	}
+	
+	/** Hibernate a shared text.
+	  * @param fullFileName The name of the file to hibernate the shared text for.
+	  * @return <CODE>true</CODE>, if the text has been hibernated; <CODE>false</CODE> if it is not loaded, already hibernated or busy.
+	  */
+	public static boolean hibernateText(String fullFileName) {
+		REDTextWrapper w = fModels.get(fullFileName);
+		return w != null && w.getText() != null && w.getText().hibernate();
+	}
+	
+	/** Get hibernation status of a shared text.
+	  * @param fullFileName The name of the file to check for.
+	  * @return <CODE>true</CODE>, if the shared text for the given file is loaded and currently hibernated; <CODE>false</CODE> otherwise.
+	  */
+	public static boolean isTextHibernated(String fullFileName) {
+		REDTextWrapper w = fModels.get(fullFileName);
+		return w != null && w.getText() != null && w.getText().isHibernated();
+	}
+	// Hibernation end
+	
 	// Listeners start
 	private final static int LI_STATE = 1;
 	private final static int LI_SAVED = 2;
@@ -173,6 +240,9 @@ public class REDTextServer {
 	/** Maps filenames to REDTextWrapper objects. */
 	private static Map<String, REDTextWrapper> fModels = new TreeMap<>();	
 	
+	/** Memory budget for shared texts in bytes. */
+	private static long fMemoryBudget = Long.MAX_VALUE;
+	
 	/** Holds event listeners. */
 	private static ArrayList<REDTextServerEventListener> fListeners = new ArrayList<>();
 }
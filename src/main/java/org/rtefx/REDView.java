@@ -20,30 +20,33 @@ package org.rtefx;
 import java.awt.Color;
 import java.awt.Cursor;
 import java.awt.Dimension;
-import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Insets;
 import java.awt.Rectangle;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
-import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
+import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.ArrayList;
 
 import javax.swing.JPanel;
+import javax.swing.RepaintManager;
 import javax.swing.Scrollable;
 import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
 import javax.swing.border.Border;
 
-import org.rtefx.linetree.REDLineTree;
-import org.rtefx.linetree.REDLineTreeData;
+import org.rtefx.linetree.REDLineAggregate;
+import org.rtefx.linetree.REDLineMetrics;
+
 
 /** REDView - the visual (Swing) component used to display REDTexts 
   * @author rli@chello.at
@@ -62,33 +65,52 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	private static final int CARET_BLINK_FREQUENCY = 400;
 	static final int DIR_LEFT_TO_RIGHT = 0;
 	static final int DIR_RIGHT_TO_LEFT = 1;
+	static final int fcWidthColumn = 0;
+	private static final REDLineAggregate [] fcLineAggregates = { REDLineAggregate.fcMax };
+	/** Flag in the lowest bit of a width entry, marking the width as an upper bound which has not been measured exactly yet. */
+	private static final int fcEstimated = 1;
+	/** Largest width a width entry can hold; wider lines are clamped to this. */
+	private static final int fcMaxWidth = Integer.MAX_VALUE >> 1;
+	/** Number of lines to keep character offsets for; enough for the visible lines of a usual window. */
+	private static final int fcLineOffsetsCacheSize = 64;
+	/** Number of characters to lay out and paint at once. Lines longer than this are handled chunk by chunk, cf. getChunkOffsets(). */
+	static final int fcChunkSize = 1024;
+	/** Number of lines to keep row starts for; enough for the visible lines of a large window. Edits of more lines are wrapped lazily. */
+	private static final int fcRowStartsCacheSize = 256;
 
 	REDView(REDText text) {
 		super(false);	// no double buffering
 		fHighlightColor = Color.yellow;
 		fHighlightLine = -1;
 		fWordConstituents = "";
-		fLineHeightCache = new REDViewLineHeightCache();
 		fText = text;
 		fText.addREDTextEventListener(this);
+		fStretchCursor = new REDViewStretchCursor(fText);
+		fStretchCursor.setMaxLength(fcChunkSize);
 		fPaintBatch = new ArrayList();
 		fExtent = new Dimension();
 		setTabWidth(REDAuxiliary.fcDefaultTabWidth);
 		setIndentWidth(REDAuxiliary.fcDefaultIndentWidth);
 		setMinTabWidth(REDAuxiliary.fcDefaultMinTabWidth);
 		resetLineTops();
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 		fXOffset = -1;
 		setCursor(Cursor.getPredefinedCursor(Cursor.TEXT_CURSOR));
 		setAutoscrolls(true);
 		addFocusListener(this);
-		setBackground(convert(fText.getDefaultStyle().getBackground()));
+		setBackground(fText.getDefaultStyle().getResources().getBackground());
 		fInsets = getInsets();
 		REDStyleManager.addStyleEventListener(this);
 	}
 
-	private Color convert(javafx.scene.paint.Color background) {
-		return new Color((int) (background.getRed() * 256), (int) (background.getGreen() * 256), (int) (background.getBlue() * 256));
+	class DamageFlush implements Runnable {
+		public void run() {
+			fDamageFlushPending = false;
+			int [] ranges = fDamage.drain();
+			for (int i = 0; i < ranges.length; i += 2) {
+				repaint(0, ranges[i], getWidth(), ranges[i + 1] - ranges[i]);
+			}
+		}
 	}
 
 	class CaretBlink implements ActionListener {
@@ -194,7 +216,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	}
 	
 	/** create one paint batch entry */
-	private int makePaintBatchEntry(FontMetrics metrics, int batchEntries, int curX, int curPos) {
+	private int makePaintBatchEntry(FontMetrics metrics, int batchEntries, int curX) {
 		if (fPaintBatch.size() <= batchEntries) {
 			fPaintBatch.add(new PaintBatchEntry());
 		}
@@ -204,7 +226,10 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 			e.fX = curX + fInsets.left;
 			e.fStyle = fViewStretch.fStyle;
 			e.fLength = fViewStretch.fLength;
-			e.fStr = fText.asBytes(curPos, curPos + fViewStretch.fLength, e.fStr);
+			if (e.fStr == null || e.fStr.length < e.fLength) {
+				e.fStr = new byte[Math.max(e.fLength, fViewStretch.fBytes.length)];
+			}
+			System.arraycopy(fViewStretch.fBytes, 0, e.fStr, 0, e.fLength);
 		}
 		catch (ArrayIndexOutOfBoundsException aioobe) {
 			throw new Error("Internal error in REDView.paintComponent");
@@ -236,6 +261,116 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		return curX;
 	}		
 
+	/** draw batched parts of one line */
+	private void paintBatch(Graphics g, int batchEntries, int curY, int lineHeight, int ascent) {
+		for (int b = 0; b < batchEntries; b++) {
+			try {
+				PaintBatchEntry e = ((PaintBatchEntry) fPaintBatch.get(b));
+				g.setColor(e.fStyle.getResources().getBackground());
+				g.fillRect(e.fX, curY, e.fWidth, lineHeight);
+				g.setFont(e.fStyle.getResources().getFont());
+				g.setColor(e.fStyle.getResources().getForeground());
+				if (e.fSpecial != SP_NONE) {
+					if (fVisualizeWhitespace) {
+						String s = "";
+						switch (e.fSpecial) {
+							case SP_TAB:
+								s = "\u00BB";
+							break;
+							case SP_SPC:
+								s = "\u00B7";
+							break;
+							case SP_LB:
+								if (e.fLength == 2) {
+									s = "\u00FE\u00B6";
+								}
+								else if (e.fStr[0] == '\n') {
+									s = "\u00B6";
+								}
+								else {
+									s = "\u00FE";
+								}
+							break;
+							case SP_EOF:	// @tbd: find visualization char
+								s = "";
+							break;
+						}
+						g.drawString(s, e.fX, curY + ascent);
+					}
+				}
+				else {
+					g.drawBytes(e.fStr, 0, e.fLength, e.fX, curY + ascent);
+				}
+				e.fStyle.getLining().paint(g, e.fX, curY, lineHeight, e.fWidth);
+			}
+			catch (ArrayIndexOutOfBoundsException aioobe) {
+				throw new Error("Internal error in REDView.paintComponent");
+			}
+		}
+	}
+
+	/** Paint those chunks of a long line which intersect the clip rectangle.
+	  * @return The height of the line.
+	  */
+	private int paintLongLine(Graphics g, int line, int curY, Rectangle clip) {
+		int [] chunks = getChunkOffsets(line);
+		int chunk = findChunk(chunks, clip.x - fInsets.left);
+		int clipRight = clip.x + clip.width - fInsets.left;
+		int lineHeight = getLineHeight(line);
+		int batchEntries = 0;
+		int curX = chunks[chunk];
+		fStretchCursor.setPosition(fText.getLineStart(line) + chunk * fcChunkSize);
+		do {
+			fViewStretch = fStretchCursor.next(fViewStretch, fVisualizeWhitespace);
+			curX = makePaintBatchEntry(getFontMetrics(fViewStretch.fStyle), batchEntries, curX);
+			batchEntries++;
+		} while (curX < clipRight && fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF);
+		paintBatch(g, batchEntries, curY, lineHeight, chunks[chunks.length - 1]);
+		return lineHeight;
+	}
+
+	/** Paint those rows of a wrapped line which intersect the clip rectangle.
+	  * @return The height of the line.
+	  */
+	private int paintWrappedLine(Graphics g, int line, int curY, Rectangle clip) {
+		int [] starts = getRowStarts(line);
+		int nrRows = starts.length / 2;
+		int rowHeight = fLineHeights.getHeight(line);
+		int ascent = starts[starts.length - 1];
+		int lineStart = fText.getLineStart(line);
+		for (int row = 0; row < nrRows; row++) {
+			int rowY = curY + row * rowHeight;
+			if (rowY + rowHeight <= clip.y || rowY >= clip.y + clip.height) {
+				continue;
+			}
+			int rowX = starts[2 * row + 1];
+			int rowEnd = row + 1 < nrRows ? lineStart + starts[2 * row + 2] : -1;	// -1: row ends with line break
+			int batchEntries = 0;
+			int curX = rowX;
+			int pos = lineStart + starts[2 * row];
+			fStretchCursor.setPosition(pos);
+			do {
+				fViewStretch = fStretchCursor.next(fViewStretch, fVisualizeWhitespace);
+				if (rowEnd != -1 && pos + fViewStretch.fLength > rowEnd) {	// stretch continues on next row
+					fViewStretch.fLength = rowEnd - pos;
+				}
+				pos += fViewStretch.fLength;
+				curX = makePaintBatchEntry(getFontMetrics(fViewStretch.fStyle), batchEntries, curX);
+				batchEntries++;
+			} while (rowEnd != -1 ? pos < rowEnd : fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF);
+			for (int b = 0; b < batchEntries; b++) {
+				((PaintBatchEntry) fPaintBatch.get(b)).fX -= rowX;
+			}
+			paintBatch(g, batchEntries, rowY, rowHeight, ascent);
+			if (rowEnd != -1) {	// fill rest of row like the line break would do
+				PaintBatchEntry e = (PaintBatchEntry) fPaintBatch.get(batchEntries - 1);
+				g.setColor(e.fStyle.getResources().getBackground());
+				g.fillRect(e.fX + e.fWidth, rowY, getWidth() - e.fX - e.fWidth, rowHeight);
+			}
+		}
+		return nrRows * rowHeight;
+	}
+
 	public void paintComponent (Graphics g) {
 		super.paintComponent(g);
 
@@ -247,66 +382,54 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		int startLine = getLineAtHeight(r.y - fInsets.top);
 		int endLine = getLineAtHeight(r.y + r.height - fInsets.top);
 		int curY = fInsets.top + getLineTop(startLine);
-		int curPos = fText.getLineStart(startLine);
+		boolean useImages = fLineImages.getBudget() > 0 && getWidth() > 0 && fWrapIndex == null;
+		int viewWidth = getPreferredSize().width;
+		fStretchCursor.setPosition(fText.getLineStart(startLine));
 //		REDTracer.info("red", "REDView", "Painting: " + startLine  + " to " + endLine);
 		for (int line = startLine; line <= endLine; line++) {
+			if (useImages) {
+				BufferedImage image = fLineImages.get(line, viewWidth);
+				if (image != null && image.getWidth() == getWidth() && image.getHeight() == getLineHeight(line)) {
+					g.drawImage(image, 0, curY, null);
+					curY += image.getHeight();
+					fStretchCursor.setPosition(fText.getLineStart(line + 1));
+					continue;
+				}
+			}
+			if (fWrapIndex != null) {
+				curY += paintWrappedLine(g, line, curY, r);
+				continue;
+			}
+			if (isLongLine(line)) {
+				curY += paintLongLine(g, line, curY, r);
+				fStretchCursor.setPosition(fText.getLineStart(line + 1));
+				continue;
+			}
 			lineHeight = 0; ascent = 0; batchEntries = 0;
 			curX = 0;
 			// build line batch 
 			do {
-				fViewStretch = fText.getViewStretch(curPos, fViewStretch, fVisualizeWhitespace);
-				FontMetrics metrics = g.getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-				curX = makePaintBatchEntry(metrics, batchEntries, curX, curPos);
+				fViewStretch = fStretchCursor.next(fViewStretch, fVisualizeWhitespace);
+				FontMetrics metrics = getFontMetrics(fViewStretch.fStyle);
+				curX = makePaintBatchEntry(metrics, batchEntries, curX);
 				batchEntries++;
 				lineHeight = Math.max(lineHeight, metrics.getHeight());
 				ascent = Math.max(ascent, metrics.getAscent());
-				curPos += fViewStretch.fLength;
 			} while (fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF);
 
-			// draw batched parts
-			for (int b = 0; b < batchEntries; b++) {
-				try {
-					PaintBatchEntry e = ((PaintBatchEntry) fPaintBatch.get(b));
-					g.setColor(convert(e.fStyle.getBackground()));
-					g.fillRect(e.fX, curY, e.fWidth, lineHeight);
-					g.setFont(convert(e.fStyle.getFont()));
-					g.setColor(convert(e.fStyle.getForeground()));
-					if (e.fSpecial != SP_NONE) {
-						if (fVisualizeWhitespace) {
-							String s = "";
-							switch (e.fSpecial) {
-								case SP_TAB:
-									s = "\u00BB";
-								break;
-								case SP_SPC:
-									s = "\u00B7";
-								break;
-								case SP_LB:
-									if (e.fLength == 2) {
-										s = "\u00FE\u00B6";
-									}
-									else if (e.fStr[0] == '\n') {
-										s = "\u00B6";
-									}
-									else {
-										s = "\u00FE";
-									}
-								break;
-								case SP_EOF:	// @tbd: find visualization char
-									s = "";
-								break;
-							}
-							g.drawString(s, e.fX, curY + ascent);
-						}
-					}
-					else {
-						g.drawBytes(e.fStr, 0, e.fLength, e.fX, curY + ascent);
-					}
-					e.fStyle.getLining().paint(g, e.fX, curY, lineHeight, e.fWidth);
-				}
-				catch (ArrayIndexOutOfBoundsException aioobe) {
-					throw new Error("Internal error in REDView.paintComponent");
+			if (useImages && lineHeight > 0 && (long) getWidth() * lineHeight <= fLineImages.getBudget()) {
+				BufferedImage image = new BufferedImage(getWidth(), lineHeight, BufferedImage.TYPE_INT_ARGB);
+				Graphics ig = image.getGraphics();
+				if (g instanceof Graphics2D) {
+					((Graphics2D) ig).setRenderingHints(((Graphics2D) g).getRenderingHints());
 				}
+				paintBatch(ig, batchEntries, 0, lineHeight, ascent);
+				ig.dispose();
+				fLineImages.put(line, viewWidth, image);
+				g.drawImage(image, 0, curY, null);
+			}
+			else {
+				paintBatch(g, batchEntries, curY, lineHeight, ascent);
 			}
 			curY += lineHeight;
 		}
@@ -322,8 +445,9 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 //		sw.stop("Custom painting");
 	}
 
-	private Font convert(javafx.scene.text.Font font) {
-		return Font.decode(font.getFamily() + "-" + font.getSize());
+	/** Get font metrics of style; cf. REDStyleResources. */
+	private FontMetrics getFontMetrics(REDStyle style) {
+		return style.getResources().getFontMetrics(this);
 	}
 
 	private void paintCaret(Graphics g) {
@@ -349,14 +473,13 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		g.setColor(Color.white);
 		
 		startVp = locateLineStart(fHighlightLine, null);
-		g.fillRect(startVp.fBoundRect.x, startVp.fBoundRect.y, getPreferredSize().width, startVp.fBoundRect.height);
+		g.fillRect(startVp.fBoundRect.x, startVp.fBoundRect.y, getPreferredSize().width, getLineHeight(fHighlightLine));
 		g.setPaintMode();		
 	}
 	
 	private void paintSelection(Graphics g) {
 		REDViewPosition selStartVp;
 		REDViewPosition selEndVp;
-		int selStartLine, selEndLine;
 
 		if (hasFocus()) {
 			g.setXORMode(Color.blue.darker());	// TBD: make color customisable
@@ -366,9 +489,9 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		}
 		g.setColor(Color.white);
 
-		selStartVp = locatePosition(fSelFrom, null); selStartLine = selStartVp.getLineNumber();
-		selEndVp = locatePosition(fSelTo, null); selEndLine = selEndVp.getLineNumber();
-		if (selStartLine == selEndLine) {
+		selStartVp = locatePosition(fSelFrom, null);
+		selEndVp = locatePosition(fSelTo, null);
+		if (selStartVp.fBoundRect.y == selEndVp.fBoundRect.y) {	// same line or row
 			g.fillRect(selStartVp.fBoundRect.x, selStartVp.fBoundRect.y, 
 				selEndVp.fBoundRect.x - selStartVp.fBoundRect.x,
 				selEndVp.fBoundRect.height-1);
@@ -397,6 +520,10 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
     public void setBorder(Border border) {
 		super.setBorder(border);
 		fInsets = getInsets();
+		if (fLineImages != null) {
+			fLineImages.clear();
+		}
+		updateWrapWidth();
     }
 	
 	/** get caret blinking interval
@@ -433,8 +560,8 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	  * @return The height (in pixel) this line starts.
 	  */
 	int getLineTop(int lineNr) {
-		if (lineNr < fTopLines.getNrNodes()) {
-			return fTopLines.getLineStart(lineNr);
+		if (lineNr < fLineHeights.getNrLines()) {
+			return fWrapIndex != null ? fWrapIndex.getTop(lineNr) : fLineHeights.getTop(lineNr);
 		}
 		else {
 			return fExtent.height - fInsets.top - fInsets.bottom;
@@ -444,14 +571,164 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	/** get line at pixel height
 	  */
 	int getLineAtHeight(int pixel) {
-		return fTopLines.getLineForPosition(pixel);
+		if (fWrapIndex != null) {
+			return Math.min(fWrapIndex.getLineAt(pixel), fWrapIndex.getNrLines() - 1);
+		}
+		return Math.min(fLineHeights.getLineAt(pixel), fLineHeights.getNrLines() - 1);
 	}		
 	
-	/**
-	  * tbd could be further optimised by making one pass only for line height and x/width of bound rect 
+	/** Check whether line is long, i.e. laid out chunk by chunk; cf. getChunkOffsets(). */
+	private boolean isLongLine(int line) {
+		return fText.getLineLength(line, false) > fcChunkSize;
+	}
+	
+	/** Get horizontal offsets of the characters of a short line, relative to the left inset.
+	  * @return Array x of length n + 2 for a line of n characters (without line break): x[i] is the left edge of character i, 
+	  * x[n] the left and x[n + 1] the right edge of the line break.
+	  * @pre !isLongLine(line)
+	  */
+	private int [] getLineOffsets(int line) {
+		int [] x = fLineOffsets.get(line);
+		if (x == null) {
+			x = measureLineOffsets(line, 0, fText.getLineLength(line, false), 0);
+			fLineOffsets.put(line, x);
+		}
+		return x;
+	}
+	
+	/** Get horizontal offsets of the chunks of a long line, relative to the left inset.
+	  * Measuring a long line character by character would take as much memory as the line has got characters, so only the 
+	  * offsets of every fcChunkSize-th character are kept. The offsets within a chunk are measured on demand, starting at the offset
+	  * of the chunk.
+	  * @return Array x of length m + 3 for a line of n characters with m = n / fcChunkSize: x[j] is the left edge of character 
+	  * j * fcChunkSize, x[m + 1] the left edge of the line break and x[m + 2] the ascent of the line.
+	  * @pre isLongLine(line)
+	  */
+	private int [] getChunkOffsets(int line) {
+		int [] x = fLineOffsets.get(line);
+		if (x == null) {
+			x = measureChunkOffsets(line);
+			fLineOffsets.put(line, x);
+		}
+		return x;
+	}
+	
+	/** Measure horizontal offsets of the chunks of a line; cf. getChunkOffsets(). */
+	private int [] measureChunkOffsets(int line) {
+		int n = fText.getLineLength(line, false);
+		int m = n / fcChunkSize;
+		int [] x = new int[m + 3];
+		int col = 0;
+		int curX = 0;
+		int ascent = 0;
+		
+		fStretchCursor.setPosition(fText.getLineStart(line));
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
+		while (fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF) {
+			ascent = Math.max(ascent, getFontMetrics(fViewStretch.fStyle).getAscent());
+			int [] widths = fViewStretch.fStyle.getResources().getCharWidths(this);
+			for (int i = 0; i < fViewStretch.fLength; i++, col++) {
+				if (col % fcChunkSize == 0) {
+					x[col / fcChunkSize] = curX;
+				}
+				if (fViewStretch.fType == REDViewStretch.TAB) {
+					curX = nextTabStop(curX, 1);
+				}
+				else {
+					curX += widths[fViewStretch.fBytes[i] & 0xff];
+				}
+			}
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
+		}
+		ascent = Math.max(ascent, getFontMetrics(fViewStretch.fStyle).getAscent());
+		if (n % fcChunkSize == 0) {
+			x[m] = curX;
+		}
+		x[m + 1] = curX;
+		x[m + 2] = ascent;
+		return x;
+	}
+	
+	/** Find chunk of long line containing a horizontal offset.
+	  * @param chunks The chunk offsets of the line, cf. getChunkOffsets().
+	  * @return The last chunk starting left of or at x, or 0, if there is no such chunk.
+	  */
+	private static int findChunk(int [] chunks, int x) {
+		int lo = 0, hi = chunks.length - 3;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (chunks[mid] <= x) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+	
+	/** Get horizontal offsets of the characters of a chunk of a line.
+	  * For short lines, the chunk is the whole line.
+	  * @return Array x in the format of measureLineOffsets() for the characters [chunk * fcChunkSize, (chunk + 1) * fcChunkSize) of the line.
+	  */
+	private int [] getChunkCharOffsets(int line, int chunk) {
+		if (!isLongLine(line)) {
+			return getLineOffsets(line);
+		}
+		int from = chunk * fcChunkSize;
+		int to = Math.min(from + fcChunkSize, fText.getLineLength(line, false));
+		return measureLineOffsets(line, from, to, getChunkOffsets(line)[chunk]);
+	}
+	
+	/** Measure horizontal offsets of the characters [from, to) of a line; cf. getLineOffsets(). 
+	  * Characters are measured one by one, like paint batch entries are measured as a whole, i.e. without fractional advances.
+	  * @param x0 The left edge of character from.
+	  * @return Array x of length to - from + 2: x[i] is the left edge of character from + i; x[to - from] and x[to - from + 1] are 
+	  * the left and right edge of the character following character to - 1, which is the line break, if to is the end of the line.
+	  * @pre 0 <= from && from <= to && to <= fText.getLineLength(line, false)
 	  */
+	private int [] measureLineOffsets(int line, int from, int to, int x0) {
+		int len = to - from;
+		int [] x = new int[len + 2];
+		int n = 0;
+		int curX = x0;
+		
+		fStretchCursor.setPosition(fText.getLineStart(line) + from);
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
+		while (n <= len && fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF) {
+			switch (fViewStretch.fType) {
+				case REDViewStretch.TAB:
+					for (int i = 0; i < fViewStretch.fLength && n <= len; i++) {
+						x[n++] = curX;
+						curX = nextTabStop(curX, 1);
+					}
+				break;
+				case REDViewStretch.TEXT:
+					int [] widths = fViewStretch.fStyle.getResources().getCharWidths(this);
+					for (int i = 0; i < fViewStretch.fLength && n <= len; i++) {
+						x[n++] = curX;
+						curX += widths[fViewStretch.fBytes[i] & 0xff];
+					}
+				break;
+			}
+			if (n <= len) {
+				fViewStretch = fStretchCursor.next(fViewStretch, false);
+			}
+		}
+		if (n <= len) {	// reached line end
+			x[len] = curX;
+			x[len + 1] = curX;
+			if (fViewStretch.fType == REDViewStretch.LINEBREAK) {
+				x[len + 1] += getFontMetrics(fViewStretch.fStyle).stringWidth("X") * fViewStretch.fLength;	// TBD: use real width of mapped chars.
+			}
+		}
+		else {
+			x[len + 1] = curX;
+		}
+		return x;
+	}
+	
 	REDViewPosition locatePosition(int position, REDViewPosition reuse) {
-		FontMetrics metrics;
 		position = Math.max(0, position);
 		position = Math.min(position, fText.length());
 		if (reuse == null) {
@@ -461,45 +738,19 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		reuse.fLine = fText.getLineForPosition(position);		
 		reuse.fBoundRect.y = getLineTop(reuse.fLine) + fInsets.top;
 		reuse.fBoundRect.height = getLineHeight(reuse.fLine);
-		int curX = 0;
-		int curPos = fText.getLineStart(reuse.fLine);
-		do {
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
-			if (fViewStretch.fType == REDViewStretch.EOF) break;
-			metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-			switch (fViewStretch.fType) {
-				case REDViewStretch.TAB:
-					curX = nextTabStop(curX, Math.min(fViewStretch.fLength, position - curPos));
-				break;
-				case REDViewStretch.TEXT:
-					fScratchBuffer = fText.asBytes(curPos, curPos + fViewStretch.fLength, fScratchBuffer);
-					curX += metrics.bytesWidth(fScratchBuffer, 0, Math.min(fViewStretch.fLength, position - curPos));
-				break;
-				default: break;
-			}
-			curPos += fViewStretch.fLength;
-		} while (curPos < position && fViewStretch.fType != REDViewStretch.EOF);
-		reuse.fBoundRect.x = curX + fInsets.left;
-		
-		fViewStretch = fText.getViewStretch(position, fViewStretch);
-		switch (fViewStretch.fType) {
-			case REDViewStretch.TAB:
-				reuse.fBoundRect.width = nextTabStop(curX, 1) - curX;
-			break;
-			case REDViewStretch.TEXT:
-				metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-				fScratchBuffer = fText.asBytes(position, position + 1, fScratchBuffer);
-				reuse.fBoundRect.width = metrics.bytesWidth(fScratchBuffer, 0, 1);
-			break;
-			case REDViewStretch.LINEBREAK:
-				metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-				reuse.fBoundRect.width = metrics.stringWidth("X") * fViewStretch.fLength;	// TBD: use real width of mapped chars.
-			break;
-			case REDViewStretch.EOF:
-				reuse.fBoundRect.width = 0;
-			break;
+		int col = Math.min(position - fText.getLineStart(reuse.fLine), fText.getLineLength(reuse.fLine, false));	// positions within a line break are mapped to its start
+		int chunk = isLongLine(reuse.fLine) ? col / fcChunkSize : 0;
+		int [] x = getChunkCharOffsets(reuse.fLine, chunk);
+		int i = col - chunk * fcChunkSize;
+		reuse.fBoundRect.x = x[i] + fInsets.left;
+		reuse.fBoundRect.width = x[i + 1] - x[i];
+		if (fWrapIndex != null) {	// move to row containing position
+			int [] starts = getRowStarts(reuse.fLine);
+			int row = findRow(starts, col);
+			reuse.fBoundRect.x -= starts[2 * row + 1];
+			reuse.fBoundRect.height = fLineHeights.getHeight(reuse.fLine);
+			reuse.fBoundRect.y = getLineTop(reuse.fLine) + fInsets.top + row * reuse.fBoundRect.height;
 		}
-
 		return reuse;
 	}
 	
@@ -528,145 +779,144 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		}
 		x -= fInsets.left;
 		y -= fInsets.top;
-                x = Math.max(x, 0);
-                y = Math.max(y, 0);
+		y = Math.max(y, 0);
 		reuse.fLine = getLineAtHeight(y);
-		int curX = 0;
-		int curPos = fText.getLineStart(reuse.fLine);
 		reuse.fBoundRect.y = getLineTop(reuse.fLine) + fInsets.top;
 		reuse.fBoundRect.height = getLineHeight(reuse.fLine);
-		int prevPos = 0;
-		int prevX = 0;
-		int lastWidth = 0;
-
-		fViewStretch = fText.getViewStretch(curPos, fViewStretch);
-		while (curX < x && fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF) {
-			FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-			prevX = curX;
-			switch (fViewStretch.fType) {
-				case REDViewStretch.TAB:
-					curX = nextTabStop(curX, fViewStretch.fLength);
-				break;
-				case REDViewStretch.TEXT:
-					fScratchBuffer = fText.asBytes(curPos, curPos + fViewStretch.fLength, fScratchBuffer);
-					curX += metrics.bytesWidth(fScratchBuffer, 0, fViewStretch.fLength);
-				break;
-				default: break;
-			}
-			prevPos = curPos;
-			curPos += fViewStretch.fLength;
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
+		int [] starts = null;
+		int row = 0;
+		if (fWrapIndex != null) {	// find row at y and make x relative to the line
+			starts = getRowStarts(reuse.fLine);
+			row = Math.min((y - getLineTop(reuse.fLine)) / fLineHeights.getHeight(reuse.fLine), starts.length / 2 - 1);
+			x += starts[2 * row + 1];
 		}
-
-		if (curX > x) {
-			curX = prevX;
-			fViewStretch = fText.getViewStretch(prevPos, fViewStretch);
-			int i = 0;
-			switch (fViewStretch.fType) {
-				case REDViewStretch.TAB:
-					while (i < fViewStretch.fLength && (curX <= x || midSplit && curX - lastWidth / 2 <= x)) {
-						prevX = curX;
-						curX = nextTabStop(curX, 1);
-						lastWidth = curX - prevX;
-						i++;
-					}
-				break;
-				case REDViewStretch.TEXT:
-					FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-					fScratchBuffer = fText.asBytes(prevPos, prevPos + fViewStretch.fLength, fScratchBuffer);
-					while (i < fViewStretch.fLength && (curX <= x || midSplit && curX - lastWidth / 2 <= x)) {
-						prevX = curX;
-						curX += metrics.bytesWidth(fScratchBuffer, i, 1);
-						lastWidth = curX - prevX;
-						i++;
-					}
-				break;
-			}
-			reuse.fPosition = prevPos + i - 1;
-			reuse.fBoundRect.x = prevX + fInsets.left; reuse.fBoundRect.width = curX - prevX;
-		}
-		else {
-			reuse.fPosition = curPos;
-			reuse.fBoundRect.x = curX + fInsets.left;
-			if (fViewStretch.fStyle != null) {
-				FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-				reuse.fBoundRect.width = metrics.stringWidth("X") * fViewStretch.fLength;
+		
+		// find first character whose right edge (or middle, if midSplit) lies right of x
+		int chunk = isLongLine(reuse.fLine) ? findChunk(getChunkOffsets(reuse.fLine), x) : 0;
+		int [] offsets = getChunkCharOffsets(reuse.fLine, chunk);
+		int lo = 0, hi = offsets.length - 2;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int right = offsets[mid + 1];
+			if ((midSplit ? right - (right - offsets[mid]) / 2 : right) > x) {
+				hi = mid;
 			}
 			else {
-				reuse.fBoundRect.width = 0;
+				lo = mid + 1;
 			}
 		}
+		if (starts != null) {	// stay within row
+			int col = Math.max(chunk * fcChunkSize + lo, starts[2 * row]);
+			if (row + 1 < starts.length / 2) {
+				col = Math.min(col, starts[2 * row + 2] - 1);
+			}
+			return locatePosition(fText.getLineStart(reuse.fLine) + col, reuse);
+		}
+		reuse.fPosition = fText.getLineStart(reuse.fLine) + chunk * fcChunkSize + lo;
+		reuse.fBoundRect.x = offsets[lo] + fInsets.left; 
+		reuse.fBoundRect.width = offsets[lo + 1] - offsets[lo];
 		return reuse;
 	}
 		
 	int getLineWidth(int line) {
-		int curPos = fText.getLineStart(line);
 		int curX = 0;
 	
+		if (isLongLine(line)) {	// chunk offsets are needed for painting anyway
+			int [] chunks = getChunkOffsets(line);
+			curX = chunks[chunks.length - 2];
+			fStretchCursor.setPosition(fText.getLineStart(line) + fText.getLineLength(line, false));
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
+			if (fViewStretch.fType == REDViewStretch.LINEBREAK) {
+				curX += getFontMetrics(fViewStretch.fStyle).charWidth('X');	// TBD: get real replacement character
+			}
+			return curX;
+		}
+		fStretchCursor.setPosition(fText.getLineStart(line));
 		do {
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
 			if (fViewStretch.fType == REDViewStretch.EOF) break;
-			FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
+			FontMetrics metrics = getFontMetrics(fViewStretch.fStyle);
 			switch (fViewStretch.fType) {
 				case REDViewStretch.TAB:
 					curX = nextTabStop(curX, fViewStretch.fLength);
 				break;
 				case REDViewStretch.TEXT:
-					fScratchBuffer = fText.asBytes(curPos, curPos + fViewStretch.fLength, fScratchBuffer);
-					curX += metrics.bytesWidth(fScratchBuffer, 0, fViewStretch.fLength);
+					curX += metrics.bytesWidth(fViewStretch.fBytes, 0, fViewStretch.fLength);
 				break;
 				case REDViewStretch.LINEBREAK:
 					curX += metrics.charWidth('X');	// TBD: get real replacement character
 				break;
 			}				
-			curPos += fViewStretch.fLength;
 		} while (fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF);
 		return curX;
 	}
 	
-	/** Auxiliary method to check real line width and enlarge fExtent, if neccessary */
-	private void checkRealLineWidth(int line) {
-		int realWidth = getLineWidth(line);
-		if (realWidth > fExtent.width) {
-			fExtent.width = realWidth;
-		}			
+	/** Measure all lines and set extent width to the width of the widest line. */
+	private void resetLineWidths() {
+		fLineOffsets.clear();
+		fLineImages.clear();
+		fLineWidths = new REDLineMetrics(fcLineAggregates, fText.getNrOfLines());
+		measureLineWidths(0, fText.getNrOfLines() - 1);
+		if (fWrapIndex != null) {	// wrapping depends on widths
+			resetWrap();
+			recalcExtentHeight();
+		}
+		updateExtentWidth();
 	}
 	
-	/** Check line widths and enlarge fExtent, if necessary */
-	private void checkLineWidth(int startLine, int endLine) {
-		int curPos = fText.getLineStart(startLine);
-		int endPos = fText.getLineStart(endLine+1);
-		int lineWidth = 0;
-	
-		fExtent.width -= fInsets.left + fInsets.right;
-		fViewStretch = fText.getViewStretch(curPos, fViewStretch);
-		while (fViewStretch.fType != REDViewStretch.EOF && curPos < endPos) {
-			FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
+	/** Measure widths of consecutive lines in one pass and store them in fLineWidths.
+	  * Widths are estimated from the maximum advance of the fonts involved, which is an upper bound of the real width. 
+	  * Only lines which may be the widest are measured exactly later on, by updateExtentWidth().
+	  * @pre fromLine <= toLine && toLine < fLineWidths.getNrLines()
+	  */
+	private void measureLineWidths(int fromLine, int toLine) {
+		int [] widths = new int[toLine - fromLine + 1];
+		int nrWidths = 0;
+		long lineWidth = 0;	// long and clamped to fcMaxWidth, as estimates of very long lines easily exceed int
+	
+		fStretchCursor.setPosition(fText.getLineStart(fromLine));
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
+		while (nrWidths < widths.length) {
+			if (fViewStretch.fType == REDViewStretch.EOF) {
+				widths[nrWidths++] = (int) lineWidth << 1 | fcEstimated;
+				break;
+			}
+			FontMetrics metrics = getFontMetrics(fViewStretch.fStyle);
 			switch (fViewStretch.fType) {
 				case REDViewStretch.TEXT:
-					lineWidth += metrics.getMaxAdvance() * fViewStretch.fLength;
+					if (metrics.getMaxAdvance() > 0) {
+						lineWidth += (long) metrics.getMaxAdvance() * fViewStretch.fLength;
+					}
+					else {	// maximum advance unknown => measure exactly
+						lineWidth += metrics.bytesWidth(fViewStretch.fBytes, 0, fViewStretch.fLength);
+					}
 				break;
 				case REDViewStretch.TAB:
-					lineWidth = nextTabStop(lineWidth, fViewStretch.fLength);
+					lineWidth = nextTabStop((int) lineWidth, fViewStretch.fLength);
 				break;
 				case REDViewStretch.LINEBREAK:
-					if (lineWidth > fExtent.width) {
-						checkRealLineWidth(startLine);
-					}
+					lineWidth = Math.min(lineWidth + Math.max(metrics.getMaxAdvance(), metrics.charWidth('X')), fcMaxWidth);
+					widths[nrWidths++] = (int) lineWidth << 1 | fcEstimated;
 					lineWidth = 0;
-					startLine++;
 				break;
 			}				
-			curPos += fViewStretch.fLength;
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
-		}
-
-		// Check if the last line is the widest
-		if (fViewStretch.fType == REDViewStretch.EOF && lineWidth > fExtent.width) {
-			checkRealLineWidth(startLine);
+			lineWidth = Math.min(lineWidth, fcMaxWidth);
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
 		}
-		
-		fExtent.width += fInsets.left + fInsets.right;
+		fLineWidths.set(fcWidthColumn, fromLine, widths, nrWidths);
+	}
+	
+	/** Set extent width to the width of the widest line.
+	  * As long as the widest entry is an estimate, the respective line is measured exactly. 
+	  */
+	private void updateExtentWidth() {
+		int max = fLineWidths.query(fcWidthColumn, 0, fLineWidths.getNrLines());
+		while ((max & fcEstimated) != 0) {
+			int line = fLineWidths.findLine(fcWidthColumn, max - 1);
+			fLineWidths.set(fcWidthColumn, line, Math.min(getLineWidth(line), fcMaxWidth) << 1);
+			max = fLineWidths.query(fcWidthColumn, 0, fLineWidths.getNrLines());
+		}
+		fExtent.width = Math.max(max >> 1, 0) + fInsets.left + fInsets.right;
 		revalidate();
 	}
 	
@@ -675,122 +925,88 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		return REDTextEventListener.RLL_VIEW;
 	}
 	
-	/**  
-	  * @pre fBeforeCorrection == 0 
-	  */
 	public void beforeInsert(int from, int to) {
-		fBeforeCorrection = getLineHeight(fText.getLineForPosition(from));
 	}
 	
 	public void afterInsert(int from, int to) {
 		int fromLine = fText.getLineForPosition(from);
 		int toLine = fText.getLineForPosition(to);
-		invalidateLineHeightCache(fromLine, toLine);
-		to = fText.getLineEnd(toLine);
-		ArrayList v = new ArrayList(toLine - fromLine);
-		int curPos = fText.getLineStart(fromLine);
-		int totalHeight = 0;
-		int startHeight = getLineTop(fromLine);
-		int lineHeight = 0;
-		int lineNr = 1;
-	
-		fHighlightLine = -1;
-		fViewStretch = fText.getViewStretch(curPos, fViewStretch);
-		while (fViewStretch.fType != REDViewStretch.EOF && curPos < to) {
-			FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-			lineHeight = Math.max(lineHeight, metrics.getHeight());
-			switch (fViewStretch.fType) {
-				case REDViewStretch.LINEBREAK:
-					totalHeight += lineHeight;
-					v.add(new REDLineTreeData(totalHeight + startHeight, lineNr));
-					lineHeight = 0;
-					lineNr++;
-				break;
-			}				
-			curPos += fViewStretch.fLength;
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
-		} 
-
-		FontMetrics metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
-		lineHeight = Math.max(lineHeight, metrics.getHeight());
-		totalHeight += lineHeight;
-		v.add(new REDLineTreeData(totalHeight, lineNr));
-
-		fTopLines.notifyInsert(getLineTop(fromLine), totalHeight - fBeforeCorrection, v);
-		fBeforeCorrection = 0;
-		recalcExtentHeight();
-		checkLineWidth(fromLine, toLine);
-		if (fromLine == toLine) {
-			repaintLine(fromLine);
-		}
-		else {
-			repaintLines(fromLine, fText.getNrOfLines());
+		int [] heights = new int[toLine - fromLine + 1];
+		int oldNextTop = getLineTop(fromLine + 1);
+		setHighlightLine(-1);	// before updating line heights, as it repaints the highlit line
+		measureLineHeights(fromLine, toLine, heights);
+		fLineHeights.insertLines(fromLine + 1, toLine - fromLine);
+		fLineHeights.setHeights(fromLine, heights, toLine - fromLine + 1);
+		fLineWidths.insertLines(fromLine + 1, toLine - fromLine);
+		fLineOffsets.invalidateLines(fromLine, fromLine);
+		fLineOffsets.moveLines(fromLine + 1, toLine - fromLine);
+		fLineImages.invalidateLines(fromLine, fromLine);
+		fLineImages.moveLines(fromLine + 1, toLine - fromLine);
+		measureLineWidths(fromLine, toLine);
+		updateExtentWidth();
+		if (fWrapIndex != null) {
+			fWrapIndex.insertLines(fromLine + 1, toLine - fromLine);
+			fRowStarts.moveLines(fromLine + 1, toLine - fromLine);
+			rewrapLines(fromLine, toLine);
 		}
+		recalcExtentHeight();
+		scrollContent(oldNextTop, getLineTop(toLine + 1));
+		repaintLines(fromLine, toLine);
 	}
 	
 	public void beforeDelete(int from, int to) {
 		fDeleteEndLine = fText.getLineForPosition(to);
-		fDeleteBuffer = getLineHeight(fDeleteEndLine);
+		fDeleteOldNextTop = getLineTop(fDeleteEndLine + 1);
 	}
 	
-	private void invalidateLineHeightCache(int fromLine, int toLine) {
-		if (fromLine == toLine) {
-			fLineHeightCache.invalidateLine(fromLine);
-		}
-		else {
-			fLineHeightCache.invalidateLinesFrom(fromLine);
-		}
-	}
-
 	public void afterDelete(int from, int to) {
 		int startLine = fText.getLineForPosition(from);		
-		invalidateLineHeightCache(startLine, fDeleteEndLine);
-		fTopLines.notifyInsert(getLineTop(fDeleteEndLine), getLineHeight(startLine) - fDeleteBuffer, null);
-		fTopLines.notifyDelete(getLineTop(startLine), getLineTop(fDeleteEndLine));
-		fHighlightLine = -1;
-		recalcExtentHeight();
-		checkLineWidth(startLine, startLine);
-		if (startLine == fDeleteEndLine) {
-			repaintLine(startLine);
-		}
-		else {
-			repaintLines(startLine, fText.getNrOfLines());
+		setHighlightLine(-1);
+		fLineHeights.deleteLines(startLine + 1, fDeleteEndLine - startLine);
+		fLineHeights.setHeight(startLine, calculateLineHeight(startLine));
+		fLineWidths.deleteLines(startLine + 1, fDeleteEndLine - startLine);
+		fLineOffsets.invalidateLines(startLine, fDeleteEndLine);
+		fLineOffsets.moveLines(fDeleteEndLine + 1, startLine - fDeleteEndLine);
+		fLineImages.invalidateLines(startLine, fDeleteEndLine);
+		fLineImages.moveLines(fDeleteEndLine + 1, startLine - fDeleteEndLine);
+		measureLineWidths(startLine, startLine);
+		updateExtentWidth();
+		if (fWrapIndex != null) {
+			fWrapIndex.deleteLines(startLine + 1, fDeleteEndLine - startLine);
+			fRowStarts.invalidateLines(startLine + 1, fDeleteEndLine);
+			fRowStarts.moveLines(fDeleteEndLine + 1, startLine - fDeleteEndLine);
+			rewrapLines(startLine, startLine);
 		}
+		recalcExtentHeight();
+		scrollContent(fDeleteOldNextTop, getLineTop(startLine + 1));
+		repaintLine(startLine);
 	}
 
-	/**  
-	  * @pre fBeforeCorrection == 0 
-	  * @tbd find a better way of handling style changes with respect to linetree
-	  */
 	public void beforeStyleChange(int from, int to, REDStyle newStyle) {
-		int startLine = fText.getLineForPosition(from);		
-		int endLine = fText.getLineForPosition(to);
-		
-		if (fStyleChangeBuffer.length <= endLine - startLine) {
-			fStyleChangeBuffer = new int[endLine - startLine + 1];
-		}
-		for (int x = startLine; x <= endLine; x++) {
-			fStyleChangeBuffer[x-startLine] = getLineHeight(x);
-		}
 	}
 
 	public void afterStyleChange(int from, int to, REDStyle newStyle) {
-		int startLine = fText.getLineForPosition(from);		
-		int endLine = fText.getLineForPosition(to);
-		invalidateLineHeightCache(startLine, endLine);
-		int val;
-		for (int x = startLine; x <= endLine; x++) {
-			val = getLineHeight(x) - fStyleChangeBuffer[x - startLine];
-			fTopLines.notifyInsert(getLineTop(x), getLineHeight(x) - fStyleChangeBuffer[x - startLine], null);
+		updateLines(fText.getLineForPosition(from), fText.getLineForPosition(to));
+	}
+	
+	/** Remeasure lines whose content has not been moved, but whose appearance may have changed, and repaint them.
+	  * @pre startLine <= endLine && endLine < fText.getNrOfLines()
+	  */
+	private void updateLines(int startLine, int endLine) {
+		fLineOffsets.invalidateLines(startLine, endLine);
+		fLineImages.invalidateLines(startLine, endLine);
+		int [] heights = new int[endLine - startLine + 1];
+		int oldNextTop = getLineTop(endLine + 1);
+		measureLineHeights(startLine, endLine, heights);
+		fLineHeights.setHeights(startLine, heights, endLine - startLine + 1);
+		measureLineWidths(startLine, endLine);
+		updateExtentWidth();
+		if (fWrapIndex != null) {
+			rewrapLines(startLine, endLine);
 		}
 		recalcExtentHeight();
-		checkLineWidth(startLine, endLine);
-		if (startLine == endLine) {
-			repaintLine(startLine);
-		}
-		else {
-			repaintLines(startLine, fText.getNrOfLines());
-		}
+		scrollContent(oldNextTop, getLineTop(endLine + 1));
+		repaintLines(startLine, endLine);
 	}
 
 	public void beforeLoad() {
@@ -798,8 +1014,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	
 	public void afterLoad() {
 		resetLineTops();
-		fExtent.width = 0;
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 	}
 
 	public void beforeSave() {
@@ -818,16 +1033,19 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	}
 	
 	public void afterStyleBatchNotification() {
-		fExtent.width = fExtent.height = 0;
-		resetLineTops();
-		checkLineWidth(0, fText.getNrOfLines());		
+		int from = fText.getStyleBatchFrom();
+		int to = fText.getStyleBatchTo();
+		if (from <= to) {
+			updateLines(fText.getLineForPosition(from), fText.getLineForPosition(to));
+		}
 	}
 	
 	public void beforeStyleChange(REDStyle [] style) { 
 	}
 
 	public void afterStyleChange(REDStyle [] style) {
-		afterStyleBatchNotification();
+		resetLineTops();
+		resetLineWidths();
 		repaint();
 	}
 
@@ -835,96 +1053,302 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	}
 
 	public void afterThemeChange(String oldTheme, String newTheme) { 
-		afterStyleBatchNotification();
+		resetLineTops();
+		resetLineWidths();
 		repaint();
 	}
 	
 	
 	
-	/** reset the line top tree
+	/** Get width available for the rows of wrapped lines. */
+	private int getWrapWidth() {
+		int width = getWidth() - fInsets.left - fInsets.right;
+		return width > 0 ? width : Integer.MAX_VALUE;	// not laid out yet
+	}
+	
+	/** Estimate rows of lines from their widths, without measuring them; cf. REDViewWrapIndex.
+	  * @pre fromLine <= toLine && toLine < fWrapIndex.getNrLines()
+	  */
+	private void estimateRows(int fromLine, int toLine) {
+		int n = toLine - fromLine + 1;
+		int [] rows = new int[n];
+		int [] rowHeights = new int[n];
+		for (int i = 0; i < n; i++) {
+			int line = fromLine + i;
+			int width = line < fLineWidths.getNrLines() ? fLineWidths.get(fcWidthColumn, line) >> 1 : 0;
+			rows[i] = (int) Math.max(1, ((long) width + fWrapWidth - 1) / fWrapWidth);
+			rowHeights[i] = fLineHeights.getHeight(line);
+		}
+		fWrapIndex.setRows(fromLine, rows, rowHeights, n);
+	}
+	
+	/** Rebuild wrap index with estimated rows for all lines. */
+	private void resetWrap() {
+		fRowStarts.clear();
+		if (fWrapIndex != null) {
+			fWrapIndex = new REDViewWrapIndex(fText.getNrOfLines());
+			estimateRows(0, fText.getNrOfLines() - 1);
+		}
+	}
+	
+	/** Wrap lines again after their content or appearance has changed.
+	  * Few lines (e.g. those being edited) are wrapped exactly right away; many lines (e.g. pasted ones) are estimated and wrapped 
+	  * exactly once they become visible.
+	  * @pre fromLine <= toLine && toLine < fWrapIndex.getNrLines()
+	  */
+	private void rewrapLines(int fromLine, int toLine) {
+		fRowStarts.invalidateLines(fromLine, toLine);
+		if (toLine - fromLine < fcRowStartsCacheSize) {
+			for (int line = fromLine; line <= toLine; line++) {
+				wrapLine(line);
+			}
+		}
+		else {
+			estimateRows(fromLine, toLine);
+		}
+	}
+	
+	/** Estimate all lines again, if the wrap width has changed. */
+	private void updateWrapWidth() {
+		if (fWrapIndex != null && getWrapWidth() != fWrapWidth) {
+			fWrapWidth = getWrapWidth();
+			fRowStarts.clear();
+			estimateRows(0, fWrapIndex.getNrLines() - 1);
+			recalcExtentHeight();
+			revalidate();
+			repaint();
+		}
+	}
+	
+	/** Get row starts of a wrapped line; the line is wrapped exactly, if this has not been done yet.
+	  * If this changes the height of the line, the lines behind move and are repainted.
+	  * @return The row starts of the line, cf. measureRowStarts().
+	  */
+	private int [] getRowStarts(int line) {
+		int [] starts = fRowStarts.get(line);
+		if (starts == null) {
+			int oldHeight = fWrapIndex.getHeight(line);
+			starts = wrapLine(line);
+			if (fWrapIndex.getHeight(line) != oldHeight) {
+				recalcExtentHeight();
+				revalidate();
+				repaint();
+			}
+		}
+		return starts;
+	}
+	
+	/** Wrap line exactly and store its rows in the wrap index. */
+	private int [] wrapLine(int line) {
+		int [] starts = measureRowStarts(line);
+		fRowStarts.put(line, starts);
+		fWrapIndex.setRows(line, starts.length / 2, fLineHeights.getHeight(line));
+		return starts;
+	}
+	
+	/** Measure where the rows of a wrapped line start.
+	  * Rows are broken behind the last whitespace which fits into the wrap width; words wider than the wrap width are broken 
+	  * behind the last fitting character. Whitespace may exceed the wrap width. Offsets are the same as those of getLineOffsets(), 
+	  * i.e. tab stops are not affected by wrapping.
+	  * @return Array of length 2 * r + 1 for a line wrapped into r rows: [2 * i] is the column and [2 * i + 1] the horizontal 
+	  * offset of the first character of row i; the last entry is the ascent of the line.
+	  */
+	private int [] measureRowStarts(int line) {
+		int [] starts = new int[8];
+		int n = 2;	// starts[0] and starts[1] are 0: first row starts at column 0
+		int col = 0, curX = 0;
+		int rowStart = 0, rowX = 0;
+		int breakCol = -1, breakX = 0;
+		int ascent = 0;
+		
+		fStretchCursor.setPosition(fText.getLineStart(line));
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
+		while (fViewStretch.fType != REDViewStretch.LINEBREAK && fViewStretch.fType != REDViewStretch.EOF) {
+			ascent = Math.max(ascent, getFontMetrics(fViewStretch.fStyle).getAscent());
+			int [] widths = fViewStretch.fStyle.getResources().getCharWidths(this);
+			for (int i = 0; i < fViewStretch.fLength; i++, col++) {
+				boolean space = fViewStretch.fType == REDViewStretch.TAB || fViewStretch.fBytes[i] == ' ';
+				int nextX = fViewStretch.fType == REDViewStretch.TAB ? nextTabStop(curX, 1) : curX + widths[fViewStretch.fBytes[i] & 0xff];
+				while (!space && nextX - rowX > fWrapWidth && col > rowStart) {
+					if (breakCol > rowStart) {
+						rowStart = breakCol;
+						rowX = breakX;
+					}
+					else {
+						rowStart = col;
+						rowX = curX;
+					}
+					breakCol = -1;
+					if (n + 2 >= starts.length) {
+						starts = java.util.Arrays.copyOf(starts, starts.length * 2);
+					}
+					starts[n++] = rowStart;
+					starts[n++] = rowX;
+				}
+				curX = nextX;
+				if (space) {
+					breakCol = col + 1;
+					breakX = curX;
+				}
+			}
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
+		}
+		starts[n++] = Math.max(ascent, getFontMetrics(fViewStretch.fStyle).getAscent());
+		return java.util.Arrays.copyOf(starts, n);
+	}
+	
+	/** Find row of wrapped line containing a column.
+	  * @param starts The row starts of the line, cf. measureRowStarts().
+	  * @return The last row starting at or in front of col.
+	  */
+	private static int findRow(int [] starts, int col) {
+		int lo = 0, hi = starts.length / 2 - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (starts[2 * mid] <= col) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+	
+	/** Switch soft wrapping of lines on or off.
+	  * Wrapped lines are broken into rows which fit into the width of the view. The view then tracks the width of its viewport.
+	  */
+	void setLineWrap(boolean wrap) {
+		if (wrap != getLineWrap()) {
+			fLineImages.clear();
+			fRowStarts.clear();
+			if (wrap) {
+				fWrapIndex = new REDViewWrapIndex(fText.getNrOfLines());
+				fWrapWidth = getWrapWidth();
+				estimateRows(0, fText.getNrOfLines() - 1);
+			}
+			else {
+				fWrapIndex = null;
+			}
+			recalcExtentHeight();
+			revalidate();
+			repaint();
+		}
+	}
+	
+	boolean getLineWrap() {
+		return fWrapIndex != null;
+	}
+	
+	public void setBounds(int x, int y, int width, int height) {
+		super.setBounds(x, y, width, height);
+		updateWrapWidth();
+	}
+	
+	/** reset the line metrics
 	  */
 	private void resetLineTops() {
 		fHighlightLine = -1;
-		fLineHeightCache.invalidateLinesFrom(0);
-		ArrayList v = new ArrayList(fText.getNrOfLines());
+		int nrLines = fText.getNrOfLines();
+		int [] heights = new int[nrLines];
 		int curPos = 0;
-		int totalHeight = 0;
 		int lineHeight = 0;
-		int lineNr = 1;
+		int nrHeights = 0;
 		FontMetrics metrics = null;
 		
-		fViewStretch = fText.getViewStretch(curPos, fViewStretch);
+		fStretchCursor.setPosition(curPos);
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
 		while (fViewStretch.fType != REDViewStretch.EOF) {
-			metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
+			metrics = getFontMetrics(fViewStretch.fStyle);
 			lineHeight = Math.max(lineHeight, metrics.getHeight());
 			switch (fViewStretch.fType) {
 				case REDViewStretch.LINEBREAK:
-					totalHeight += lineHeight;
-					v.add(new REDLineTreeData(totalHeight, lineNr));
+					heights[nrHeights++] = lineHeight;
 					lineHeight = 0;
-					lineNr++;
 				break;
 			}				
 			curPos += fViewStretch.fLength;
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
 		} 
 
 		if (lineHeight == 0) {	// empty last line
 			if (metrics == null) {	// no predecessor => take default font height
-				metrics = getFontMetrics(convert(fText.getDefaultStyle().getFont()));
+				metrics = getFontMetrics(fText.getDefaultStyle());
 			}
 			lineHeight = metrics.getHeight();
 		}	
 				
-		totalHeight += lineHeight;
-		v.add(new REDLineTreeData(totalHeight, lineNr));
+		heights[nrHeights++] = lineHeight;
 		
-		fTopLines = new REDLineTree();
-		fTopLines.notifyInsert(0, totalHeight, v);
+		fLineHeights = new REDViewLineHeights(heights, nrLines);
+		resetWrap();
 		recalcExtentHeight();
 	}
 	
 	/** auxiliary method to set height of view */
 	private void recalcExtentHeight() {
+		if (fWrapIndex != null) {
+			fExtent.height = fWrapIndex.getTop(fWrapIndex.getNrLines()) + fInsets.top + fInsets.bottom;
+			return;
+		}
 		fExtent.height = getLineTop(fText.getNrOfLines()-1) + getLineHeight(fText.getNrOfLines()) + fInsets.top + fInsets.bottom;
 	}
 	
-	/** Auxiliary function to calculate line height, bypassing the line height cache. */
+	/** Auxiliary function to measure line height. */
 	int calculateLineHeight(int lineNr) {
 		int curPos = fText.getLineStart(lineNr);
 		int lineHeight = 0;
 		FontMetrics metrics = null;
 	
-		fViewStretch = fText.getViewStretch(curPos, fViewStretch);
+		fStretchCursor.setPosition(curPos);
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
 		while (fViewStretch.fType != REDViewStretch.EOF && fViewStretch.fType != REDViewStretch.LINEBREAK) {
-			metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
+			metrics = getFontMetrics(fViewStretch.fStyle);
 			lineHeight = Math.max(lineHeight, metrics.getHeight());
-			curPos += fViewStretch.fLength;
-			fViewStretch = fText.getViewStretch(curPos, fViewStretch);
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
 		} 
 		if (fViewStretch.fStyle != null) {
-			metrics = getFontMetrics(convert(fViewStretch.fStyle.getFont()));
+			metrics = getFontMetrics(fViewStretch.fStyle);
 			lineHeight = Math.max(lineHeight, metrics.getHeight());
 		}
 		return lineHeight;
 	}
 
-	/** calculate height of line 
-	  * @pre lineNr < fText.getNrOfLines()
+	/** Measure heights of consecutive lines in one pass.
+	  * The heights are the same as those returned by calculateLineHeight() for each line.
+	  * @param heights The array to store the heights of the lines [fromLine, toLine] into.
+	  * @pre fromLine <= toLine && toLine < fText.getNrOfLines() && heights.length > toLine - fromLine
+	  */
+	private void measureLineHeights(int fromLine, int toLine, int [] heights) {
+		int lineHeight = 0;
+		int nrHeights = 0;
+		
+		fStretchCursor.setPosition(fText.getLineStart(fromLine));
+		fViewStretch = fStretchCursor.next(fViewStretch, false);
+		while (nrHeights <= toLine - fromLine) {
+			if (fViewStretch.fStyle != null) {
+				lineHeight = Math.max(lineHeight, getFontMetrics(fViewStretch.fStyle).getHeight());
+			}
+			if (fViewStretch.fType == REDViewStretch.LINEBREAK || fViewStretch.fType == REDViewStretch.EOF) {
+				heights[nrHeights++] = lineHeight;
+				lineHeight = 0;
+				if (fViewStretch.fType == REDViewStretch.EOF) {
+					break;
+				}
+			}
+			fViewStretch = fStretchCursor.next(fViewStretch, false);
+		}
+	}
+
+	/** get height of line; the height of all its rows, if lines are wrapped 
+	  * @pre lineNr <= fText.getNrOfLines()
 	  * @post return > 0
 	  */
 	public int getLineHeight(int lineNr) {
-		int cacheVal = fLineHeightCache.getHeight(lineNr);
-		if (cacheVal != REDViewLineHeightCache.fcInvalid) {
-			return cacheVal;
+		if (lineNr < fLineHeights.getNrLines()) {
+			return fWrapIndex != null ? fWrapIndex.getHeight(lineNr) : fLineHeights.getHeight(lineNr);
 		}
-		
-		int lineHeight = calculateLineHeight(lineNr);
-		
-		// fill cache
-		fLineHeightCache.fillCache(lineNr, lineHeight);
-		
-		return lineHeight;
+		return calculateLineHeight(lineNr);
 	}		
 	
 	// scrollable interface
@@ -937,7 +1361,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	  */
 	public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
 		REDStyle s = fText.getDefaultStyle();
-		FontMetrics metrics = getFontMetrics(convert(s.getFont()));
+		FontMetrics metrics = getFontMetrics(s);
 		if (orientation == SwingConstants.HORIZONTAL) {
 			return metrics.getMaxAdvance();
 		}
@@ -951,7 +1375,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	  */
 	public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
 		REDStyle s = fText.getDefaultStyle();
-		FontMetrics metrics = getFontMetrics(convert(s.getFont()));
+		FontMetrics metrics = getFontMetrics(s);
 		if (orientation == SwingConstants.HORIZONTAL) {
 			return visibleRect.width - metrics.getMaxAdvance();
 		}
@@ -961,7 +1385,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	}
 
 	public boolean getScrollableTracksViewportWidth() {
-		return false;
+		return fWrapIndex != null;
 	}
 
 	public boolean getScrollableTracksViewportHeight() {
@@ -1199,7 +1623,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		if (xoff == -1) {
 			xoff = cur.getLowerLeftPoint().x;
 		}
-		if (cur.getLineNumber() > 0) {
+		if (cur.getUpperLeftPoint().y > fInsets.top) {	// not in first line or row
 			cur = locatePoint(xoff, cur.getUpperLeftPoint().y - 1, cur, true);	// TBD: last parameter false, if overwrite mode
 			return cur.getTextPosition();
 		}
@@ -1227,7 +1651,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 			xoff = vp.getLowerLeftPoint().x;
 		}
 		REDStyle s = fText.getDefaultStyle();
-		FontMetrics metrics = getFontMetrics(convert(s.getFont()));
+		FontMetrics metrics = getFontMetrics(s);
 		REDViewPosition np = locatePoint(xoff, vp.getLowerLeftPoint().y - getVisibleRect().height + metrics.getHeight(), null, true);	// TBD: last parameter false, if overwrite mode
 
 		return np.getTextPosition();
@@ -1239,7 +1663,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 			xoff = vp.getLowerLeftPoint().x;
 		}
 		REDStyle s = fText.getDefaultStyle();
-		FontMetrics metrics = getFontMetrics(convert(s.getFont()));
+		FontMetrics metrics = getFontMetrics(s);
 		REDViewPosition np = locatePoint(xoff, vp.getUpperLeftPoint().y + getVisibleRect().height - metrics.getHeight(), null, true);		// TBD: last parameter false, if overwrite mode
 
 		return np.getTextPosition();
@@ -1305,7 +1729,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		if (hasSelection()) {
 			if (putOnClipboard) {
 				Clipboard clipboard = getToolkit().getSystemClipboard();
-				StringSelection sel = new StringSelection(getSelectedText());
+				REDTextSelection sel = new REDTextSelection(fText, fSelFrom, fSelTo);
 				clipboard.setContents(sel, sel);
 			}
 //			if (GetColumnSelectionMode()) {	TBD
@@ -1331,7 +1755,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	boolean clipboardCopy() {	
 		if (!hasSelection()) return false;
 		Clipboard clipboard = getToolkit().getSystemClipboard();
-		StringSelection sel = new StringSelection(getSelectedText());
+		REDTextSelection sel = new REDTextSelection(fText, fSelFrom, fSelTo);
 		clipboard.setContents(sel, sel);
 		return true;
 	}
@@ -1347,6 +1771,18 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		Clipboard clipboard = getToolkit().getSystemClipboard();
 		Transferable toPaste = clipboard.getContents(this);
 		String str = null;
+		if (toPaste != null && toPaste.isDataFlavorSupported(REDTextSelection.fcTextFlavor)) {	// splice runs of other rtefx text directly
+			REDText src = null;
+			try {
+				src = (REDText) toPaste.getTransferData(REDTextSelection.fcTextFlavor);
+			}
+			catch (Exception e) { src = null; }
+			if (src != null && src.length() > 0) {
+				fText.setCurTypingCommand(null);
+				fText.getCommandProcessor().perform(REDTextCommand.createTransfer("Paste", this, fText, fSelFrom, fSelTo - fSelFrom, src));
+				return true;
+			}
+		}
 		if (toPaste != null) {
 			try {
 				str = (String)(toPaste.getTransferData(DataFlavor.stringFlavor));
@@ -1431,8 +1867,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	
 	public void propertyChange(PropertyChangeEvent e) {
 		recalcExtentHeight();
-		fExtent.width = 0;
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 	}
 
 	void repaintSelection() {
@@ -1448,11 +1883,58 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		repaintLines(fromLine, toLine);
 	}
 	
+	/** Repaint lines.
+	  * The lines are added to the damage of the view, which is repainted once all pending events have been processed. 
+	  * Thus repaint requests for adjacent or overlapping lines issued in a row are coalesced.
+	  */
 	void repaintLines(int fromLine, int toLine) {
-		int fromLineTop = getLineTop(fromLine);
-		int toLineBottom = getLineTop(toLine + 1) - 1;
-		repaint(fInsets.top, fromLineTop + fInsets.top, getPreferredSize().width, toLineBottom - fromLineTop);
+		damage(fInsets.top + getLineTop(fromLine), fInsets.top + getLineTop(toLine + 1));
 	}	
+	
+	/** Add vertical pixel range [from, to[ to the damage of the view and schedule repainting it. */
+	private void damage(int from, int to) {
+		if (!isShowing()) {	// view will be painted completely once it is shown
+			return;
+		}
+		fDamage.add(from, to);
+		if (!fDamageFlushPending) {
+			fDamageFlushPending = true;
+			SwingUtilities.invokeLater(fDamageFlush);
+		}
+	}
+	
+	/** Content from line top oldTop on has moved to newTop. 
+	  * If possible, the visible part of the moved content is copied on screen and only the exposed part is repainted; 
+	  * otherwise everything from the moved content on is repainted.
+	  * @param oldTop The old top of the moved content, relative to the first line.
+	  * @param newTop The new top of the moved content, relative to the first line.
+	  */
+	private void scrollContent(int oldTop, int newTop) {
+		int delta = newTop - oldTop;
+		if (delta == 0) {
+			return;
+		}
+		oldTop += fInsets.top;
+		newTop += fInsets.top;
+		fDamage.shift(oldTop, delta);
+		
+		Rectangle r = getVisibleRect();
+		int top = Math.max(newTop, r.y);
+		int bottom = r.y + r.height;
+		int validFrom = Math.max(Math.max(oldTop, r.y) + delta, top);
+		int validTo = Math.min(bottom + delta, bottom);
+		Graphics g = validFrom < validTo && isShowing() && RepaintManager.currentManager(this).getDirtyRegion(this).isEmpty() ? getGraphics() : null;
+		if (g == null) {
+			damage(top, Math.max(bottom, getHeight()));
+		}
+		else {
+			g.clipRect(r.x, r.y, r.width, r.height);
+			g.copyArea(r.x, validFrom - delta, r.width, validTo - validFrom, 0, delta);
+			g.dispose();
+			damage(top, validFrom);
+			damage(validTo, bottom);
+		}
+	}
 
 	void repaintLine(int line) {
 		repaintLines(line, line);
@@ -1462,9 +1944,10 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		fText.removeREDTextEventListener(this);
 		fText = text;
 		fText.addREDTextEventListener(this);
-		fExtent.width = fExtent.height = 0;
+		fStretchCursor = new REDViewStretchCursor(fText);
+		fStretchCursor.setMaxLength(fcChunkSize);
 		resetLineTops();
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 		fXOffset = -1;
 		repaint();
 	}
@@ -1493,6 +1976,7 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	void setVisualizeWhitespace(boolean visualize) {
 		if (visualize != fVisualizeWhitespace) {
 			fVisualizeWhitespace = visualize;
+			fLineImages.clear();
 			repaint();
 		}
 	}
@@ -1501,35 +1985,46 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		return fVisualizeWhitespace;
 	}
 	
+	/** Set pixel budget of the cache of rendered line images.
+	  * @param pixels The maximum number of pixels of all cached line images together; 0 disables the cache.
+	  */
+	void setLineImageBudget(int pixels) {
+		fLineImages.setBudget(pixels);
+	}
+	
+	int getLineImageBudget() {
+		return fLineImages.getBudget();
+	}
+	
 	void setTabWidth(int tabWidth) {
-		FontMetrics metrics = getFontMetrics(convert(fText.getDefaultStyle().getFont()));
+		FontMetrics metrics = getFontMetrics(fText.getDefaultStyle());
 		fTabWidth = tabWidth * metrics.charWidth(' ');
 		recalcIndentString();
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 		repaint();
 	}
 	
 	int getTabWidth() {
-		FontMetrics metrics = getFontMetrics(convert(fText.getDefaultStyle().getFont()));
+		FontMetrics metrics = getFontMetrics(fText.getDefaultStyle());
 		return fTabWidth / metrics.charWidth(' ');
 	}
 	
 	void setMinTabWidth(int minWidth) {
-		FontMetrics metrics = getFontMetrics(convert(fText.getDefaultStyle().getFont()));
+		FontMetrics metrics = getFontMetrics(fText.getDefaultStyle());
 		fTabMin = minWidth * metrics.charWidth(' ');
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 		repaint();
 	}
 	
 	int getMinTabWidth() {
-		FontMetrics metrics = getFontMetrics(convert(fText.getDefaultStyle().getFont()));
+		FontMetrics metrics = getFontMetrics(fText.getDefaultStyle());
 		return fTabMin / metrics.charWidth(' ');
 	}
 	
 	void setIndentWidth(int indent) {
 		fIndentWidth = indent;
 		recalcIndentString();
-		checkLineWidth(0, fText.getNrOfLines());
+		resetLineWidths();
 		repaint();
 	}
 	
@@ -1695,13 +2190,14 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	int debugGetLineTop(int lineNr) {
 		int lineMax, topLine = 0;
 		int lineStart = 0, lineEnd = 0;
-		for (int i = 0; i < lineNr; i++) {
+		REDLineCursor cursor = fText.createLineCursor();
+		for (int i = 0; i < lineNr; i++, cursor.next()) {
 			lineStart = lineEnd;
-			lineEnd = fText.getLineStart(i + 1);
+			lineEnd = cursor.getNextLineStart();
 			lineMax = 0;
 			for (int j = lineStart+1; j <= lineEnd; j++) {
 				REDStyle s = fText.getStyle(j); 
-				FontMetrics metrics = getFontMetrics(convert(s.getFont()));
+				FontMetrics metrics = getFontMetrics(s);
 				lineMax = Math.max(lineMax, metrics.getHeight());
 			}
 			topLine += lineMax;
@@ -1711,13 +2207,22 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 
 	REDText fText;
 	private REDViewStretch fViewStretch;
+	private REDViewLineOffsets fLineOffsets;
+	private REDViewLineImages fLineImages;
+	private REDViewWrapIndex fWrapIndex;	// null, if lines are not wrapped
+	private REDViewLineOffsets fRowStarts;	// row starts of recently wrapped lines, cf. measureRowStarts()
+	private int fWrapWidth;
+	private REDViewStretchCursor fStretchCursor;
 	private ArrayList fPaintBatch;
 	private int fTabMin, fTabWidth, fIndentWidth;
 	private Graphics fGraphics;
-	REDLineTree fTopLines;
-	private int[] fStyleChangeBuffer;
-	private int fDeleteBuffer, fDeleteEndLine;
-	private int fBeforeCorrection;
+	REDViewLineHeights fLineHeights;
+	REDLineMetrics fLineWidths;	// per line widths (shifted left by one bit, see fcEstimated); column fcWidthColumn keeps the widest line
+	private int fDeleteEndLine;
+	private int fDeleteOldNextTop;
+	private REDViewDamage fDamage;
+	private boolean fDamageFlushPending;
+	private DamageFlush fDamageFlush;
 	private Dimension fExtent, fPrefSize;
 	int fSelFrom, fSelTo;	// caret position (fSelTo <= fSelFrom) or selection (otherwise)
 	int fSelDir;
@@ -1729,17 +2234,14 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 	private boolean fVisualizeWhitespace;
 	private REDIndentMode fIndentMode;
 	private String fIndentString;
-	private byte [] fScratchBuffer;
 	private REDViewPosition fCaretViewPosition;
 	private Insets fInsets;
-	private REDViewLineHeightCache fLineHeightCache;
 	private String fWordConstituents;
 	private int fHighlightLine;
 	private Color fHighlightColor;
 	{
 		fViewStretch = null;
-		fTopLines = new REDLineTree();
-		fStyleChangeBuffer = new int[2];
+		fLineHeights = new REDViewLineHeights(new int[] { 1 }, 1);	// until resetLineTops() has measured the text
 		fExtent = null;
 		fPrefSize = new Dimension();
 		fSelFrom = fSelTo = 0;
@@ -1755,7 +2257,14 @@ public class REDView extends JPanel implements REDTextEventListener, REDStyleEve
 		fVisualizeWhitespace = false;
 		fIndentMode = REDAuxiliary.fcDefaultIndentMode;
 		fIndentString = null;
-		fScratchBuffer = null;
 		fCaretViewPosition = new REDViewPosition();
+		fLineOffsets = new REDViewLineOffsets(fcLineOffsetsCacheSize);
+		fLineImages = new REDViewLineImages(0);
+		fWrapIndex = null;
+		fRowStarts = new REDViewLineOffsets(fcRowStartsCacheSize);
+		fWrapWidth = Integer.MAX_VALUE;
+		fDamage = new REDViewDamage();
+		fDamageFlushPending = false;
+		fDamageFlush = new DamageFlush();
 	}
 }
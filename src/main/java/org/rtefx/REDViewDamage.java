@@ -0,0 +1,138 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+/** Auxiliary class for collecting the damaged parts of a view until they are repainted.
+  * Damage is kept as a sorted list of disjoint vertical pixel ranges; overlapping and adjacent ranges are merged when added. 
+  * If content of the view is moved vertically before the damage has been repainted, the pending ranges can be moved along with it.
+  * All methods are synchronized, since damage may be added by a thread other than the one repainting it.
+  * @author rli@chello.at
+  * @tier system
+  * @invariant forall i in [0, fNrRanges[ | fFrom[i] < fTo[i]
+  * @invariant forall i in [1, fNrRanges[ | fTo[i - 1] < fFrom[i]
+  */
+final class REDViewDamage {
+	REDViewDamage() {
+		fFrom = new int[fcInitialCapacity];
+		fTo = new int[fcInitialCapacity];
+		fNrRanges = 0;
+	}
+	
+	/** Add damage. 
+	  * @param from The first damaged pixel row.
+	  * @param to The pixel row behind the damage; empty ranges are ignored.
+	  */
+	synchronized void add(int from, int to) {
+		if (from >= to) {
+			return;
+		}
+		int first = 0;
+		while (first < fNrRanges && fTo[first] < from) {
+			first++;
+		}
+		int last = first;
+		while (last < fNrRanges && fFrom[last] <= to) {
+			from = Math.min(from, fFrom[last]);
+			to = Math.max(to, fTo[last]);
+			last++;
+		}
+		if (last == first) {	// no overlap => insert new range
+			ensureCapacity(fNrRanges + 1);
+			System.arraycopy(fFrom, first, fFrom, first + 1, fNrRanges - first);
+			System.arraycopy(fTo, first, fTo, first + 1, fNrRanges - first);
+			fNrRanges++;
+		}
+		else {	// replace ranges [first, last[ by merged range
+			System.arraycopy(fFrom, last, fFrom, first + 1, fNrRanges - last);
+			System.arraycopy(fTo, last, fTo, first + 1, fNrRanges - last);
+			fNrRanges -= last - first - 1;
+		}
+		fFrom[first] = from;
+		fTo[first] = to;
+	}
+	
+	/** Move damage along with content.
+	  * The content from pixel row y on has been moved by delta rows; damage within it is moved accordingly. 
+	  * A range containing y is stretched to cover both its old upper and its moved lower part.
+	  * @param y The first moved pixel row.
+	  * @param delta The number of rows the content has been moved down (or up, if negative).
+	  */
+	synchronized void shift(int y, int delta) {
+		if (delta == 0 || fNrRanges == 0) {
+			return;
+		}
+		int [] from = new int[fNrRanges];
+		int [] to = new int[fNrRanges];
+		int n = fNrRanges;
+		for (int i = 0; i < n; i++) {
+			if (fFrom[i] >= y) {
+				from[i] = fFrom[i] + delta; to[i] = fTo[i] + delta;
+			}
+			else if (fTo[i] > y) {
+				from[i] = Math.min(fFrom[i], y + delta); to[i] = Math.max(y, fTo[i] + delta);
+			}
+			else {
+				from[i] = fFrom[i]; to[i] = fTo[i];
+			}
+		}
+		fNrRanges = 0;
+		for (int i = 0; i < n; i++) {
+			add(from[i], to[i]);
+		}
+	}
+	
+	/** Check whether there is any damage. */
+	synchronized boolean isEmpty() {
+		return fNrRanges == 0;
+	}
+	
+	/** Get number of disjoint damaged ranges. */
+	synchronized int getNrRanges() {
+		return fNrRanges;
+	}
+	
+	/** Remove all damage and return it.
+	  * @return The damaged ranges as pairs of pixel rows: [from0, to0, from1, to1, ...].
+	  * @post isEmpty()
+	  */
+	synchronized int [] drain() {
+		int [] retVal = new int[2 * fNrRanges];
+		for (int i = 0; i < fNrRanges; i++) {
+			retVal[2 * i] = fFrom[i];
+			retVal[2 * i + 1] = fTo[i];
+		}
+		fNrRanges = 0;
+		return retVal;
+	}
+	
+	private void ensureCapacity(int n) {
+		if (n > fFrom.length) {
+			int cap = Math.max(n, 2 * fFrom.length);
+			int [] from = new int[cap];
+			int [] to = new int[cap];
+			System.arraycopy(fFrom, 0, from, 0, fNrRanges);
+			System.arraycopy(fTo, 0, to, 0, fNrRanges);
+			fFrom = from;
+			fTo = to;
+		}
+	}
+	
+	private static final int fcInitialCapacity = 8;
+	private int [] fFrom, fTo;
+	private int fNrRanges;
+}
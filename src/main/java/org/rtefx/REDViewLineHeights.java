@@ -0,0 +1,243 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.rtefx.linetree.REDLineAggregate;
+import org.rtefx.linetree.REDLineMetrics;
+
+/** Auxiliary class for maintaining the heights of the lines of a view.
+  * Most documents use one or two fonts only, so nearly all lines share the same height. This class stores that uniform height 
+  * once; as long as all lines have it, the top of a line is simply <Code>line * uniform height</Code>. 
+  * Lines whose height differs from it are exceptions. Once the first exception shows up, the heights of all lines are kept in a 
+  * REDLineMetrics column summing them up, so tops and lines at a height take O(log n) and updates O(log n) per line.
+  * The number of lines per height is kept up to date along with each change, so the most frequent height is the uniform height at any time.
+  * @author rli@chello.at
+  * @tier system
+  * @invariant fNrExceptions == fNrLines - fCounts.get(fUniformHeight)[0]
+  * @invariant fNrExceptions == 0 || fMetrics != null
+  */
+class REDViewLineHeights {
+	/** Create line heights.
+	  * @param heights The heights of the lines.
+	  * @param nrLines The number of lines.
+	  * @pre nrLines > 0 && heights.length >= nrLines
+	  */
+	REDViewLineHeights(int [] heights, int nrLines) {
+		fNrLines = nrLines;
+		fUniformHeight = heights[0];
+		for (int line = 0; line < nrLines; line++) {
+			count(heights[line], 1);
+		}
+		updateNrExceptions();
+		if (fNrExceptions > 0) {
+			fMetrics = new REDLineMetrics(fcAggregates, nrLines);
+			fMetrics.set(fcHeightColumn, 0, heights, nrLines);
+		}
+	}
+	
+	int getNrLines() {
+		return fNrLines;
+	}
+	
+	int getUniformHeight() {
+		return fUniformHeight;
+	}
+	
+	int getNrExceptions() {
+		return fNrExceptions;
+	}
+	
+	/** Get height of line.
+	  * @pre line >= 0 && line < getNrLines()
+	  */
+	int getHeight(int line) {
+		if (fNrExceptions == 0) {
+			return fUniformHeight;
+		}
+		return fMetrics.get(fcHeightColumn, line);
+	}
+	
+	/** Get top of line, i.e. the sum of the heights of all lines in front of it.
+	  * @param line The line to get top for; getNrLines() yields the total height.
+	  * @pre line >= 0 && line <= getNrLines()
+	  */
+	int getTop(int line) {
+		if (fNrExceptions == 0) {
+			return line * fUniformHeight;
+		}
+		return fMetrics.query(fcHeightColumn, 0, line);
+	}
+	
+	/** Get line at height.
+	  * @return The line whose top is <= y and whose bottom is > y; getNrLines() if y is beyond the last line, 0 if y < 0.
+	  */
+	int getLineAt(int y) {
+		if (y < 0) {
+			return 0;
+		}
+		if (fNrExceptions == 0) {
+			return Math.min(y / fUniformHeight, fNrLines);
+		}
+		return fMetrics.findLine(fcHeightColumn, y);
+	}
+	
+	/** Set height of line.
+	  * @pre line >= 0 && line < getNrLines() && height > 0
+	  */
+	void setHeight(int line, int height) {
+		int old = getHeight(line);
+		if (old == height) {
+			return;
+		}
+		if (fMetrics == null) {
+			createMetrics(old);
+		}
+		fMetrics.set(fcHeightColumn, line, height);
+		count(old, -1);
+		count(height, 1);
+		updateNrExceptions();
+	}
+	
+	/** Set heights of consecutive lines.
+	  * @param line The first line to set height for.
+	  * @param heights The heights to set.
+	  * @param n The number of heights to take from heights.
+	  * @pre line >= 0 && line + n <= getNrLines() && heights.length >= n
+	  */
+	void setHeights(int line, int [] heights, int n) {
+		int [] old = getHeights(line, n);
+		boolean changed = false;
+		for (int i = 0; i < n; i++) {
+			if (old[i] != heights[i]) {
+				count(old[i], -1);
+				count(heights[i], 1);
+				changed = true;
+			}
+		}
+		if (!changed) {
+			return;
+		}
+		if (fMetrics == null) {
+			createMetrics(old[0]);
+		}
+		fMetrics.set(fcHeightColumn, line, heights, n);
+		updateNrExceptions();
+	}
+	
+	/** Insert lines of uniform height.
+	  * @param line The new lines are inserted in front of this line.
+	  * @param n The number of lines to insert.
+	  * @pre line >= 0 && line <= getNrLines() && n >= 0
+	  */
+	void insertLines(int line, int n) {
+		int height = fUniformHeight;	// before counting, which may switch the uniform height
+		count(height, n);
+		fNrLines += n;
+		updateNrExceptions();
+		if (fMetrics != null) {
+			int [] heights = new int[n];
+			java.util.Arrays.fill(heights, height);
+			fMetrics.insertLines(line, n);
+			fMetrics.set(fcHeightColumn, line, heights, n);
+		}
+	}
+	
+	/** Delete lines.
+	  * @param line The first line to delete.
+	  * @param n The number of lines to delete.
+	  * @pre line >= 0 && line + n <= getNrLines() && n >= 0
+	  * @pre getNrLines() - n > 0
+	  */
+	void deleteLines(int line, int n) {
+		int [] old = getHeights(line, n);
+		for (int i = 0; i < n; i++) {
+			count(old[i], -1);
+		}
+		fNrLines -= n;
+		updateNrExceptions();
+		if (fMetrics != null) {
+			fMetrics.deleteLines(line, n);
+		}
+	}
+	
+	/** Get heights of consecutive lines. */
+	private int [] getHeights(int line, int n) {
+		int [] heights = new int[n];
+		if (fNrExceptions == 0) {
+			java.util.Arrays.fill(heights, fUniformHeight);
+		}
+		else {
+			fMetrics.get(fcHeightColumn, line, heights, n);
+		}
+		return heights;
+	}
+	
+	/** Create metrics for the lines, all of which have the given height. */
+	private void createMetrics(int height) {
+		int [] heights = new int[fNrLines];
+		java.util.Arrays.fill(heights, height);
+		fMetrics = new REDLineMetrics(fcAggregates, fNrLines);
+		fMetrics.set(fcHeightColumn, 0, heights, fNrLines);
+	}
+	
+	/** Add delta to the number of lines of height; the most frequent height becomes the uniform height. 
+	  * As this may switch the uniform height, fMetrics must not be created from the uniform height after counting.
+	  */
+	private void count(int height, int delta) {
+		int [] count = fCounts.get(height);
+		if (count == null) {
+			count = new int[1];
+			fCounts.put(height, count);
+		}
+		count[0] += delta;
+		if (count[0] == 0 && height != fUniformHeight) {
+			fCounts.remove(height);
+		}
+		int [] uniform = fCounts.get(fUniformHeight);
+		if (uniform == null || uniform[0] < count[0]) {
+			fUniformHeight = height;
+		}
+		else if (height == fUniformHeight && delta < 0) {	// another height may have become more frequent
+			Iterator<Map.Entry<Integer, int []>> iter = fCounts.entrySet().iterator();
+			while (iter.hasNext()) {
+				Map.Entry<Integer, int []> e = iter.next();
+				if (e.getValue()[0] > count[0]) {
+					count = e.getValue();
+					fUniformHeight = e.getKey();
+				}
+			}
+		}
+	}
+	
+	/** Update number of exceptions after the number of lines and their heights have been counted. */
+	private void updateNrExceptions() {
+		fNrExceptions = fNrLines - fCounts.get(fUniformHeight)[0];
+	}
+	
+	private int fNrLines;
+	private int fUniformHeight;
+	private int fNrExceptions;
+	private final HashMap<Integer, int []> fCounts = new HashMap<>();	// number of lines by height
+	private REDLineMetrics fMetrics;	// heights of all lines; null, as long as there has never been an exception
+	private static final int fcHeightColumn = 0;
+	private static final REDLineAggregate [] fcAggregates = { REDLineAggregate.fcSum };
+}
@@ -0,0 +1,144 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Auxiliary class caching rendered images of lines of a view.
+  * When a view scrolls or blinks its caret, most lines to paint have not changed since they were painted last. With their images 
+  * at hand, painting them is a single image copy instead of collecting, measuring and drawing their stretches again.
+  * Images are kept for the width of the view they have been rendered for, and the least recently used images are dropped as soon
+  * as all images together have more pixels than the budget of the cache.
+  * Lines are identified by their number; the owner must keep the cache in sync with inserted, deleted and changed lines.
+  * @author rli@chello.at
+  * @tier system
+  * @invariant fFootprint <= fBudget
+  */
+final class REDViewLineImages {
+	/** @param budget The maximum number of pixels of all images together. */
+	REDViewLineImages(int budget) {
+		fImages = new LinkedHashMap<>(16, 0.75f, true);
+		fBudget = budget;
+		fFootprint = 0;
+	}
+	
+	/** Set budget.
+	  * @param budget The maximum number of pixels of all images together; 0 disables the cache.
+	  */
+	void setBudget(int budget) {
+		fBudget = Math.max(budget, 0);
+		evict();
+	}
+	
+	int getBudget() {
+		return fBudget;
+	}
+	
+	/** Get number of pixels of all cached images. */
+	int getFootprint() {
+		return fFootprint;
+	}
+	
+	/** Get image of line.
+	  * @param line The line to get the image for.
+	  * @param width The width of the view the image must have been rendered for.
+	  * @return The image or <Code>null</Code>, if there is no image of the line for the given width.
+	  */
+	BufferedImage get(int line, int width) {
+		Entry e = fImages.get(line);
+		return e != null && e.fWidth == width ? e.fImage : null;
+	}
+	
+	/** Put image of line, dropping least recently used images as needed to stay within budget.
+	  * @param width The width of the view the image has been rendered for.
+	  * @pre image != null
+	  */
+	void put(int line, int width, BufferedImage image) {
+		Entry e = new Entry();
+		e.fWidth = width;
+		e.fImage = image;
+		remove(fImages.put(line, e));
+		fFootprint += getPixels(e);
+		evict();
+	}
+	
+	/** Remove lines [from, to] from the cache. */
+	void invalidateLines(int from, int to) {
+		Iterator<Map.Entry<Integer, Entry>> iter = fImages.entrySet().iterator();
+		while (iter.hasNext()) {
+			Map.Entry<Integer, Entry> me = iter.next();
+			if (me.getKey() >= from && me.getKey() <= to) {
+				remove(me.getValue());
+				iter.remove();
+			}
+		}
+	}
+	
+	/** Renumber cached lines after lines have been inserted or deleted.
+	  * @param from The first line to renumber.
+	  * @param delta The number to add to the line numbers from line from on.
+	  */
+	void moveLines(int from, int delta) {
+		if (delta == 0 || fImages.isEmpty()) {
+			return;
+		}
+		ArrayList<Map.Entry<Integer, Entry>> entries = new ArrayList<>(fImages.entrySet());	// in order of use
+		fImages.clear();
+		for (Map.Entry<Integer, Entry> me : entries) {
+			int line = me.getKey();
+			fImages.put(line >= from ? line + delta : line, me.getValue());
+		}
+	}
+	
+	/** Remove all images. */
+	void clear() {
+		fImages.clear();
+		fFootprint = 0;
+	}
+	
+	private static int getPixels(Entry e) {
+		return e.fImage.getWidth() * e.fImage.getHeight();
+	}
+	
+	private void remove(Entry e) {
+		if (e != null) {
+			fFootprint -= getPixels(e);
+		}
+	}
+	
+	private void evict() {
+		Iterator<Entry> iter = fImages.values().iterator();
+		while (fFootprint > fBudget && iter.hasNext()) {
+			remove(iter.next());
+			iter.remove();
+		}
+	}
+	
+	static class Entry {
+		int fWidth;
+		BufferedImage fImage;
+	}
+	
+	private LinkedHashMap<Integer, Entry> fImages;	// in order of access, least recently used first
+	private int fBudget;
+	private int fFootprint;
+}
@@ -0,0 +1,101 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+/** Auxiliary class caching the horizontal offsets of the characters of recently used lines of a view.
+  * With the offsets of a line at hand, locating a text position is one array lookup and locating a pixel is a binary search, 
+  * instead of measuring the line from its start. Mouse drags and caret movements usually stay within a few lines, so a small 
+  * cache with least recently used replacement suffices.
+  * Lines are identified by their number; the owner must keep the cache in sync with inserted and deleted lines.
+  * @author rli@chello.at
+  * @tier system
+  */
+final class REDViewLineOffsets {
+	/** @pre capacity > 0 */
+	REDViewLineOffsets(int capacity) {
+		fLines = new int[capacity];
+		fOffsets = new int[capacity][];
+		fLastUse = new long[capacity];
+		clear();
+	}
+	
+	/** Get offsets of line.
+	  * @return The offsets put for the line or <Code>null</Code>, if they are not cached.
+	  */
+	int [] get(int line) {
+		for (int i = 0; i < fLines.length; i++) {
+			if (fLines[i] == line) {
+				fLastUse[i] = ++fClock;
+				return fOffsets[i];
+			}
+		}
+		return null;
+	}
+	
+	/** Put offsets of line, replacing the least recently used line if the cache is full.
+	  * @pre line >= 0 && offsets != null
+	  */
+	void put(int line, int [] offsets) {
+		int slot = 0;
+		for (int i = 0; i < fLines.length && fLines[slot] != line; i++) {
+			if (fLines[i] == line || fLastUse[i] < fLastUse[slot]) {
+				slot = i;
+			}
+		}
+		fLines[slot] = line;
+		fOffsets[slot] = offsets;
+		fLastUse[slot] = ++fClock;
+	}
+	
+	/** Remove lines [from, to] from the cache. */
+	void invalidateLines(int from, int to) {
+		for (int i = 0; i < fLines.length; i++) {
+			if (fLines[i] >= from && fLines[i] <= to) {
+				fLines[i] = -1;
+				fOffsets[i] = null;
+				fLastUse[i] = 0;
+			}
+		}
+	}
+	
+	/** Renumber cached lines after lines have been inserted or deleted.
+	  * @param from The first line to renumber.
+	  * @param delta The number to add to the line numbers from line from on.
+	  */
+	void moveLines(int from, int delta) {
+		for (int i = 0; i < fLines.length; i++) {
+			if (fLines[i] >= from) {
+				fLines[i] += delta;
+			}
+		}
+	}
+	
+	/** Remove all lines from the cache. */
+	void clear() {
+		for (int i = 0; i < fLines.length; i++) {
+			fLines[i] = -1;
+			fOffsets[i] = null;
+			fLastUse[i] = 0;
+		}
+	}
+	
+	private int [] fLines;	// line number of each slot; -1 for empty slots
+	private int [][] fOffsets;
+	private long [] fLastUse;	// 0 for empty slots
+	private long fClock;
+}
@@ -36,4 +36,5 @@ class REDViewStretch
 	public int fLength; // length of stretch
 	public REDStyle fStyle; // style of stretch
 	public REDText.REDRunSpec fRunSpec;	// run spec used for finding without memory turnaround
+	public byte [] fBytes;	// bytes of stretch at [0, fLength); only set by REDViewStretchCursor
 }
@@ -0,0 +1,173 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+/** Sequential reader of view stretches.
+  * A cursor is positioned once and then walks through the runs of a text, handing out one stretch after the other 
+  * together with its bytes. Unlike <CODE>REDText.getViewStretch</CODE> no position lookup is done per stretch, so 
+  * laying out a line is linear in the number of its bytes.
+  * The cursor must be repositioned after the text has been modified.
+  * @author rli@chello.at
+  * @tier system
+  */
+class REDViewStretchCursor {
+	/** @pre text != null */
+	REDViewStretchCursor(REDText text) {
+		fText = text;
+		fBlock = new byte[fcBlockSize];
+		fBlockRun = null;
+		fMaxLength = 0;
+	}
+	
+	/** Limit length of stretches.
+	  * Text and tab stretches longer than the limit are handed out in pieces of at most maxLength bytes. This bounds the work 
+	  * per stretch for very long lines, e.g. of minified files, which consist of few or even a single huge word.
+	  * @param maxLength The maximum length of stretches; 0 for no limit.
+	  */
+	void setMaxLength(int maxLength) {
+		fMaxLength = Math.max(maxLength, 0);
+	}
+	
+	int getMaxLength() {
+		return fMaxLength;
+	}
+	
+	/** Position cursor.
+	  * @param pos position of the next stretch to be returned; is normalized to be in range [0, text.length()]
+	  * @post getPosition() == pos
+	  */
+	void setPosition(int pos) {
+		pos = Math.max(0, Math.min(pos, fText.length()));
+		fSpec = fText.findRun(pos, fSpec);
+		fRun = fSpec.fRun;
+		fOff = fSpec.fOff;
+		fPos = pos;
+		fBlockRun = null;
+	}
+	
+	/** Get position of the next stretch to be returned. */
+	int getPosition() {
+		return fPos;
+	}
+	
+	/** Get next stretch and advance the cursor behind it.
+	  * Unless their length is limited by <CODE>setMaxLength</CODE>, the stretches returned are the same as those returned by <CODE>REDText.getViewStretch</CODE>. In addition 
+	  * <CODE>fBytes</CODE> of the returned stretch holds its bytes at [0, fLength).
+	  * Once the end of text is reached, EOF - stretches are returned.
+	  * @param stretch if this parameter != null then the passed stretch object is reused
+	  * @param whiteSpaceViz if this parameter is true, tabs are returned one by one and spaces are returned as separate text stretches
+	  * @post return != null
+	  * @post stretch != null implies return == stretch
+	  */
+	REDViewStretch next(REDViewStretch stretch, boolean whiteSpaceViz) {
+		if (stretch == null) {
+			stretch = new REDViewStretch();
+		}
+		if (stretch.fBytes == null) {
+			stretch.fBytes = new byte[fcInitialStretchSize];
+		}
+		stretch.fRunSpec = null;
+		if (fRun == null || fOff >= fRun.fLength) {
+			stretch.fType = REDViewStretch.EOF;
+			stretch.fStyle = fRun != null ? fRun.fStyle : fText.getDefaultStyle();
+			stretch.fLength = 0;
+			return stretch;
+		}
+		
+		stretch.fStyle = fRun.fStyle;
+		int end = fMaxLength > 0 ? Math.min(fRun.fLength, fOff + fMaxLength) : fRun.fLength;
+		byte c = byteAt(fOff);
+		int len = 1;
+		stretch.fBytes[0] = c;
+		if (c == '\t') {
+			stretch.fType = REDViewStretch.TAB;
+			while (!whiteSpaceViz && fOff + len < end && byteAt(fOff + len) == '\t') {
+				put(stretch, len++, (byte) '\t');
+			}
+		}
+		else if (c == '\r' || c == '\n') {
+			stretch.fType = REDViewStretch.LINEBREAK;
+			if (c == '\r') {
+				// \r\n is one linebreak, even if it is split among two runs (just like in the line tree)
+				if (fOff + 1 < fRun.fLength ? byteAt(fOff + 1) == '\n' : fRun.fNext != null && fRun.fNext.getCharAt(0) == '\n') {
+					put(stretch, len++, (byte) '\n');
+				}
+			}
+		}
+		else {
+			stretch.fType = REDViewStretch.TEXT;
+			if (!whiteSpaceViz || c != ' ') {
+				while (fOff + len < end) {
+					c = byteAt(fOff + len);
+					if (c == '\t' || c == '\n' || c == '\r' || c == ' ' && whiteSpaceViz) {
+						break;
+					}
+					put(stretch, len++, c);
+				}
+			}
+		}
+		stretch.fLength = len;
+		advance(len);
+		return stretch;
+	}
+	
+	/** Advance cursor by len bytes, moving on to the following runs if necessary. */
+	private void advance(int len) {
+		fPos += len;
+		fOff += len;
+		while (fOff >= fRun.fLength && fRun.fNext != null) {
+			fOff -= fRun.fLength;
+			fRun = fRun.fNext;
+		}
+	}
+	
+	/** Get byte at offset of current run. Bytes are read blockwise to avoid seeking the file for each byte.
+	  * @pre off >= 0 && off < fRun.fLength
+	  */
+	private byte byteAt(int off) {
+		if (fBlockRun != fRun || off < fBlockOff || off >= fBlockOff + fBlockLen) {
+			fBlockLen = fRun.copyInto(fBlock, 0, fBlock.length, off);
+			fBlockOff = off;
+			fBlockRun = fRun;
+		}
+		return fBlock[off - fBlockOff];
+	}
+	
+	/** Put byte into stretch, growing its byte array if necessary. */
+	private static void put(REDViewStretch stretch, int idx, byte b) {
+		if (idx >= stretch.fBytes.length) {
+			byte [] bytes = new byte[stretch.fBytes.length * 2];
+			System.arraycopy(stretch.fBytes, 0, bytes, 0, idx);
+			stretch.fBytes = bytes;
+		}
+		stretch.fBytes[idx] = b;
+	}
+	
+	private REDText fText;
+	private REDText.REDRunSpec fSpec;
+	private REDRun fRun;
+	private int fOff;
+	private int fPos;
+	private byte [] fBlock;
+	private REDRun fBlockRun;
+	private int fBlockOff;
+	private int fBlockLen;
+	private int fMaxLength;
+	private static final int fcBlockSize = 1024;
+	private static final int fcInitialStretchSize = 64;
+}
@@ -0,0 +1,101 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import org.rtefx.linetree.REDLineAggregate;
+import org.rtefx.linetree.REDLineMetrics;
+
+/** Auxiliary class mapping the logical lines of a soft wrapping view to visual rows.
+  * For each line the index keeps its height in pixels, i.e. the number of rows it is wrapped into times the height of one row. 
+  * The heights are summed up by a REDLineMetrics, so the top of a line and the line at a pixel height take O(log n), however 
+  * many lines are wrapped.
+  * Wrapping a line exactly requires measuring it. Therefore the owner may set an estimated number of rows, which it replaces 
+  * by the exact one as soon as the line becomes visible (the owner knows which lines are wrapped exactly, as it keeps their row starts). 
+  * After the wrap width has changed, all lines are estimated again, which is a pass over the index only, without touching the text.
+  * @author rli@chello.at
+  * @tier system
+  */
+final class REDViewWrapIndex {
+	/** Create index for nrLines lines without rows; the owner must set the rows of all lines.
+	  * @pre nrLines > 0
+	  */
+	REDViewWrapIndex(int nrLines) {
+		fMetrics = new REDLineMetrics(fcAggregates, nrLines);
+	}
+	
+	int getNrLines() {
+		return fMetrics.getNrLines();
+	}
+	
+	/** Get height of line, i.e. the sum of the heights of its rows. */
+	int getHeight(int line) {
+		return fMetrics.get(fcHeightColumn, line);
+	}
+	
+	/** Get top of line, i.e. the sum of the heights of all lines in front of it. 
+	  * @pre line >= 0 && line <= getNrLines()
+	  */
+	int getTop(int line) {
+		return fMetrics.query(fcHeightColumn, 0, line);
+	}
+	
+	/** Get line at pixel height.
+	  * @return The line containing pixel height y; getNrLines(), if y is below the last line.
+	  */
+	int getLineAt(int y) {
+		return fMetrics.findLine(fcHeightColumn, Math.max(y, 0));
+	}
+	
+	/** Set rows of line.
+	  * @param rows The number of rows of the line, either exact or estimated.
+	  * @param rowHeight The height of one row of the line.
+	  * @pre rows > 0
+	  */
+	void setRows(int line, int rows, int rowHeight) {
+		fMetrics.set(fcHeightColumn, line, rows * rowHeight);
+	}
+	
+	/** Set rows of consecutive lines.
+	  * @param rows The numbers of rows of the lines, either exact or estimated.
+	  * @param rowHeights The heights of one row of each line.
+	  * @param n The number of lines to set.
+	  */
+	void setRows(int line, int [] rows, int [] rowHeights, int n) {
+		int [] heights = new int[n];
+		for (int i = 0; i < n; i++) {
+			heights[i] = rows[i] * rowHeights[i];
+		}
+		fMetrics.set(fcHeightColumn, line, heights, n);
+	}
+	
+	/** Insert lines. The new lines have got no rows until they are set.
+	  * @param line The number the first new line will get.
+	  */
+	void insertLines(int line, int n) {
+		fMetrics.insertLines(line, n);
+	}
+	
+	/** Delete lines [line, line + n[. */
+	void deleteLines(int line, int n) {
+		fMetrics.deleteLines(line, n);
+	}
+	
+	private REDLineMetrics fMetrics;
+	private static final int fcHeightColumn = 0;
+	private static final REDLineAggregate [] fcAggregates = { REDLineAggregate.fcSum };
+}
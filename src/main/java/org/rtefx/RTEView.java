@@ -21,9 +21,12 @@ public class RTEView extends Control {
 	private int cursorPos = 0;
 	private Path caret = null;
 	private Map<Integer, TextFlow> textFlows = new TreeMap<>();
+	private REDViewStretchCursor stretchCursor;
+	private REDViewStretch stretch;
 	
 	public RTEView(REDText text) {
 		this.text = text;
+		this.stretchCursor = new REDViewStretchCursor(text);
 		setCursor(Cursor.TEXT);
 		setOnMouseClicked(this::mouseClicked);
 	}
@@ -38,26 +41,24 @@ public class RTEView extends Control {
 	}
 
 	public String getLine(int i) {
-		char[] lineChars = text.getLine(i, null); // TODO :: check interface into text, UTF-8?
-		String s = lineChars == null ? "" : new String(lineChars);
-		return s;	
+		if (i < 0 || i >= text.getNrOfLines()) {
+			return "";
+		}
+		return text.asString(text.getLineStart(i), text.getLineStart(i+1)); // TODO :: check interface into text, UTF-8?
 	}		
 	
 	public void fillLineFlow(int i, TextFlow flow, Pane overlay) {
 		flow.getChildren().clear();
-		REDViewStretch stretch = new REDViewStretch();
 		int pos = text.getLineStart(i);
 		textFlows.put(pos, flow);
-		text.getViewStretch(pos, stretch);
+		stretchCursor.setPosition(pos);
+		stretch = stretchCursor.next(stretch, false);
 		while (stretch.fType != REDViewStretch.EOF && stretch.fType != REDViewStretch.LINEBREAK) {
-			byte [] buf = new byte[stretch.fLength];
-			int len = stretch.fRunSpec.fRun.copyInto(buf, 0, stretch.fLength, stretch.fRunSpec.fOff);			
-			String str = new String(buf, 0, len);
+			String str = new String(stretch.fBytes, 0, stretch.fLength);
 			Text t = new Text(str);
-			t.setFont(stretch.fStyle.getFont());
+			t.setFont(stretch.fStyle.getResources().getFXFont());
 			flow.getChildren().add(t);
-			pos += stretch.fLength;
-			text.getViewStretch(pos, stretch);
+			stretch = stretchCursor.next(stretch, false);
 		}
 	}
 	
@@ -107,15 +107,64 @@ public class REDFile {
 		catch (IOException ioe) {
 			throw new Error("Error in REDFile.purge: " + ioe);
 		}
+		dropBuffers();
+		return true;
+	}
+
+	/** cut file content after the given length
+	  * @param length the new length of the file; is normalized to be in range [0, length()]
+	  * @return true, if successful; false otherwise
+	  */
+	public boolean truncate(int length) {
+		if (isReadonly()) {
+			return false;
+		}
+		length = Math.max(0, Math.min(length, fLength));
+		releaseBuffers();
+		fLength = length;
+		try {
+			fFile.setLength(length);
+		}
+		catch (IOException ioe) {
+			throw new Error("Error in REDFile.truncate: " + ioe);
+		}
+		return true;
+	}
+
+	/** write back and free all buffers of this file.
+	  * The file remains open; buffers are reallocated on demand by the next rider access.
+	  */
+	public void releaseBuffers() {
+		for (int i = 0; i < fcNrBufs; i++) {
+			if (fBuffer[i] != null) {
+				fBuffer[i].flush();
+			}
+		}
+		dropBuffers();
+	}
+
+	/** get number of bytes currently held in buffers of this file */
+	public int getBufferFootprint() {
+		int footprint = 0;
+		for (int i = 0; i < fcNrBufs; i++) {
+			if (fBuffer[i] != null) {
+				footprint += REDFileBuffer.fcBufSize;
+			}
+		}
+		return footprint;
+	}
+
+	/** invalidate buffers without writing them back; riders still pointing to them will refetch */
+	private void dropBuffers() {
 		for (int i = 0; i < fcNrBufs; i++) {
 			if (fBuffer[i] != null) {
 				fBuffer[i].fOrg = -1;
 				fBuffer[i] = null;
 			}
 		}
-		return true;
+		fSwapper = 0;
 	}
-	
+
 	protected void finalize() {
 		close();
 	}
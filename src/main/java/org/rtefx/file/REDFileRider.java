@@ -159,6 +159,40 @@ public class REDFileRider {
 		fRes = 0;
 	}
 
+	/** read up to n bytes into char array
+	  * Each byte is widened to a char without sign extension (i.e. ISO-8859-1 decoding).
+	  * this.fRes will contain the number of bytes requested but not read
+	  * @param x array to copy into
+	  * @param off array-offset to begin copying at
+	  * @param n number of bytes to copy into x
+	  * @post fRes > 0 implies fEof
+	  * @pre x.length >= n + off
+	  */
+	public void readChars(char[] x, int off, int n) {
+		int min, restInBuf;
+		while (n > 0) {
+			if (fOrg != fBuffer.fOrg || fOffset >= REDFileBuffer.fcBufSize) {
+				set(fBuffer.fFile, fOrg + fOffset);
+			}
+			restInBuf = fBuffer.fSize - fOffset;
+			if (restInBuf == 0) {
+				fRes = n; fEof = true; return;
+			}
+			else if (n > restInBuf) {
+				min = restInBuf;
+			}
+			else {
+				min = n;
+			}
+			byte [] data = fBuffer.fData;
+			for (int i = 0; i < min; i++) {
+				x[off + i] = (char) (data[fOffset + i] & 0xff);
+			}
+			fOffset += min; off += min; n -= min;
+		}
+		fRes = 0;
+	}
+
 	/** write a byte to file */
 	public void write(byte x) {
 		if (getFile().isReadonly()) {
@@ -0,0 +1,174 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import java.util.Arrays;
+
+/** Index over blocks of ascending, block-relative positions.
+  * The owner keeps the contents of its blocks; this class keeps the number of entries in each block and the distance from the first 
+  * entry of each block to the first entry of the next one (its span). Two Fenwick trees sum up spans and counts, so the start 
+  * position of a block, the number of entries in front of it and the block containing a position or entry are found in O(log n).
+  * Structural changes (i.e. adding or removing blocks) are done by the owner on the start positions of the blocks as obtained by 
+  * computeBases(), followed by setSpans() and rebuild().
+  * @author rli@chello.at
+  * @invariant fNrBlocks > 0 after the first rebuild()
+  * @invariant fCounts.length == fSpans.length
+  * @tier system
+  */
+final class REDBlockIndex {
+	/** @pre capacity > 0 */
+	REDBlockIndex(int capacity) {
+		fCounts = new int[capacity];
+		fSpans = new int[capacity];
+	}
+	
+	/** Get number of blocks the index has room for. */
+	int getCapacity() {
+		return fCounts.length;
+	}
+	
+	/** Make room for cap blocks. 
+	  * The owner has to grow its block arrays to the same capacity and call rebuild() afterwards.
+	  * @pre cap >= fNrBlocks
+	  */
+	void setCapacity(int cap) {
+		fCounts = Arrays.copyOf(fCounts, cap);
+		fSpans = Arrays.copyOf(fSpans, cap);
+	}
+	
+	/** Get start positions of all blocks. 
+	  * @return An array of getCapacity() elements, the first fNrBlocks of which are the start positions of the blocks.
+	  */
+	int [] computeBases() {
+		int [] bases = new int[fCounts.length];
+		for (int b = 1; b < fNrBlocks; b++) {
+			bases[b] = bases[b - 1] + fSpans[b - 1];
+		}
+		return bases;
+	}
+	
+	/** Set spans from start positions of blocks. */
+	void setSpans(int [] bases) {
+		for (int b = 0; b + 1 < fNrBlocks; b++) {
+			fSpans[b] = bases[b + 1] - bases[b];
+		}
+		fSpans[fNrBlocks - 1] = 0;
+	}
+	
+	/** Rebuild Fenwick trees from fSpans and fCounts in linear time. */
+	void rebuild() {
+		if (fSpanTree == null || fSpanTree.length != fCounts.length + 1) {
+			fSpanTree = new int[fCounts.length + 1];
+			fCountTree = new int[fCounts.length + 1];
+		}
+		else {
+			Arrays.fill(fSpanTree, 0);
+			Arrays.fill(fCountTree, 0);
+		}
+		int n = fSpanTree.length - 1;
+		for (int i = 1; i <= n; i++) {
+			if (i <= fNrBlocks) {
+				fSpanTree[i] += fSpans[i - 1];
+				fCountTree[i] += fCounts[i - 1];
+			}
+			int j = i + (i & -i);
+			if (j <= n) {
+				fSpanTree[j] += fSpanTree[i];
+				fCountTree[j] += fCountTree[i];
+			}
+		}
+		fTopBit = Integer.highestOneBit(n);
+	}
+	
+	/** Move all blocks behind block b by delta. */
+	void addSpan(int b, int delta) {
+		fSpans[b] += delta;
+		for (int i = b + 1; i < fSpanTree.length; i += i & -i) {
+			fSpanTree[i] += delta;
+		}
+	}
+	
+	/** Account for delta entries having been added to (or removed from) block b; fCounts[b] has to be adjusted by caller. */
+	void addCount(int b, int delta) {
+		for (int i = b + 1; i < fCountTree.length; i += i & -i) {
+			fCountTree[i] += delta;
+		}
+	}
+	
+	/** Get start position of block b. */
+	int prefixSpan(int b) {
+		int sum = 0;
+		for (int i = b; i > 0; i -= i & -i) {
+			sum += fSpanTree[i];
+		}
+		return sum;
+	}
+	
+	/** Get number of entries in front of block b. */
+	int prefixCount(int b) {
+		int sum = 0;
+		for (int i = b; i > 0; i -= i & -i) {
+			sum += fCountTree[i];
+		}
+		return sum;
+	}
+	
+	/** Get last block whose start position is <= pos. */
+	int findBlockByPosition(int pos) {
+		return Math.min(search(fSpanTree, pos), fNrBlocks - 1);
+	}
+	
+	/** Get block containing the entry with index idx, counted over all blocks. */
+	int findBlockByIndex(int idx) {
+		return Math.min(search(fCountTree, idx), fNrBlocks - 1);
+	}
+	
+	/** Get largest k so that the sum of the first k elements of the Fenwick tree is <= value. */
+	private int search(int [] tree, int value) {
+		int k = 0;
+		for (int step = fTopBit; step > 0; step >>= 1) {
+			if (k + step < tree.length && tree[k + step] <= value) {
+				k += step;
+				value -= tree[k];
+			}
+		}
+		return k;
+	}
+	
+	/** Get index of first element > value within the first cnt elements of block. */
+	static int upperBound(int [] block, int cnt, int value) {
+		int lo = 0, hi = cnt;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (block[mid] <= value) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+	
+	int [] fCounts;	// number of entries in block
+	int [] fSpans;	// distance from first entry of block to first entry of next block; 0 for last block
+	int fNrBlocks;
+	private int [] fSpanTree;
+	private int [] fCountTree;
+	private int fTopBit;
+}
@@ -0,0 +1,445 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import org.rtefx.REDEditor;
+import org.rtefx.REDStyle;
+import org.rtefx.REDTextEventListener;
+
+/** Compact mark storage for large numbers of marks.
+  * Marks float around in the text like REDMark objects do (cf. REDMark for the exact semantics), but they are not objects of their own. 
+  * Each mark consists of a position and an int value, both kept in blocks of primitive ints. Positions are stored relative to 
+  * the first mark of their block, and Fenwick trees (cf. REDBlockIndex) sum up the distances between blocks and the number of marks in them, so 
+  * shifting all marks behind a text change takes O(log n) plus the work within one block. 
+  * Marks are addressed by their index in position order; indices change when marks are added or deleted in front of them.
+  * Storage needs about eight bytes per mark.
+  * @author rli@chello.at
+  * @invariant fIndex.fNrBlocks > 0
+  * @invariant forall b in [1, fIndex.fNrBlocks[ | fIndex.fCounts[b] > 0 && fPositions[b][0] == 0
+  * @tier API
+  */
+public class REDCompactMarkTree implements REDTextEventListener {
+	public REDCompactMarkTree(REDEditor editor) {
+		fEditor = editor;
+		clear();
+	}
+	
+	/** Get number of marks. */
+	public int size() {
+		return fSize;
+	}
+	
+	/** Add mark.
+	  * The new mark is placed behind existing marks at the same position.
+	  * @param pos The position of the mark; is normalized to be in range [0, length of text].
+	  * @param value The value of the mark.
+	  */
+	public void addMark(int pos, int value) {
+		pos = normalize(pos);
+		int b = fIndex.findBlockByPosition(pos);
+		int base = fIndex.prefixSpan(b);
+		int idx = REDBlockIndex.upperBound(fPositions[b], fIndex.fCounts[b], pos - base);
+		if (fIndex.fCounts[b] == fcBlockCapacity) {	// structural change: split block in halves
+			split(b, base);
+			if (idx > fIndex.fCounts[b]) {
+				idx -= fIndex.fCounts[b];
+				base += fIndex.fSpans[b];
+				b++;
+			}
+		}
+		int [] positions = fPositions[b];
+		int [] values = fValues[b];
+		System.arraycopy(positions, idx, positions, idx + 1, fIndex.fCounts[b] - idx);
+		System.arraycopy(values, idx, values, idx + 1, fIndex.fCounts[b] - idx);
+		positions[idx] = pos - base;
+		values[idx] = value;
+		fIndex.fCounts[b]++;
+		fSize++;
+		fIndex.addCount(b, 1);
+	}
+	
+	/** Add several marks at once.
+	  * If many marks are added, all marks are laid out anew in linear time instead of adding them one by one.
+	  * @param positions The positions of the marks in ascending order; they are normalized to be in range [0, length of text].
+	  * @param values The values of the marks.
+	  * @param n The number of marks to take from positions and values.
+	  * @pre n == 0 || positions.length >= n && values.length >= n
+	  */
+	public void addMarks(int [] positions, int [] values, int n) {
+		if ((long) n * fcBlockCapacity < fSize) {	// one by one is cheaper
+			for (int i = 0; i < n; i++) {
+				addMark(positions[i], values[i]);
+			}
+			return;
+		}
+		int size = fSize + n;
+		int [] allPositions = new int[size];
+		int [] allValues = new int[size];
+		int o = 0, i = 0, x = 0;
+		int base = 0;
+		for (int b = 0; b < fIndex.fNrBlocks; b++) {
+			for (int j = 0; j < fIndex.fCounts[b]; j++) {
+				int pos = base + fPositions[b][j];
+				while (i < n && normalize(positions[i]) < pos) {
+					allPositions[x] = normalize(positions[i]);
+					allValues[x++] = values[i++];
+				}
+				allPositions[x] = pos;
+				allValues[x++] = fValues[b][j];
+			}
+			base += fIndex.fSpans[b];
+		}
+		while (i < n) {
+			allPositions[x] = normalize(positions[i]);
+			allValues[x++] = values[i++];
+		}
+		layout(allPositions, allValues, size);
+	}
+	
+	/** Get number of marks in front of a position.
+	  * This method neither allocates nor modifies anything.
+	  * @return The number of marks with a position < pos, i.e. the index of the first mark at or behind pos.
+	  */
+	public int lowerBound(int pos) {
+		int b = pos <= 0 ? 0 : fIndex.findBlockByPosition(pos - 1);
+		return fIndex.prefixCount(b) + REDBlockIndex.upperBound(fPositions[b], fIndex.fCounts[b], pos - 1 - fIndex.prefixSpan(b));
+	}
+	
+	/** Find mark at position.
+	  * @return The index of the first mark at exactly pos; -1 if there is no mark at pos.
+	  */
+	public int findMark(int pos) {
+		int idx = lowerBound(pos);
+		if (idx < fSize && getPosition(idx) == pos) {
+			return idx;
+		}
+		return -1;
+	}
+	
+	/** Get position of mark.
+	  * @param idx The index of the mark.
+	  * @pre idx >= 0 && idx < size()
+	  */
+	public int getPosition(int idx) {
+		int b = fIndex.findBlockByIndex(idx);
+		return fIndex.prefixSpan(b) + fPositions[b][idx - fIndex.prefixCount(b)];
+	}
+	
+	/** Get value of mark.
+	  * @param idx The index of the mark.
+	  * @pre idx >= 0 && idx < size()
+	  */
+	public int getValue(int idx) {
+		int b = fIndex.findBlockByIndex(idx);
+		return fValues[b][idx - fIndex.prefixCount(b)];
+	}
+	
+	/** Set value of mark.
+	  * @param idx The index of the mark.
+	  * @pre idx >= 0 && idx < size()
+	  */
+	public void setValue(int idx, int value) {
+		int b = fIndex.findBlockByIndex(idx);
+		fValues[b][idx - fIndex.prefixCount(b)] = value;
+	}
+	
+	/** Delete marks with from < position <= to. */
+	public void deleteMarks(int from, int to) {
+		if (to <= from || fSize == 0) {
+			return;
+		}
+		int bFrom = fIndex.findBlockByPosition(from);
+		int bTo = fIndex.findBlockByPosition(to);
+		if (bFrom == bTo) {	// first mark of block is <= from => no rebasing needed
+			int base = fIndex.prefixSpan(bFrom);
+			int iFrom = REDBlockIndex.upperBound(fPositions[bFrom], fIndex.fCounts[bFrom], from - base);
+			int iTo = REDBlockIndex.upperBound(fPositions[bFrom], fIndex.fCounts[bFrom], to - base);
+			remove(bFrom, iFrom, iTo);
+			fIndex.addCount(bFrom, iFrom - iTo);
+			if (fIndex.fCounts[bFrom] == 0 && fIndex.fNrBlocks > 1) {	// only possible for block 0
+				removeBlock(bFrom, fIndex.computeBases());
+			}
+			else {
+				mergeWithSuccessor(bFrom);
+			}
+			return;
+		}
+		
+		// structural change: blocks behind bFrom lose their head and need to be rebased
+		int [] bases = fIndex.computeBases();
+		for (int b = bTo; b >= bFrom; b--) {
+			int iFrom = b == bFrom ? REDBlockIndex.upperBound(fPositions[b], fIndex.fCounts[b], from - bases[b]) : 0;
+			int iTo = REDBlockIndex.upperBound(fPositions[b], fIndex.fCounts[b], to - bases[b]);
+			remove(b, iFrom, iTo);
+			if (fIndex.fCounts[b] == 0) {
+				if (fIndex.fNrBlocks > 1) {
+					removeBlock(b, bases);
+				}
+			}
+			else if (b > 0 && iFrom == 0) {
+				rebase(b, bases);
+			}
+		}
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+		mergeWithSuccessor(Math.min(bFrom, fIndex.fNrBlocks - 1));
+	}
+	
+	/** Delete all marks. */
+	public void clear() {
+		fPositions = new int[fcInitialNrBlocks][];
+		fValues = new int[fcInitialNrBlocks][];
+		fIndex = new REDBlockIndex(fcInitialNrBlocks);
+		fPositions[0] = new int[fcBlockCapacity];
+		fValues[0] = new int[fcBlockCapacity];
+		fIndex.fNrBlocks = 1;
+		fSize = 0;
+		fIndex.rebuild();
+	}
+	
+	/** Dispose mark tree.
+	  * All marks are deleted and the tree is unregistered from the text, so it is no longer updated upon text changes.
+	  * The tree must not be used afterwards.
+	  */
+	public void dispose() {
+		clear();
+		if (fEditor != null) {
+			fEditor.releaseMarkTree(this);
+			fEditor = null;
+		}
+	}
+	
+	/** Get estimated heap footprint.
+	  * @return The estimated number of bytes this mark tree occupies on heap.
+	  */
+	public long getFootprint() {
+		return (long) fIndex.fNrBlocks * (fcBlockCapacity + fcBlockOverhead) * 2 * 4 + (long) fPositions.length * 7 * 4;
+	}
+	
+	// --- text event interface
+	public int getListenerLevel() {
+		return REDTextEventListener.RLL_VIEW;
+	}
+
+	public void afterInsert(int from, int to) {
+		int b = fIndex.findBlockByPosition(from);
+		int [] positions = fPositions[b];
+		int delta = to - from;
+		for (int i = REDBlockIndex.upperBound(positions, fIndex.fCounts[b], from - fIndex.prefixSpan(b)); i < fIndex.fCounts[b]; i++) {
+			positions[i] += delta;
+		}
+		if (b + 1 < fIndex.fNrBlocks) {
+			fIndex.addSpan(b, delta);
+		}
+	}
+	
+	public void afterDelete(int from, int to) {
+		int bFrom = fIndex.findBlockByPosition(from);
+		int bTo = fIndex.findBlockByPosition(to);
+		if (bFrom == bTo) {	// first mark of block is <= from => stays where it is
+			int base = fIndex.prefixSpan(bFrom);
+			int [] positions = fPositions[bFrom];
+			for (int i = REDBlockIndex.upperBound(positions, fIndex.fCounts[bFrom], from - base); i < fIndex.fCounts[bFrom]; i++) {
+				positions[i] = positions[i] + base > to ? positions[i] + from - to : from - base;
+			}
+			if (bFrom + 1 < fIndex.fNrBlocks) {
+				fIndex.addSpan(bFrom, from - to);
+			}
+			return;
+		}
+		
+		// marks of blocks ]bFrom, bTo] are moved to from, except those behind to
+		int [] bases = fIndex.computeBases();
+		for (int b = bFrom; b <= bTo; b++) {
+			int [] positions = fPositions[b];
+			int newBase = b == bFrom ? bases[b] : from;
+			for (int i = 0; i < fIndex.fCounts[b]; i++) {
+				int pos = bases[b] + positions[i];
+				if (pos > to) {
+					pos += from - to;
+				}
+				else if (pos > from) {
+					pos = from;
+				}
+				positions[i] = pos - newBase;
+			}
+			bases[b] = newBase;
+		}
+		for (int b = bTo + 1; b < fIndex.fNrBlocks; b++) {
+			bases[b] += from - to;
+		}
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+	}
+	
+	public void beforeInsert(int from, int to) {}
+	public void beforeDelete(int from, int to) {}
+	public void beforeStyleChange(int from, int to, REDStyle newStyle) {}
+	public void afterStyleChange(int from, int to, REDStyle newStyle) {}
+	public void beforeLoad() {}
+	public void afterLoad() {}
+	public void beforeSave() {}
+	public void afterSave() {}	
+	public void beforeSaveInto(String filename) {}
+	public void afterSaveInto(String filename) {}	
+	public void beforeStyleBatchNotification() {}
+	public void afterStyleBatchNotification() {}
+	
+	// --- block operations
+	
+	private int normalize(int pos) {
+		return Math.max(0, Math.min(pos, fEditor.length()));
+	}
+	
+	/** Lay out sorted marks onto new blocks. */
+	private void layout(int [] positions, int [] values, int size) {
+		int nrBlocks = Math.max(1, (size + fcBlockFill - 1) / fcBlockFill);
+		int cap = Math.max(fcInitialNrBlocks, nrBlocks);
+		fPositions = new int[cap][];
+		fValues = new int[cap][];
+		fIndex = new REDBlockIndex(cap);
+		int [] bases = new int[cap];
+		int s = 0;
+		for (int b = 0; b < nrBlocks; b++) {
+			int len = Math.min(fcBlockFill, size - s);
+			int base = b == 0 ? 0 : positions[s];
+			fPositions[b] = new int[fcBlockCapacity];
+			fValues[b] = new int[fcBlockCapacity];
+			for (int i = 0; i < len; i++, s++) {
+				fPositions[b][i] = positions[s] - base;
+				fValues[b][i] = values[s];
+			}
+			fIndex.fCounts[b] = len;
+			bases[b] = base;
+		}
+		fIndex.fNrBlocks = nrBlocks;
+		fSize = size;
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+	}
+	
+	/** Split full block b into two halves. */
+	private void split(int b, int base) {
+		int [] bases = fIndex.computeBases();
+		ensureBlockCapacity(fIndex.fNrBlocks + 1);
+		if (bases.length < fPositions.length) {
+			int [] newBases = new int[fPositions.length];
+			System.arraycopy(bases, 0, newBases, 0, fIndex.fNrBlocks);
+			bases = newBases;
+		}
+		System.arraycopy(fPositions, b + 1, fPositions, b + 2, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(fValues, b + 1, fValues, b + 2, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(fIndex.fCounts, b + 1, fIndex.fCounts, b + 2, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(bases, b + 1, bases, b + 2, fIndex.fNrBlocks - b - 1);
+		int half = fIndex.fCounts[b] / 2;
+		int len = fIndex.fCounts[b] - half;
+		int rebase = fPositions[b][half];
+		fPositions[b + 1] = new int[fcBlockCapacity];
+		fValues[b + 1] = new int[fcBlockCapacity];
+		for (int i = 0; i < len; i++) {
+			fPositions[b + 1][i] = fPositions[b][half + i] - rebase;
+		}
+		System.arraycopy(fValues[b], half, fValues[b + 1], 0, len);
+		fIndex.fCounts[b] = half;
+		fIndex.fCounts[b + 1] = len;
+		bases[b + 1] = base + rebase;
+		fIndex.fNrBlocks++;
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+	}
+	
+	/** Remove marks [from, to[ of block b. */
+	private void remove(int b, int from, int to) {
+		System.arraycopy(fPositions[b], to, fPositions[b], from, fIndex.fCounts[b] - to);
+		System.arraycopy(fValues[b], to, fValues[b], from, fIndex.fCounts[b] - to);
+		fIndex.fCounts[b] -= to - from;
+		fSize -= to - from;
+	}
+	
+	/** Make first mark of block b the base of the block. */
+	private void rebase(int b, int [] bases) {
+		int [] positions = fPositions[b];
+		int rebase = positions[0];
+		for (int i = 0; i < fIndex.fCounts[b]; i++) {
+			positions[i] -= rebase;
+		}
+		bases[b] += rebase;
+	}
+	
+	/** Remove empty block b; spans and index have to be rebuilt by caller. */
+	private void removeBlock(int b, int [] bases) {
+		System.arraycopy(fPositions, b + 1, fPositions, b, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(fValues, b + 1, fValues, b, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(fIndex.fCounts, b + 1, fIndex.fCounts, b, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(bases, b + 1, bases, b, fIndex.fNrBlocks - b - 1);
+		fIndex.fNrBlocks--;
+		fPositions[fIndex.fNrBlocks] = null;
+		fValues[fIndex.fNrBlocks] = null;
+		if (b == 0 && fIndex.fNrBlocks > 0) {	// block 0 always starts at 0
+			for (int i = 0; i < fIndex.fCounts[0]; i++) {
+				fPositions[0][i] += bases[0];
+			}
+			bases[0] = 0;
+		}
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+	}
+	
+	/** Merge block b with its successor, if both are small enough. */
+	private void mergeWithSuccessor(int b) {
+		if (b + 1 >= fIndex.fNrBlocks || fIndex.fCounts[b] + fIndex.fCounts[b + 1] > fcBlockFill || fIndex.fCounts[b] > fcBlockMinFill && fIndex.fCounts[b + 1] > fcBlockMinFill) {
+			return;
+		}
+		int [] bases = fIndex.computeBases();
+		int dist = bases[b + 1] - bases[b];
+		for (int i = 0; i < fIndex.fCounts[b + 1]; i++) {
+			fPositions[b][fIndex.fCounts[b] + i] = fPositions[b + 1][i] + dist;
+		}
+		System.arraycopy(fValues[b + 1], 0, fValues[b], fIndex.fCounts[b], fIndex.fCounts[b + 1]);
+		fIndex.fCounts[b] += fIndex.fCounts[b + 1];
+		fIndex.fCounts[b + 1] = 0;
+		removeBlock(b + 1, bases);
+	}
+	
+	/** Make room for at least n blocks. */
+	private void ensureBlockCapacity(int n) {
+		if (n <= fPositions.length) {
+			return;
+		}
+		int cap = Math.max(n, fPositions.length * 2);
+		int [][] positions = new int[cap][];
+		System.arraycopy(fPositions, 0, positions, 0, fIndex.fNrBlocks);
+		fPositions = positions;
+		int [][] values = new int[cap][];
+		System.arraycopy(fValues, 0, values, 0, fIndex.fNrBlocks);
+		fValues = values;
+		fIndex.setCapacity(cap);
+	}
+	
+	REDEditor fEditor;
+	private int [][] fPositions;	// mark positions relative to the first mark of their block (block 0: relative to 0)
+	private int [][] fValues;	// mark values
+	private REDBlockIndex fIndex;	// mark counts and spans of the blocks
+	private int fSize;
+	
+	private static final int fcInitialNrBlocks = 4;
+	static final int fcBlockCapacity = 512;
+	static final int fcBlockFill = fcBlockCapacity * 3 / 4;
+	static final int fcBlockMinFill = fcBlockCapacity / 4;
+	private static final int fcBlockOverhead = 4;	// array header
+}
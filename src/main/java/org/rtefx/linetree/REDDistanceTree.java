@@ -27,17 +27,27 @@ package org.rtefx.linetree;
 public class REDDistanceTree {
 	public REDDistanceTree(REDDistanceTreeFactory factory) {
 		fFactory = factory;
-		fRoot = fFactory.createNode();
+		fRoot = fFactory.createRoot(this);
 		fNrNodes = 1;
+		fFindData = fFactory.createEdgeData();
 	}
 	
 	public int getNrNodes() {
 		return fNrNodes;
 	}
 	
-	protected REDEdgeData modifyEdgesAfterInsertion(REDEdgeData pos, REDEdgeDataComparison comp, REDEdgeData data) {
-		REDEdgeData modData = fFactory.createEdgeData();
-		REDNode node = fRoot.findNode(pos, comp, modData);
+	/** Move all nodes behind pos by data.
+	  * This method does not allocate any objects.
+	  * @param pos Nodes with a position > pos are moved
+	  * @param comp The comparison algorithm to be used to compare positions.
+	  * @param data The distance to move nodes by
+	  * @return The node found for pos. All edges whose distance has changed lie on the path from this node to the root or 
+	  * belong to its right son.
+	  */
+	protected REDNode modifyEdgesAfterInsertion(REDEdgeData pos, REDEdgeDataComparison comp, REDEdgeData data) {
+		fFindData.sub(fFindData);	// reset to 0
+		REDNode node = fRoot.findNode(pos, comp, fFindData);
+		REDNode retVal = node;
 		boolean dirLeft = false;
 		if (node.fRight != null) {
 			node.fRight.fData.add(data);
@@ -49,10 +59,354 @@ public class REDDistanceTree {
 			}
 			node = node.fUp.fFather;
 		}
-		return modData;
+		return retVal;
+	}
+	
+	/** Delete all nodes within a range in one go.
+	  * Instead of deleting node by node from the root, the range is cut out by splitting the subtrees of the root twice and the 
+	  * remaining parts are joined again. This takes O(log n) plus the time to release the k deleted nodes.
+	  * Deleted nodes are detached from the tree (i.e. their edges are set to null).
+	  * @param from Nodes with position > from are deleted
+	  * @param to Nodes with position <= to are deleted
+	  * @param comp The comparison algorithm to be used to compare positions.
+	  * @return The number of deleted nodes.
+	  * @pre from != null && to != null && comp != null
+	  */
+	protected int deleteRange(REDEdgeData from, REDEdgeData to, REDEdgeDataComparison comp) {
+		if (!comp.lt(from, to)) {
+			return 0;
+		}
+		REDEdgeData rootPos = fFactory.createEdgeData();
+		Part left = fRoot.fLeft == null ? null : new Part(fRoot.fLeft.fSon, diff(rootPos, fRoot.fLeft.fData), height(fRoot.fLeft.fSon));
+		Part right = fRoot.fRight == null ? null : new Part(fRoot.fRight.fSon, sum(rootPos, fRoot.fRight.fData), height(fRoot.fRight.fSon));
+		int [] nrDeleted = new int[1];
+		left = deleteRange(left, from, to, comp, nrDeleted);
+		right = deleteRange(right, from, to, comp, nrDeleted);
+		link(fRoot, rootPos, left, true);
+		link(fRoot, rootPos, right, false);
+		fRoot.fBalance = height(left) - height(right);
+		fRoot.updateAugmentation();
+		return nrDeleted[0];
+	}
+	
+	/** Insert several new nodes in one go.
+	  * If the number of new nodes is small compared to the size of the tree, the nodes are inserted one by one. Otherwise the 
+	  * new nodes are merged with the nodes of the tree and both subtrees of the root are rebuilt in linear time. Nodes already
+	  * in the tree stay valid in either case; at equal positions new nodes are placed behind existing ones.
+	  * @param nodes The nodes to insert. They must have been created by the factory of this tree and not been linked yet.
+	  * @param positions The absolute positions of the nodes in ascending order.
+	  * @param n The number of nodes to take from nodes and positions.
+	  * @param comp The comparison algorithm to be used to compare positions.
+	  * @pre n == 0 || nodes.length >= n && positions.length >= n
+	  */
+	protected void insertSorted(REDNode [] nodes, REDEdgeData [] positions, int n, REDEdgeDataComparison comp) {
+		int h = Math.max(height(fRoot.fLeft == null ? null : fRoot.fLeft.fSon), height(fRoot.fRight == null ? null : fRoot.fRight.fSon));
+		long estimatedSize = h == 0 ? 0 : 1L << Math.min(h - 1, 40);
+		if ((long) n * (h + 1) < estimatedSize + n) {	// one by one is cheaper
+			for (int i = 0; i < n; i++) {
+				fRoot.insert(nodes[i], (REDEdgeData) positions[i].clone(), fFactory.createEdgeData(), comp, fFactory);
+			}
+			return;
+		}
+		
+		REDEdgeData rootPos = fFactory.createEdgeData();
+		int split = 0;
+		while (split < n && !comp.lt(rootPos, positions[split])) {
+			split++;
+		}
+		Part left = rebuild(fRoot.fLeft == null ? null : fRoot.fLeft.fSon, diff(rootPos, fRoot.fLeft == null ? rootPos : fRoot.fLeft.fData), nodes, positions, 0, split, comp);
+		Part right = rebuild(fRoot.fRight == null ? null : fRoot.fRight.fSon, sum(rootPos, fRoot.fRight == null ? rootPos : fRoot.fRight.fData), nodes, positions, split, n, comp);
+		link(fRoot, rootPos, left, true);
+		link(fRoot, rootPos, right, false);
+		fRoot.fBalance = height(left) - height(right);
+		fRoot.updateAugmentation();
+	}
+	
+	/** Merge the nodes of subtree with new nodes [from, to[ and build a perfectly balanced subtree from them. */
+	private Part rebuild(REDNode subtree, REDEdgeData subtreePos, REDNode [] nodes, REDEdgeData [] positions, int from, int to, REDEdgeDataComparison comp) {
+		java.util.ArrayList<REDNode> oldNodes = new java.util.ArrayList<>();
+		java.util.ArrayList<REDEdgeData> oldPositions = new java.util.ArrayList<>();
+		collectInOrder(subtree, subtreePos, oldNodes, oldPositions);
+		int size = oldNodes.size() + to - from;
+		REDNode [] allNodes = new REDNode[size];
+		REDEdgeData [] allPositions = new REDEdgeData[size];
+		int o = 0, i = from;
+		for (int x = 0; x < size; x++) {
+			if (i >= to || o < oldNodes.size() && comp.leq(oldPositions.get(o), positions[i])) {
+				allNodes[x] = oldNodes.get(o);
+				allPositions[x] = oldPositions.get(o++);
+			}
+			else {
+				allNodes[x] = nodes[i];
+				allPositions[x] = positions[i++];
+			}
+		}
+		return build(allNodes, allPositions, 0, size);
+	}
+	
+	/** Collect the nodes of subtree and their absolute positions in order. */
+	private static void collectInOrder(REDNode node, REDEdgeData pos, java.util.ArrayList<REDNode> nodes, java.util.ArrayList<REDEdgeData> positions) {
+		if (node == null) {
+			return;
+		}
+		if (node.fLeft != null) {
+			collectInOrder(node.fLeft.fSon, diff(pos, node.fLeft.fData), nodes, positions);
+		}
+		nodes.add(node);
+		positions.add(pos);
+		if (node.fRight != null) {
+			collectInOrder(node.fRight.fSon, sum(pos, node.fRight.fData), nodes, positions);
+		}
+	}
+	
+	/** Build perfectly balanced subtree from nodes [from, to[. */
+	private Part build(REDNode [] nodes, REDEdgeData [] positions, int from, int to) {
+		if (from >= to) {
+			return null;
+		}
+		int mid = (from + to) >>> 1;
+		return link(build(nodes, positions, from, mid), nodes[mid], positions[mid], build(nodes, positions, mid + 1, to));
+	}
+	
+	/** Remove all nodes except the root in one go.
+	  * Removed nodes are detached from the tree (i.e. their edges are set to null).
+	  */
+	protected void clear() {
+		release(fRoot.fLeft == null ? null : fRoot.fLeft.fSon);
+		release(fRoot.fRight == null ? null : fRoot.fRight.fSon);
+		fRoot.fLeft = null; 
+		fRoot.fRight = null;
+		fRoot.fBalance = 0;
+		fRoot.updateAugmentation();
+		fNrNodes = 1;
+	}
+	
+	// --- split & join of detached subtrees (cf. AVL join based algorithms)
+	
+	/** A detached subtree together with the absolute position and the height of its root node. */
+	private static final class Part {
+		Part(REDNode node, REDEdgeData pos, int height) {
+			fNode = node;
+			fPos = pos;
+			fHeight = height;
+		}
+		REDNode fNode;
+		REDEdgeData fPos;
+		int fHeight;
+	}
+	
+	private Part deleteRange(Part t, REDEdgeData from, REDEdgeData to, REDEdgeDataComparison comp, int [] nrDeleted) {
+		Part [] outer = split(t, from, comp);
+		Part [] inner = split(outer[1], to, comp);
+		nrDeleted[0] += release(inner[0] == null ? null : inner[0].fNode);
+		return join(outer[0], inner[1]);
+	}
+	
+	/** Split subtree into nodes with position <= key and nodes with position > key.
+	  * @return array of two subtrees (each may be null)
+	  */
+	private Part [] split(Part t, REDEdgeData key, REDEdgeDataComparison comp) {
+		if (t == null) {
+			return new Part[2];
+		}
+		Part l = leftOf(t);
+		Part r = rightOf(t);
+		Part [] retVal;
+		if (comp.leq(t.fPos, key)) {
+			retVal = split(r, key, comp);
+			retVal[0] = join(l, t.fNode, t.fPos, retVal[0]);
+		}
+		else {
+			retVal = split(l, key, comp);
+			retVal[1] = join(retVal[1], t.fNode, t.fPos, r);
+		}
+		return retVal;
+	}
+	
+	/** Join two subtrees, where all nodes of l are in front of all nodes of r. */
+	private Part join(Part l, Part r) {
+		if (l == null) {
+			return r;
+		}
+		if (r == null) {
+			return l;
+		}
+		Part first = new Part(null, null, 0);
+		Part rest = splitFirst(r, first);
+		return join(l, first.fNode, first.fPos, rest);
+	}
+	
+	/** Remove first node from subtree t and store it into first. 
+	  * @return the remaining subtree
+	  */
+	private Part splitFirst(Part t, Part first) {
+		Part l = leftOf(t);
+		if (l == null) {
+			first.fNode = t.fNode;
+			first.fPos = t.fPos;
+			return rightOf(t);
+		}
+		return join(splitFirst(l, first), t.fNode, t.fPos, rightOf(t));
+	}
+	
+	/** Join two subtrees using node k at position kPos as glue; all nodes of l are in front of k, all nodes of r behind k. */
+	private Part join(Part l, REDNode k, REDEdgeData kPos, Part r) {
+		int hl = height(l);
+		int hr = height(r);
+		if (hl > hr + 1) {
+			return joinRight(l, k, kPos, r);
+		}
+		if (hr > hl + 1) {
+			return joinLeft(l, k, kPos, r);
+		}
+		return link(l, k, kPos, r);
+	}
+	
+	private Part joinRight(Part l, REDNode k, REDEdgeData kPos, Part r) {
+		Part ll = leftOf(l);
+		Part c = rightOf(l);
+		if (height(c) <= height(r) + 1) {
+			Part t = link(c, k, kPos, r);
+			if (t.fHeight <= height(ll) + 1) {
+				return link(ll, l.fNode, l.fPos, t);
+			}
+			return rotateLeft(link(ll, l.fNode, l.fPos, rotateRight(t)));
+		}
+		Part t = joinRight(c, k, kPos, r);
+		Part retVal = link(ll, l.fNode, l.fPos, t);
+		if (t.fHeight <= height(ll) + 1) {
+			return retVal;
+		}
+		return rotateLeft(retVal);
+	}
+	
+	private Part joinLeft(Part l, REDNode k, REDEdgeData kPos, Part r) {
+		Part c = leftOf(r);
+		Part rr = rightOf(r);
+		if (height(c) <= height(l) + 1) {
+			Part t = link(l, k, kPos, c);
+			if (t.fHeight <= height(rr) + 1) {
+				return link(t, r.fNode, r.fPos, rr);
+			}
+			return rotateRight(link(rotateLeft(t), r.fNode, r.fPos, rr));
+		}
+		Part t = joinLeft(l, k, kPos, c);
+		Part retVal = link(t, r.fNode, r.fPos, rr);
+		if (t.fHeight <= height(rr) + 1) {
+			return retVal;
+		}
+		return rotateRight(retVal);
+	}
+	
+	private Part rotateLeft(Part a) {
+		Part b = rightOf(a);
+		Part left = leftOf(a);
+		Part middle = leftOf(b);
+		Part right = rightOf(b);
+		return link(link(left, a.fNode, a.fPos, middle), b.fNode, b.fPos, right);
+	}
+	
+	private Part rotateRight(Part b) {
+		Part a = leftOf(b);
+		Part left = leftOf(a);
+		Part middle = rightOf(a);
+		Part right = rightOf(b);
+		return link(left, a.fNode, a.fPos, link(middle, b.fNode, b.fPos, right));
+	}
+	
+	/** Make l and r the sons of k. */
+	private Part link(Part l, REDNode k, REDEdgeData kPos, Part r) {
+		link(k, kPos, l, true);
+		link(k, kPos, r, false);
+		int hl = height(l);
+		int hr = height(r);
+		k.fBalance = hl - hr;
+		k.fUp = null;
+		k.updateAugmentation();
+		return new Part(k, kPos, Math.max(hl, hr) + 1);
+	}
+	
+	/** Make son the left or right son of father. */
+	private static void link(REDNode father, REDEdgeData fatherPos, Part son, boolean left) {
+		REDEdge edge = null;
+		if (son != null) {
+			edge = new REDEdge(left ? diff(fatherPos, son.fPos) : diff(son.fPos, fatherPos), father, son.fNode, left);
+			son.fNode.fUp = edge;
+		}
+		if (left) {
+			father.fLeft = edge;
+		}
+		else {
+			father.fRight = edge;
+		}
+	}
+	
+	/** Get left son of t; the balance of t may be off by one during rotations. */
+	private static Part leftOf(Part t) {
+		REDEdge e = t.fNode.fLeft;
+		if (e == null) {
+			return null;
+		}
+		return new Part(e.fSon, diff(t.fPos, e.fData), t.fHeight - 1 + Math.min(t.fNode.fBalance, 0));
+	}
+	
+	private static Part rightOf(Part t) {
+		REDEdge e = t.fNode.fRight;
+		if (e == null) {
+			return null;
+		}
+		return new Part(e.fSon, sum(t.fPos, e.fData), t.fHeight - 1 - Math.max(t.fNode.fBalance, 0));
+	}
+	
+	private static int height(Part t) {
+		return t == null ? 0 : t.fHeight;
+	}
+	
+	private static int height(REDNode node) {
+		int h = 0;
+		while (node != null) {
+			h++;
+			REDEdge e = node.fBalance > 0 ? node.fLeft : node.fRight;
+			if (e == null) {	// balance 0 or leaf
+				e = node.fLeft;
+			}
+			node = e == null ? null : e.fSon;
+		}
+		return h;
+	}
+	
+	/** Detach all nodes of subtree.
+	  * @return number of detached nodes
+	  */
+	private static int release(REDNode node) {
+		if (node == null) {
+			return 0;
+		}
+		int retVal = 1;
+		if (node.fLeft != null) {
+			retVal += release(node.fLeft.fSon);
+		}
+		if (node.fRight != null) {
+			retVal += release(node.fRight.fSon);
+		}
+		node.fUp = null; node.fLeft = null; node.fRight = null;
+		return retVal;
+	}
+	
+	private static REDEdgeData sum(REDEdgeData a, REDEdgeData b) {
+		REDEdgeData retVal = (REDEdgeData) a.clone();
+		retVal.add(b);
+		return retVal;
+	}
+	
+	private static REDEdgeData diff(REDEdgeData a, REDEdgeData b) {
+		REDEdgeData retVal = (REDEdgeData) a.clone();
+		retVal.sub(b);
+		return retVal;
 	}
 
 	REDNode fRoot;
 	REDDistanceTreeFactory fFactory;
 	int fNrNodes;
+	private REDEdgeData fFindData;	// scratch data for modifyEdgesAfterInsertion
 }
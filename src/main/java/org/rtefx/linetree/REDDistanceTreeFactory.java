@@ -24,5 +24,9 @@ package org.rtefx.linetree;
   */
 public interface REDDistanceTreeFactory {
 	public REDNode createNode();
+	/** Create root sentinel of a tree.
+	  * Every node linked into the tree reaches the root via its edges, so the root may keep the tree alive as long as any of its nodes is referenced.
+	  */
+	public REDNode createRoot(REDDistanceTree tree);
 	public REDEdgeData createEdgeData();
 }
@@ -0,0 +1,185 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+/** An interval in an interval tree.
+  * Intervals float around in the text like a pair of marks (cf. REDMark) would: For an interval [s, e] and insertions of 
+  * length l at positions y the following results hold:
+  * <UL>
+  * <LI> y < s: s = s + l, e = e + l;
+  * <LI> s <= y < e: e = e + l;
+  * <LI> y >= e: s and e stay the same
+  * </UL>
+  * Deleting ]from, to] moves both boundaries within the deleted range to from.
+  * @author rli@chello.at
+  * @invariant fLength >= 0 || fUp == null
+  * @tier API
+  */ 
+public class REDInterval extends REDNode {
+	public REDInterval() {
+		super();
+		fMaxEnd = Integer.MIN_VALUE;
+	}
+	
+	public void setValue(Object value) {
+		fValue = value;
+	}
+	
+	public Object getValue() {
+		return fValue;
+	}
+	
+	/** Get start position of interval.
+	  * This method does not allocate any objects and only reads the tree.
+	  */
+	public int getStart() {
+		int pos = 0;
+		REDEdge up = fUp;
+		while (up != null) {
+			if (up.isLeftEdge()) {
+				pos -= ((REDMarkTreeData) up.fData).fPosition;
+			}
+			else {
+				pos += ((REDMarkTreeData) up.fData).fPosition;
+			}
+			up = up.fFather.fUp;
+		}
+		return pos;
+	}
+	
+	/** Get end position of interval. */
+	public int getEnd() {
+		return getStart() + fLength;
+	}
+	
+	/** Get length of interval, i.e. getEnd() - getStart(). */
+	public int getLength() {
+		return fLength;
+	}
+	
+	/** Recompute the maximum end position within the subtree of this interval. */
+	protected void updateAugmentation() {
+		int max = fLength < 0 ? Integer.MIN_VALUE : fLength;
+		if (fLeft != null) {
+			max = Math.max(max, shift(((REDInterval) fLeft.fSon).fMaxEnd, -((REDMarkTreeData) fLeft.fData).fPosition));
+		}
+		if (fRight != null) {
+			max = Math.max(max, shift(((REDInterval) fRight.fSon).fMaxEnd, ((REDMarkTreeData) fRight.fData).fPosition));
+		}
+		fMaxEnd = max;
+	}
+	
+	private static int shift(int maxEnd, int dist) {
+		return maxEnd == Integer.MIN_VALUE ? maxEnd : maxEnd + dist;
+	}
+	
+	/** Visit intervals with start <= to and end >= from in order of their start. Recursive method.
+	  * Subtrees ending in front of from are skipped.
+	  * @return false, if the visitor wants to stop
+	  */
+	boolean visit(int myPos, REDIntervalVisitor visitor, int from, int to) {
+		if (fMaxEnd == Integer.MIN_VALUE || myPos + fMaxEnd < from) {
+			return true;
+		}
+		if (fLeft != null) {
+			if (!((REDInterval) fLeft.fSon).visit(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, visitor, from, to)) {
+				return false;
+			}
+		}
+		if (myPos > to) {
+			return true;
+		}
+		if (fLength >= 0 && myPos + fLength >= from) {
+			if (!visitor.visitInterval(this, myPos, myPos + fLength)) {
+				return false;
+			}
+		}
+		if (fRight != null) {
+			return ((REDInterval) fRight.fSon).visit(myPos + ((REDMarkTreeData) fRight.fData).fPosition, visitor, from, to);
+		}
+		return true;
+	}
+	
+	/** Grow intervals with start <= pos < end by len. Recursive method. */
+	void grow(int myPos, int pos, int len) {
+		if (fMaxEnd == Integer.MIN_VALUE || myPos + fMaxEnd <= pos) {
+			return;
+		}
+		if (fLeft != null) {
+			((REDInterval) fLeft.fSon).grow(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, pos, len);
+		}
+		if (myPos <= pos) {
+			if (fLength >= 0 && myPos + fLength > pos) {
+				fLength += len;
+			}
+			if (fRight != null) {
+				((REDInterval) fRight.fSon).grow(myPos + ((REDMarkTreeData) fRight.fData).fPosition, pos, len);
+			}
+		}
+		updateAugmentation();
+	}
+	
+	/** Move interval boundaries within ]from, to] to from. Recursive method.
+	  * Only start positions are moved; moving the intervals behind to is up to the caller.
+	  */
+	void moveDeleted(int myPos, int from, int to) {
+		if (fMaxEnd == Integer.MIN_VALUE || myPos + fMaxEnd <= from) {
+			return;
+		}
+		if (fLeft != null) {
+			((REDInterval) fLeft.fSon).moveDeleted(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, from, to);
+		}
+		if (myPos <= to && fRight != null) {	
+			((REDInterval) fRight.fSon).moveDeleted(myPos + ((REDMarkTreeData) fRight.fData).fPosition, from, to);
+		}
+		if (myPos <= to && fLength >= 0) {
+			int end = myPos + fLength;
+			fLength = collapse(end, from, to) - collapse(myPos, from, to);
+		}
+		if (from < myPos && myPos <= to && fUp != null) {	// sons have been handled with old position => move afterwards
+			int dist = from - myPos;
+			if (fUp.isLeftEdge()) {
+				((REDMarkTreeData) fUp.fData).fPosition -= dist;
+			}
+			else {
+				((REDMarkTreeData) fUp.fData).fPosition += dist;
+			}
+			if (fLeft != null) {
+				((REDMarkTreeData) fLeft.fData).fPosition += dist;
+			}
+			if (fRight != null) {
+				((REDMarkTreeData) fRight.fData).fPosition -= dist;
+			}
+		}
+		updateAugmentation();
+	}
+	
+	private static int collapse(int pos, int from, int to) {
+		if (pos <= from) {
+			return pos;
+		}
+		if (pos <= to) {
+			return from;
+		}
+		return pos - (to - from);
+	}
+	
+	Object fValue;
+	int fLength = -1;	// end - start; < 0 for the root of the tree, which is no interval
+	int fMaxEnd;	// maximum end position within the subtree, relative to the start of this interval; Integer.MIN_VALUE if empty
+}
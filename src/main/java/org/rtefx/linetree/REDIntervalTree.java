@@ -0,0 +1,247 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import java.util.ArrayList;
+
+import org.rtefx.REDEditor;
+import org.rtefx.REDStyle;
+import org.rtefx.REDTextEventListener;
+
+/** Interval tree data structure. 
+  * Keeps intervals of text which shift with text changes (cf. REDInterval) and finds the intervals overlapping a range or 
+  * containing a position. Intervals are ordered by their start; each subtree knows the maximum end of its intervals, so 
+  * subtrees which end in front of a queried range are skipped. 
+  * @author rli@chello.at
+  * @invariant fRoot instanceof REDInterval
+  * @tier API
+  */
+public class REDIntervalTree extends REDDistanceTree implements REDTextEventListener {
+	public REDIntervalTree(REDEditor editor) {
+		super(new REDIntervalTreeFactory());
+		fEditor = editor;
+	}
+	
+	/** Create interval.
+	  * @param from The start of the interval; is normalized to be in range [0, length of text].
+	  * @param to The end of the interval; is normalized to be in range [from, length of text].
+	  * @param value The value of the interval.
+	  * @return The new interval.
+	  */
+	public REDInterval createInterval(int from, int to, Object value) {
+		REDInterval interval = (REDInterval) fFactory.createNode();
+		from = normalize(from, 0);
+		interval.fLength = normalize(to, from) - from;
+		interval.fValue = value;
+		getRoot().insert(interval, new REDMarkTreeData(from), new REDMarkTreeData(), REDMarkTreeData.fgComparison, fFactory);
+		fNrIntervals++;
+		return interval;
+	}
+	
+	/** Create several intervals at once.
+	  * For many intervals this is much faster than calling createInterval for each of them, as the tree is rebuilt in linear time.
+	  * @param from The starts of the intervals in ascending order. Starts are normalized to be in range [0, length of text].
+	  * @param to The ends of the intervals. Ends are normalized to be in range [start, length of text].
+	  * @param values The values of the intervals. May be null, in which case all intervals get null as value.
+	  * @param n The number of intervals to create.
+	  * @return The new intervals in the order of from.
+	  * @pre n == 0 || from.length >= n && to.length >= n && (values == null || values.length >= n)
+	  */
+	public REDInterval [] createIntervals(int [] from, int [] to, Object [] values, int n) {
+		REDInterval [] intervals = new REDInterval[n];
+		REDMarkTreeData [] data = new REDMarkTreeData[n];
+		for (int i = 0; i < n; i++) {
+			intervals[i] = (REDInterval) fFactory.createNode();
+			int start = normalize(from[i], 0);
+			intervals[i].fLength = normalize(to[i], start) - start;
+			intervals[i].fValue = values == null ? null : values[i];
+			data[i] = new REDMarkTreeData(start);
+		}
+		insertSorted(intervals, data, n, REDMarkTreeData.fgComparison);
+		fNrIntervals += n;
+		return intervals;
+	}
+	
+	private int normalize(int pos, int min) {
+		return Math.max(min, Math.min(pos, fEditor.length()));
+	}
+	
+	/** Change end of interval.
+	  * @param to The new end; is normalized to be in range [start of interval, length of text].
+	  */
+	public void setEnd(REDInterval interval, int to) {
+		int start = interval.getStart();
+		interval.fLength = normalize(to, start) - start;
+		interval.updateAugmentationUpwards();
+	}
+	
+	public void deleteInterval(REDInterval interval) {
+		interval.delete(fFactory);
+		fNrIntervals--;
+	}
+	
+	/** Delete all intervals starting within ]from, to]. */
+	public void deleteIntervals(int from, int to) {
+		fNrIntervals -= deleteRange(new REDMarkTreeData(from), new REDMarkTreeData(to), REDMarkTreeData.fgComparison);
+	}
+	
+	/** Delete all intervals.
+	  * The tree stays registered with the text and may be reused, e.g. after a file has been loaded.
+	  */
+	public void clear() {
+		super.clear();
+		fNrIntervals = 0;
+	}
+	
+	/** Dispose interval tree.
+	  * All intervals are deleted and the tree is unregistered from the text, so it is no longer updated upon text changes.
+	  * The tree must not be used afterwards.
+	  */
+	public void dispose() {
+		clear();
+		if (fEditor != null) {
+			fEditor.releaseIntervalTree(this);
+			fEditor = null;
+		}
+	}
+	
+	public int getNrIntervals() {
+		return fNrIntervals;
+	}
+	
+	/** Visit intervals overlapping a range in order of their start.
+	  * @param from Start of range
+	  * @param to End of range
+	  * @param visitor The visitor to call for each interval [s, e] with s <= to and e >= from.
+	  * @pre visitor != null
+	  */
+	public void visitIntervals(int from, int to, REDIntervalVisitor visitor) {
+		getRoot().visit(0, visitor, from, to);
+	}
+	
+	/** Collect intervals overlapping a range into a vector.
+	  * @param from Start of range
+	  * @param to End of range
+	  * @param reuse If this parameter is non-null, the passed ArrayList is reused. Existing elements in reuse are not removed!
+	  * @return A ArrayList containing the intervals [s, e] with s <= to and e >= from in order of their start.
+	  */
+	public ArrayList<REDInterval> collectIntervals(int from, int to, ArrayList<REDInterval> reuse) {
+		final ArrayList<REDInterval> retVal = reuse == null ? new ArrayList<REDInterval>() : reuse;
+		visitIntervals(from, to, new REDIntervalVisitor() {
+			public boolean visitInterval(REDInterval interval, int start, int end) {
+				retVal.add(interval);
+				return true;
+			}
+		});
+		return retVal;
+	}
+	
+	/** Find first interval overlapping a range.
+	  * @return The interval [s, e] with s <= to and e >= from with the smallest start; null if there is no such interval.
+	  */
+	public REDInterval findInterval(int from, int to) {
+		fFinder.fFound = null;
+		visitIntervals(from, to, fFinder);
+		REDInterval retVal = fFinder.fFound;
+		fFinder.fFound = null;
+		return retVal;
+	}
+	
+	/** Find first interval containing a position.
+	  * @return The interval [s, e] with s <= pos <= e with the smallest start; null if there is no such interval.
+	  */
+	public REDInterval findInterval(int pos) {
+		return findInterval(pos, pos);
+	}
+	
+	REDInterval getRoot() {
+		return (REDInterval) fRoot;
+	}
+	
+	/** Visitor to stop at first interval. */
+	static class Finder implements REDIntervalVisitor {
+		public boolean visitInterval(REDInterval interval, int start, int end) {
+			fFound = interval;
+			return false;
+		}
+		REDInterval fFound;
+	}
+	
+	// text event interface
+	public int getListenerLevel() {
+		return REDTextEventListener.RLL_VIEW;
+	}
+
+	public void afterInsert(int from, int to) {
+		getRoot().grow(0, from, to - from);
+		fFrom.fPosition = from;
+		fDelta.fPosition = to - from;
+		modifyEdgesAfterInsertion(fFrom, REDMarkTreeData.fgComparison, fDelta).updateAugmentationUpwards();
+	}
+	
+	public void afterDelete(int from, int to) {
+		getRoot().moveDeleted(0, from, to);
+		fFrom.fPosition = from;
+		fDelta.fPosition = from - to;
+		modifyEdgesAfterInsertion(fFrom, REDMarkTreeData.fgComparison, fDelta).updateAugmentationUpwards();
+	}
+	
+	public void beforeInsert(int from, int to) {}
+	public void beforeDelete(int from, int to) {}
+	public void beforeStyleChange(int from, int to, REDStyle newStyle) {}
+	public void afterStyleChange(int from, int to, REDStyle newStyle) {}
+	public void beforeLoad() {}
+	public void afterLoad() {}
+	public void beforeSave() {}
+	public void afterSave() {}	
+	public void beforeSaveInto(String filename) {}
+	public void afterSaveInto(String filename) {}	
+	public void beforeStyleBatchNotification() {}
+	public void afterStyleBatchNotification() {}
+	REDEditor fEditor;
+	private int fNrIntervals;
+	private final Finder fFinder = new Finder();
+	private final REDMarkTreeData fFrom = new REDMarkTreeData();	// scratch data for text event handling
+	private final REDMarkTreeData fDelta = new REDMarkTreeData();
+}
+
+/** Distance tree factory for REDIntervalTree */
+class REDIntervalTreeFactory implements REDDistanceTreeFactory {
+	public REDNode createNode() {
+		return new REDInterval();
+	}
+	
+	public REDNode createRoot(REDDistanceTree tree) {
+		return new REDIntervalTreeRoot(tree);
+	}
+	
+	public REDEdgeData createEdgeData() {
+		return new REDMarkTreeData();
+	}		
+}
+
+/** Root sentinel of REDIntervalTree.
+  * Interval trees are registered weakly with their text; the back reference keeps a tree alive as long as any of its intervals is referenced.
+  */
+class REDIntervalTreeRoot extends REDInterval {
+	REDIntervalTreeRoot(REDDistanceTree tree) {
+		fTree = tree;
+	}
+	
+	final REDDistanceTree fTree;
+}
@@ -0,0 +1,34 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+/** Visitor interface for streaming the intervals overlapping a range.
+  * @author rli@chello.at
+  * @see REDIntervalTree#visitIntervals
+  * @tier API
+  */
+public interface REDIntervalVisitor {
+	/** Visit an interval.
+	  * The interval tree must not be modified while intervals are visited.
+	  * @param interval The interval to visit.
+	  * @param start The start position of the interval.
+	  * @param end The end position of the interval.
+	  * @return true to continue with the next interval; false to stop visiting.
+	  */
+	boolean visitInterval(REDInterval interval, int start, int end);
+}
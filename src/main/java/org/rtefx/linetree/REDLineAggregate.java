@@ -0,0 +1,56 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+/** Monoid used to summarize a column of per-line values in REDLineMetrics.
+  * Implementations must be associative and identity() must be neutral with respect to combine().
+  * @author rli@chello.at
+  * @see REDLineMetrics
+  * @tier system
+  */
+public interface REDLineAggregate {
+	/** get neutral element 
+	  * @return a value e, so that combine(e, x) == combine(x, e) == x for all x
+	  */
+	int identity();
+	
+	/** combine two aggregated values
+	  * @param a The aggregate of the lines in front
+	  * @param b The aggregate of the lines behind
+	  * @return The aggregate of both line ranges
+	  */
+	int combine(int a, int b);
+	
+	/** Sum of values, e.g. for line heights. */
+	REDLineAggregate fcSum = new REDLineAggregate() {
+		public int identity() { return 0; }
+		public int combine(int a, int b) { return a + b; }
+	};
+	
+	/** Maximum of values, e.g. for line widths. */
+	REDLineAggregate fcMax = new REDLineAggregate() {
+		public int identity() { return Integer.MIN_VALUE; }
+		public int combine(int a, int b) { return Math.max(a, b); }
+	};
+	
+	/** Minimum of values, e.g. for nesting depths. */
+	REDLineAggregate fcMin = new REDLineAggregate() {
+		public int identity() { return Integer.MAX_VALUE; }
+		public int combine(int a, int b) { return Math.min(a, b); }
+	};
+}
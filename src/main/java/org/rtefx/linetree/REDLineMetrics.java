@@ -0,0 +1,499 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+/** Per-line metrics with pluggable aggregates.
+  * The metrics keep one int value per line and column, e.g. pixel height, pixel width or nesting depth of each line. 
+  * Each column is summarized by its own REDLineAggregate, so one index can answer "top of line n" (sum of heights), "widest line" 
+  * (max of widths) or "minimum depth within a range of lines" at the same time.
+  * Values are stored in blocks of primitive ints. A segment tree per column over the block aggregates (plus a Fenwick tree over the 
+  * number of lines per block, cf. REDBlockIndex) makes lookups, updates and range queries take O(log n) plus the work within at most two blocks.
+  * @author rli@chello.at
+  * @invariant fIndex.fNrBlocks > 0
+  * @invariant fIndex.fNrBlocks == 1 || forall b in [0, fIndex.fNrBlocks[ | fIndex.fCounts[b] > 0
+  * @tier system
+  */
+public class REDLineMetrics {
+	/** Create empty metrics.
+	  * @param aggregates The aggregate to use for each column.
+	  * @pre aggregates != null && aggregates.length > 0
+	  */
+	public REDLineMetrics(REDLineAggregate [] aggregates) {
+		this(aggregates, 0);
+	}
+	
+	/** Create metrics for nrLines lines in linear time; all values are 0.
+	  * @param aggregates The aggregate to use for each column.
+	  * @param nrLines The number of lines.
+	  * @pre aggregates != null && aggregates.length > 0
+	  * @pre nrLines >= 0
+	  */
+	public REDLineMetrics(REDLineAggregate [] aggregates, int nrLines) {
+		fAggregates = aggregates.clone();
+		fNrColumns = aggregates.length;
+		int nrBlocks = Math.max(1, (nrLines + fcBlockFill - 1) / fcBlockFill);
+		allocate(Math.max(fcInitialNrBlocks, nrBlocks));
+		fIndex = new REDBlockIndex(fBlocks.length);
+		int rest = nrLines;
+		for (int b = 0; b < nrBlocks; b++) {
+			fBlocks[b] = new int[fNrColumns][fcBlockCapacity];
+			fIndex.fCounts[b] = Math.min(fcBlockFill, rest);
+			rest -= fIndex.fCounts[b];
+		}
+		fIndex.fNrBlocks = nrBlocks;
+		fNrLines = nrLines;
+		for (int b = 0; b < nrBlocks; b++) {
+			computeAggregates(b);
+		}
+		rebuildIndex();
+	}
+	
+	/** Get number of lines.
+	  * @return The number of lines in the metrics.
+	  */
+	public int getNrLines() {
+		return fNrLines;
+	}
+	
+	/** Get number of columns.
+	  * @return The number of values kept per line.
+	  */
+	public int getNrColumns() {
+		return fNrColumns;
+	}
+	
+	/** Get aggregate of column.
+	  * @param col The column to get the aggregate for.
+	  * @pre col >= 0 && col < getNrColumns()
+	  */
+	public REDLineAggregate getAggregate(int col) {
+		return fAggregates[col];
+	}
+	
+	/** Insert lines. All values of the new lines are 0.
+	  * @param line The number the first new line will get. Lines from this number on are moved behind the new lines.
+	  * @param n The number of lines to insert.
+	  * @pre line >= 0 && line <= getNrLines()
+	  * @pre n >= 0
+	  */
+	public void insertLines(int line, int n) {
+		if (n <= 0) {
+			return;
+		}
+		int b = findBlock(line);
+		int idx = line - prefixCount(b);
+		int cnt = fIndex.fCounts[b];
+		fNrLines += n;
+		if (cnt + n <= fcBlockCapacity) {	// fits => no structural change
+			for (int c = 0; c < fNrColumns; c++) {
+				int [] values = fBlocks[b][c];
+				System.arraycopy(values, idx, values, idx + n, cnt - idx);
+				java.util.Arrays.fill(values, idx, idx + n, 0);
+			}
+			fIndex.fCounts[b] += n;
+			fIndex.addCount(b, n);
+			computeAggregates(b);
+			updatePath(b);
+			return;
+		}
+		
+		// structural change: new lines and tail of block b are redistributed onto block b and new blocks
+		int tailLen = cnt - idx;
+		int seqLen = n + tailLen;
+		int inB = Math.min(Math.max(fcBlockFill - idx, 0), seqLen);
+		int nrNew = (seqLen - inB + fcBlockFill - 1) / fcBlockFill;
+		ensureBlockCapacity(fIndex.fNrBlocks + nrNew);
+		System.arraycopy(fBlocks, b + 1, fBlocks, b + 1 + nrNew, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(fIndex.fCounts, b + 1, fIndex.fCounts, b + 1 + nrNew, fIndex.fNrBlocks - b - 1);
+		for (int c = 0; c < fNrColumns; c++) {
+			System.arraycopy(fBlockAggregates[c], b + 1, fBlockAggregates[c], b + 1 + nrNew, fIndex.fNrBlocks - b - 1);
+		}
+		for (int nb = b + 1; nb <= b + nrNew; nb++) {
+			fBlocks[nb] = new int[fNrColumns][fcBlockCapacity];
+		}
+		for (int c = 0; c < fNrColumns; c++) {
+			int [] seq = new int[seqLen];	// n zeros followed by the tail of block b
+			System.arraycopy(fBlocks[b][c], idx, seq, n, tailLen);
+			System.arraycopy(seq, 0, fBlocks[b][c], idx, inB);
+			int s = inB;
+			for (int nb = b + 1; nb <= b + nrNew; nb++) {
+				int len = Math.min(fcBlockFill, seqLen - s);
+				System.arraycopy(seq, s, fBlocks[nb][c], 0, len);
+				s += len;
+			}
+		}
+		fIndex.fCounts[b] = idx + inB;
+		int s = inB;
+		for (int nb = b + 1; nb <= b + nrNew; nb++) {
+			fIndex.fCounts[nb] = Math.min(fcBlockFill, seqLen - s);
+			s += fIndex.fCounts[nb];
+		}
+		fIndex.fNrBlocks += nrNew;
+		for (int nb = b; nb <= b + nrNew; nb++) {
+			computeAggregates(nb);
+		}
+		rebuildIndex();
+	}
+	
+	/** Delete lines.
+	  * @param line The number of the first line to delete.
+	  * @param n The number of lines to delete.
+	  * @pre line >= 0 && n >= 0 && line + n <= getNrLines()
+	  */
+	public void deleteLines(int line, int n) {
+		if (n <= 0) {
+			return;
+		}
+		int bFrom = findBlock(line);
+		int iFrom = line - prefixCount(bFrom);
+		int bTo = findBlock(line + n);
+		int iTo = line + n - prefixCount(bTo);
+		fNrLines -= n;
+		
+		if (bFrom == bTo) {	// within one block
+			removeFromBlock(bFrom, iFrom, iTo);
+			fIndex.addCount(bFrom, iFrom - iTo);
+			computeAggregates(bFrom);
+			if (fIndex.fCounts[bFrom] == 0 && fIndex.fNrBlocks > 1) {
+				removeBlocks(bFrom, bFrom + 1);
+				rebuildIndex();
+			}
+			else {
+				updatePath(bFrom);
+				mergeWithSuccessor(bFrom);
+			}
+			return;
+		}
+
+		// structural change: cut tail of bFrom, drop blocks in between, cut head of bTo
+		fIndex.fCounts[bFrom] = iFrom;
+		removeFromBlock(bTo, 0, iTo);
+		computeAggregates(bFrom);
+		computeAggregates(bTo);
+		int firstDropped = fIndex.fCounts[bFrom] == 0 ? bFrom : bFrom + 1;
+		int lastDropped = fIndex.fCounts[bTo] == 0 ? bTo + 1 : bTo;
+		if (firstDropped == 0 && lastDropped >= fIndex.fNrBlocks) {	// keep one (empty) block
+			firstDropped = 1;
+		}
+		removeBlocks(firstDropped, lastDropped);
+		rebuildIndex();
+		mergeWithSuccessor(Math.max(firstDropped - 1, 0));
+	}
+	
+	/** Get value of line.
+	  * This method neither allocates nor modifies anything, so it may be called from several threads as long as no one modifies the metrics.
+	  * @param col The column to get the value of.
+	  * @param line The line to get the value of.
+	  * @pre col >= 0 && col < getNrColumns()
+	  * @pre line >= 0 && line < getNrLines()
+	  */
+	public int get(int col, int line) {
+		int b = findBlock(line);
+		return fBlocks[b][col][line - prefixCount(b)];
+	}
+	
+	/** Get values of consecutive lines.
+	  * @param col The column to get the values of.
+	  * @param line The first line to get the value of.
+	  * @param values Receives the values.
+	  * @param n The number of values to get.
+	  * @pre col >= 0 && col < getNrColumns()
+	  * @pre line >= 0 && line + n <= getNrLines()
+	  * @pre n == 0 || values.length >= n
+	  */
+	public void get(int col, int line, int [] values, int n) {
+		int s = 0;
+		while (s < n) {
+			int b = findBlock(line + s);
+			int idx = line + s - prefixCount(b);
+			int len = Math.min(n - s, fIndex.fCounts[b] - idx);
+			System.arraycopy(fBlocks[b][col], idx, values, s, len);
+			s += len;
+		}
+	}
+	
+	/** Set value of line.
+	  * @param col The column to set the value in.
+	  * @param line The line to set the value of.
+	  * @param value The new value.
+	  * @pre col >= 0 && col < getNrColumns()
+	  * @pre line >= 0 && line < getNrLines()
+	  */
+	public void set(int col, int line, int value) {
+		int b = findBlock(line);
+		int [] values = fBlocks[b][col];
+		int idx = line - prefixCount(b);
+		if (values[idx] != value) {
+			values[idx] = value;
+			computeAggregate(b, col);
+			updatePath(b, col);
+		}
+	}
+	
+	/** Set values of consecutive lines. Each touched block is summarized only once.
+	  * @param col The column to set the values in.
+	  * @param line The first line to set the value of.
+	  * @param values The new values.
+	  * @param n The number of values to take from values.
+	  * @pre col >= 0 && col < getNrColumns()
+	  * @pre line >= 0 && line + n <= getNrLines()
+	  * @pre n == 0 || values.length >= n
+	  */
+	public void set(int col, int line, int [] values, int n) {
+		int s = 0;
+		while (s < n) {
+			int b = findBlock(line + s);
+			int idx = line + s - prefixCount(b);
+			int len = Math.min(n - s, fIndex.fCounts[b] - idx);
+			System.arraycopy(values, s, fBlocks[b][col], idx, len);
+			s += len;
+			computeAggregate(b, col);
+			updatePath(b, col);
+		}
+	}
+	
+	/** Aggregate values of a range of lines.
+	  * This method neither allocates nor modifies anything, so it may be called from several threads as long as no one modifies the metrics.
+	  * @param col The column to aggregate.
+	  * @param from The first line of the range.
+	  * @param to The line behind the range.
+	  * @return The aggregate of the values of lines [from, to[; the identity of the column's aggregate, if the range is empty.
+	  * @pre col >= 0 && col < getNrColumns()
+	  * @pre from >= 0 && to <= getNrLines()
+	  */
+	public int query(int col, int from, int to) {
+		REDLineAggregate agg = fAggregates[col];
+		if (to <= from) {
+			return agg.identity();
+		}
+		int bFrom = findBlock(from);
+		int iFrom = from - prefixCount(bFrom);
+		int bTo = findBlock(to - 1);
+		int iTo = to - prefixCount(bTo);
+		if (bFrom == bTo) {
+			return fold(agg, fBlocks[bFrom][col], iFrom, iTo, agg.identity());
+		}
+		int res = fold(agg, fBlocks[bFrom][col], iFrom, fIndex.fCounts[bFrom], agg.identity());
+		if (bFrom + 1 < bTo) {
+			res = agg.combine(res, queryBlocks(col, bFrom + 1, bTo));
+		}
+		return fold(agg, fBlocks[bTo][col], 0, iTo, res);
+	}
+	
+	/** Find first line at which the running aggregate of a column exceeds a value.
+	  * E.g. for a column of line heights summed up, this finds the line containing a given pixel height.
+	  * This method neither allocates nor modifies anything, so it may be called from several threads as long as no one modifies the metrics.
+	  * @param col The column to search.
+	  * @param value The value to search for.
+	  * @return The smallest line l so that query(col, 0, l + 1) > value; getNrLines() if there is no such line.
+	  * @pre col >= 0 && col < getNrColumns()
+	  * @pre the running aggregate of the column is non-decreasing (e.g. sum of non-negative values or max)
+	  */
+	public int findLine(int col, int value) {
+		REDLineAggregate agg = fAggregates[col];
+		int [] tree = fTrees[col];
+		if (agg.combine(agg.identity(), tree[1]) <= value) {
+			return fNrLines;
+		}
+		int acc = agg.identity();
+		int node = 1;
+		while (node < fLeaves) {
+			int left = node << 1;
+			int c = agg.combine(acc, tree[left]);
+			if (c > value) {
+				node = left;
+			}
+			else {
+				acc = c;
+				node = left + 1;
+			}
+		}
+		int b = node - fLeaves;
+		int line = prefixCount(b);
+		int [] values = fBlocks[b][col];
+		for (int i = 0; i < fIndex.fCounts[b]; i++) {
+			acc = agg.combine(acc, values[i]);
+			if (acc > value) {
+				return line + i;
+			}
+		}
+		return fNrLines;
+	}
+	
+	// --- block operations
+	
+	/** Remove elements [from, to[ from block b. */
+	private void removeFromBlock(int b, int from, int to) {
+		for (int c = 0; c < fNrColumns; c++) {
+			int [] values = fBlocks[b][c];
+			System.arraycopy(values, to, values, from, fIndex.fCounts[b] - to);
+		}
+		fIndex.fCounts[b] -= to - from;
+	}
+	
+	/** Remove blocks [from, to[ from block array. */
+	private void removeBlocks(int from, int to) {
+		if (to <= from) {
+			return;
+		}
+		int gap = to - from;
+		System.arraycopy(fBlocks, to, fBlocks, from, fIndex.fNrBlocks - to);
+		System.arraycopy(fIndex.fCounts, to, fIndex.fCounts, from, fIndex.fNrBlocks - to);
+		for (int c = 0; c < fNrColumns; c++) {
+			System.arraycopy(fBlockAggregates[c], to, fBlockAggregates[c], from, fIndex.fNrBlocks - to);
+		}
+		for (int b = fIndex.fNrBlocks - gap; b < fIndex.fNrBlocks; b++) {
+			fBlocks[b] = null;
+		}
+		fIndex.fNrBlocks -= gap;
+	}
+	
+	/** Merge block b with its successor, if both are small enough. */
+	private void mergeWithSuccessor(int b) {
+		if (b + 1 >= fIndex.fNrBlocks || fIndex.fCounts[b] + fIndex.fCounts[b + 1] > fcBlockFill || fIndex.fCounts[b] > fcBlockMinFill && fIndex.fCounts[b + 1] > fcBlockMinFill) {
+			return;
+		}
+		for (int c = 0; c < fNrColumns; c++) {
+			System.arraycopy(fBlocks[b + 1][c], 0, fBlocks[b][c], fIndex.fCounts[b], fIndex.fCounts[b + 1]);
+		}
+		fIndex.fCounts[b] += fIndex.fCounts[b + 1];
+		computeAggregates(b);
+		removeBlocks(b + 1, b + 2);
+		rebuildIndex();
+	}
+	
+	/** Aggregate values [from, to[ of array onto acc. */
+	private static int fold(REDLineAggregate agg, int [] values, int from, int to, int acc) {
+		for (int i = from; i < to; i++) {
+			acc = agg.combine(acc, values[i]);
+		}
+		return acc;
+	}
+	
+	private void computeAggregates(int b) {
+		for (int c = 0; c < fNrColumns; c++) {
+			computeAggregate(b, c);
+		}
+	}
+	
+	private void computeAggregate(int b, int col) {
+		REDLineAggregate agg = fAggregates[col];
+		fBlockAggregates[col][b] = fold(agg, fBlocks[b][col], 0, fIndex.fCounts[b], agg.identity());
+	}
+	
+	/** Allocate block arrays for cap blocks. */
+	private void allocate(int cap) {
+		fBlocks = new int[cap][][];
+		fBlockAggregates = new int[fNrColumns][cap];
+	}
+	
+	/** Make room for at least n blocks. */
+	private void ensureBlockCapacity(int n) {
+		if (n <= fBlocks.length) {
+			return;
+		}
+		int [][][] blocks = fBlocks;
+		int [][] aggregates = fBlockAggregates;
+		int cap = Math.max(n, fBlocks.length * 2);
+		allocate(cap);
+		fIndex.setCapacity(cap);
+		System.arraycopy(blocks, 0, fBlocks, 0, fIndex.fNrBlocks);
+		for (int c = 0; c < fNrColumns; c++) {
+			System.arraycopy(aggregates[c], 0, fBlockAggregates[c], 0, fIndex.fNrBlocks);
+		}
+	}
+	
+	// --- segment trees over block aggregates; block line counts are kept in fIndex
+	
+	/** Rebuild segment trees from fBlockAggregates and the line count index from fIndex.fCounts in linear time. */
+	private void rebuildIndex() {
+		int leaves = Integer.highestOneBit(Math.max(fBlocks.length - 1, 1)) << 1;
+		if (fTrees == null || fLeaves != leaves) {
+			fLeaves = leaves;
+			fTrees = new int[fNrColumns][2 * leaves];
+		}
+		for (int c = 0; c < fNrColumns; c++) {
+			REDLineAggregate agg = fAggregates[c];
+			int [] tree = fTrees[c];
+			System.arraycopy(fBlockAggregates[c], 0, tree, leaves, fIndex.fNrBlocks);
+			java.util.Arrays.fill(tree, leaves + fIndex.fNrBlocks, 2 * leaves, agg.identity());
+			for (int i = leaves - 1; i > 0; i--) {
+				tree[i] = agg.combine(tree[2 * i], tree[2 * i + 1]);
+			}
+		}
+		fIndex.rebuild();
+	}
+	
+	/** Propagate all aggregates of block b to the root. */
+	private void updatePath(int b) {
+		for (int c = 0; c < fNrColumns; c++) {
+			updatePath(b, c);
+		}
+	}
+	
+	/** Propagate aggregate of column col of block b to the root. */
+	private void updatePath(int b, int col) {
+		REDLineAggregate agg = fAggregates[col];
+		int [] tree = fTrees[col];
+		int i = fLeaves + b;
+		tree[i] = fBlockAggregates[col][b];
+		for (i >>= 1; i > 0; i >>= 1) {
+			tree[i] = agg.combine(tree[2 * i], tree[2 * i + 1]);
+		}
+	}
+	
+	/** Aggregate column col over blocks [from, to[. */
+	private int queryBlocks(int col, int from, int to) {
+		REDLineAggregate agg = fAggregates[col];
+		int [] tree = fTrees[col];
+		int left = agg.identity(), right = agg.identity();
+		for (from += fLeaves, to += fLeaves; from < to; from >>= 1, to >>= 1) {
+			if ((from & 1) != 0) {
+				left = agg.combine(left, tree[from++]);
+			}
+			if ((to & 1) != 0) {
+				right = agg.combine(tree[--to], right);
+			}
+		}
+		return agg.combine(left, right);
+	}
+	
+	/** Get number of lines in front of block b. */
+	private int prefixCount(int b) {
+		return fIndex.prefixCount(b);
+	}
+	
+	/** Get block containing line; the last block, if line == fNrLines. */
+	private int findBlock(int line) {
+		return fIndex.findBlockByIndex(line);
+	}
+	
+	private final REDLineAggregate [] fAggregates;
+	private final int fNrColumns;
+	private int [][][] fBlocks;	// values by block, column and line within block
+	private REDBlockIndex fIndex;	// line counts of the blocks; spans are not used
+	private int [][] fBlockAggregates;	// aggregate by column and block
+	private int [][] fTrees;	// segment tree over block aggregates by column; leaves start at fLeaves
+	private int fLeaves;
+	private int fNrLines;
+	
+	private static final int fcInitialNrBlocks = 4;
+	static final int fcBlockCapacity = 256;
+	static final int fcBlockFill = fcBlockCapacity * 3 / 4;
+	static final int fcBlockMinFill = fcBlockCapacity / 4;
+}
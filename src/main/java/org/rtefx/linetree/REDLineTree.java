@@ -19,150 +19,355 @@ package org.rtefx.linetree;
 
 import java.util.ArrayList;
 
-/** Line Tree data structure. This class is not for the fainthearted. Read the concept paper (TWiki) to understand how it works
+/** Line index data structure. 
+  * The line index keeps the start positions of all lines in ascending order. Line 0 always starts at position 0.
+  * Start positions are stored in blocks of primitive ints, relative to the start position of the first line of their block. The start 
+  * positions of the blocks and the number of lines in them are summed up by two Fenwick trees (cf. REDBlockIndex), so lookups by line and by position 
+  * as well as shifting all lines behind a position take O(log n) plus the work within one block.
+  * Storage needs about four bytes per line.
   * @author rli@chello.at
-  * @invariant testClassInvariant()
-  * @invariant fRoot != null
-  * @invariant fRoot.fLeft == null
+  * @invariant fIndex.fNrBlocks > 0
+  * @invariant forall b in [0, fIndex.fNrBlocks[ | fIndex.fCounts[b] > 0 && fBlocks[b][0] == 0
+  * @invariant fBlocks.length == fIndex.getCapacity()
+  * @invariant fBlocks[0] contains line 0 at position 0
   * @tier system
   */
-public class REDLineTree extends REDDistanceTree {
+public class REDLineTree {
 	public REDLineTree() {
-		super(new REDLineTreeFactory());
+		fBlocks = new int[fcInitialNrBlocks][];
+		fIndex = new REDBlockIndex(fcInitialNrBlocks);
+		fBlocks[0] = new int[fcBlockCapacity];
+		fIndex.fCounts[0] = 1;
+		fIndex.fNrBlocks = 1;
+		fNrLines = 1;
+		fIndex.rebuild();
 	}
 	
-	private	void insertBalanced(int lb, int ub, ArrayList<REDLineTreeData> v, int lineOffset, REDLineTreeData nullData) {
-		int i;
-		if (lb >= ub) return;
-		i = (lb + ub) / 2;
-		REDLineTreeData data = v.get(i); data.fLine += lineOffset;
-		fRoot.insertNew(data, nullData, REDLineTreeData.fgPositionComparison, fFactory);
-		nullData.fPosition = 0; nullData.fLine = 0;
-		insertBalanced(i+1, ub, v, lineOffset, nullData);
-		insertBalanced(lb, i, v, lineOffset, nullData);
+	/** Create line index from sorted line starts in linear time.
+	  * @param starts the absolute start positions of lines 1 to n in ascending order
+	  * @param n the number of line starts to take from starts
+	  * @pre n >= 0 && starts.length >= n
+	  */
+	public REDLineTree(int [] starts, int n) {
+		int nrBlocks = n / fcBlockFill + 1;
+		int cap = Math.max(fcInitialNrBlocks, nrBlocks);
+		fBlocks = new int[cap][];
+		fIndex = new REDBlockIndex(cap);
+		int [] bases = new int[cap];
+		int s = -1;	// -1 denotes line 0
+		for (int b = 0; b < nrBlocks; b++) {
+			int [] block = new int[fcBlockCapacity];
+			int base = s < 0 ? 0 : starts[s];
+			int len = Math.min(fcBlockFill, n - s);
+			for (int i = 0; i < len; i++, s++) {
+				block[i] = (s < 0 ? 0 : starts[s]) - base;
+			}
+			fBlocks[b] = block;
+			fIndex.fCounts[b] = len;
+			bases[b] = base;
+		}
+		fIndex.fNrBlocks = nrBlocks;
+		fNrLines = n + 1;
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
 	}
-		
+	
+	/** Get number of lines.
+	  * @return The number of lines (i.e. line starts) in the index; at least 1.
+	  */
+	public int getNrNodes() {
+		return fNrLines;
+	}
+	
 	/** insertion notification routine - called by client upon changes 
+	 * Line starts behind pos are moved by totalLength and the line starts of v are inserted behind the line containing pos.
 	 * @param pos position where the insertion begins
-	 * @param totalLength length of whole insertion
-	 * @param v This vector contains an REDLineTreeData element for the distance of each line to its predecessor, starting with line nr. 1; may be null
-	 * @pre v.size() > 0
+	 * @param totalLength length of whole insertion; may be negative to shrink the line containing pos
+	 * @param v This vector contains an REDLineTreeData element for the (absolute) start position of each new line, starting with line nr. 1; 
+	 * the last element is not inserted; may be null
+	 * @pre v == null || v.size() > 0
 	 */
 	public void notifyInsert(int pos, int totalLength, ArrayList<REDLineTreeData> v) {
 		int size = (v == null) ? 0 : v.size() - 1;
-		REDLineTreeData data = new REDLineTreeData(totalLength, size);
-		REDLineTreeData start = (REDLineTreeData) modifyEdgesAfterInsertion(new REDLineTreeData(pos, 0), REDLineTreeData.fgPositionComparison, data);
-		if (v != null) {
-			insertBalanced(0, size, v, start.fLine, new REDLineTreeData());
-			fNrNodes += size;
+		int [] starts = new int[Math.max(size, 0)];
+		for (int i = 0; i < size; i++) {
+			starts[i] = v.get(i).fPosition;
+		}
+		notifyInsert(pos, totalLength, starts, size);
+	}
+	
+	/** insertion notification routine - called by client upon changes 
+	 * Line starts behind pos are moved by totalLength and the given line starts are spliced in behind the line containing pos.
+	 * This takes time linear in n plus the size of one block, no matter how many lines are inserted.
+	 * @param pos position where the insertion begins
+	 * @param totalLength length of whole insertion; may be negative to shrink the line containing pos
+	 * @param starts the absolute start positions of the new lines in ascending order; may be null if n == 0
+	 * @param n the number of line starts to take from starts
+	 * @pre n == 0 || starts.length >= n
+	 */
+	public void notifyInsert(int pos, int totalLength, int [] starts, int n) {
+		fModCount++;
+		pos = Math.max(pos, 0);
+		int b = fIndex.findBlockByPosition(pos);
+		int base = fIndex.prefixSpan(b);
+		int idx = REDBlockIndex.upperBound(fBlocks[b], fIndex.fCounts[b], pos - base);
+		shift(b, idx, totalLength);
+		if (n > 0) {
+			insert(b, idx, base, starts, n);
 		}
 	}
 
 	/** deletion notification routine - called by client upon changes 
+	 * Line starts within ]from, to] are deleted; line starts behind to are moved by from - to.
 	 * @param from position where the deletion begins
 	 * @param to position where the deletion ends
-	 * @param deleteNodes If this parameter is true, nodes within [from, to] are deleted. Otherwise they are just moved to from.
 	 */
 	public void notifyDelete(int from, int to) {
-		int nrNodesDeleted = 0;
-		REDLineTreeData fromData = new REDLineTreeData(from, 0);
-		REDLineTreeData toData = new REDLineTreeData(to, 0);
-		REDLineTreeData nullData = new REDLineTreeData();
-		while (fRoot.delete(fromData, toData, REDLineTreeData.fgPositionComparison, nullData, fFactory)) {
-			nrNodesDeleted++;
+		fModCount++;
+		if (to <= from) {
+			return;
+		}
+		int bFrom = fIndex.findBlockByPosition(from);
+		int baseFrom = fIndex.prefixSpan(bFrom);
+		int iFrom = REDBlockIndex.upperBound(fBlocks[bFrom], fIndex.fCounts[bFrom], from - baseFrom);
+		int bTo = fIndex.findBlockByPosition(to);
+		int baseTo = fIndex.prefixSpan(bTo);
+		int iTo = REDBlockIndex.upperBound(fBlocks[bTo], fIndex.fCounts[bTo], to - baseTo);
+		
+		if (bFrom == bTo) {	// within one block => no structural change
+			int [] block = fBlocks[bFrom];
+			int removed = iTo - iFrom;
+			System.arraycopy(block, iTo, block, iFrom, fIndex.fCounts[bFrom] - iTo);
+			fIndex.fCounts[bFrom] -= removed;
+			fNrLines -= removed;
+			fIndex.addCount(bFrom, -removed);
+			shift(bFrom, iFrom, from - to);
+			if (removed > 0) {
+				mergeWithSuccessor(bFrom);
+			}
+			return;
 		}
-		REDLineTreeData data = new REDLineTreeData(from - to, -1 * nrNodesDeleted);
-		REDLineTreeData start = (REDLineTreeData) modifyEdgesAfterInsertion(new REDLineTreeData(from, 0), REDLineTreeData.fgPositionComparison, data);
-		fNrNodes -= nrNodesDeleted;
+		
+		// structural change: cut tail of bFrom, drop blocks in between, cut head of bTo
+		int [] bases = fIndex.computeBases();
+		int removed = fIndex.fCounts[bFrom] - iFrom;
+		fIndex.fCounts[bFrom] = iFrom;
+		for (int b = bFrom + 1; b < bTo; b++) {
+			removed += fIndex.fCounts[b];
+		}
+		int firstKept = bTo;
+		if (iTo < fIndex.fCounts[bTo]) {	// rebase remainder of bTo
+			int [] block = fBlocks[bTo];
+			int rebase = block[iTo];
+			for (int i = iTo; i < fIndex.fCounts[bTo]; i++) {
+				block[i - iTo] = block[i] - rebase;
+			}
+			bases[bTo] += rebase;
+			fIndex.fCounts[bTo] -= iTo;
+			removed += iTo;
+		}
+		else {
+			removed += fIndex.fCounts[bTo];
+			firstKept = bTo + 1;
+		}
+		for (int b = firstKept; b < fIndex.fNrBlocks; b++) {
+			bases[b] += from - to;
+		}
+		int gap = firstKept - (bFrom + 1);
+		System.arraycopy(fBlocks, firstKept, fBlocks, bFrom + 1, fIndex.fNrBlocks - firstKept);
+		System.arraycopy(fIndex.fCounts, firstKept, fIndex.fCounts, bFrom + 1, fIndex.fNrBlocks - firstKept);
+		System.arraycopy(bases, firstKept, bases, bFrom + 1, fIndex.fNrBlocks - firstKept);
+		for (int b = fIndex.fNrBlocks - gap; b < fIndex.fNrBlocks; b++) {
+			fBlocks[b] = null;
+		}
+		fIndex.fNrBlocks -= gap;
+		fNrLines -= removed;
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+		mergeWithSuccessor(bFrom);
 	}
-
 	
-	/** Iterate over the tree in order (i.e. left, this, right) and call iterator for each node 
-	  * @param iterator Iterator to call for each visited node.
+	/** Iterate over the lines in order and call iterator for each line 
+	  * @param iterator Iterator to call for each line. The node passed to the iterator is always null, the depth always 0.
 	  * @pre iterator != null
 	  */
 	public void iterateInOrder(REDDistanceTreeIterator iterator) {
 		iterateInOrder(iterator, null, null, null);
 	}
 	
-	/** Iterate over the tree in order (i.e. left, this, right) and call iterator for each node 
-	  * @param iterator Iterator to call for each visited node
-	  * @param lowerBound A node with data d in the tree is only visited if d >= lowerBound. May be null in which case there is no lower limit to visited nodes.
-	  * @param upperBound  A node with data d in the tree is only visited if d <= upperBound. May be null in which case there is no upper limit to visited nodes.
-	  * @param comparison The comparison algorithm to be used when checking nodes against the given lower/upperBound. Must not be null, if either lowerBound or upperBound != null
+	/** Iterate over the lines in order and call iterator for each line 
+	  * @param iterator Iterator to call for each line. The node passed to the iterator is always null, the depth always 0.
+	  * @param lowerBound A line with data d is only visited if d >= lowerBound. May be null in which case there is no lower limit to visited lines.
+	  * @param upperBound  A line with data d is only visited if d <= upperBound. May be null in which case there is no upper limit to visited lines.
+	  * @param comparison The comparison algorithm to be used when checking lines against the given lower/upperBound. Must not be null, if either lowerBound or upperBound != null
 	  * @pre iterator != null
 	  */
 	public void iterateInOrder(REDDistanceTreeIterator iterator, REDLineTreeData lowerBound, REDLineTreeData upperBound, REDEdgeDataComparison comparison) {
-		REDLineTreeData nullData = new REDLineTreeData();
-		fRoot.iterateInOrder(iterator, nullData, 0, lowerBound, upperBound, comparison);
+		REDLineTreeData data = new REDLineTreeData();
+		int base = 0;
+		int line = 0;
+		for (int b = 0; b < fIndex.fNrBlocks; b++) {
+			int [] block = fBlocks[b];
+			for (int i = 0; i < fIndex.fCounts[b]; i++) {
+				data.fPosition = base + block[i];
+				data.fLine = line++;
+				if ((lowerBound == null || comparison.leq(lowerBound, data)) && (upperBound == null || comparison.leq(data, upperBound))) {
+					iterator.processNode(null, data, 0);
+				}
+			}
+			base += fIndex.fSpans[b];
+		}
 	}
 
+	/** Get start position of line.
+	  * This method neither allocates nor modifies anything, so it may be called from several threads as long as no one modifies the index.
+	  * @param lineNr is normalized to be in range [0, getNrNodes() - 1]
+	  */
 	public int getLineStart(int lineNr) {
-		REDLineTreeData result = REDLineTreeData.acquireFromPool();
-		REDLineTreeData needle = REDLineTreeData.acquireFromPool(0, lineNr);
-		fRoot.findNode(needle, REDLineTreeData.fgLineComparison, result);
-		int res = result.fPosition;
-		REDLineTreeData.releaseIntoPool(result);
-		REDLineTreeData.releaseIntoPool(needle);
-		return res;
+		lineNr = Math.max(0, Math.min(lineNr, fNrLines - 1));
+		int b = fIndex.findBlockByIndex(lineNr);
+		return fIndex.prefixSpan(b) + fBlocks[b][lineNr - fIndex.prefixCount(b)];
 	}
 	
+	/** Get line containing position.
+	  * This method neither allocates nor modifies anything, so it may be called from several threads as long as no one modifies the index.
+	  * @return The number of the last line starting at or before pos; 0 if pos < 0.
+	  */
 	public int getLineForPosition(int pos) {
-		REDLineTreeData result = REDLineTreeData.acquireFromPool();
-		REDLineTreeData needle = REDLineTreeData.acquireFromPool(pos, 0);
-		fRoot.findNode(needle, REDLineTreeData.fgPositionComparison, result);
-		int res = result.fLine;
-		REDLineTreeData.releaseIntoPool(result);
-		REDLineTreeData.releaseIntoPool(needle);
-		return res;
-	}
-	
-//	// --- DEBUG CODE ---
-//	/** tests node invariants */	
-//	class NodeInvariantChecker implements REDDistanceTreeIterator {
-//		public void processNode(REDNode node, REDEdgeData data, int depth) {
-//			fInvariantOk = fInvariantOk && (node.fUp == null || node.fUp.fSon == node);
-//			fInvariantOk = fInvariantOk && (node.fLeft == null || node.fLeft.isLeftEdge());
-//			fInvariantOk = fInvariantOk && (node.fLeft == null || node.fLeft.fFather == node);
-//			fInvariantOk = fInvariantOk && (node.fRight == null || !node.fRight.isLeftEdge());
-//			fInvariantOk = fInvariantOk && (node.fRight == null || node.fRight.fFather == node);
-//			fInvariantOk = fInvariantOk && (node.fUp == null || Math.abs(node.fBalance) <= 1);
-//			if (node.fLeft == null && node.fRight == null) {
-//				fInvariantOk = fInvariantOk && node.fBalance == 0;
-//			}
-//			fInvariantOk = fInvariantOk && (node.fUp == null || getDepth(node.fLeft) - getDepth(node.fRight) == node.fBalance);
-//		}
-//		
-//		private int getDepth(REDEdge edge) {
-//			if (edge == null) {
-//				return 0;
-//			}
-//			else {
-//				return edge.fSon.getDepth();
-//			}
-//		}
-//		boolean fInvariantOk;
-//		{
-//			fInvariantOk = true;
-//		}
-//	}
-//
-//	// DEBUG CODE
-//	/** test class invariant of line tree */
-//	private boolean testClassInvariant() {
-//		NodeInvariantChecker nic = new NodeInvariantChecker();
-//		iterateInOrder(nic);
-//		return nic.fInvariantOk;
-//	}
-}
-
-/** Distance tree factory for REDLineTree */
-class REDLineTreeFactory implements REDDistanceTreeFactory {
-	public REDNode createNode() {
-		return new REDNode();
+		int b = fIndex.findBlockByPosition(pos);
+		int idx = REDBlockIndex.upperBound(fBlocks[b], fIndex.fCounts[b], pos - fIndex.prefixSpan(b)) - 1;
+		return fIndex.prefixCount(b) + Math.max(idx, 0);
 	}
 	
-	public REDEdgeData createEdgeData() {
-		return new REDLineTreeData();
-	}		
+	/** Create a cursor for sequential access to the lines of this index. 
+	  * @return A new cursor, positioned at line 0.
+	  */
+	public REDLineTreeCursor createCursor() {
+		return new REDLineTreeCursor(this);
+	}
+	
+	/** Get estimated heap footprint.
+	  * @return The estimated number of bytes this line index occupies on heap.
+	  */
+	public long getFootprint() {
+		return (long) fIndex.fNrBlocks * (fcBlockCapacity + fcBlockOverhead) * 4 + (long) fBlocks.length * 6 * 4;
+	}
+	
+	// --- block operations
+	
+	/** Move line starts of block b from idx on and all following blocks by delta. */
+	private void shift(int b, int idx, int delta) {
+		if (delta == 0) {
+			return;
+		}
+		int [] block = fBlocks[b];
+		for (int i = idx; i < fIndex.fCounts[b]; i++) {
+			block[i] += delta;
+		}
+		if (b + 1 < fIndex.fNrBlocks) {
+			fIndex.addSpan(b, delta);
+		}
+	}
+	
+	/** Insert n line starts into block b at index idx. 
+	  * @param base start position of block b
+	  * @param starts absolute, ascending line starts to insert
+	  */
+	private void insert(int b, int idx, int base, int [] starts, int n) {
+		int [] block = fBlocks[b];
+		int cnt = fIndex.fCounts[b];
+		fNrLines += n;
+		if (cnt + n <= fcBlockCapacity) {	// fits => no structural change
+			System.arraycopy(block, idx, block, idx + n, cnt - idx);
+			for (int i = 0; i < n; i++) {
+				block[idx + i] = starts[i] - base;
+			}
+			fIndex.fCounts[b] += n;
+			fIndex.addCount(b, n);
+			return;
+		}
+		
+		// structural change: new line starts and tail of block b are redistributed onto block b and new blocks
+		int [] bases = fIndex.computeBases();
+		int tailLen = cnt - idx;
+		int [] seq = new int[n + tailLen];
+		System.arraycopy(starts, 0, seq, 0, n);
+		for (int i = 0; i < tailLen; i++) {
+			seq[n + i] = base + block[idx + i];
+		}
+		int s = 0;
+		while (idx < fcBlockFill && s < seq.length) {
+			block[idx++] = seq[s++] - base;
+		}
+		fIndex.fCounts[b] = idx;
+		int nrNew = (seq.length - s + fcBlockFill - 1) / fcBlockFill;
+		ensureBlockCapacity(fIndex.fNrBlocks + nrNew);
+		if (bases.length < fBlocks.length) {
+			int [] newBases = new int[fBlocks.length];
+			System.arraycopy(bases, 0, newBases, 0, fIndex.fNrBlocks);
+			bases = newBases;
+		}
+		System.arraycopy(fBlocks, b + 1, fBlocks, b + 1 + nrNew, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(fIndex.fCounts, b + 1, fIndex.fCounts, b + 1 + nrNew, fIndex.fNrBlocks - b - 1);
+		System.arraycopy(bases, b + 1, bases, b + 1 + nrNew, fIndex.fNrBlocks - b - 1);
+		for (int nb = b + 1; nb <= b + nrNew; nb++) {
+			int len = Math.min(fcBlockFill, seq.length - s);
+			int [] newBlock = new int[fcBlockCapacity];
+			int newBase = seq[s];
+			for (int i = 0; i < len; i++) {
+				newBlock[i] = seq[s++] - newBase;
+			}
+			fBlocks[nb] = newBlock;
+			fIndex.fCounts[nb] = len;
+			bases[nb] = newBase;
+		}
+		fIndex.fNrBlocks += nrNew;
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+	}
+	
+	/** Merge block b with its successor, if both are small enough. */
+	private void mergeWithSuccessor(int b) {
+		if (b + 1 >= fIndex.fNrBlocks || fIndex.fCounts[b] + fIndex.fCounts[b + 1] > fcBlockFill || fIndex.fCounts[b] > fcBlockMinFill && fIndex.fCounts[b + 1] > fcBlockMinFill) {
+			return;
+		}
+		int [] bases = fIndex.computeBases();
+		int [] block = fBlocks[b];
+		int [] next = fBlocks[b + 1];
+		int dist = bases[b + 1] - bases[b];
+		for (int i = 0; i < fIndex.fCounts[b + 1]; i++) {
+			block[fIndex.fCounts[b] + i] = next[i] + dist;
+		}
+		fIndex.fCounts[b] += fIndex.fCounts[b + 1];
+		System.arraycopy(fBlocks, b + 2, fBlocks, b + 1, fIndex.fNrBlocks - b - 2);
+		System.arraycopy(fIndex.fCounts, b + 2, fIndex.fCounts, b + 1, fIndex.fNrBlocks - b - 2);
+		System.arraycopy(bases, b + 2, bases, b + 1, fIndex.fNrBlocks - b - 2);
+		fIndex.fNrBlocks--;
+		fBlocks[fIndex.fNrBlocks] = null;
+		fIndex.setSpans(bases);
+		fIndex.rebuild();
+	}
+	
+	/** Make room for at least n blocks. */
+	private void ensureBlockCapacity(int n) {
+		if (n <= fBlocks.length) {
+			return;
+		}
+		int cap = Math.max(n, fBlocks.length * 2);
+		int [][] blocks = new int[cap][];
+		System.arraycopy(fBlocks, 0, blocks, 0, fIndex.fNrBlocks);
+		fBlocks = blocks;
+		fIndex.setCapacity(cap);
+	}
+	
+	int [][] fBlocks;	// line starts relative to the first line start of their block
+	final REDBlockIndex fIndex;	// line counts and spans of the blocks
+	private int fNrLines;
+	int fModCount;	// incremented on each modification, used by REDLineTreeCursor to detect invalidation
+	
+	private static final int fcInitialNrBlocks = 4;
+	static final int fcBlockCapacity = 1024;
+	static final int fcBlockFill = fcBlockCapacity * 3 / 4;
+	static final int fcBlockMinFill = fcBlockCapacity / 4;
+	private static final int fcBlockOverhead = 4;	// array header
 }
@@ -0,0 +1,150 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+/** Cursor for sequential access to the lines of a REDLineTree.
+  * Moving the cursor to the next or previous line takes O(1), moving it anywhere else O(log n). 
+  * If the line tree is modified, the cursor notices this upon its next use and positions itself from scratch at the same line number.
+  * @author rli@chello.at
+  * @invariant fBlock >= 0 && fBlock < fTree.fIndex.fNrBlocks
+  * @invariant fIndex >= 0 && fIndex < fTree.fIndex.fCounts[fBlock]
+  * @tier system
+  */
+public class REDLineTreeCursor {
+	/** @pre tree != null */
+	REDLineTreeCursor(REDLineTree tree) {
+		fTree = tree;
+		seek(0);
+	}
+	
+	/** Move cursor to line.
+	  * @param lineNr is normalized to be in range [0, fTree.getNrNodes() - 1]
+	  */
+	public void setLine(int lineNr) {
+		lineNr = Math.max(0, Math.min(lineNr, fTree.getNrNodes() - 1));
+		if (fModCount == fTree.fModCount) {
+			if (lineNr == fLine) {
+				return;
+			}
+			else if (lineNr == fLine + 1) {
+				next();
+				return;
+			}
+			else if (lineNr == fLine - 1) {
+				prev();
+				return;
+			}
+		}
+		seek(lineNr);
+	}
+	
+	/** Position cursor from scratch. */
+	private void seek(int lineNr) {
+		fModCount = fTree.fModCount;
+		fBlock = fTree.fIndex.findBlockByIndex(lineNr);
+		fBase = fTree.fIndex.prefixSpan(fBlock);
+		fIndex = lineNr - fTree.fIndex.prefixCount(fBlock);
+		fLine = lineNr;
+	}
+	
+	/** Move cursor to next line.
+	  * @return false, if the cursor is already at the last line
+	  */
+	public boolean next() {
+		validate();
+		if (fIndex + 1 < fTree.fIndex.fCounts[fBlock]) {
+			fIndex++;
+		}
+		else if (fBlock + 1 < fTree.fIndex.fNrBlocks) {
+			fBase += fTree.fIndex.fSpans[fBlock];
+			fBlock++;
+			fIndex = 0;
+		}
+		else {
+			return false;
+		}
+		fLine++;
+		return true;
+	}
+	
+	/** Move cursor to previous line.
+	  * @return false, if the cursor is already at line 0
+	  */
+	public boolean prev() {
+		validate();
+		if (fIndex > 0) {
+			fIndex--;
+		}
+		else if (fBlock > 0) {
+			fBlock--;
+			fBase -= fTree.fIndex.fSpans[fBlock];
+			fIndex = fTree.fIndex.fCounts[fBlock] - 1;
+		}
+		else {
+			return false;
+		}
+		fLine--;
+		return true;
+	}
+	
+	/** Get number of the line the cursor is at. */
+	public int getLine() {
+		return fLine;
+	}
+	
+	/** Get start position of the line the cursor is at. */
+	public int getLineStart() {
+		validate();
+		return fBase + fTree.fBlocks[fBlock][fIndex];
+	}
+	
+	/** Get start position of the line following the line the cursor is at.
+	  * @return The start of the next line or -1, if the cursor is at the last line.
+	  */
+	public int getNextLineStart() {
+		validate();
+		if (fIndex + 1 < fTree.fIndex.fCounts[fBlock]) {
+			return fBase + fTree.fBlocks[fBlock][fIndex + 1];
+		}
+		else if (fBlock + 1 < fTree.fIndex.fNrBlocks) {
+			return fBase + fTree.fIndex.fSpans[fBlock];
+		}
+		return -1;
+	}
+	
+	/** Check whether the cursor still reflects the line tree.
+	  * @return false, if the line tree has been modified since the cursor has been positioned.
+	  */
+	public boolean isValid() {
+		return fModCount == fTree.fModCount;
+	}
+	
+	/** Reposition cursor at its line, if the line tree has been modified. */
+	private void validate() {
+		if (fModCount != fTree.fModCount) {
+			seek(Math.min(fLine, fTree.getNrNodes() - 1));
+		}
+	}
+	
+	private final REDLineTree fTree;
+	private int fModCount;
+	private int fBlock;
+	private int fIndex;
+	private int fBase;
+	private int fLine;
+}
@@ -17,9 +17,6 @@
  
 package org.rtefx.linetree;
 
-import java.util.EmptyStackException;
-import java.util.Stack;
-
 /** Edge data associated with REDEdges.
   * @author rli@chello.at
   * @see REDEdge
@@ -79,51 +76,11 @@ public class REDLineTreeData extends REDEdgeData {
 		return new REDLineTreeData(fPosition, fLine);
 	}
 	
-	/** Acquire data object from pool.
-	  * If pool is empty, a new object will be created
-	  * @return A REDLineTreeData object, initialized to 0/0
-	  */
-	public static REDLineTreeData acquireFromPool() {
-		try {
-			return (REDLineTreeData) fgPool.pop();
-		}
-		catch (EmptyStackException ese) {
-			return new REDLineTreeData();
-		}
-	}
-	
-	/** Acquire data object from pool.
-	  * If pool is empty, a new object will be created
-	  * @param position The position the acquired data should have.
-	  * @param line The line the acquired data should have.
-	  * @return A REDLineTreeData object, initialized to position/line
-	  */
-	public static REDLineTreeData acquireFromPool(int position, int line) {
-		REDLineTreeData data = acquireFromPool();
-		data.fPosition = position;
-		data.fLine = line;
-		return data;
-	}
-
-	/** Release data object into pool.
-	  * The object does not necessarily have to be acquired from the pool.
-	  * @param The REDLineTreeData object to be released into the pool for future usage. Will be set to 0/0 by this method.
-	  */
-	public static void releaseIntoPool(REDLineTreeData data) {
-		data.fPosition = 0; data.fLine = 0;
-		fgPool.push(data);
-	}	
-
-
 	public static PositionComparison fgPositionComparison = new PositionComparison();
 	public static LineComparison fgLineComparison = new LineComparison();
 	
 	int fPosition;
 	int fLine;
-	static Stack fgPool;		// LineTreeData pool for reduced memory usage fluctuation	
-	static {
-		fgPool = new Stack();
-	}
 }
 
 /** Comparison function for edge data in REDLineTree, using positions */
@@ -36,6 +36,10 @@ public class REDMark extends REDNode {
 	
 	public void setValue(Object value) {
 		fValue= value;
+		fClassBit = REDMarkClassIndex.getBit(value);
+		if (fUp != null) {
+			updateAugmentationUpwards();
+		}
 	}
 	
 	public Object getValue() {
@@ -48,9 +52,15 @@ public class REDMark extends REDNode {
 		return retVal;
 	}
 	
-	void collect(int myPos, ArrayList<REDMark> collection, int from, int to, Class<?> cl, boolean excludeMyself) {
+	/** Collect marks within [from, to]. Recursive method.
+	  * @param mask The query mask of cl (cf. REDMarkClassIndex); subtrees without a matching value class are skipped. Ignored if cl == null.
+	  */
+	void collect(int myPos, ArrayList<REDMark> collection, int from, int to, Class<?> cl, long mask, boolean excludeMyself) {
+		if (cl != null && (fClassMask & mask) == 0) {
+			return;
+		}
 		if (myPos >= from && fLeft != null) {
-			((REDMark) fLeft.fSon).collect(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, collection, from, to, cl, false);
+			((REDMark) fLeft.fSon).collect(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, collection, from, to, cl, mask, false);
 		}
 		
 		if (!excludeMyself && myPos >= from && myPos <= to && (cl == null || cl.isInstance(fValue))) {
@@ -58,44 +68,127 @@ public class REDMark extends REDNode {
 		}
 		
 		if (myPos <= to && fRight != null) {
-			((REDMark) fRight.fSon).collect(myPos + ((REDMarkTreeData) fRight.fData).fPosition, collection, from, to, cl, false);
+			((REDMark) fRight.fSon).collect(myPos + ((REDMarkTreeData) fRight.fData).fPosition, collection, from, to, cl, mask, false);
+		}
+	}
+	
+	/** Visit marks within [from, to] in order. Recursive method.
+	  * @param mask The query mask of cl (cf. REDMarkClassIndex); subtrees without a matching value class are skipped. Ignored if cl == null.
+	  * @return false, if the visitor wants to stop
+	  */
+	boolean visit(int myPos, REDMarkVisitor visitor, int from, int to, Class<?> cl, long mask, boolean excludeMyself) {
+		if (cl != null && (fClassMask & mask) == 0) {
+			return true;
+		}
+		if (myPos >= from && fLeft != null) {
+			if (!((REDMark) fLeft.fSon).visit(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, visitor, from, to, cl, mask, false)) {
+				return false;
+			}
+		}
+		
+		if (!excludeMyself && myPos >= from && myPos <= to && (cl == null || cl.isInstance(fValue))) {
+			if (!visitor.visitMark(this, myPos)) {
+				return false;
+			}
+		}
+		
+		if (myPos <= to && fRight != null) {
+			return ((REDMark) fRight.fSon).visit(myPos + ((REDMarkTreeData) fRight.fData).fPosition, visitor, from, to, cl, mask, false);
 		}
+		return true;
 	}
 	
-	REDMark find(int myPos, int pos, boolean left, Class<?> cl, boolean excludeMyself) {
+	/** Find mark closest to pos. Recursive method.
+	  * @param mask The query mask of cl (cf. REDMarkClassIndex); subtrees without a matching value class are skipped. Ignored if cl == null.
+	  */
+	REDMark find(int myPos, int pos, boolean left, Class<?> cl, long mask, boolean excludeMyself) {
 		REDMark retVal = null;
 		
+		if (cl != null && (fClassMask & mask) == 0) {
+			return null;
+		}
 		if (left) {
 			if (myPos <= pos && fRight != null) {
-				retVal = ((REDMark) fRight.fSon).find(myPos + ((REDMarkTreeData) fRight.fData).fPosition, pos, left, cl, false);
+				retVal = ((REDMark) fRight.fSon).find(myPos + ((REDMarkTreeData) fRight.fData).fPosition, pos, left, cl, mask, false);
 			}
 			if (!excludeMyself && retVal == null && myPos <= pos && (cl == null || cl.isInstance(fValue))) {
 				retVal = this;
 			}
 			if (retVal == null && fLeft != null) {
-				retVal = ((REDMark) fLeft.fSon).find(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, pos, left, cl, false);
+				retVal = ((REDMark) fLeft.fSon).find(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, pos, left, cl, mask, false);
 			}	
 		}
 		else {
 			if (myPos >= pos && fLeft != null) {
-				retVal = ((REDMark) fLeft.fSon).find(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, pos, left, cl, false);
+				retVal = ((REDMark) fLeft.fSon).find(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, pos, left, cl, mask, false);
 			}
 			if (!excludeMyself && retVal == null && myPos >= pos && (cl == null || cl.isInstance(fValue))) {
 				retVal = this;
 			}
 			if (retVal == null && fRight != null) {
-				retVal = ((REDMark) fRight.fSon).find(myPos + ((REDMarkTreeData) fRight.fData).fPosition, pos, left, cl, false);	
+				retVal = ((REDMark) fRight.fSon).find(myPos + ((REDMarkTreeData) fRight.fData).fPosition, pos, left, cl, mask, false);	
 			}
 		}
 		
 		return retVal;
 	}
 	
+	/** Recompute the value classes found in the subtree of this mark. */
+	protected void updateAugmentation() {
+		long mask = fClassBit;
+		if (fLeft != null) {
+			mask |= ((REDMark) fLeft.fSon).fClassMask;
+		}
+		if (fRight != null) {
+			mask |= ((REDMark) fRight.fSon).fClassMask;
+		}
+		fClassMask = mask;
+	}
+	
+	/** Get position of mark.
+	  * This method does not allocate any objects and only reads the tree.
+	  */
 	public int getPosition() {
-		REDMarkTreeData data = new REDMarkTreeData();
-		getPosition(data);
-		return data.fPosition;
+		int pos = 0;
+		REDEdge up = fUp;
+		while (up != null) {
+			if (up.isLeftEdge()) {
+				pos -= ((REDMarkTreeData) up.fData).fPosition;
+			}
+			else {
+				pos += ((REDMarkTreeData) up.fData).fPosition;
+			}
+			up = up.fFather.fUp;
+		}
+		return pos;
+	}
+	
+	/** Move marks within ]from, to] to from. Recursive method. */
+	void moveDeleted(int myPos, int from, int to) {
+		if (from <= myPos && fLeft != null) {
+			((REDMark) fLeft.fSon).moveDeleted(myPos - ((REDMarkTreeData) fLeft.fData).fPosition, from, to);
+		}
+		if (myPos <= to && fRight != null) {	
+			((REDMark) fRight.fSon).moveDeleted(myPos + ((REDMarkTreeData) fRight.fData).fPosition, from, to);
+		}
+		if (from < myPos && myPos <= to && fUp != null) {	// sons have been handled with old position => move afterwards
+			int dist = from - myPos;
+			if (fUp.isLeftEdge()) {
+				((REDMarkTreeData) fUp.fData).fPosition -= dist;
+			}
+			else {
+				((REDMarkTreeData) fUp.fData).fPosition += dist;
+			}
+			if (fLeft != null) {
+				((REDMarkTreeData) fLeft.fData).fPosition += dist;
+			}
+			if (fRight != null) {
+				((REDMarkTreeData) fRight.fData).fPosition -= dist;
+			}
+		}
 	}
 
 	Object fValue;
+	long fClassBit;	// bit of the value class (cf. REDMarkClassIndex); kept here, as looking it up takes a global lock
+	long fClassMask;	// bits (cf. REDMarkClassIndex) of the value classes within the subtree of this mark
 }
@@ -0,0 +1,79 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import java.util.HashMap;
+
+/** Assigns a bit to each class of mark values.
+  * Each mark keeps the bits of the value classes found in its subtree, so typed queries in REDMarkTree can skip subtrees 
+  * without matching marks. The first 63 value classes get a bit of their own; all further classes share the last bit, 
+  * which is therefore part of every query mask.
+  * @author rli@chello.at
+  * @tier system
+  */
+final class REDMarkClassIndex {
+	private REDMarkClassIndex() {
+	}
+	
+	/** Get bit of value class.
+	  * @param value The value to get bit for. May be null.
+	  * @return The bit of the value's class; 0 for null.
+	  */
+	static long getBit(Object value) {
+		if (value == null) {
+			return 0;
+		}
+		Class<?> cl = value.getClass();
+		synchronized (fgBits) {
+			Long bit = fgBits.get(cl);
+			if (bit == null) {
+				bit = Long.valueOf(fgBits.size() < fcOverflowBitNr ? 1L << fgBits.size() : fcOverflowBit);
+				fgBits.put(cl, bit);
+				fgQueryMasks.clear();
+			}
+			return bit.longValue();
+		}
+	}
+	
+	/** Get query mask of class.
+	  * @param cl The class to get query mask for.
+	  * @return A mask containing the bits of all value classes registered so far which are assignable to cl, plus the overflow bit.
+	  * @pre cl != null
+	  */
+	static long getQueryMask(Class<?> cl) {
+		synchronized (fgBits) {
+			Long mask = fgQueryMasks.get(cl);
+			if (mask == null) {
+				long m = fcOverflowBit;
+				for (Class<?> c : fgBits.keySet()) {
+					if (cl.isAssignableFrom(c)) {
+						m |= fgBits.get(c).longValue();
+					}
+				}
+				mask = Long.valueOf(m);
+				fgQueryMasks.put(cl, mask);
+			}
+			return mask.longValue();
+		}
+	}
+	
+	private static final int fcOverflowBitNr = 63;
+	private static final long fcOverflowBit = 1L << fcOverflowBitNr;
+	private static final HashMap<Class<?>, Long> fgBits = new HashMap<>();
+	private static final HashMap<Class<?>, Long> fgQueryMasks = new HashMap<>();
+}
@@ -44,22 +44,59 @@ public class REDMarkTree extends REDDistanceTree implements REDTextEventListener
 		return getRoot().insertNew(new REDMarkTreeData(pos), new REDMarkTreeData(), REDMarkTreeData.fgComparison, fFactory, value);
 	}
 	
-	public void deleteMarks(int from, int to) {
-		REDMarkTreeData fromData = new REDMarkTreeData(from);
-		REDMarkTreeData toData = new REDMarkTreeData(to);
-		REDMarkTreeData nullData = new REDMarkTreeData();
-		while (fRoot.delete(fromData, toData, REDMarkTreeData.fgComparison, nullData, fFactory)) {
+	/** Create several marks at once.
+	  * For many marks this is much faster than calling createMark for each of them, as the tree is rebuilt in linear time.
+	  * @param positions The positions of the marks in ascending order. Positions are normalized to be in range [0, length of text].
+	  * @param values The values of the marks. May be null, in which case all marks get null as value.
+	  * @param n The number of marks to create.
+	  * @return The new marks in the order of positions.
+	  * @pre n == 0 || positions.length >= n && (values == null || values.length >= n)
+	  */
+	public REDMark [] createMarks(int [] positions, Object [] values, int n) {
+		REDMark [] marks = new REDMark[n];
+		REDMarkTreeData [] data = new REDMarkTreeData[n];
+		int length = fEditor.length();
+		for (int i = 0; i < n; i++) {
+			marks[i] = (REDMark) fFactory.createNode();
+			marks[i].setValue(values == null ? null : values[i]);
+			data[i] = new REDMarkTreeData(Math.max(0, Math.min(positions[i], length)));
 		}
+		insertSorted(marks, data, n, REDMarkTreeData.fgComparison);
+		return marks;
+	}
+	
+	public void deleteMarks(int from, int to) {
+		deleteRange(new REDMarkTreeData(from), new REDMarkTreeData(to), REDMarkTreeData.fgComparison);
 	}
 	
 	public void deleteMark(REDMark m) {
 		m.delete(fFactory);
 	}
 	
+	/** Delete all marks.
+	  * The tree stays registered with the text and may be reused, e.g. after a file has been loaded.
+	  */
+	public void clear() {
+		super.clear();
+	}
+	
+	/** Dispose mark tree.
+	  * All marks are deleted and the tree is unregistered from the text, so it is no longer updated upon text changes.
+	  * The tree must not be used afterwards.
+	  */
+	public void dispose() {
+		clear();
+		if (fEditor != null) {
+			fEditor.releaseMarkTree(this);
+			fEditor = null;
+		}
+	}
+	
 	/** Collect marks into a vector
 	  * @param from Position to start the search for marks at
 	  * @param to Position to end the search for marks at
-	  * @param cl If this parameter is non-null, only those marks are collected whose value is an instanceof cl.
+	  * @param cl If this parameter is non-null, only those marks are collected whose value is an instanceof cl. Subtrees without such marks are skipped, so the 
+	  * time needed does not depend on the number of marks of other value classes.
 	  * @param reuse If this parameter is non-null, the passed ArrayList is reused. This can be used to increase performance. Existing elements in reuse are not removed!
 	  * @return A ArrayList containing 0 to n REDMark objects.
 	  */
@@ -67,7 +104,7 @@ public class REDMarkTree extends REDDistanceTree implements REDTextEventListener
 		if (reuse == null) {
 			reuse = new ArrayList<>();
 		}
-		getRoot().collect(0, reuse, from, to, cl, true);
+		getRoot().collect(0, reuse, from, to, cl, cl == null ? 0 : REDMarkClassIndex.getQueryMask(cl), true);
 		return reuse;
 	}
 	
@@ -75,15 +112,24 @@ public class REDMarkTree extends REDDistanceTree implements REDTextEventListener
 	  * This method tries to find the mark which is closest to a given position.
 	  * @param pos Position to search for nearest mark
 	  * @param left If this parameter is set to true, the mark is searched to the left of pos; otherwise it is searched to the right of pos.
-	  * @param cl If this parameter is non-null, only those marks are considered whose value is an instanceof cl.
+	  * @param cl If this parameter is non-null, only those marks are considered whose value is an instanceof cl. Subtrees without such marks are skipped.
 	  * @return The REDMark object closest to pos or null, if no such mark exists.
 	  */
 	public REDMark findMark(int pos, boolean left, Class<?> cl) {
-		return getRoot().find(0, pos, left, cl, true);
+		return getRoot().find(0, pos, left, cl, cl == null ? 0 : REDMarkClassIndex.getQueryMask(cl), true);
 	}
 	
-//	REDMark findMarkUsingVisitor(int pos, boolean left, REDMarkCollectorVisitor visitor) {
-//	}
+	/** Visit marks in order.
+	  * Unlike collectMarks this does not need any collection and can be stopped early by the visitor.
+	  * @param from Position to start the search for marks at
+	  * @param to Position to end the search for marks at
+	  * @param cl If this parameter is non-null, only those marks are visited whose value is an instanceof cl.
+	  * @param visitor The visitor to call for each mark within [from, to].
+	  * @pre visitor != null
+	  */
+	public void visitMarks(int from, int to, Class<?> cl, REDMarkVisitor visitor) {
+		getRoot().visit(0, visitor, from, to, cl, cl == null ? 0 : REDMarkClassIndex.getQueryMask(cl), true);
+	}
 
 	REDMark getRoot() {
 		return (REDMark) fRoot;
@@ -96,14 +142,16 @@ public class REDMarkTree extends REDDistanceTree implements REDTextEventListener
 	}
 
 	public void afterInsert(int from, int to) {
-		REDEdgeData data = new REDMarkTreeData(to-from);
-		modifyEdgesAfterInsertion(new REDMarkTreeData(from), REDMarkTreeData.fgComparison, data);
+		fFrom.fPosition = from;
+		fDelta.fPosition = to - from;
+		modifyEdgesAfterInsertion(fFrom, REDMarkTreeData.fgComparison, fDelta);
 	}
 	
 	public void afterDelete(int from, int to) {
-		fRoot.moveDeleted(fFactory.createEdgeData(), new REDMarkTreeData(from), new REDMarkTreeData(to), REDMarkTreeData.fgComparison, fFactory);
-		REDEdgeData data = new REDMarkTreeData(from - to);
-		modifyEdgesAfterInsertion(new REDMarkTreeData(from), REDMarkTreeData.fgComparison, data);
+		getRoot().moveDeleted(0, from, to);
+		fFrom.fPosition = from;
+		fDelta.fPosition = from - to;
+		modifyEdgesAfterInsertion(fFrom, REDMarkTreeData.fgComparison, fDelta);
 	}
 	
 	public void beforeInsert(int from, int to) {}
@@ -119,6 +167,8 @@ public class REDMarkTree extends REDDistanceTree implements REDTextEventListener
 	public void beforeStyleBatchNotification() {}
 	public void afterStyleBatchNotification() {}
 	REDEditor fEditor;
+	private final REDMarkTreeData fFrom = new REDMarkTreeData();	// scratch data for text event handling
+	private final REDMarkTreeData fDelta = new REDMarkTreeData();
 }
 
 /** Distance tree factory for REDMarkTree */
@@ -127,7 +177,22 @@ class REDMarkTreeFactory implements REDDistanceTreeFactory {
 		return new REDMark();
 	}
 	
+	public REDNode createRoot(REDDistanceTree tree) {
+		return new REDMarkTreeRoot(tree);
+	}
+	
 	public REDEdgeData createEdgeData() {
 		return new REDMarkTreeData();
 	}		
 }
+
+/** Root sentinel of REDMarkTree.
+  * Mark trees are registered weakly with their text; the back reference keeps a tree alive as long as any of its marks is referenced.
+  */
+class REDMarkTreeRoot extends REDMark {
+	REDMarkTreeRoot(REDDistanceTree tree) {
+		fTree = tree;
+	}
+	
+	final REDDistanceTree fTree;
+}
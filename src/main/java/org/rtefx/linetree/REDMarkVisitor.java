@@ -15,12 +15,19 @@
 //    License along with this library; if not, write to the Free Software
 //    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
  
-package org.rtefx.plugins.synhi;
+package org.rtefx.linetree;
 
-/** Auxiliary type to allow object-derived mutable integers. 
+/** Visitor interface for streaming the marks of a range.
   * @author rli@chello.at
-  * @tier system
+  * @see REDMarkTree#visitMarks
+  * @tier API
   */
-class REDSyntaxHighlighterState {
-	int fState = -1;
+public interface REDMarkVisitor {
+	/** Visit a mark.
+	  * The mark tree must not be modified while marks are visited.
+	  * @param mark The mark to visit.
+	  * @param position The position of the mark.
+	  * @return true to continue with the next mark; false to stop visiting.
+	  */
+	boolean visitMark(REDMark mark, int position);
 }
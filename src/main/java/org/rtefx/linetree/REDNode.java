@@ -126,6 +126,8 @@ public class REDNode {
 			}
 		}
 		epsilon.fSon = a; a.fUp = epsilon;
+		a.updateAugmentation();
+		b.updateAugmentation();
 	}
 	
 	private void rotateLeft(REDDistanceTreeFactory factory) {
@@ -254,6 +256,22 @@ public class REDNode {
 	  * @post return != null
 	  */
 	public REDNode insertNew(REDEdgeData data, REDEdgeData myData, REDEdgeDataComparison comp, REDDistanceTreeFactory factory) {
+		REDNode node;
+		try {
+			node = factory.createNode();	
+		}
+		catch (Exception ie) {
+			throw new Error("" + ie);
+		}
+		return insert(node, data, myData, comp, factory);
+	}
+	
+	/** Insert a node which has not been linked into any tree yet.
+	  * @param node The node to insert
+	  * @return node
+	  * @pre node.fUp == null && node.fLeft == null && node.fRight == null
+	  */
+	REDNode insert(REDNode node, REDEdgeData data, REDEdgeData myData, REDEdgeDataComparison comp, REDDistanceTreeFactory factory) {
 		REDNode n = null;
 		REDNode n2 = null;
 		REDEdge e = null;
@@ -262,16 +280,11 @@ public class REDNode {
 		if (comp.lt(myData, data)) {	// go or append right
 			if (fRight != null) {
 				myData.add(fRight.fData);
-				n2 = fRight.fSon.insertNew(data, myData, comp, factory);
+				n2 = fRight.fSon.insert(node, data, myData, comp, factory);
 			}
 			else {
 				data.sub(myData);
-				try {
-					n = factory.createNode();	
-				}
-				catch (Exception ie) {
-					throw new Error("" + ie);
-				}
+				n = node;
 				e = new REDEdge(data, this, n, false);
 				factor = -1;
 				fRight = e;
@@ -280,16 +293,11 @@ public class REDNode {
 		else {	// go or append left
 			if (fLeft != null) {
 				myData.sub(fLeft.fData);
-				n2 = fLeft.fSon.insertNew(data, myData, comp, factory);
+				n2 = fLeft.fSon.insert(node, data, myData, comp, factory);
 			} 
 			else {
 				myData.sub(data);
-				try {
-					n = factory.createNode();
-				}
-				catch (Exception ie) {
-					throw new Error("" + ie);
-				}
+				n = node;
 				e = new REDEdge((REDEdgeData) myData.clone(), this, n, true);
 				factor = 1;
 				fLeft = e;
@@ -300,6 +308,7 @@ public class REDNode {
 			REDAssert.ensure(factor != 0);
 			n.fUp = e;
 			balanceAfterInsert(factor, factory);
+			n.updateAugmentationUpwards();
 		}
 		else {
 			n = n2;
@@ -309,6 +318,7 @@ public class REDNode {
 	
 	/** Delete this node. */
 	public void delete(REDDistanceTreeFactory factory) {
+		REDNode changed = fUp.fFather;	// lowest node whose subtree changes
 		if (fLeft == null && fRight == null) {	// no sons, simple case
 			if (fUp.isLeftEdge()) {
 				fUp.fFather.fLeft = null;
@@ -372,6 +382,7 @@ public class REDNode {
 				}
 			}
 			REDEdge balanceEdge = subst.fUp;	// remembered for later usage
+			changed = balanceEdge.fFather == this ? subst : balanceEdge.fFather;
 			// balance now
 			if (balanceEdge.isLeftEdge()) {
 				balanceEdge.fFather.balanceAfterDelete(-1, factory);
@@ -404,11 +415,12 @@ public class REDNode {
 			subst.fRight = gamma;
 			subst.fBalance = fBalance;
 		}
+		changed.updateAugmentationUpwards();
 		fUp = null; fLeft = null; fRight = null;
 	}
 	
 	/** Delete first nodes within range. Recursive method.
-	  * To delete all nodes within a range use <CODE>while (root.delete(from, to, comparison, new REDEdgeData());
+	  * To delete all nodes within a range use REDDistanceTree.deleteRange(), which cuts out the whole range at once.
 	  * @param from Lower bound of range to find node to delete
 	  * @return true, if a node has been deleted between from and to
 	  */
@@ -434,6 +446,23 @@ public class REDNode {
 		return false;
 	}
 	
+	/** Recompute data summarizing the subtree of this node.
+	  * This is called whenever the sons of this node have changed, after the sons themselves have been updated. Subclasses 
+	  * may override this to keep aggregated data (like the kinds of values found in the subtree) through rotations. 
+	  * Does nothing by default.
+	  */
+	protected void updateAugmentation() {
+	}
+	
+	/** Recompute data summarizing the subtrees of this node and all of its ancestors. */
+	protected void updateAugmentationUpwards() {
+		REDNode node = this;
+		while (node != null) {
+			node.updateAugmentation();
+			node = node.fUp == null ? null : node.fUp.fFather;
+		}
+	}
+	
 	/** get position of node */
 	public REDEdgeData getPosition(REDEdgeData data) {
 		REDEdge up = fUp;
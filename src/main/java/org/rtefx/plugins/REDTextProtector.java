@@ -19,35 +19,27 @@ package org.rtefx.plugins;
 
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 
 import org.rtefx.REDEditor;
 import org.rtefx.REDPlugin;
 import org.rtefx.REDView;
 import org.rtefx.REDViewController;
 import org.rtefx.REDViewControllerDecorator;
-import org.rtefx.linetree.REDMark;
-import org.rtefx.linetree.REDMarkTree;
+import org.rtefx.linetree.REDInterval;
+import org.rtefx.linetree.REDIntervalTree;
+import org.rtefx.linetree.REDIntervalVisitor;
 import org.rtefx.util.REDTracer;
 
 /** This plugin allows to protect (i.e. make readonly) parts of a text.
+  * Protecting ]from, to[ keeps the interval [from + 1, to] in an interval tree. Touching or overlapping areas are merged.
   * @author rli@chello.at
   * @tier plugin
   */
 public class REDTextProtector extends REDPlugin {
-	class ProtectionStart extends Object { }
-	class ProtectionEnd extends Object { }
-	
-	private static Class fgProtectionStartClass;
-	private static Class fgProtectionEndClass;
-	
 	class REDTextProtectorController extends REDViewControllerDecorator {
 		REDTextProtectorController(REDViewController ctrl) {
 			super(ctrl);
-			if (fgProtectionStartClass == null) {
-				fgProtectionStartClass = (new ProtectionStart()).getClass();
-				fgProtectionEndClass = (new ProtectionEnd()).getClass();
-			}
 		}
 		
 		public void keyBackspace(REDView v, KeyEvent e) { 
@@ -98,16 +90,19 @@ public class REDTextProtector extends REDPlugin {
 	public REDTextProtector() {
 		super();
 		fController = null;
-		fCollector = new ArrayList();
 	}
 	
 	public void setEditor(REDEditor editor) {
 		if (fEditor != null && fController != null) {
 			fEditor.removeControllerDecorator(fController);
 		}
+		if (fAreas != null) {
+			fAreas.dispose();
+			fAreas = null;
+		}
 		super.setEditor(editor);
 		if (editor != null) {
-			fMarks = editor.createMarkTree();
+			fAreas = editor.createIntervalTree();
 			fController = new REDTextProtectorController(editor.getController());
 			editor.setController(fController);
 		}
@@ -119,43 +114,71 @@ public class REDTextProtector extends REDPlugin {
 	  */
 	public void protect(int from, int to) {
 		if (to - from < 2) return;
-		from++;
-		REDMark m = fMarks.findMark(from, true, null);
-		if (m == null || !(m.getValue() instanceof ProtectionStart) && m.getPosition() != from && m.getPosition() != from-1) {
-			fMarks.createMark(from, new ProtectionStart());
+		int start = from + 1;
+		int end = to;
+		fCollector.clear();
+		fAreas.collectIntervals(start - 1, end + 1, fCollector);
+		for (int i = 0; i < fCollector.size(); i++) {
+			REDInterval area = fCollector.get(i);
+			start = Math.min(start, area.getStart());
+			end = Math.max(end, area.getEnd());
+			fAreas.deleteInterval(area);
 		}
-
-		m = fMarks.findMark(from+1, false, ProtectionStart.class);
-		if (m != null && m.getValue() instanceof ProtectionStart && m.getPosition()-1 <= to) {
-			fMarks.deleteMark(m);
-		} 
-		m = fMarks.findMark(to, true, null);
-		if (m != null && m.getValue() instanceof ProtectionEnd) {
-			fMarks.deleteMark(m);
+		fCollector.clear();
+		fAreas.createInterval(start, end, null);
+	}
+	
+	/** Protect several areas at once.
+	  * The given areas are merged with each other and with the areas already protected, then all areas are 
+	  * created in one go. For many areas this is much faster than calling protect(int, int) for each of them.
+	  * @param from Starts of areas to protect
+	  * @param to Ends of areas to protect. Areas with <Code>to - from &lt; 2</Code> are ignored.
+	  * @param n The number of areas to take from from and to.
+	  * @pre n == 0 || from.length >= n && to.length >= n
+	  */
+	public void protect(int [] from, int [] to, int n) {
+		final long [] areas = new long[n + getNrProtectedAreas()];	// start (high word) and end (low word) of each area
+		final int [] nrAreas = { 0 };
+		for (int i = 0; i < n; i++) {
+			if (to[i] - from[i] >= 2) {
+				areas[nrAreas[0]++] = (long) (from[i] + 1) << 32 | to[i];
+			}
 		}
-		m = fMarks.findMark(to+1, false, null);
-		if (m == null || !(m.getValue() instanceof ProtectionEnd)) {
-			fMarks.createMark(to, new ProtectionEnd());
-		}	
+		fAreas.visitIntervals(0, fEditor.length(), new REDIntervalVisitor() {
+			public boolean visitInterval(REDInterval interval, int start, int end) {
+				areas[nrAreas[0]++] = (long) start << 32 | end;
+				return true;
+			}
+		});
+		Arrays.sort(areas, 0, nrAreas[0]);
+		
+		int [] starts = new int[nrAreas[0]];
+		int [] ends = new int[nrAreas[0]];
+		int nrMerged = 0;
+		for (int i = 0; i < nrAreas[0]; i++) {
+			int start = (int) (areas[i] >>> 32);
+			int end = (int) areas[i];
+			if (nrMerged > 0 && start <= ends[nrMerged - 1] + 1) {	// overlaps or touches previous area => merge
+				ends[nrMerged - 1] = Math.max(ends[nrMerged - 1], end);
+			}
+			else {
+				starts[nrMerged] = start;
+				ends[nrMerged++] = end;
+			}
+		}
+		fAreas.clear();
+		fAreas.createIntervals(starts, ends, null, nrMerged);
 	}
 	
 	public void protectLines(int fromLine, int toLine) {
 		protect(fEditor.getLineEnd(fromLine-1), fEditor.getLineStart(toLine+1));
 	}
 	
+	/** Check whether a range may be changed.
+	  * @return false, if an area [s, e] with s <= end and e > start is protected.
+	  */
 	public boolean mayChange(int start, int end) {
-		REDMark m1, m2;
-		m1 = fMarks.findMark(start, true, null);
-		if (m1 != null && m1.getValue() instanceof ProtectionStart) {
-			return false;
-		}
-		
-		if (end > start) {
-			fCollector.clear();
-			fMarks.collectMarks(start+1, end, null, fCollector);
-			return fCollector.size() == 0;
-		}
-		return true;
+		return fAreas.findInterval(start + 1, Math.max(start, end)) == null;
 	}
 	
 	public boolean mayChange() {
@@ -163,36 +186,24 @@ public class REDTextProtector extends REDPlugin {
 	}
 	
 	public void dumpProtection() {
-		ArrayList v = fMarks.collectMarks(0, fEditor.length(), null, null);
-		Iterator iter = v.iterator();
-		while (iter.hasNext()) {
-			REDMark m = (REDMark) iter.next();
-			if (m.getValue() instanceof ProtectionStart) {
-				REDTracer.info("org.rtefx.plugins", "REDTextProtector", "Start at " + m.getPosition());
-			}
-			else if (m.getValue() instanceof ProtectionEnd) {
-				REDTracer.info("org.rtefx.plugins", "REDTextProtector", "End at " + m.getPosition());
+		fAreas.visitIntervals(0, fEditor.length(), new REDIntervalVisitor() {
+			public boolean visitInterval(REDInterval interval, int start, int end) {
+				REDTracer.info("org.rtefx.plugins", "REDTextProtector", "Start at " + start);
+				REDTracer.info("org.rtefx.plugins", "REDTextProtector", "End at " + end);
+				return true;
 			}
-			else {
-				REDTracer.info("org.rtefx.plugins", "REDTextProtector", "Unknown mark value at " + m.getPosition() + ". This is bug!");
-			}
-		}	
+		});
 	}
 	
 	public int getNrProtectedAreas() {
-		ArrayList v1 = fMarks.collectMarks(0, fEditor.length(), fgProtectionStartClass, null);
-		ArrayList v2 = fMarks.collectMarks(0, fEditor.length(), fgProtectionEndClass, null);
-		if (v1.size() != v2.size()) {
-			throw new Error("Internal error in REDTextProtector. Asymmetric protection boundaries.");
-		}
-		return v1.size();
+		return fAreas.getNrIntervals();
 	}
 
 	public void afterFileLoad(String filename) { 
-		fMarks = fEditor.createMarkTree();
+		fAreas.clear();
 	}
 
 	REDTextProtectorController fController;
-	REDMarkTree fMarks;
-	ArrayList fCollector;
+	REDIntervalTree fAreas;
+	private final ArrayList<REDInterval> fCollector = new ArrayList<>();
 }
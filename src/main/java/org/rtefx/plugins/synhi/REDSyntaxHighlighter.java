@@ -18,7 +18,7 @@
 package org.rtefx.plugins.synhi;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
@@ -27,10 +27,11 @@ import javax.swing.SwingUtilities;
 
 import org.rtefx.REDAssert;
 import org.rtefx.REDEditor;
+import org.rtefx.REDLineCursor;
 import org.rtefx.REDPlugin;
 import org.rtefx.REDStyleManager;
-import org.rtefx.linetree.REDMark;
-import org.rtefx.linetree.REDMarkTree;
+import org.rtefx.linetree.REDCompactMarkTree;
+import org.rtefx.rexparser.REDRexLineSource;
 import org.rtefx.rexparser.REDRexMalformedPatternException;
 import org.rtefx.rexparser.REDRexParser;
 import org.rtefx.rexparser.REDRexParserStopper;
@@ -46,9 +47,12 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 	public REDSyntaxHighlighter(REDSyntaxHighlighterDefinition def) {
 		fChangeCount = 0;
 		fRestartFromLine = -1;
-		fSetStateCollector = new ArrayList();
+		fPendingLock = new Object();
+		fPendingPositions = new int[fcMaxPendingStates];
+		fPendingStates = new int[fcMaxPendingStates];
 		fBatchQ = new LinkedList();
 		fParser = new REDRexParser();
+		fParser.setMaxLineLength(fcDefaultMaxLineLength);
 		fParser.putClientProperty("lastLit", new REDSyntaxHighlighterPosition());
 		fParser.putClientProperty("style0", REDStyleManager.getDefaultStyle());
 		Iterator iter = def.iterator();
@@ -71,49 +75,122 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 	}
 	
 	public void setEditor(REDEditor editor) {
+		if (fMarks != null) {
+			discardStates();
+			fMarks.dispose();
+			fMarks = null;
+		}
 		super.setEditor(editor);
 		fParser.putClientProperty("editor", fEditor);
 	
 		if (editor != null) {
-			fMarks = editor.createMarkTree();
+			fMarks = editor.createCompactMarkTree();
 			synchronized (this) {
 				updateLines(0, true);	
 			}
 		}
 	}
 	
+	/** Set maximum line length to highlight.
+	  * Very long lines, e.g. of minified files, are highlighted within their first <CODE>maxLineLength</CODE> characters only, 
+	  * so editing them stays responsive. The rest of such lines is styled like text no rule matches.
+	  * @param maxLineLength The maximum number of characters to highlight per line; 0 for no limit.
+	  */
+	public void setMaxLineLength(int maxLineLength) {
+		fParser.setMaxLineLength(maxLineLength);
+	}
+	
+	/** Get maximum line length to highlight.
+	  * @return The maximum number of characters highlighted per line; 0 if there is no limit.
+	  */
+	public int getMaxLineLength() {
+		return fParser.getMaxLineLength();
+	}
+	
+	/** Get start of line. 
+	  * The concurrent parser asks for states of consecutive lines, so it uses a line cursor of its own which gets there in O(1) most 
+	  * of the time. Other threads look the line start up from scratch.
+	  */
+	private int getLineStart(int line) {
+		if (line >= fEditor.getNrOfLines()) {
+			return fEditor.length();
+		}
+		Thread current = Thread.currentThread();
+		if (current instanceof ConcurrentParser) {
+			return ((ConcurrentParser) current).getLineStart(line);
+		}
+		return fEditor.getLineStart(line);
+	}
+	
 	int getState(int line) {
 		if (line == 0) {
 			return fParser.defaultState();
 		}
-		int lineStart = fEditor.getLineStart(line);
-		fSetStateCollector.clear();
-		fSetStateCollector = fMarks.collectMarks(lineStart, lineStart, null, fSetStateCollector);
-		if (fSetStateCollector.size() == 0) {
+		int lineStart = getLineStart(line);
+		synchronized (fPendingLock) {
+			int idx = Arrays.binarySearch(fPendingPositions, 0, fNrPending, lineStart);
+			if (idx >= 0) {
+				return fPendingStates[idx];
+			}
+		}
+		int idx = fMarks.findMark(lineStart);
+		if (idx == -1) {
 			return -1;
 		}
 		else {
-			return ((REDSyntaxHighlighterState) ((REDMark) fSetStateCollector.get(0)).getValue()).fState;
+			return fMarks.getValue(idx);
 		}
 	}
 	
+	/** Set state of line.
+	  * As the parser proceeds line by line, new states are collected and turned into marks in bulk by flushStates().
+	  */
 	void setState(int line, int state) {
-		int lineStart = fEditor.getLineStart(line);
-		fSetStateCollector.clear();
-		fSetStateCollector = fMarks.collectMarks(lineStart, lineStart, null, fSetStateCollector);
-		REDSyntaxHighlighterState hiState;
-		if (fSetStateCollector.size() == 0) {
-			hiState = new REDSyntaxHighlighterState();
-			fMarks.createMark(lineStart, hiState);
+		int lineStart = getLineStart(line);
+		synchronized (fPendingLock) {
+			int idx = Arrays.binarySearch(fPendingPositions, 0, fNrPending, lineStart);
+			if (idx >= 0) {
+				fPendingStates[idx] = state;
+				return;
+			}
 		}
-		else {
-			hiState = (REDSyntaxHighlighterState) ((REDMark) fSetStateCollector.get(0)).getValue();
+		int idx = fMarks.findMark(lineStart);
+		if (idx != -1) {
+			fMarks.setValue(idx, state);
+			return;
+		}
+		synchronized (fPendingLock) {
+			if (fNrPending == fcMaxPendingStates || fNrPending > 0 && fPendingPositions[fNrPending - 1] > lineStart) {
+				flushStates();
+			}
+			fPendingPositions[fNrPending] = lineStart;
+			fPendingStates[fNrPending++] = state;
+		}
+	}
+	
+	/** Create marks for all states collected by setState(). 
+	  * This must happen before the text changes, as the positions of collected states are not updated.
+	  */
+	void flushStates() {
+		synchronized (fPendingLock) {
+			if (fNrPending > 0) {
+				fMarks.addMarks(fPendingPositions, fPendingStates, fNrPending);
+				fNrPending = 0;
+			}
+		}
+	}
+	
+	/** Delete all states, including those not yet turned into marks. */
+	private void discardStates() {
+		synchronized (fPendingLock) {
+			fNrPending = 0;
+			fMarks.clear();
 		}
-		hiState.fState = state;
 	}
 	
 	void deleteStates(int fromLine, int toLine) {
-		fMarks.deleteMarks(fEditor.getLineStart(fromLine), fEditor.getLineStart(toLine));
+		flushStates();
+		fMarks.deleteMarks(getLineStart(fromLine), getLineStart(toLine));
 	}
 	
 //	void dumpStates() {
@@ -153,13 +230,27 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 			}
 		}
 		
+		/** Get start of line; must be called by this thread only. */
+		int getLineStart(int line) {
+			fLineCursor.setLine(line);
+			return fLineCursor.getLineStart();
+		}
+		
 		public void run() {
 			do {
+				fLineCursor = fEditor.createLineCursor();	// fresh for each round, as the editor may have loaded another text meanwhile
 				fParser.putClientProperty("batchQ", fBatchQ);
 				fParser.putClientProperty("changeCount", new Integer(fChangeCount));
 				fParser.putClientProperty("batchExecutor", new BatchExecutor());
-				int state = prepareParsing(fLine);
-				fParser.parse(fEditor.getLineSource(), fLine, state, REDSyntaxHighlighter.this, false);
+				REDRexLineSource src = fEditor.acquireBackgroundLineSource();
+				try {
+					int state = prepareParsing(fLine);
+					fParser.parse(src, fLine, state, REDSyntaxHighlighter.this, false);
+				}
+				finally {
+					fEditor.releaseBackgroundLineSource(src);
+				}
+				flushStates();
 				REDSyntaxHighlighterRule.updateLastLit(fParser, fLastParsedLine, 0, 0);
 				synchronized (this) {
 					fLine = fRestartFromLine;
@@ -170,6 +261,7 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 			SwingUtilities.invokeLater(new BatchExecutor());
 		}	
 		int fLine;		
+		private REDLineCursor fLineCursor;	// confined to this thread
 	}
 	
 	class BatchExecutor implements Runnable {
@@ -211,7 +303,7 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 		
 	
 	private int prepareParsing(int line) {
-		int lineStart = fEditor.getLineStart(line);
+		int lineStart = getLineStart(line);
 		int state = getState(line); REDAssert.ensure(state != -1);
 		fParser.putClientProperty("envStyle", fParser.getClientProperty("style"+state));
 		REDSyntaxHighlighterPosition pos = (REDSyntaxHighlighterPosition) fParser.getClientProperty("lastLit");
@@ -234,6 +326,7 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 			int state = prepareParsing(line);
 			fParser.putClientProperty("batchQ", null);
 			fParser.parse(fEditor.getLineSource(), line, state, this, false);
+			flushStates();
 			REDSyntaxHighlighterRule.updateLastLit(fParser, fLastParsedLine, 0, 0);
 		}
 		long end = System.currentTimeMillis();
@@ -253,6 +346,10 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 		updateLines(fEditor.getLineForPosition(from), false);
 	}
 
+	public void beforeInsert(int from, int to) {
+		flushStates();
+	}
+
 	public void beforeDelete(int from, int to) {
 //		REDTracer.info("org.rtefx.plugins.synHi", "REDSyntaxHighlighter", "deleteStates: " + (fEditor.getLineForPosition(from) + 1) + " - " + fEditor.getLineForPosition(to));
 		deleteStates(fEditor.getLineForPosition(from) + 1, fEditor.getLineForPosition(to));
@@ -285,9 +382,9 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 	}
 	
 	synchronized public void afterFileLoad(String filename) { 
-//		REDTracer.info("org.rtefx.plugins.synHi", "REDSyntaxHighlighter", "Creating new mark tree.");
+//		REDTracer.info("org.rtefx.plugins.synHi", "REDSyntaxHighlighter", "Clearing mark tree.");
 		fChangeCount++;
-		fMarks = fEditor.createMarkTree();
+		discardStates();
 		if (fConcurrentParser != null) {
 			synchronized (fConcurrentParser) {
 				if (fConcurrentParser.isRunning()) {
@@ -300,9 +397,9 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 	}
 	
 	synchronized public void afterFileSave(String filename) {
-//		REDTracer.info("org.rtefx.plugins.synHi", "REDSyntaxHighlighter", "Creating new mark tree.");
+//		REDTracer.info("org.rtefx.plugins.synHi", "REDSyntaxHighlighter", "Clearing mark tree.");
 		fChangeCount++;
-		fMarks = fEditor.createMarkTree();
+		discardStates();
 		if (fConcurrentParser != null) {
 			synchronized (fConcurrentParser) {
 				if (fConcurrentParser.isRunning()) {
@@ -316,8 +413,13 @@ public class REDSyntaxHighlighter extends REDPlugin implements REDRexParserStopp
 	
 	REDRexParser fParser;
 	boolean fUpdateAll;
-	REDMarkTree fMarks;
-	ArrayList fSetStateCollector;
+	REDCompactMarkTree fMarks;	// line start positions with parser state as value
+	private Object fPendingLock;	// guards states collected by setState() which have not been turned into marks yet
+	private int [] fPendingPositions;
+	private int [] fPendingStates;
+	private int fNrPending;
+	private static final int fcMaxPendingStates = 1024;
+	private static final int fcDefaultMaxLineLength = 20000;
 	int fLastParsedLine;
 	int fChangeCount;
 	int fRestartFromLine;
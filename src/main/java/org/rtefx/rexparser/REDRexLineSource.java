@@ -17,21 +17,67 @@
  
 package org.rtefx.rexparser;
 
+import java.nio.CharBuffer;
+
 /** Regular expression parser line source interface.
+  * Line sources hand out their lines by copying them into caller provided buffers, so parsing a text line by line need not allocate.
+  * Lines are expected to be requested in ascending order most of the time; implementations may optimize for this sequential access.
   * @author rli@chello.at
   * @tier API  
   */
 public interface REDRexLineSource {
-	/** Get line as character with trailing linebreak character(s)
-	  * @param lineNr The lineNr to get.
-	  * @param reuse If a non-null value is passed, getLine may try to reuse this array in order to keep memory turnaround low.
-	  * @return An array containin the requested line or null, if lineNr is out of range.
+	/** Line terminator kind: Line is not terminated (last line of text). */
+	public static final int LT_NONE = 0;
+	/** Line terminator kind: Line is terminated by \n. */
+	public static final int LT_LF = 1;
+	/** Line terminator kind: Line is terminated by \r. */
+	public static final int LT_CR = 2;
+	/** Line terminator kind: Line is terminated by \r\n. */
+	public static final int LT_CRLF = 3;
+
+	/** Copy line with trailing linebreak character(s) into buffer.
+	  * The line is copied to the current position of <CODE>dest</CODE>, and the position is advanced accordingly.
+	  * If <CODE>dest</CODE> has not got enough space remaining, nothing is copied, but the length of the line is returned nevertheless.
+	  * The caller may then retry with a larger buffer.
+	  * @param lineNr The line to get.
+	  * @param dest The buffer to copy the line into.
+	  * @return The length of the line including linebreak character(s) or -1, if lineNr is out of range.
+	  * @pre dest != null
+	  */
+	int getLine(int lineNr, CharBuffer dest);
+	
+	/** Copy head of line into buffer.
+	  * As many characters of the line (with trailing linebreak character(s)) as there is space remaining in <CODE>dest</CODE> are 
+	  * copied to its current position, and the position is advanced accordingly. This allows to read a bounded window of very long lines.
+	  * The default implementation reads the whole line; line sources should override it to copy the head only.
+	  * @param lineNr The line to get.
+	  * @param dest The buffer to copy the head of the line into.
+	  * @return The number of characters copied or -1, if lineNr is out of range.
+	  * @pre dest != null
 	  */
-	char [] getLine(int lineNr, char [] reuse);	
+	default int getLineHead(int lineNr, CharBuffer dest) {
+		int remaining = dest.remaining();
+		int len = getLine(lineNr, dest);
+		if (len <= remaining) {
+			return len;
+		}
+		CharBuffer line = CharBuffer.allocate(len);
+		getLine(lineNr, line);
+		line.flip();
+		line.limit(remaining);
+		dest.put(line);
+		return remaining;
+	}
 	
 	/** Get length of line with trailing linebreak character(s)
 	  * @param lineNr The line to get length for
 	  * @return The length of the given line. Undefined, if lineNr is out of range.
 	  */
 	int getLineLength(int lineNr);
+
+	/** Get kind of line terminator.
+	  * @param lineNr The line to get terminator kind for
+	  * @return One of the <CODE>LT_...</CODE> constants. Undefined, if lineNr is out of range.
+	  */
+	int getLineTerminator(int lineNr);
 }
@@ -17,6 +17,7 @@
  
 package org.rtefx.rexparser;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -25,7 +26,6 @@ import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 /** Regular expression parser class
@@ -40,6 +40,8 @@ public class REDRexParser {
 		fNextActionId = 0;
 		fRules = new ArrayList<>();
 		fBuffer = null;
+		fCharBuffer = null;
+		fMaxLineLength = 0;
 		fProperties = new HashMap<>();
 	}
 	
@@ -107,9 +109,9 @@ public class REDRexParser {
 		}
 	}
 
-	private int getStartReqMinPos(boolean reverse, REDRexLineSource src, int line) {
+	private int getStartReqMinPos(boolean reverse) {
 		if (reverse) {
-			return src.getLineLength(line)+1;
+			return fLineLength+1;
 		}
 		else {
 			return 0;
@@ -125,16 +127,61 @@ public class REDRexParser {
 		}
 	}
 	
-	private SortedSet collectMatches(REDRexLineSource src, int line, boolean reverse) {
+	/** Read line into buffer, growing the buffer if necessary.
+	  * Of lines longer than the maximum line length, only the head is read.
+	  * @return The number of characters read or -1 if the line source has got no such line.
+	  */
+	private int readLine(REDRexLineSource src, int line) {
+		int window = fMaxLineLength > 0 ? fMaxLineLength : Integer.MAX_VALUE;
+		if (fCharBuffer == null) {
+			fBuffer = new char[fcInitialBufferSize];
+			fCharBuffer = CharBuffer.wrap(fBuffer);
+		}
+		fCharBuffer.clear();
+		fCharBuffer.limit(Math.min(window, fBuffer.length));
+		int len = src.getLine(line, fCharBuffer);
+		if (len > fCharBuffer.limit()) {
+			int needed = Math.min(len, window);
+			if (needed > fBuffer.length) {
+				fBuffer = new char[Math.min(Math.max(needed, 2 * fBuffer.length), window)];
+				fCharBuffer = CharBuffer.wrap(fBuffer);
+			}
+			fCharBuffer.clear();
+			fCharBuffer.limit(needed);
+			len = needed < len ? src.getLineHead(line, fCharBuffer) : src.getLine(line, fCharBuffer);
+		}
+		if (len >= 0) {
+			fCharBuffer.position(0);
+			fCharBuffer.limit(len);
+		}
+		return len;
+	}
+	
+	/** Set maximum line length.
+	  * Lines longer than this are parsed within their first <CODE>maxLineLength</CODE> characters only; matches behind are not found.
+	  * This bounds time and memory spent per line for very long lines, e.g. of minified files. 
+	  * @param maxLineLength The maximum number of characters to parse per line; 0 for no limit, which is the default.
+	  */
+	public void setMaxLineLength(int maxLineLength) {
+		fMaxLineLength = Math.max(maxLineLength, 0);
+	}
+	
+	/** Get maximum line length.
+	  * @return The maximum number of characters parsed per line; 0 if there is no limit.
+	  */
+	public int getMaxLineLength() {
+		return fMaxLineLength;
+	}
+	
+	private SortedSet collectMatches(boolean reverse) {
 		REDRexParserRule rule;
-		Pattern p;
 		SortedSet matches = new TreeSet(new REDRexParserMatchComparator(reverse));
 
 		Iterator<REDRexParserRule> iter = fRules.iterator();
 		while (iter.hasNext()) {
 			rule = iter.next(); 
 			if (rule.fFinder != null) {	// dont do regexp do fast string search
-				Iterator miter = rule.fFinder.getMatches(fBuffer, src.getLineLength(line));	
+				Iterator miter = rule.fFinder.getMatches(fBuffer, fLineLength);	
 				while (miter.hasNext()) {
 					REDRexStringFinderMatch stringMatch = (REDRexStringFinderMatch) miter.next();
 					REDRexParserMatch match = new REDRexParserMatch(1, rule);
@@ -143,10 +190,9 @@ public class REDRexParser {
 				}
 			}
 			else {
-				p = rule.fPattern;
-				if (p == null) throw new Error("p null");
+				if (rule.fPattern == null) throw new Error("p null");
 				if (fBuffer == null) throw new Error("Buffer null");
-				Matcher matcher = p.matcher(new String(fBuffer, 0, src.getLineLength(line))); // tbd: do not copy, use CharBuffer or other interface!
+				Matcher matcher = rule.getMatcher(fCharBuffer);
 				int pos = 0;
 				while (matcher.find(pos)) {
 					REDRexParserMatch match = new REDRexParserMatch(matcher.groupCount() + 1, rule);
@@ -162,8 +208,8 @@ public class REDRexParser {
 		return matches;
 	}
 	
-	private int processMatches(REDRexLineSource src, SortedSet matches, int line, int state, boolean reverse, REDRexParserStopper stopper) {
-		int reqMinPos = getStartReqMinPos(reverse, src, line);	
+	private int processMatches(SortedSet matches, int line, int state, boolean reverse, REDRexParserStopper stopper) {
+		int reqMinPos = getStartReqMinPos(reverse);	
 		Iterator iter = matches.iterator();
 		boolean stopped = false;
 		while (iter.hasNext() && !stopped) {
@@ -192,19 +238,19 @@ public class REDRexParser {
 	public void parse(REDRexLineSource src, int line, int state, REDRexParserStopper stopper, boolean reverse) {
 		SortedSet matches;
 		
-		fBuffer = src.getLine(line, fBuffer);
+		fLineLength = readLine(src, line);
 		// traverse lines
-		while (fBuffer != null) {
-			matches = collectMatches(src, line, reverse);
-			state = processMatches(src, matches, line, state, reverse, stopper);
+		while (fLineLength != -1) {
+			matches = collectMatches(reverse);
+			state = processMatches(matches, line, state, reverse, stopper);
 			
 			line++;
 			// test stopper
 			if (stopper != null && stopper.mustStop(this, line, 0, state)) {
-				fBuffer = null;
+				fLineLength = -1;
 			}
 			else {
-				fBuffer = src.getLine(line, fBuffer);
+				fLineLength = readLine(src, line);
 			}
 		}
 	}
@@ -220,5 +266,9 @@ public class REDRexParser {
 	private int fNextState, fNextActionId;
 	private List<REDRexParserRule> fRules;
 	private char [] fBuffer;
+	private CharBuffer fCharBuffer;	// wraps fBuffer, limited to the current line
+	private int fLineLength;
+	private int fMaxLineLength;
+	private static final int fcInitialBufferSize = 256;
 	private Map<Object, Object> fProperties;
 }
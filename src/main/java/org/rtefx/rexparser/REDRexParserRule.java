@@ -17,6 +17,7 @@
  
 package org.rtefx.rexparser;
 
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -55,6 +56,17 @@ class REDRexParserRule {
 		}
 		return true;
 	}
+	
+	/** Get matcher for this rule's pattern, reset to the given input. The matcher is reused across calls. */
+	Matcher getMatcher(CharSequence input) {
+		if (fMatcher == null) {
+			fMatcher = fPattern.matcher(input);
+		}
+		else {
+			fMatcher.reset(input);
+		}
+		return fMatcher;
+	}
 		
 	int fReqState, fEmitState, fId;
 	Pattern fPattern;
@@ -62,4 +74,5 @@ class REDRexParserRule {
 	REDRexAction fAction;
 	boolean fRewind;
 	REDRexStringFinder fFinder;
+	private Matcher fMatcher;
 }
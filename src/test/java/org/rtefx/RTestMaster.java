@@ -42,9 +42,17 @@ public class RTestMaster extends TestCase {
 		TestSuite suite = new TestSuite();
 		suite.addTest(RTestREDLineTree.suite());
 		suite.addTest(RTestREDMarkTree.suite());
+		suite.addTest(RTestREDCompactMarkTree.suite());
+		suite.addTest(RTestREDIntervalTree.suite());
+		suite.addTest(RTestREDLineMetrics.suite());
 		suite.addTest(RTestREDFile.suite());
 		suite.addTest(RTestREDText.suite());
-		suite.addTest(RTestREDViewLineHeightCache.suite());
+		suite.addTest(RTestREDTextSelection.suite());
+		suite.addTest(RTestREDViewLineHeights.suite());
+		suite.addTest(RTestREDViewDamage.suite());
+		suite.addTest(RTestREDViewLineOffsets.suite());
+		suite.addTest(RTestREDViewLineImages.suite());
+		suite.addTest(RTestREDViewWrapIndex.suite());
 		suite.addTest(RTestREDViewController.suite());
 		suite.addTest(RTestREDViewReadonlyController.suite());
 		suite.addTest(RTestREDEditor.suite());
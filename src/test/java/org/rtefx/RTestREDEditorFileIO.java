@@ -124,6 +124,7 @@ public class RTestREDEditorFileIO extends RTestREDEditor {
 				!editor.isModified());
 		assertEquals("Not existant text is not empty", "", editor.asString());
 		assertEquals("Text should have length 0", 0, editor.length());
+		editor.close();
 	}
 	
 	/**
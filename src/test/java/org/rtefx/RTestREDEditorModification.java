@@ -917,6 +917,35 @@ public class RTestREDEditorModification extends RTestREDEditor {
 			"afterStyleBatchNotification()");
 	}
 	
+	/** Tests the range of styles changed in style batch mode. */
+	public void testStyleBatchRange() {
+		REDEditor editor = getTestEditor();
+		REDStyle style = new REDStyle(Color.rgb(100, 100, 250), Color.WHITE, REDLining.DOUBLEUNDER, "Helvetica", "PLAIN", 18, null);
+		
+		editor.batchStyleNotificationStart();
+		assertTrue(editor.getStyleBatchFrom() > editor.getStyleBatchTo());
+		editor.setStyle(20, 25, style);
+		editor.setStyle(10, 12, style);
+		assertEquals(10, editor.getStyleBatchFrom());
+		assertEquals(25, editor.getStyleBatchTo());
+		editor.replace("xxx", 5, 5, null);	// insertion in front of range moves it
+		assertEquals(13, editor.getStyleBatchFrom());
+		assertEquals(28, editor.getStyleBatchTo());
+		editor.replace("", 20, 40, null);	// deletion of range end shrinks it
+		assertEquals(13, editor.getStyleBatchFrom());
+		assertEquals(20, editor.getStyleBatchTo());
+		editor.replace("", 0, 15, null);
+		assertEquals(0, editor.getStyleBatchFrom());
+		assertEquals(5, editor.getStyleBatchTo());
+		editor.batchStyleNotificationEnd();
+		assertEquals(0, editor.getStyleBatchFrom());
+		assertEquals(5, editor.getStyleBatchTo());
+		
+		editor.batchStyleNotificationStart();
+		editor.batchStyleNotificationEnd();
+		assertTrue(editor.getStyleBatchFrom() > editor.getStyleBatchTo());
+	}
+	
 	public void setUp() throws Exception {
 		super.setUp();
 		logEventClass(REDTextEventListener.class);
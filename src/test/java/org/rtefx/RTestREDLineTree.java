@@ -183,6 +183,169 @@ public class RTestREDLineTree extends TestCase {
 		}
 	}
 	
+	/** Test line index with enough lines to span many blocks. */
+	public void testManyLines() {
+		fText = new REDText("");
+		StringBuffer buf = new StringBuffer();
+		for (int x = 0; x < 5000; x++) {
+			buf.append("L" + x + "\n");
+		}
+		doTestInsert(0, buf.toString());
+		dumpTree("Test many lines: ", true);
+		assertEquals(5001, fText.fLineTree.getNrNodes());
+		
+		for (int x = 0; x <= fcRandomIterations; x++) {
+			if (fRnd.nextBoolean()) {
+				doTestInsert(fRnd.nextInt(fStr.length() + 1), createRandomString(fRnd.nextInt(fcRandomTextLength * 5)));
+			}
+			else {
+				int start = fRnd.nextInt(fStr.length() + 1);
+				int end = Math.min(fStr.length(), start + fRnd.nextInt(fcRandomTextLength * 5));
+				doTestDelete(start, end);
+			}
+			dumpTree("Test many lines #" + x, true);
+			checkLineQueries();
+		}
+		doTestDelete(0, fStr.length());
+		assertEquals(1, fText.fLineTree.getNrNodes());
+		assertEquals(0, fText.getLineStart(1));
+	}
+	
+	/** Test bulk construction and splicing of line starts against line-by-line insertion. */
+	public void testBulkBuild() {
+		int [] sizes = { 0, 1, 767, 768, 1023, 1024, 5000 };
+		for (int x = 0; x < sizes.length; x++) {
+			int n = sizes[x];
+			int [] starts = new int[n + 3];
+			for (int i = 0; i < n; i++) {
+				starts[i] = 3 * (i + 1);
+			}
+			REDLineTree bulk = new REDLineTree(starts, n);
+			REDLineTree single = new REDLineTree();
+			for (int i = n - 1; i >= 0; i--) {
+				single.notifyInsert(0, 3, new int [] { 3 }, 1);
+			}
+			assertEquals("Size " + n, n + 1, bulk.getNrNodes());
+			assertEquals("Size " + n, treeToString(single), treeToString(bulk));
+			for (int pos = 0; pos <= 3 * n + 2; pos++) {
+				assertEquals("Size " + n + ", position " + pos, pos / 3, bulk.getLineForPosition(pos));
+			}
+			
+			// splice a block of lines into the middle
+			int pos = 3 * (n / 2) + 1;
+			int [] spliced = new int[n];
+			for (int i = 0; i < n; i++) {
+				spliced[i] = pos + 2 * (i + 1);
+			}
+			bulk.notifyInsert(pos, 2 * n, spliced, n);
+			assertEquals("Size " + n, 2 * n + 1, bulk.getNrNodes());
+			for (int line = 0; line <= 2 * n; line++) {
+				int expected;
+				if (line <= n / 2) {
+					expected = 3 * line;
+				}
+				else if (line <= n / 2 + n) {
+					expected = pos + 2 * (line - n / 2);
+				}
+				else {
+					expected = 3 * (line - n) + 2 * n;
+				}
+				assertEquals("Size " + n + ", line " + line, expected, bulk.getLineStart(line));
+			}
+		}
+	}
+	
+	private String treeToString(REDLineTree tree) {
+		ToStringPrinter pr = new ToStringPrinter();
+		tree.iterateInOrder(pr);
+		return pr.toString();
+	}
+	
+	/** Test queries from several threads at once. */
+	public void testConcurrentQueries() throws InterruptedException {
+		fText = new REDText("");
+		StringBuffer buf = new StringBuffer();
+		for (int x = 0; x < 20000; x++) {
+			buf.append("Line " + x + "\n");
+		}
+		doTestInsert(0, buf.toString());
+		final REDLineTree tree = fText.fLineTree;
+		final int [] starts = new int[tree.getNrNodes()];
+		for (int x = 0; x < starts.length; x++) {
+			starts[x] = fText.getLineStart(x);
+		}
+		final boolean [] ok = new boolean[4];
+		Thread [] threads = new Thread[ok.length];
+		for (int t = 0; t < threads.length; t++) {
+			final int nr = t;
+			threads[t] = new Thread() {
+				public void run() {
+					boolean result = true;
+					for (int line = nr; line < starts.length; line += ok.length) {
+						result = result && tree.getLineStart(line) == starts[line] && tree.getLineForPosition(starts[line]) == line;
+					}
+					ok[nr] = result;
+				}
+			};
+			threads[t].start();
+		}
+		for (int t = 0; t < threads.length; t++) {
+			threads[t].join();
+			assertTrue("Thread " + t, ok[t]);
+		}
+	}
+	
+	/** Test walking through lines with a line cursor. */
+	public void testLineCursor() {
+		fText = new REDText("");
+		StringBuffer buf = new StringBuffer();
+		for (int x = 0; x < 3000; x++) {
+			buf.append("Line " + x + (x % 3 == 0 ? "\r\n" : x % 3 == 1 ? "\n" : "\r"));
+		}
+		doTestInsert(0, buf.toString());
+		REDLineCursor cursor = fText.createLineCursor();
+		int nrLines = fText.getNrOfLines();
+		for (int line = 0; line < nrLines; line++) {
+			checkLineCursor(cursor, line);
+			assertEquals(line + 1 < nrLines, cursor.next());
+		}
+		for (int line = nrLines - 1; line >= 0; line--) {
+			checkLineCursor(cursor, line);
+			assertEquals(line > 0, cursor.prev());
+		}
+		
+		// cursor must survive modifications
+		cursor.setLine(1500);
+		doTestInsert(fText.getLineStart(10), "Foo\nBar\n");
+		cursor.next();
+		checkLineCursor(cursor, 1501);
+		doTestDelete(0, fText.getLineStart(2000));
+		cursor.setLine(5000);
+		checkLineCursor(cursor, fText.getNrOfLines() - 1);
+		cursor.setLine(-3);
+		checkLineCursor(cursor, 0);
+	}
+	
+	private void checkLineCursor(REDLineCursor cursor, int line) {
+		assertEquals(line, cursor.getLine());
+		assertEquals("Line " + line, fText.getLineStart(line), cursor.getLineStart());
+		assertEquals("Line " + line, fText.getLineStart(line + 1), cursor.getNextLineStart());
+		assertEquals("Line " + line, fText.getLineEnd(line), cursor.getLineEnd());
+	}
+	
+	private void checkLineQueries() {
+		int line = 0;
+		int lineStart = 0;
+		for (int pos = 0; pos <= fStr.length(); pos++) {
+			assertEquals("Line at position " + pos, line, fText.getLineForPosition(pos));
+			if (pos < fStr.length() && fStr.charAt(pos) == '\n') {
+				assertEquals("Start of line " + line, lineStart, fText.getLineStart(line));
+				line++; lineStart = pos + 1;
+			}
+		}
+		assertEquals(line + 1, fText.fLineTree.getNrNodes());
+	}
+	
 	public void testIterator() {
 		ToStringPrinter iter = new ToStringPrinter();
 		doTestInsert(0, "AA\nBB\nCC\nDD\nEE\nFF\nGG");
@@ -17,6 +17,7 @@
  
 package org.rtefx;
 
+import javafx.scene.paint.Color;
 import junit.framework.*;
 
 /**
@@ -737,4 +738,62 @@ public class RTestREDTextModification extends RTestREDText {
 			checkEvents(expLog.substring(1));			
 		}
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Tests replacement by a stretch of another text. Styles of the source
+	 * text must be transferred, too.
+	 */
+	public void testReplaceFromText() {
+		REDText text = getTestText();
+		REDText src = new REDText("");
+		src.replace(0, 0, LONG_TEXT);
+		REDStyle style = new REDStyle(Color.RED, null, null, "Monospaced", "PLAIN", 12, src.getDefaultStyle());
+		src.setStyle(4, 10, style);
+		
+		text.replace(5, 10, src, 0, 12);
+		String result = TEXT_CONTENT.substring(0, 5) + LONG_TEXT.substring(0, 12) + TEXT_CONTENT.substring(10);
+		assertEquals(result, text.asString());
+		assertEquals(result.length(), text.length());
+		checkEvents("beforeDelete(5, 10)\n" +
+			"afterDelete(5, 10)\n" +
+			"beforeInsert(5, 17)\n" +
+			"afterInsert(5, 17)");
+		assertSame(text.getDefaultStyle(), text.getStyle(9));
+		assertSame(style, text.getStyle(10));
+		assertSame(style, text.getStyle(15));
+		assertSame(text.getDefaultStyle(), text.getStyle(16));
+		assertEquals(LONG_TEXT, src.asString());
+		
+		// whole text incl. linebreaks
+		text.replace(0, text.length(), src, 0, src.length());
+		assertEquals(LONG_TEXT, text.asString());
+		assertEquals(src.getNrOfLines(), text.getNrOfLines());
+		for (int i = 0; i < src.getNrOfLines(); i++) {
+			assertEquals(src.getLineStart(i), text.getLineStart(i));
+		}
+		
+		// from itself, overlapping
+		text.replace(4, 30, text, 0, 10);
+		result = LONG_TEXT.substring(0, 4) + LONG_TEXT.substring(0, 10) + LONG_TEXT.substring(30);
+		assertEquals(result, text.asString());
+		assertSame(style, text.getStyle(9));
+		
+		// normalization
+		text.replace(0, 0, src, -10, 3);
+		assertEquals(LONG_TEXT.substring(0, 3) + result, text.asString());
+		text.replace(text.length(), text.length(), src, src.length() - 1, src.length() + 10);
+		assertEquals(LONG_TEXT.substring(0, 3) + result + "\n", text.asString());
+		
+		// from itself, deferred because issued from within a listener
+		result = text.asString();
+		REDEventAdapter listener = new REDEventAdapter() {
+			public void afterDelete(int from, int to) {
+				assertTrue("Replace must be deferred", !text.replace(0, 0, text, 0, 2));
+			}
+		};
+		text.addREDTextEventListener(listener);
+		text.replace(2, 3, "");
+		text.removeREDTextEventListener(listener);
+		assertEquals(result.substring(0, 2) + result.substring(0, 2) + result.substring(3), text.asString());
+	}
+}
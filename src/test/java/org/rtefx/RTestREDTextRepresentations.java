@@ -17,7 +17,10 @@
  
 package org.rtefx;
 
+import java.nio.CharBuffer;
 import java.util.Arrays;
+
+import javafx.scene.paint.Color;
 import junit.framework.*;
 
 /** JUnit TestCase class for the different kinds of representations of red.REDText. 
@@ -304,25 +307,137 @@ public class RTestREDTextRepresentations extends RTestREDText {
 		return dest;
 	}
 	
+	private String getLine(REDText text, int lineNr, CharBuffer buf) {
+		buf.clear();
+		int len = text.getLine(lineNr, buf);
+		if (len == -1) {
+			return null;
+		}
+		assertEquals("Wrong nr. of chars copied", len, buf.position());
+		buf.flip();
+		return buf.toString();
+	}
+	
 	public void testGetLine() {
-		char [] arr = null;
-		char [] arr2 = null;
+		CharBuffer buf = CharBuffer.allocate(100);
 		REDText text = getTestText();
-		arr = text.getLine(0, arr);
-		assertEquals("Don't meddle in the affairs of wizards,\n", new String(arr, 0, text.getLineLength(0)));
-		arr2 = text.getLine(1, arr);
-		assertSame("getLine does not reuse array", arr2, arr);
-		assertEquals("for they are subtle and quick to anger.\n", new String(arr, 0, text.getLineLength(1)));
-		arr = text.getLine(2, arr);
-		assertEquals("\n", new String(arr, 0, text.getLineLength(2)));
-		arr = text.getLine(3, arr);
-		assertEquals("The Lord of the Rings.\n", new String(arr, 0, text.getLineLength(3)));
-		arr = text.getLine(4, arr);
-		assertEquals("", new String(arr, 0, text.getLineLength(4)));
-		arr = text.getLine(5, arr);
-		assertSame(arr, null);		
+		assertEquals("Don't meddle in the affairs of wizards,\n", getLine(text, 0, buf));
+		assertEquals("for they are subtle and quick to anger.\n", getLine(text, 1, buf));
+		assertEquals("\n", getLine(text, 2, buf));
+		assertEquals("The Lord of the Rings.\n", getLine(text, 3, buf));
+		assertEquals("", getLine(text, 4, buf));
+		assertNull(getLine(text, 5, buf));
+		assertNull(getLine(text, -1, buf));
+		
+		// non sequential access
+		assertEquals("for they are subtle and quick to anger.\n", getLine(text, 1, buf));
+		assertEquals("The Lord of the Rings.\n", getLine(text, 3, buf));
+		
+		// buffer too small: nothing is copied, but length is reported
+		CharBuffer small = CharBuffer.allocate(10);
+		assertEquals(text.getLineLength(0), text.getLine(0, small));
+		assertEquals(0, small.position());
+		
+		// copy to offset
+		buf.clear();
+		buf.put('>');
+		text.getLine(3, buf);
+		buf.flip();
+		assertEquals(">The Lord of the Rings.\n", buf.toString());
+	}
+	
+	public void testGetLineTerminator() {
+		REDText text = new REDText("");
+		text.replace(0, 0, "a\nb\r\nc\rd\r\n\re");
+		assertEquals(REDText.LT_LF, text.getLineTerminator(0));
+		assertEquals(REDText.LT_CRLF, text.getLineTerminator(1));
+		assertEquals(REDText.LT_CR, text.getLineTerminator(2));
+		assertEquals(REDText.LT_CRLF, text.getLineTerminator(3));
+		assertEquals(REDText.LT_CR, text.getLineTerminator(4));
+		assertEquals(REDText.LT_NONE, text.getLineTerminator(5));
+		assertEquals(1, text.getLineEnd(0));
+		assertEquals(3, text.getLineEnd(1));
+		assertEquals(6, text.getLineEnd(2));
+		assertEquals(8, text.getLineEnd(3));
+		assertEquals(10, text.getLineEnd(4));
+		assertEquals(12, text.getLineEnd(5));
 		
-		arr = text.getLine(1, null);
-		assertEquals("for they are subtle and quick to anger.\n", new String(arr, 0, text.getLineLength(1)));
+		CharBuffer buf = CharBuffer.allocate(10);
+		assertEquals("b\r\n", getLine(text, 1, buf));
+		assertEquals("\r", getLine(text, 4, buf));
+		assertEquals("e", getLine(text, 5, buf));
+	}
+	
+	/** Check that the view stretch cursor hands out the same stretches as REDText.getViewStretch */
+	private void checkViewStretchCursor(REDText text, int from, boolean whiteSpaceViz) {
+		REDViewStretchCursor cursor = new REDViewStretchCursor(text);
+		cursor.setPosition(from);
+		REDViewStretch expected = null, stretch = null;
+		int pos = from;
+		do {
+			expected = text.getViewStretch(pos, expected, whiteSpaceViz);
+			stretch = cursor.next(stretch, whiteSpaceViz);
+			assertEquals("type at " + pos, expected.fType, stretch.fType);
+			assertEquals("length at " + pos, expected.fLength, stretch.fLength);
+			assertSame("style at " + pos, expected.fStyle, stretch.fStyle);
+			assertEquals("bytes at " + pos, text.asString(pos, pos + expected.fLength), new String(stretch.fBytes, 0, stretch.fLength));
+			pos += expected.fLength;
+			assertEquals(pos, cursor.getPosition());
+		} while (expected.fType != REDViewStretch.EOF);
+	}
+	
+	public void testViewStretchCursor() {
+		REDText text = new REDText("");
+		text.replace(0, 0, "\t\tif (a  == b)\r\n\treturn\tc;\n\n  x \r\r\nend");
+		checkViewStretchCursor(text, 0, false);
+		checkViewStretchCursor(text, 0, true);
+		checkViewStretchCursor(text, 5, false);
+		checkViewStretchCursor(text, text.length(), false);
+		
+		// stretches must end at style boundaries; \r\n split among runs is still one linebreak
+		REDStyle style = new REDStyle(Color.RED, null, null, "Monospaced", "PLAIN", 12, text.getDefaultStyle());
+		text.setStyle(3, 6, style);
+		text.setStyle(14, 15, style);
+		text.setStyle(31, 33, style);
+		checkViewStretchCursor(text, 0, false);
+		checkViewStretchCursor(text, 0, true);
+		checkViewStretchCursor(text, 14, true);
+		REDViewStretchCursor cursor = new REDViewStretchCursor(text);
+		cursor.setPosition(14);
+		REDViewStretch stretch = cursor.next(null, false);
+		assertEquals(REDViewStretch.LINEBREAK, stretch.fType);
+		assertEquals(2, stretch.fLength);
+		
+		// long words exceed the cursor's internal buffers
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < 5000; i++) {
+			buf.append((char) ('a' + i % 26));
+		}
+		text.replace(0, 0, buf.toString());
+		checkViewStretchCursor(text, 0, false);
+		checkViewStretchCursor(text, 4000, false);
+		
+		// limited stretches are pieces of the unlimited ones
+		REDViewStretchCursor cursor2 = new REDViewStretchCursor(text);
+		cursor.setPosition(0);
+		cursor2.setPosition(0);
+		cursor2.setMaxLength(1000);
+		assertEquals(1000, cursor2.getMaxLength());
+		REDViewStretch stretch2 = null;
+		do {
+			stretch = cursor.next(stretch, false);
+			int len = 0;
+			do {
+				stretch2 = cursor2.next(stretch2, false);
+				assertEquals(stretch.fType, stretch2.fType);
+				assertTrue(stretch2.fLength <= 1000);
+				assertEquals(new String(stretch.fBytes, len, stretch2.fLength), new String(stretch2.fBytes, 0, stretch2.fLength));
+				len += stretch2.fLength;
+			} while (len < stretch.fLength);
+			assertEquals(stretch.fLength, len);
+			assertEquals(cursor.getPosition(), cursor2.getPosition());
+		} while (stretch.fType != REDViewStretch.EOF);
+
+		checkViewStretchCursor(new REDText(""), 0, false);
 	}
 }
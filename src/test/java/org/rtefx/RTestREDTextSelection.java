@@ -0,0 +1,120 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.awt.datatransfer.DataFlavor;
+import java.io.InputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/** Regression test for REDTextSelection and text transferring commands
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDTextSelection extends TestCase {
+	public RTestREDTextSelection(String name) {
+		super(name);
+	}
+	
+	public void setUp() throws Exception {
+		fText = new REDText("");
+		fText.replace(0, 0, fcContent);
+	}
+	
+	public void testFlavors() throws Exception {
+		REDTextSelection sel = new REDTextSelection(fText, 6, 12);
+		assertTrue(sel.isDataFlavorSupported(REDTextSelection.fcTextFlavor));
+		assertTrue(sel.isDataFlavorSupported(DataFlavor.stringFlavor));
+		assertTrue(sel.isDataFlavorSupported(REDTextSelection.fcStreamFlavor));
+		assertTrue(!sel.isDataFlavorSupported(DataFlavor.imageFlavor));
+		assertEquals(3, sel.getTransferDataFlavors().length);
+		
+		// snapshot is not affected by later modifications
+		fText.replace(0, fText.length(), "");
+		assertEquals("world\n", sel.getTransferData(DataFlavor.stringFlavor));
+		assertEquals("world\n", ((REDText) sel.getTransferData(REDTextSelection.fcTextFlavor)).asString());
+		
+		try {
+			sel.getTransferData(DataFlavor.imageFlavor);
+			fail("Unsupported flavor must throw.");
+		}
+		catch (java.awt.datatransfer.UnsupportedFlavorException ufe) {
+		}
+	}
+	
+	public void testStream() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < 10000; i++) {
+			buf.append((char) ('a' + i % 26));
+		}
+		fText.replace(0, 0, buf.toString());
+		REDTextSelection sel = new REDTextSelection(fText, 0, fText.length());
+		InputStream is = (InputStream) sel.getTransferData(REDTextSelection.fcStreamFlavor);
+		assertEquals(fText.length(), is.available());
+		StringBuffer result = new StringBuffer();
+		byte [] b = new byte[1000];
+		int n = is.read(b, 0, b.length);
+		while (n != -1) {
+			result.append(new String(b, 0, n));
+			n = is.read(b, 0, b.length);
+		}
+		assertEquals(-1, is.read());
+		assertEquals(fText.asString(), result.toString());
+	}
+	
+	public void testTransferCommand() {
+		REDText src = new REDTextSelection(fText, 0, 5).getSnapshot();
+		REDCommandProcessor cmdP = fText.getCommandProcessor();
+		cmdP.perform(REDTextCommand.createTransfer("Paste", null, fText, 6, 5, src));
+		assertEquals("Hello Hello\n", fText.asString());
+		cmdP.undo();
+		assertEquals(fcContent, fText.asString());
+		cmdP.redo();
+		assertEquals("Hello Hello\n", fText.asString());
+		assertEquals("Hello", src.asString());
+	}
+	
+	public void testLargeCut() {
+		StringBuffer buf = new StringBuffer();
+		while (buf.length() <= REDTextCommand.fcSnapshotThreshold) {
+			buf.append("The quick brown fox jumps over the lazy dog.\n");
+		}
+		String large = buf.toString();
+		fText.replace(6, 6, large);
+		String content = fText.asString();
+		REDCommandProcessor cmdP = fText.getCommandProcessor();
+		REDTextCommand cmd = new REDTextCommand("Cut", null, fText, 6, large.length(), null);
+		cmdP.perform(cmd);
+		assertEquals(fcContent, fText.asString());
+		assertNull(cmd.fReplacedText);
+		assertNotNull(cmd.fReplacedSnapshot);
+		cmdP.undo();
+		assertEquals(content, fText.asString());
+		cmdP.redo();
+		assertEquals(fcContent, fText.asString());
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDTextSelection.class);
+	}	
+
+	private REDText fText;
+	private static final String fcContent = "Hello world\n";
+}
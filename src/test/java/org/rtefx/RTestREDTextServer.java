@@ -20,6 +20,7 @@ package org.rtefx;
 import junit.framework.*;
 import java.util.*;
 import java.io.*;
+import javafx.scene.paint.Color;
 
 /** Regression test for REDTextServer
   * @author rli@chello.at
@@ -36,6 +37,13 @@ public class RTestREDTextServer extends TestCase {
 	public RTestREDTextServer(String name) {
 		super(name);
 	}
+	
+	/** Editors left open by other tests release their texts upon finalization; make sure this has happened before checking loaded texts. */
+	protected void setUp() throws Exception {
+		super.setUp();
+		System.gc();
+		System.runFinalization();
+	}
 		
 	public void testSharing() {
 		REDText t1 = REDTextServer.acquireText("A", false);
@@ -122,7 +130,79 @@ public class RTestREDTextServer extends TestCase {
 		e1.close();
 	}
 
-	// Listener tests start	
+	public void testHibernation() {
+		REDText t1 = REDTextServer.acquireText("H1", false);
+		t1.replace(0, 0, "first line\nsecond line\r\nthird line\r\n\nlast");
+		REDStyle style = new REDStyle(Color.BLUE, Color.WHITE, REDLining.NONE, "Monospaced", "plain", 12, null);
+		t1.setStyle(3, 15, style);
+		String content = t1.asString();
+		int nrLines = t1.getNrOfLines();
+
+		assertTrue(REDTextServer.hibernateText("H1"));
+		assertTrue(REDTextServer.isTextHibernated("H1"));
+		assertTrue("Must not hibernate twice", !REDTextServer.hibernateText("H1"));
+		assertTrue("Unknown texts cannot be hibernated", !REDTextServer.hibernateText("H2"));
+
+		// first access rehydrates
+		assertEquals(nrLines, t1.getNrOfLines());
+		assertTrue(!REDTextServer.isTextHibernated("H1"));
+		assertEquals(content, t1.asString());
+		assertEquals(11, t1.getLineStart(1));
+		assertEquals(24, t1.getLineStart(2));
+		assertEquals(36, t1.getLineStart(3));
+		assertEquals(37, t1.getLineStart(4));
+		assertEquals(3, t1.getLineForPosition(36));
+		assertSame(t1.getDefaultStyle(), t1.getStyle(3));
+		assertSame(style, t1.getStyle(4));
+		assertSame(style, t1.getStyle(15));
+		assertSame(t1.getDefaultStyle(), t1.getStyle(16));
+
+		// rehydrated text must be fully operational
+		t1.replace(11, 11, "new line\n");
+		assertEquals("first line\nnew line\nsecond line\r\nthird line\r\n\nlast", t1.asString());
+		assertEquals(nrLines + 1, t1.getNrOfLines());
+		assertEquals(20, t1.getLineStart(2));
+
+		// texts read by background threads stay resident
+		t1.beginBackgroundRead();
+		assertTrue("Must not hibernate while read in background", !REDTextServer.hibernateText("H1"));
+		t1.endBackgroundRead();
+		assertTrue(REDTextServer.hibernateText("H1"));
+		assertEquals("first line\nnew line\nsecond line\r\nthird line\r\n\nlast", t1.asString());
+
+		// empty texts
+		REDText t2 = REDTextServer.acquireText("H2", false);
+		assertTrue(t2.hibernate());
+		assertEquals(0, t2.length());
+		assertEquals(1, t2.getNrOfLines());
+		assertEquals("", t2.asString());
+
+		REDTextServer.releaseText(t1);
+		REDTextServer.releaseText(t2);
+	}
+
+	public void testMemoryBudget() {
+		REDText t1 = REDTextServer.acquireText("M1", false);
+		REDText t2 = REDTextServer.acquireText("M2", false);
+		t1.replace(0, 0, "foo\nbar");
+		t2.replace(0, 0, "bar\nfoo");
+		t2.asString();	// t1 is least recently used now
+
+		long budget = t2.getResidentSize() + t1.getResidentSize() - 1;
+		REDTextServer.setMemoryBudget(budget);
+		assertEquals(budget, REDTextServer.getMemoryBudget());
+		assertTrue(REDTextServer.isTextHibernated("M1"));
+		assertTrue(!REDTextServer.isTextHibernated("M2"));
+
+		REDTextServer.setMemoryBudget(Long.MAX_VALUE);
+		assertEquals("foo\nbar", t1.asString());
+		assertTrue(!REDTextServer.isTextHibernated("M1"));
+
+		REDTextServer.releaseText(t1);
+		REDTextServer.releaseText(t2);
+	}
+
+	// Listener tests start
 	void checkEvents(String expLog, RTestLogProxy proxy) {
 		assertEquals("View Listener", expLog, "" + proxy);
 	}
@@ -148,6 +148,33 @@ public class RTestREDTextStyles extends RTestREDText {
 				fStyle.getFont(), inherited.getFont());
 	}
 	
+	/**
+	 * Tests caching and invalidation of render resources of REDStyle objects.
+	 */
+	public void testResources() {
+		REDStyle superStyle = new REDStyle(Color.YELLOW, Color.BLUE, REDLining.SINGLEUNDER, "Serif", "ITALIC", 16, null);
+		REDStyle inherited = new REDStyle(null, null, null, null, null, REDStyle.INHERITED, superStyle);
+		REDStyleResources r = inherited.getResources();
+		assertSame("Resources are not cached.", r, inherited.getResources());
+		assertEquals(16.0, r.getFXFont().getSize(), 0.0);
+		assertEquals(Color.BLUE, r.getFXBackground());
+		assertEquals(r.getBackground(), inherited.getResources().getBackground());
+		
+		superStyle.setFontSize("Default", 20);	// change of super style must invalidate resources of derived style
+		REDStyleResources r2 = inherited.getResources();
+		assertNotSame(r, r2);
+		assertEquals(20.0, r2.getFXFont().getSize(), 0.0);
+		
+		superStyle.setBackground("Default", Color.RED);
+		assertEquals(Color.RED, inherited.getResources().getFXBackground());
+		
+		superStyle.setBackground("Dark", Color.BLACK);
+		superStyle.installTheme("Dark");
+		assertEquals(Color.BLACK, superStyle.getResources().getFXBackground());
+		superStyle.installTheme("Default");
+		assertEquals(Color.RED, superStyle.getResources().getFXBackground());
+	}
+	
 	/**
 	 * Returns a string, which is the same contents as the toString() method
 	 * of the given REDStyle should return.
@@ -127,6 +127,198 @@ public class RTestREDViewController extends RTestControllerBase {
 		assertEquals(4, fEditor.getSelectionStart());		
 	} 
 	
+	private void checkWidestLine(REDView view) {
+		int widest = 0;
+		for (int line = 0; line < fEditor.getNrOfLines(); line++) {
+			widest = Math.max(widest, view.getLineWidth(line));
+		}
+		assertEquals(fEditor.getNrOfLines(), view.fLineWidths.getNrLines());
+		assertEquals(widest, view.fLineWidths.query(REDView.fcWidthColumn, 0, fEditor.getNrOfLines()) >> 1);
+	}
+	
+	public void testWidestLine() {
+		REDView view = (REDView) fEditor.getView();
+		fEditor.replace("short\nthis is a rather long line\n\tshort", 0, fEditor.length(), null);
+		checkWidestLine(view);
+		fEditor.replace("", 12, 28, null);	// shortening the widest line must shrink the extent
+		checkWidestLine(view);
+		fEditor.replace("\n\t\tanother line\nand yet another one", 5, 5, null);
+		checkWidestLine(view);
+		fEditor.replace("", 0, fEditor.getLineStart(3), null);
+		checkWidestLine(view);
+		view.setTabWidth(8);
+		checkWidestLine(view);
+	}
+	
+	public void testLocate() {
+		REDView view = (REDView) fEditor.getView();
+		fEditor.replace("Mixed\twidths: iiii WWWW\r\n\t\tmm\n\nlast", 0, fEditor.length(), null);
+		for (int pos = 0; pos <= fEditor.length(); pos++) {
+			REDViewPosition vp = view.locatePosition(pos, null);
+			REDViewPosition hit = view.locatePoint(vp.fBoundRect.x, vp.fBoundRect.y, null);
+			int expected = pos == fEditor.getLineEnd(0) + 1 ? pos - 1 : pos;	// position within CRLF maps to its start
+			assertEquals("Position " + pos, expected, hit.getTextPosition());
+			assertEquals(vp.fBoundRect, hit.fBoundRect);
+			if (vp.fBoundRect.width > 1 && pos < fEditor.getLineEnd(vp.getLineNumber())) {
+				hit = view.locatePoint(vp.fBoundRect.x + vp.fBoundRect.width - 1, vp.fBoundRect.y, null, true);
+				assertEquals("Position " + pos + " (mid split)", expected + 1, hit.getTextPosition());
+			}
+		}
+		REDViewPosition before = view.locatePosition(3, null);
+		fEditor.replace("WWW", 0, 0, null);	// edits must invalidate cached offsets
+		assertTrue(view.locatePosition(6, null).fBoundRect.x > before.fBoundRect.x);
+		assertEquals(view.locatePosition(fEditor.getLineStart(1), null).fBoundRect.x, view.locatePosition(0, null).fBoundRect.x);
+	}
+	
+	public void testLongLine() {
+		REDView view = (REDView) fEditor.getView();
+		StringBuffer buf = new StringBuffer("short\n");
+		for (int i = 0; i < 3 * REDView.fcChunkSize; i++) {
+			buf.append(i % 7 == 0 ? '\t' : (char) ('a' + i % 26));
+		}
+		buf.append("\nshort");
+		fEditor.replace(buf.toString(), 0, fEditor.length(), null);
+		checkWidestLine(view);
+		int lineStart = fEditor.getLineStart(1);
+		int x = view.locatePosition(lineStart, null).fBoundRect.x;
+		for (int pos = lineStart; pos <= fEditor.getLineEnd(1); pos++) {	// characters of consecutive chunks must be adjacent
+			REDViewPosition vp = view.locatePosition(pos, null);
+			assertEquals("Position " + pos, x, vp.fBoundRect.x);
+			x += vp.fBoundRect.width;
+			REDViewPosition hit = view.locatePoint(vp.fBoundRect.x, vp.fBoundRect.y, null);
+			assertEquals("Position " + pos, pos, hit.getTextPosition());
+		}
+		assertEquals(view.getLineWidth(1) + view.getInsets().left, x);
+		
+		view.setSize(new Dimension(300, 100));
+		java.awt.image.BufferedImage image = new java.awt.image.BufferedImage(300, 100, java.awt.image.BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		g.setClip(100, 0, 200, 100);
+		view.paintComponent(g);	// paints the chunks intersecting the clip only
+		g.dispose();
+		
+		fEditor.replace("", lineStart + REDView.fcChunkSize, lineStart + 2 * REDView.fcChunkSize, null);
+		checkWidestLine(view);
+		assertEquals(view.getLineWidth(1) + view.getInsets().left, view.locatePosition(fEditor.getLineEnd(1), null).fBoundRect.x + view.locatePosition(fEditor.getLineEnd(1), null).fBoundRect.width);
+	}
+	
+	/** Check that all positions are located within the wrap width and can be hit again. */
+	private void checkWrappedLines(REDView view, int wrapWidth) {
+		REDViewPosition prev = null;
+		for (int pos = 0; pos <= fEditor.length(); pos++) {
+			REDViewPosition vp = view.locatePosition(pos, null);
+			assertTrue("Position " + pos, vp.fBoundRect.x >= view.getInsets().left);
+			if (pos < fEditor.length() && fEditor.copy(pos, pos + 1).trim().length() > 0) {
+				assertTrue("Position " + pos, vp.fBoundRect.x + vp.fBoundRect.width <= view.getInsets().left + wrapWidth);
+			}
+			if (prev != null && vp.getLineNumber() == prev.getLineNumber() && vp.fBoundRect.y != prev.fBoundRect.y) {	// new row
+				assertEquals(prev.fBoundRect.y + prev.fBoundRect.height, vp.fBoundRect.y);
+				assertEquals(view.getInsets().left, vp.fBoundRect.x);
+			}
+			if (pos != fEditor.getLineEnd(vp.getLineNumber()) + 1) {	// not within CRLF
+				REDViewPosition hit = view.locatePoint(vp.fBoundRect.x, vp.fBoundRect.y, null);
+				assertEquals("Position " + pos, pos, hit.getTextPosition());
+				assertEquals(vp.fBoundRect, hit.fBoundRect);
+			}
+			prev = vp;
+		}
+		int lastLine = fEditor.getNrOfLines() - 1;
+		assertEquals(view.getLineTop(lastLine) + view.getLineHeight(lastLine) + view.getInsets().top + view.getInsets().bottom, view.getPreferredSize().height);
+	}
+	
+	public void testLineWrap() {
+		REDView view = (REDView) fEditor.getView();
+		fEditor.replace("A rather long first line, which will be wrapped into several rows\n\nshort\nsupercalifragilisticexpialidocious\tand some more words", 0, fEditor.length(), null);
+		view.setSize(new Dimension(150 + view.getInsets().left + view.getInsets().right, 400));
+		int lineHeight = view.getLineHeight(0);
+		assertFalse(fEditor.getLineWrap());
+		fEditor.setLineWrap(true);
+		assertTrue(fEditor.getLineWrap());
+		assertTrue(view.getScrollableTracksViewportWidth());
+		checkWrappedLines(view, 150);
+		assertTrue(view.getLineHeight(0) > 2 * lineHeight);
+		assertEquals(lineHeight, view.getLineHeight(1));
+		assertTrue(view.getLineHeight(3) > lineHeight);	// long word is broken
+		
+		REDViewPosition vp = view.locatePosition(0, null);
+		int below = view.lineBelow(0, -1);	// caret movement goes by rows
+		assertEquals(1, view.locatePosition(below, null).fBoundRect.y / lineHeight - vp.fBoundRect.y / lineHeight);
+		assertEquals(0, view.lineAbove(below, -1));
+		
+		fEditor.replace("inserted words and\nlines ", 10, 10, null);
+		checkWrappedLines(view, 150);
+		fEditor.replace("", 5, 40, null);
+		checkWrappedLines(view, 150);
+		
+		view.setSize(new Dimension(400 + view.getInsets().left + view.getInsets().right, 400));	// wider => fewer rows
+		checkWrappedLines(view, 400);
+		paintView(view);
+		
+		fEditor.setLineWrap(false);
+		assertFalse(view.getScrollableTracksViewportWidth());
+		assertEquals(lineHeight, view.getLineHeight(0));
+		assertEquals(fEditor.getNrOfLines() * lineHeight, view.getLineTop(fEditor.getNrOfLines()));
+	}
+	
+	private int [] paintView(REDView view) {
+		java.awt.image.BufferedImage image = new java.awt.image.BufferedImage(view.getWidth(), view.getHeight(), java.awt.image.BufferedImage.TYPE_INT_RGB);
+		Graphics g = image.getGraphics();
+		g.setClip(0, 0, view.getWidth(), view.getHeight());
+		view.paintComponent(g);
+		g.dispose();
+		return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+	}
+	
+	public void testLineImages() {
+		REDView view = (REDView) fEditor.getView();
+		fEditor.replace("first line\n\tsecond line\nthird", 0, fEditor.length(), null);
+		view.setSize(new Dimension(300, 100));
+		view.setCaretBlink(0);
+		assertEquals(0, fEditor.getLineImageBudget());
+		int [] expected = paintView(view);
+		fEditor.setLineImageBudget(100000);
+		assertTrue(java.util.Arrays.equals(expected, paintView(view)));	// renders line images
+		assertTrue(java.util.Arrays.equals(expected, paintView(view)));	// copies line images
+		fEditor.replace("changed ", 0, 0, null);
+		int [] changed = paintView(view);
+		assertFalse(java.util.Arrays.equals(expected, changed));
+		fEditor.setLineImageBudget(0);
+		assertTrue(java.util.Arrays.equals(changed, paintView(view)));
+	}
+	
+	public void testStyleBatch() {
+		REDText text = new REDText("");
+		text.replace(0, 0, "line 0\nline 1\nline 2\nline 3\nline 4\n");
+		final int [] repainted = { -1, -1 };
+		REDView view = new REDView(text) {
+			void repaintLines(int fromLine, int toLine) {
+				repainted[0] = fromLine;
+				repainted[1] = toLine;
+				super.repaintLines(fromLine, toLine);
+			}
+		};
+		int height = view.getLineHeight(0);
+		REDStyle style = new REDStyle(javafx.scene.paint.Color.rgb(100, 100, 250), javafx.scene.paint.Color.WHITE, REDLining.NONE, "Monospaced", "PLAIN", 40, null);
+		text.batchStyleNotificationStart();
+		text.setStyle(16, 18, style);
+		text.setStyle(23, 25, style);
+		assertEquals(-1, repainted[0]);	// no updates within batch
+		text.batchStyleNotificationEnd();
+		assertEquals(2, repainted[0]);	// only the restyled lines are updated
+		assertEquals(3, repainted[1]);
+		assertEquals(height, view.getLineHeight(1));	// restyled lines grow, others keep their height
+		assertTrue(view.getLineHeight(2) > height);
+		assertTrue(view.getLineHeight(3) > height);
+		assertEquals(height, view.getLineHeight(4));
+		assertEquals(view.calculateLineHeight(2), view.getLineHeight(2));
+		assertEquals(view.getLineTop(2) + view.getLineHeight(2), view.getLineTop(3));
+		
+		repainted[0] = -1;
+		text.batchStyleNotificationStart();
+		text.batchStyleNotificationEnd();
+		assertEquals("Batch without style changes must not update any line", -1, repainted[0]);
+	}
+	
 	public void testClicks() {
 		for (int x = 0; x <= fEditor.length(); x++) {
 			mouseClick(x, LEFT, 1);
@@ -0,0 +1,98 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import junit.framework.*;
+
+/** Regression test for REDViewDamage.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDViewDamage extends TestCase {
+	public RTestREDViewDamage(String name) {
+		super(name);
+	}
+	
+	protected void setUp() {
+		fDamage = new REDViewDamage();
+	}		
+	
+	private void checkRanges(int [] expected) {
+		int [] ranges = fDamage.drain();
+		assertEquals(expected.length, ranges.length);
+		for (int i = 0; i < ranges.length; i++) {
+			assertEquals("Bound " + i, expected[i], ranges[i]);
+		}
+		assertTrue(fDamage.isEmpty());
+	}
+	
+	public void testAdd() {
+		assertTrue(fDamage.isEmpty());
+		fDamage.add(10, 10);
+		assertTrue(fDamage.isEmpty());
+		fDamage.add(100, 120);
+		fDamage.add(10, 20);
+		fDamage.add(50, 60);
+		assertEquals(3, fDamage.getNrRanges());
+		checkRanges(new int[] { 10, 20, 50, 60, 100, 120 });
+		
+		fDamage.add(100, 120);
+		fDamage.add(10, 20);
+		fDamage.add(50, 60);
+		fDamage.add(20, 30);	// adjacent ranges are merged
+		fDamage.add(55, 110);	// overlapping ranges are merged
+		checkRanges(new int[] { 10, 30, 50, 120 });
+		
+		for (int i = 0; i < 100; i++) {
+			fDamage.add(i * 20, i * 20 + 10);
+		}
+		assertEquals(100, fDamage.getNrRanges());
+		fDamage.add(5, 1985);
+		checkRanges(new int[] { 0, 1990 });
+	}
+	
+	public void testShift() {
+		fDamage.add(10, 20);
+		fDamage.add(50, 60);
+		fDamage.add(100, 120);
+		fDamage.shift(40, 15);
+		checkRanges(new int[] { 10, 20, 65, 75, 115, 135 });
+		
+		fDamage.add(10, 20);
+		fDamage.add(50, 60);
+		fDamage.add(100, 120);
+		fDamage.shift(55, 10);	// range containing shift position is stretched
+		checkRanges(new int[] { 10, 20, 50, 70, 110, 130 });
+		
+		fDamage.add(10, 20);
+		fDamage.add(50, 60);
+		fDamage.add(100, 120);
+		fDamage.shift(60, -45);	// moving up merges ranges
+		checkRanges(new int[] { 10, 20, 50, 75 });
+		
+		fDamage.add(10, 20);
+		fDamage.shift(15, -10);
+		checkRanges(new int[] { 5, 15 });
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDViewDamage.class);
+	}
+
+	REDViewDamage fDamage;
+}
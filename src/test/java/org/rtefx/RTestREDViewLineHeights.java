@@ -0,0 +1,130 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.*;
+
+/** Regression test for REDViewLineHeights.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDViewLineHeights extends TestCase {
+	public RTestREDViewLineHeights(String name) {
+		super(name);
+	}
+	
+	private void check(REDViewLineHeights heights, ArrayList<Integer> model) {
+		assertEquals(model.size(), heights.getNrLines());
+		int top = 0;
+		for (int line = 0; line < model.size(); line++) {
+			assertEquals("height of line " + line, (int) model.get(line), heights.getHeight(line));
+			assertEquals("top of line " + line, top, heights.getTop(line));
+			assertEquals("line at " + top, line, heights.getLineAt(top));
+			assertEquals("line at " + (top + model.get(line) - 1), line, heights.getLineAt(top + model.get(line) - 1));
+			top += model.get(line);
+		}
+		assertEquals(top, heights.getTop(model.size()));
+		assertEquals(model.size(), heights.getLineAt(top));
+		assertEquals(0, heights.getLineAt(-5));
+	}
+	
+	public void testUniform() {
+		int [] h = new int[1000];
+		java.util.Arrays.fill(h, 15);
+		h[10] = 20; h[500] = 7;
+		REDViewLineHeights heights = new REDViewLineHeights(h, 1000);
+		assertEquals(15, heights.getUniformHeight());
+		assertEquals(2, heights.getNrExceptions());
+		assertEquals(150, heights.getTop(10));
+		assertEquals(170, heights.getTop(11));
+		assertEquals(10, heights.getLineAt(169));
+		assertEquals(11, heights.getLineAt(170));
+		heights.setHeight(10, 15);
+		assertEquals(1, heights.getNrExceptions());
+		heights.insertLines(0, 10);
+		assertEquals(7, heights.getHeight(510));
+		heights.deleteLines(505, 10);
+		assertEquals(1000, heights.getNrLines());
+		assertEquals(0, heights.getNrExceptions());
+		assertEquals(15 * 1000, heights.getTop(1000));
+	}
+	
+	public void testSwitchUniformHeight() {
+		int [] h = new int[1000];
+		java.util.Arrays.fill(h, 15);
+		REDViewLineHeights heights = new REDViewLineHeights(h, 1000);
+		java.util.Arrays.fill(h, 22);
+		heights.setHeights(0, h, 1000);
+		assertEquals(22, heights.getUniformHeight());
+		assertTrue(heights.getNrExceptions() < 64);
+		assertEquals(22 * 1000, heights.getTop(1000));
+	}
+	
+	public void testRandom() {
+		Random random = new Random(4711);
+		int [] sizes = { 10, 15, 15, 15, 15, 20 };
+		ArrayList<Integer> model = new ArrayList<>();
+		model.add(15);
+		REDViewLineHeights heights = new REDViewLineHeights(new int[] { 15 }, 1);
+		for (int round = 0; round < 2000; round++) {
+			int line = random.nextInt(model.size());
+			switch (random.nextInt(4)) {
+				case 0:
+					int h = sizes[random.nextInt(sizes.length)];
+					heights.setHeight(line, h);
+					model.set(line, h);
+				break;
+				case 1:
+					int n = random.nextInt(20);
+					int at = random.nextInt(model.size() + 1);
+					heights.insertLines(at, n);
+					for (int i = 0; i < n; i++) {
+						model.add(at, heights.getUniformHeight());
+					}
+				break;
+				case 2:
+					n = Math.min(random.nextInt(10), model.size() - line - 1);
+					heights.deleteLines(line, n);
+					for (int i = 0; i < n; i++) {
+						model.remove(line);
+					}
+				break;
+				case 3:
+					n = random.nextInt(Math.min(50, model.size() - line)) + 1;
+					int [] batch = new int[n];
+					for (int i = 0; i < n; i++) {
+						batch[i] = sizes[random.nextInt(sizes.length)];
+						model.set(line + i, batch[i]);
+					}
+					heights.setHeights(line, batch, n);
+				break;
+			}
+			if (round % 50 == 0) {
+				check(heights, model);
+			}
+		}
+		check(heights, model);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDViewLineHeights.class);
+	}
+}
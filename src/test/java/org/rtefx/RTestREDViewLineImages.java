@@ -0,0 +1,103 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.*;
+
+/** Regression test for REDViewLineImages.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDViewLineImages extends TestCase {
+	public RTestREDViewLineImages(String name) {
+		super(name);
+	}
+	
+	private static BufferedImage makeImage(int width, int height) {
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	}
+	
+	public void testBudget() {
+		REDViewLineImages cache = new REDViewLineImages(300);
+		BufferedImage a = makeImage(10, 10), b = makeImage(10, 10), c = makeImage(10, 10), d = makeImage(10, 5);
+		assertNull(cache.get(0, 10));
+		cache.put(0, 10, a);
+		cache.put(1, 10, b);
+		cache.put(2, 10, c);
+		assertEquals(300, cache.getFootprint());
+		assertSame(a, cache.get(0, 10));
+		assertNull(cache.get(0, 11));	// rendered for another view width
+		cache.put(3, 10, d);	// drops line 1, which has been used least recently
+		assertEquals(250, cache.getFootprint());
+		assertNull(cache.get(1, 10));
+		assertSame(a, cache.get(0, 10));
+		assertSame(c, cache.get(2, 10));
+		assertSame(d, cache.get(3, 10));
+		cache.put(2, 10, d);	// replaces image of same line
+		assertEquals(200, cache.getFootprint());
+		assertSame(d, cache.get(2, 10));
+		cache.setBudget(100);	// keeps most recently used images only
+		assertEquals(100, cache.getFootprint());
+		assertNull(cache.get(0, 10));
+		assertSame(d, cache.get(2, 10));
+		assertSame(d, cache.get(3, 10));
+		cache.put(4, 10, makeImage(20, 10));	// larger than budget
+		assertNull(cache.get(4, 10));
+		assertEquals(0, cache.getFootprint());
+		cache.setBudget(0);
+		cache.put(0, 10, a);
+		assertNull(cache.get(0, 10));
+		assertEquals(0, cache.getFootprint());
+	}
+	
+	public void testLineChanges() {
+		REDViewLineImages cache = new REDViewLineImages(1000);
+		BufferedImage [] images = new BufferedImage[8];
+		for (int line = 0; line < 8; line++) {
+			images[line] = makeImage(10, 1);
+			cache.put(line, 10, images[line]);
+		}
+		cache.invalidateLines(2, 2);	// two lines inserted behind line 2 
+		cache.moveLines(3, 2);
+		assertEquals(70, cache.getFootprint());
+		assertSame(images[1], cache.get(1, 10));
+		assertNull(cache.get(2, 10));
+		assertNull(cache.get(3, 10));
+		assertNull(cache.get(4, 10));
+		assertSame(images[3], cache.get(5, 10));
+		assertSame(images[7], cache.get(9, 10));
+		
+		cache.invalidateLines(5, 7);	// lines 5 to 7 joined into one line
+		cache.moveLines(8, -2);
+		assertEquals(40, cache.getFootprint());
+		assertSame(images[1], cache.get(1, 10));
+		assertNull(cache.get(5, 10));
+		assertSame(images[6], cache.get(6, 10));
+		assertSame(images[7], cache.get(7, 10));
+		assertNull(cache.get(8, 10));
+		cache.clear();
+		assertEquals(0, cache.getFootprint());
+		assertNull(cache.get(1, 10));
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDViewLineImages.class);
+	}
+}
@@ -0,0 +1,82 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import junit.framework.*;
+
+/** Regression test for REDViewLineOffsets.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDViewLineOffsets extends TestCase {
+	public RTestREDViewLineOffsets(String name) {
+		super(name);
+	}
+	
+	public void testLeastRecentlyUsed() {
+		REDViewLineOffsets cache = new REDViewLineOffsets(3);
+		int [] a = { 0, 5, 10 }, b = { 0, 7 }, c = { 0, 3, 6 }, d = { 0, 0 };
+		assertNull(cache.get(0));
+		cache.put(0, a);
+		cache.put(1, b);
+		cache.put(2, c);
+		assertSame(a, cache.get(0));
+		cache.put(3, d);	// replaces line 1, which has been used least recently
+		assertNull(cache.get(1));
+		assertSame(a, cache.get(0));
+		assertSame(c, cache.get(2));
+		assertSame(d, cache.get(3));
+		cache.put(2, b);	// replaces offsets of same line
+		assertSame(b, cache.get(2));
+		assertSame(a, cache.get(0));
+		assertSame(d, cache.get(3));
+		cache.clear();
+		assertNull(cache.get(0));
+		assertNull(cache.get(2));
+		assertNull(cache.get(3));
+	}
+	
+	public void testLineChanges() {
+		REDViewLineOffsets cache = new REDViewLineOffsets(8);
+		int [][] offsets = new int[8][];
+		for (int line = 0; line < 8; line++) {
+			offsets[line] = new int[] { 0, line };
+			cache.put(line, offsets[line]);
+		}
+		cache.invalidateLines(2, 2);	// two lines inserted behind line 2 
+		cache.moveLines(3, 2);
+		assertSame(offsets[1], cache.get(1));
+		assertNull(cache.get(2));
+		assertNull(cache.get(3));
+		assertNull(cache.get(4));
+		assertSame(offsets[3], cache.get(5));
+		assertSame(offsets[7], cache.get(9));
+		
+		cache.invalidateLines(5, 7);	// lines 5 to 7 joined into one line
+		cache.moveLines(8, -2);
+		assertSame(offsets[1], cache.get(1));
+		assertNull(cache.get(5));
+		assertSame(offsets[6], cache.get(6));
+		assertSame(offsets[7], cache.get(7));
+		assertNull(cache.get(8));
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDViewLineOffsets.class);
+	}
+}
@@ -0,0 +1,115 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import junit.framework.*;
+
+/** Regression test for REDViewWrapIndex.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDViewWrapIndex extends TestCase {
+	public RTestREDViewWrapIndex(String name) {
+		super(name);
+	}
+	
+	/** Check index against model of rows and row heights per line. */
+	private void check(REDViewWrapIndex index, ArrayList<int []> model) {
+		assertEquals(model.size(), index.getNrLines());
+		int top = 0;
+		for (int line = 0; line < model.size(); line++) {
+			int height = model.get(line)[0] * model.get(line)[1];
+			assertEquals("height of line " + line, height, index.getHeight(line));
+			assertEquals("top of line " + line, top, index.getTop(line));
+			assertEquals("line at " + top, line, index.getLineAt(top));
+			assertEquals("line at " + (top + height - 1), line, index.getLineAt(top + height - 1));
+			top += height;
+		}
+		assertEquals(top, index.getTop(model.size()));
+		assertEquals(model.size(), index.getLineAt(top));
+		assertEquals(0, index.getLineAt(-5));
+	}
+	
+	public void testRows() {
+		REDViewWrapIndex index = new REDViewWrapIndex(3);
+		index.setRows(0, new int[] { 1, 4, 2 }, new int[] { 10, 10, 12 }, 3);
+		assertEquals(40, index.getHeight(1));
+		assertEquals(10, index.getTop(1));
+		assertEquals(50, index.getTop(2));
+		assertEquals(74, index.getTop(3));
+		assertEquals(1, index.getLineAt(49));
+		assertEquals(2, index.getLineAt(50));
+		
+		index.setRows(1, 2, 10);
+		assertEquals(20, index.getHeight(1));
+		assertEquals(30, index.getTop(2));
+		
+		index.insertLines(1, 2);
+		index.setRows(1, 3, 10);
+		index.setRows(2, 1, 10);
+		assertEquals(50, index.getTop(3));
+		index.deleteLines(0, 3);
+		assertEquals(2, index.getNrLines());
+		assertEquals(20, index.getTop(1));
+	}
+	
+	public void testRandom() {
+		Random random = new Random(4711);
+		ArrayList<int []> model = new ArrayList<>();
+		REDViewWrapIndex index = new REDViewWrapIndex(1);
+		model.add(new int[] { 1, 15 });
+		index.setRows(0, 1, 15);
+		for (int i = 0; i < 500; i++) {
+			int line = random.nextInt(model.size());
+			switch (random.nextInt(3)) {
+				case 0:	// rewrap line
+					int [] m = new int[] { 1 + random.nextInt(5), 10 + random.nextInt(3) };
+					model.set(line, m);
+					index.setRows(line, m[0], m[1]);
+				break;
+				case 1:	// insert lines
+					int n = 1 + random.nextInt(50);
+					index.insertLines(line, n);
+					for (int j = 0; j < n; j++) {
+						model.add(line, new int[] { 1, 15 });
+						index.setRows(line + j, 1, 15);
+					}
+				break;
+				case 2:	// delete lines
+					n = Math.min(1 + random.nextInt(20), model.size() - 1);
+					line = Math.min(line, model.size() - n);
+					index.deleteLines(line, n);
+					for (int j = 0; j < n; j++) {
+						model.remove(line);
+					}
+				break;
+			}
+			if (i % 50 == 0) {
+				check(index, model);
+			}
+		}
+		check(index, model);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDViewWrapIndex.class);
+	}
+}
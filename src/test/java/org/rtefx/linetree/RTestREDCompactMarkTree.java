@@ -0,0 +1,197 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import org.rtefx.*;
+import junit.framework.*;
+import java.util.*;
+
+/** Test case for REDCompactMarkTree.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDCompactMarkTree extends TestCase {
+	public RTestREDCompactMarkTree(String name) {
+		super(name);
+	}
+	
+	private static String makeText(int len) {
+		StringBuilder buf = new StringBuilder(len);
+		for (int i = 0; i < len; i++) {
+			buf.append((char) ('a' + i % 26));
+		}
+		return buf.toString();
+	}
+	
+	/** Check tree against model; model holds pairs of position and value in mark order. */
+	private void checkTree(REDCompactMarkTree t, ArrayList<int []> model) {
+		assertEquals(model.size(), t.size());
+		for (int i = 0; i < model.size(); i++) {
+			assertEquals("position of mark " + i, model.get(i)[0], t.getPosition(i));
+			assertEquals("value of mark " + i, model.get(i)[1], t.getValue(i));
+		}
+	}
+	
+	private int modelLowerBound(ArrayList<int []> model, int pos) {
+		int i = 0;
+		while (i < model.size() && model.get(i)[0] < pos) {
+			i++;
+		}
+		return i;
+	}
+	
+	public void testBasics() {
+		REDEditor e = new REDEditor();
+		e.replace("12345678901234567890123456789012345678901234567890", 0, 0, "");
+		REDCompactMarkTree t = e.createCompactMarkTree();
+		assertEquals(0, t.size());
+		t.addMark(10, 1);
+		t.addMark(20, 2);
+		t.addMark(-1, 3);
+		t.addMark(0, 4);
+		t.addMark(100, 5);
+		t.addMark(20, 6);
+		assertEquals(6, t.size());
+		assertEquals(0, t.getPosition(0)); assertEquals(3, t.getValue(0));
+		assertEquals(0, t.getPosition(1)); assertEquals(4, t.getValue(1));
+		assertEquals(10, t.getPosition(2)); assertEquals(1, t.getValue(2));
+		assertEquals(20, t.getPosition(3)); assertEquals(2, t.getValue(3));
+		assertEquals(20, t.getPosition(4)); assertEquals(6, t.getValue(4));
+		assertEquals(50, t.getPosition(5)); assertEquals(5, t.getValue(5));
+		assertEquals(3, t.findMark(20));
+		assertEquals(-1, t.findMark(19));
+		assertEquals(3, t.lowerBound(11));
+		assertEquals(6, t.lowerBound(51));
+		
+		e.replace("ABCDE", 10, 10, "");	// mark at 10 stays
+		assertEquals(10, t.getPosition(2));
+		assertEquals(25, t.getPosition(3));
+		assertEquals(55, t.getPosition(5));
+		e.replace("", 5, 30, "");	// marks in ]5, 30] collapse to 5
+		assertEquals(0, t.getPosition(1));
+		assertEquals(5, t.getPosition(2));
+		assertEquals(5, t.getPosition(4));
+		assertEquals(30, t.getPosition(5));
+		t.setValue(2, 7);
+		assertEquals(7, t.getValue(t.findMark(5)));
+		
+		t.deleteMarks(0, 5);
+		assertEquals(3, t.size());
+		assertEquals(30, t.getPosition(2));
+		
+		int count = e.getTextListenerCount();
+		t.dispose();
+		assertEquals(0, t.size());
+		assertEquals(count - 1, e.getTextListenerCount());
+	}
+	
+	public void testAddMarks() {
+		REDEditor e = new REDEditor();
+		e.replace(makeText(100000), 0, 0, "");
+		REDCompactMarkTree t = e.createCompactMarkTree();
+		ArrayList<int []> model = new ArrayList<int []>();
+		int n = 20000;
+		int [] positions = new int[n];
+		int [] values = new int[n];
+		for (int i = 0; i < n; i++) {
+			positions[i] = i * 5;
+			values[i] = i;
+			model.add(new int[] { i * 5, i });
+		}
+		t.addMarks(positions, values, n);
+		checkTree(t, model);
+		
+		// second bulk with ties: new marks go behind existing ones
+		for (int i = 0; i < n; i++) {
+			positions[i] = i * 3;
+			values[i] = -i;
+			model.add(modelLowerBound(model, i * 3 + 1), new int[] { i * 3, -i });
+		}
+		t.addMarks(positions, values, n);
+		checkTree(t, model);
+		
+		// few marks are added one by one
+		positions[0] = 7; values[0] = 100;
+		positions[1] = 99999; values[1] = 101;
+		t.addMarks(positions, values, 2);
+		model.add(modelLowerBound(model, 8), new int[] { 7, 100 });
+		model.add(modelLowerBound(model, 100000), new int[] { 99999, 101 });
+		checkTree(t, model);
+		assertTrue(t.getFootprint() < 40L * model.size());
+	}
+	
+	public void testRandom() {
+		REDEditor e = new REDEditor();
+		e.replace(makeText(20000), 0, 0, "");
+		REDCompactMarkTree t = e.createCompactMarkTree();
+		ArrayList<int []> model = new ArrayList<int []>();
+		Random r = new Random(4711);
+		for (int round = 0; round < 3000; round++) {
+			int len = e.length();
+			int op = r.nextInt(10);
+			if (op < 5) {
+				int pos = r.nextInt(len + 1);
+				t.addMark(pos, round);
+				model.add(modelLowerBound(model, pos + 1), new int[] { pos, round });
+			}
+			else if (op < 7) {
+				int from = r.nextInt(len + 1);
+				int cnt = 1 + r.nextInt(op == 5 ? 10 : 3000);
+				e.replace(makeText(cnt), from, from, "");
+				for (int [] m : model) {
+					if (m[0] > from) {
+						m[0] += cnt;
+					}
+				}
+			}
+			else if (op < 9) {
+				int from = r.nextInt(len + 1);
+				int to = Math.min(len, from + 1 + r.nextInt(op == 7 ? 10 : 3000));
+				e.replace("", from, to, "");
+				for (int [] m : model) {
+					if (m[0] > to) {
+						m[0] -= to - from;
+					}
+					else if (m[0] > from) {
+						m[0] = from;
+					}
+				}
+			}
+			else {
+				int from = r.nextInt(len + 1);
+				int to = Math.min(len, from + r.nextInt(500));
+				t.deleteMarks(from, to);
+				for (int i = model.size() - 1; i >= 0; i--) {
+					if (model.get(i)[0] > from && model.get(i)[0] <= to) {
+						model.remove(i);
+					}
+				}
+			}
+			if (round % 100 == 0) {
+				checkTree(t, model);
+				int pos = r.nextInt(e.length() + 1);
+				assertEquals(modelLowerBound(model, pos), t.lowerBound(pos));
+			}
+		}
+		checkTree(t, model);
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDCompactMarkTree.class);
+	}
+}
@@ -0,0 +1,223 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import org.rtefx.*;
+import junit.framework.*;
+import java.util.*;
+
+/** Test case for REDIntervalTree.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDIntervalTree extends TestCase {
+	public RTestREDIntervalTree(String name) {
+		super(name);
+	}
+	
+	private static String makeText(int len) {
+		StringBuilder buf = new StringBuilder(len);
+		for (int i = 0; i < len; i++) {
+			buf.append((char) ('a' + i % 26));
+		}
+		return buf.toString();
+	}
+	
+	public void testBasics() {
+		REDEditor e = new REDEditor();
+		e.replace("12345678901234567890123456789012345678901234567890", 0, 0, "");
+		REDIntervalTree t = e.createIntervalTree();
+		REDInterval i1 = t.createInterval(10, 20, "i1");
+		REDInterval i2 = t.createInterval(15, 40, "i2");
+		REDInterval i3 = t.createInterval(30, 100, "i3");
+		REDInterval i4 = t.createInterval(-5, 5, "i4");
+		assertEquals(4, t.getNrIntervals());
+		assertEquals(0, i4.getStart()); assertEquals(5, i4.getEnd());
+		assertEquals(30, i3.getStart()); assertEquals(50, i3.getEnd());
+		assertEquals("i2", i2.getValue());
+		
+		assertEquals(Arrays.asList(i1, i2), t.collectIntervals(18, 18, null));
+		assertEquals(Arrays.asList(i4), t.collectIntervals(5, 5, null));
+		assertEquals(Arrays.asList(i1, i2, i3), t.collectIntervals(20, 30, null));
+		assertSame(i1, t.findInterval(12));
+		assertNull(t.findInterval(7, 9));
+		
+		e.replace("ABCDE", 15, 15, "");	// i1 grows; i2 stays at 15 and grows; i3 moves
+		assertEquals(10, i1.getStart()); assertEquals(25, i1.getEnd());
+		assertEquals(15, i2.getStart()); assertEquals(45, i2.getEnd());
+		assertEquals(35, i3.getStart()); assertEquals(55, i3.getEnd());
+		e.replace("ABCDE", 25, 25, "");	// insertion at end of i1 does not grow it
+		assertEquals(25, i1.getEnd());
+		
+		e.replace("", 5, 20, "");	// i1 and i2 start within ]5, 20] => collapse to 5
+		assertEquals(5, i1.getStart()); assertEquals(10, i1.getEnd());
+		assertEquals(5, i2.getStart()); assertEquals(35, i2.getEnd());
+		assertEquals(0, i4.getStart()); assertEquals(5, i4.getEnd());
+		e.replace("", 0, 60, "");
+		assertEquals(0, i3.getStart()); assertEquals(0, i3.getEnd());
+		
+		t.deleteInterval(i4);
+		assertEquals(3, t.getNrIntervals());
+		int count = e.getTextListenerCount();
+		t.dispose();
+		assertEquals(0, t.getNrIntervals());
+		assertEquals(count - 1, e.getTextListenerCount());
+	}
+	
+	/** Check tree against model; model holds pairs of start and end. */
+	private void checkTree(REDIntervalTree t, HashMap<REDInterval, int []> model, Random r, int length) {
+		assertEquals(model.size(), t.getNrIntervals());
+		for (Map.Entry<REDInterval, int []> entry : model.entrySet()) {
+			assertEquals(entry.getValue()[0], entry.getKey().getStart());
+			assertEquals(entry.getValue()[1], entry.getKey().getEnd());
+		}
+		checkMaxEnd(t.getRoot());
+		for (int i = 0; i < 20; i++) {
+			int from = r.nextInt(length + 1);
+			int to = from + r.nextInt(200);
+			HashSet<REDInterval> exp = new HashSet<REDInterval>();
+			for (Map.Entry<REDInterval, int []> entry : model.entrySet()) {
+				if (entry.getValue()[0] <= to && entry.getValue()[1] >= from) {
+					exp.add(entry.getKey());
+				}
+			}
+			ArrayList<REDInterval> found = t.collectIntervals(from, to, null);
+			assertEquals(exp.size(), found.size());
+			assertEquals(exp, new HashSet<REDInterval>(found));
+			for (int j = 1; j < found.size(); j++) {
+				assertTrue(found.get(j - 1).getStart() <= found.get(j).getStart());
+			}
+		}
+	}
+	
+	/** Check augmentation of subtree. 
+	  * @return maximum end relative to position of node
+	  */
+	private int checkMaxEnd(REDInterval node) {
+		int max = node.fLength < 0 ? Integer.MIN_VALUE : node.fLength;
+		if (node.fLeft != null) {
+			int m = checkMaxEnd((REDInterval) node.fLeft.fSon);
+			if (m != Integer.MIN_VALUE) {
+				max = Math.max(max, m - ((REDMarkTreeData) node.fLeft.fData).fPosition);
+			}
+		}
+		if (node.fRight != null) {
+			int m = checkMaxEnd((REDInterval) node.fRight.fSon);
+			if (m != Integer.MIN_VALUE) {
+				max = Math.max(max, m + ((REDMarkTreeData) node.fRight.fData).fPosition);
+			}
+		}
+		assertEquals(max, node.fMaxEnd);
+		return max;
+	}
+	
+	public void testLifecycle() throws InterruptedException {
+		REDEditor e = new REDEditor();
+		e.replace("0123456789", 0, 0, "");
+		REDInterval kept = e.createIntervalTree().createInterval(2, 5, "kept");
+		for (int x = 0; x < 5; x++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		e.replace("ABC", 0, 0, "");
+		assertEquals(5, kept.getStart()); 
+		assertEquals(8, kept.getEnd());
+	}
+	
+	public void testRandom() {
+		REDEditor e = new REDEditor();
+		e.replace(makeText(10000), 0, 0, "");
+		REDIntervalTree t = e.createIntervalTree();
+		HashMap<REDInterval, int []> model = new HashMap<REDInterval, int []>();
+		Random r = new Random(815);
+		for (int round = 0; round < 2000; round++) {
+			int len = e.length();
+			int op = r.nextInt(10);
+			if (op < 4) {
+				int from = r.nextInt(len + 1);
+				int to = Math.min(len, from + r.nextInt(op == 0 ? 2000 : 50));
+				model.put(t.createInterval(from, to, null), new int[] { from, to });
+			}
+			else if (op < 6) {
+				int from = r.nextInt(len + 1);
+				int cnt = 1 + r.nextInt(op == 4 ? 10 : 500);
+				e.replace(makeText(cnt), from, from, "");
+				for (int [] i : model.values()) {
+					for (int k = 0; k < 2; k++) {
+						if (i[k] > from) {
+							i[k] += cnt;
+						}
+					}
+				}
+			}
+			else if (op < 8) {
+				int from = r.nextInt(len + 1);
+				int to = Math.min(len, from + 1 + r.nextInt(op == 6 ? 10 : 500));
+				e.replace("", from, to, "");
+				for (int [] i : model.values()) {
+					for (int k = 0; k < 2; k++) {
+						if (i[k] > to) {
+							i[k] -= to - from;
+						}
+						else if (i[k] > from) {
+							i[k] = from;
+						}
+					}
+				}
+			}
+			else if (op < 9 && !model.isEmpty()) {
+				REDInterval i = model.keySet().iterator().next();
+				t.deleteInterval(i);
+				model.remove(i);
+			}
+			else {
+				int from = r.nextInt(len + 1);
+				int to = from + r.nextInt(100);
+				t.deleteIntervals(from, to);
+				Iterator<int []> iter = model.values().iterator();
+				while (iter.hasNext()) {
+					int [] i = iter.next();
+					if (i[0] > from && i[0] <= to) {
+						iter.remove();
+					}
+				}
+			}
+			if (round % 50 == 0) {
+				checkTree(t, model, r, e.length());
+			}
+		}
+		checkTree(t, model, r, e.length());
+		
+		// bulk creation keeps augmentation
+		int n = 3000;
+		int [] from = new int[n], to = new int[n];
+		for (int i = 0; i < n; i++) {
+			from[i] = i * 3;
+			to[i] = i * 3 + r.nextInt(300);
+		}
+		REDInterval [] created = t.createIntervals(from, to, null, n);
+		for (int i = 0; i < n; i++) {
+			model.put(created[i], new int[] { Math.min(from[i], e.length()), Math.min(to[i], e.length()) });
+		}
+		checkTree(t, model, r, e.length());
+	}
+	
+	public static Test suite() {
+		return new TestSuite(RTestREDIntervalTree.class);
+	}
+}
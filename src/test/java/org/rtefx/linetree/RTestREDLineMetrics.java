@@ -0,0 +1,151 @@
+//    RTEFX - Rich Text Editor for JavaFX
+//    Copyright (C) 2003, 2018  Robert Lichtenberger
+//
+//    This library is free software; you can redistribute it and/or
+//    modify it under the terms of the GNU Lesser General Public
+//    License as published by the Free Software Foundation; either
+//    version 2.1 of the License, or (at your option) any later version.
+//
+//    This library is distributed in the hope that it will be useful,
+//    but WITHOUT ANY WARRANTY; without even the implied warranty of
+//    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+//    Lesser General Public License for more details.
+//
+//    You should have received a copy of the GNU Lesser General Public
+//    License along with this library; if not, write to the Free Software
+//    Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ 
+package org.rtefx.linetree;
+
+import junit.framework.*;
+import java.util.*;
+
+/** Test case for REDLineMetrics.
+  * @author rli@chello.at
+  * @tier test
+  */
+public class RTestREDLineMetrics extends TestCase {
+	public RTestREDLineMetrics(String name) {
+		super(name);
+	}
+	
+	private static final REDLineAggregate [] fcAggregates = { REDLineAggregate.fcSum, REDLineAggregate.fcMax, REDLineAggregate.fcMin };
+	
+	private void checkMetrics(REDLineMetrics m, ArrayList<int []> model, Random r) {
+		assertEquals(model.size(), m.getNrLines());
+		for (int line = 0; line < model.size(); line++) {
+			for (int c = 0; c < fcAggregates.length; c++) {
+				assertEquals(model.get(line)[c], m.get(c, line));
+			}
+		}
+		for (int i = 0; i < 50; i++) {
+			int from = r.nextInt(model.size() + 1);
+			int to = from + r.nextInt(model.size() - from + 1);
+			for (int c = 0; c < fcAggregates.length; c++) {
+				int exp = fcAggregates[c].identity();
+				for (int line = from; line < to; line++) {
+					exp = fcAggregates[c].combine(exp, model.get(line)[c]);
+				}
+				assertEquals("query " + c + " [" + from + ", " + to + "[", exp, m.query(c, from, to));
+			}
+		}
+	}
+	
+	private void checkFindLine(REDLineMetrics m, ArrayList<int []> model, int value) {
+		int sum = 0, exp = model.size();
+		for (int line = 0; line < model.size(); line++) {
+			sum += model.get(line)[0];
+			if (sum > value) {
+				exp = line; 
+				break;
+			}
+		}
+		assertEquals("findLine " + value, exp, m.findLine(0, value));
+	}
+	
+	public void testEmpty() {
+		REDLineMetrics m = new REDLineMetrics(fcAggregates);
+		assertEquals(0, m.getNrLines());
+		assertEquals(3, m.getNrColumns());
+		assertEquals(0, m.query(0, 0, 0));
+		assertEquals(Integer.MIN_VALUE, m.query(1, 0, 0));
+		assertEquals(0, m.findLine(0, 0));
+		m.insertLines(0, 3);
+		m.set(0, 0, 10); m.set(0, 1, 20); m.set(0, 2, 30);
+		assertEquals(60, m.query(0, 0, 3));
+		assertEquals(30, m.query(0, 0, 2));
+		assertEquals(0, m.findLine(0, -1));
+		assertEquals(0, m.findLine(0, 9));
+		assertEquals(1, m.findLine(0, 10));
+		assertEquals(2, m.findLine(0, 59));
+		assertEquals(3, m.findLine(0, 60));
+		m.deleteLines(0, 3);
+		assertEquals(0, m.getNrLines());
+		assertEquals(0, m.query(0, 0, 0));
+	}
+	
+	public void testBulk() {
+		int n = 5000;
+		REDLineMetrics m = new REDLineMetrics(fcAggregates, n);
+		int [] values = new int[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = i % 17 + 1;
+		}
+		m.set(0, 0, values, n);
+		m.set(1, 0, values, n);
+		assertEquals(n, m.getNrLines());
+		int sum = 0;
+		for (int i = 0; i < n; i++) {
+			assertEquals(sum, m.query(0, 0, i));
+			assertEquals(i, m.findLine(0, sum));
+			sum += values[i];
+		}
+		assertEquals(17, m.query(1, 0, n));
+		assertEquals(0, m.query(2, 0, n));
+		m.set(1, 4711, 100);
+		assertEquals(100, m.query(1, 0, n));
+		assertEquals(100, m.query(1, 4711, 4712));
+		assertEquals(17, m.query(1, 4712, n));
+	}
+	
+	public void testRandom() {
+		Random r = new Random(4711);
+		REDLineMetrics m = new REDLineMetrics(fcAggregates);
+		ArrayList<int []> model = new ArrayList<int []>();
+		for (int round = 0; round < 400; round++) {
+			int op = r.nextInt(4);
+			if (op == 0 || model.size() < 10) {	// insert lines
+				int line = r.nextInt(model.size() + 1);
+				int n = r.nextInt(round % 50 == 0 ? 2000 : 30);
+				m.insertLines(line, n);
+				for (int i = 0; i < n; i++) {
+					model.add(line, new int[3]);
+				}
+			}
+			else if (op == 1) {	// delete lines
+				int line = r.nextInt(model.size());
+				int n = r.nextInt(Math.min(model.size() - line, round % 40 == 0 ? 3000 : 30) + 1);
+				m.deleteLines(line, n);
+				for (int i = 0; i < n; i++) {
+					model.remove(line);
+				}
+			}
+			else {	// set values
+				for (int i = 0; i < 20; i++) {
+					int line = r.nextInt(model.size());
+					int c = r.nextInt(3);
+					int v = r.nextInt(100);
+					m.set(c, line, v);
+					model.get(line)[c] = v;
+				}
+			}
+			checkMetrics(m, model, r);
+			checkFindLine(m, model, -1);
+			checkFindLine(m, model, r.nextInt(50 * model.size() + 1));
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(RTestREDLineMetrics.class);
+	}
+}
@@ -180,6 +180,293 @@ public class RTestREDMarkTree extends TestCase {
 		assertEquals(m2.getPosition(), 23);	// happened right before us
 	}
 	
+	public void testDeleteMarks() {
+		REDEditor e = new REDEditor();
+		StringBuffer buf = new StringBuffer();
+		for (int x = 0; x < 1000; x++) {
+			buf.append("0123456789");
+		}
+		e.replace(buf.toString(), 0, 0, "");
+		REDMarkTree t = e.createMarkTree();
+		Random rnd = new Random(4711);
+		ArrayList<REDMark> marks = new ArrayList<>();
+		for (int x = 0; x < 3000; x++) {
+			marks.add(t.createMark(rnd.nextInt(e.length() + 1), new Integer(x)));
+		}
+		marks.add(t.createMark(0, null));
+		checkBalance(t.getRoot());
+		
+		for (int x = 0; x < 50; x++) {
+			int from = rnd.nextInt(e.length() + 1) - 1;
+			int to = from + rnd.nextInt(500);
+			ArrayList<REDMark> expected = new ArrayList<>();
+			for (int i = 0; i < marks.size(); i++) {
+				REDMark m = marks.get(i);
+				if (m.getPosition() <= from || m.getPosition() > to) {
+					expected.add(m);
+				}
+			}
+			t.deleteMarks(from, to);
+			checkBalance(t.getRoot());
+			ArrayList<REDMark> v = t.collectMarks(0, e.length(), null, null);
+			assertEquals(expected.size(), v.size());
+			assertTrue(isAscending(v));
+			for (int i = 0; i < expected.size(); i++) {
+				assertTrue(v.contains(expected.get(i)));
+			}
+			for (int i = 0; i < marks.size(); i++) {
+				if (!expected.contains(marks.get(i))) {
+					assertNull(marks.get(i).fUp);
+				}
+			}
+			marks = expected;
+		}
+		
+		// tree must still work after range deletion
+		REDMark m = t.createMark(5, "after");
+		e.replace("ABC", 0, 0, "");
+		assertEquals(8, m.getPosition());
+		checkBalance(t.getRoot());
+	}
+	
+	public void testLifecycle() throws InterruptedException {
+		REDEditor e = new REDEditor();
+		e.replace("0123456789", 0, 0, "");
+		int nrListeners = e.getTextListenerCount();
+		REDMarkTree t = e.createMarkTree();
+		assertEquals(nrListeners + 1, e.getTextListenerCount());
+		REDMark m1 = t.createMark(0, "m1");
+		REDMark m2 = t.createMark(5, "m2");
+		
+		// clear keeps tree registered
+		t.clear();
+		assertEquals(0, t.collectMarks(0, e.length(), null, null).size());
+		assertNull(m1.fUp); 
+		assertNull(m2.fUp);
+		assertEquals(nrListeners + 1, e.getTextListenerCount());
+		m1 = t.createMark(5, "m1");
+		e.replace("ABC", 0, 0, "");
+		assertEquals(8, m1.getPosition());
+		checkBalance(t.getRoot());
+		
+		// dispose unregisters tree
+		t.dispose();
+		assertEquals(nrListeners, e.getTextListenerCount());
+		assertEquals(0, t.collectMarks(0, e.length(), null, null).size());
+		
+		// unreachable trees are dropped
+		for (int x = 0; x < 10; x++) {
+			e.createMarkTree().createMark(x, null);
+		}
+		assertEquals(nrListeners + 10, e.getTextListenerCount());
+		for (int x = 0; x < 20 && e.getTextListenerCount() > nrListeners; x++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(nrListeners, e.getTextListenerCount());
+		e.replace("DEF", 0, 0, "");
+		
+		// marks keep their tree alive
+		REDMark kept = e.createMarkTree().createMark(5, "kept");
+		for (int x = 0; x < 5; x++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(nrListeners + 1, e.getTextListenerCount());
+		e.replace("GHI", 0, 0, "");
+		assertEquals(8, kept.getPosition());
+	}
+	
+	public void testTypedQueries() {
+		REDEditor e = new REDEditor();
+		StringBuffer buf = new StringBuffer();
+		for (int x = 0; x < 500; x++) {
+			buf.append("0123456789");
+		}
+		e.replace(buf.toString(), 0, 0, "");
+		REDMarkTree t = e.createMarkTree();
+		Random rnd = new Random(4711);
+		ArrayList<REDMark> marks = new ArrayList<>();
+		Object [] values = { new Integer(1), "string", new Double(2.0), new StringBuffer(), null };
+		for (int x = 0; x < 2000; x++) {
+			marks.add(t.createMark(rnd.nextInt(e.length() + 1), values[rnd.nextInt(values.length)]));
+		}
+		Class<?> [] classes = { Integer.class, String.class, Number.class, CharSequence.class, StringBuffer.class, Object.class, Thread.class };
+		for (int round = 0; round < 30; round++) {
+			switch (round % 3) {
+				case 0: 
+					int from = rnd.nextInt(e.length());
+					t.deleteMarks(from, from + rnd.nextInt(100));
+				break;
+				case 1:
+					for (int i = 0; i < 20; i++) {
+						REDMark m = marks.get(rnd.nextInt(marks.size()));
+						if (m.fUp != null) {
+							t.deleteMark(m);
+						}
+					}
+				break;
+				case 2:
+					for (int i = 0; i < 20; i++) {
+						marks.get(rnd.nextInt(marks.size())).setValue(values[rnd.nextInt(values.length)]);
+						marks.add(t.createMark(rnd.nextInt(e.length() + 1), values[rnd.nextInt(values.length)]));
+					}
+				break;
+			}
+			checkClassMask(t.getRoot());
+			ArrayList<REDMark> all = t.collectMarks(0, e.length(), null, null);
+			for (int c = 0; c < classes.length; c++) {
+				int from = rnd.nextInt(e.length());
+				int to = from + rnd.nextInt(1000);
+				ArrayList<REDMark> expected = new ArrayList<>();
+				for (int i = 0; i < all.size(); i++) {
+					REDMark m = all.get(i);
+					if (m.getPosition() >= from && m.getPosition() <= to && classes[c].isInstance(m.getValue())) {
+						expected.add(m);
+					}
+				}
+				assertEquals(expected, t.collectMarks(from, to, classes[c], null));
+				
+				REDMark left = null, right = null;
+				for (int i = 0; i < all.size(); i++) {
+					REDMark m = all.get(i);
+					if (classes[c].isInstance(m.getValue())) {
+						if (m.getPosition() <= from) {
+							left = m;
+						}
+						if (m.getPosition() >= from && right == null) {
+							right = m;
+						}
+					}
+				}
+				REDMark found = t.findMark(from, true, classes[c]);
+				assertEquals(left == null ? -1 : left.getPosition(), found == null ? -1 : found.getPosition());
+				found = t.findMark(from, false, classes[c]);
+				assertEquals(right == null ? -1 : right.getPosition(), found == null ? -1 : found.getPosition());
+			}
+		}
+	}
+	
+	public void testCreateMarks() {
+		REDEditor e = new REDEditor();
+		StringBuffer buf = new StringBuffer();
+		for (int x = 0; x < 1000; x++) {
+			buf.append("0123456789");
+		}
+		e.replace(buf.toString(), 0, 0, "");
+		REDMarkTree t = e.createMarkTree();
+		Random rnd = new Random(4711);
+		ArrayList<Integer> expected = new ArrayList<>();
+		int [] sizes = { 1000, 5, 3000, 1, 0 };	// bulk into empty tree, few into big tree, many into big tree, ...
+		for (int s = 0; s < sizes.length; s++) {
+			int n = sizes[s];
+			int [] positions = new int[n];
+			Object [] values = new Object[n];
+			for (int i = 0; i < n; i++) {
+				positions[i] = rnd.nextInt(e.length() + 1);
+			}
+			Arrays.sort(positions);
+			if (n > 0) {
+				positions[0] = 0;
+			}
+			for (int i = 0; i < n; i++) {
+				values[i] = new Integer(positions[i]);
+				expected.add(new Integer(positions[i]));
+			}
+			REDMark [] marks = t.createMarks(positions, values, n);
+			assertEquals(n, marks.length);
+			for (int i = 0; i < n; i++) {
+				assertEquals(positions[i], marks[i].getPosition());
+				assertSame(values[i], marks[i].getValue());
+			}
+			checkBalance(t.getRoot());
+			checkClassMask(t.getRoot());
+			Collections.sort(expected);
+			ArrayList<REDMark> v = t.collectMarks(0, e.length(), null, null);
+			assertEquals(expected.size(), v.size());
+			for (int i = 0; i < v.size(); i++) {
+				assertEquals(expected.get(i).intValue(), v.get(i).getPosition());
+				assertEquals(expected.get(i), v.get(i).getValue());
+			}
+		}
+		
+		// tree must still work after bulk creation
+		e.replace("ABC", 0, 0, "");
+		ArrayList<REDMark> v = t.collectMarks(0, e.length(), null, null);
+		for (int i = 0; i < v.size(); i++) {
+			int pos = ((Integer) v.get(i).getValue()).intValue();
+			assertEquals(pos == 0 ? 0 : pos + 3, v.get(i).getPosition());	// marks at 0 stay in front of insertion
+		}
+		t.deleteMarks(100, 5000);
+		checkBalance(t.getRoot());
+		t.createMark(200, "single");
+		checkBalance(t.getRoot());
+		checkClassMask(t.getRoot());
+	}
+	
+	public void testVisitMarks() {
+		REDEditor e = new REDEditor();
+		e.replace("12345678901234567890123456789012345678901234567890", 0, 0, "");
+		REDMarkTree t = e.createMarkTree();
+		for (int x = 0; x <= 50; x += 5) {
+			t.createMark(x, x % 10 == 0 ? (Object) new Integer(x) : (Object) ("" + x));
+		}
+		final ArrayList<Integer> visited = new ArrayList<>();
+		REDMarkVisitor collector = new REDMarkVisitor() {
+			public boolean visitMark(REDMark mark, int position) {
+				assertEquals(mark.getPosition(), position);
+				visited.add(new Integer(position));
+				return visited.size() < 3;
+			}
+		};
+		t.visitMarks(0, 50, null, collector);
+		assertEquals("[0, 5, 10]", visited.toString());
+		visited.clear();
+		t.visitMarks(12, 50, Integer.class, collector);
+		assertEquals("[20, 30, 40]", visited.toString());
+		visited.clear();
+		t.visitMarks(12, 30, String.class, collector);
+		assertEquals("[15, 25]", visited.toString());
+		visited.clear();
+		t.visitMarks(31, 34, null, collector);
+		assertEquals("[]", visited.toString());
+	}
+	
+	/** Check value class masks of subtree.
+	  * @return class mask of subtree
+	  */
+	private long checkClassMask(REDMark node) {
+		long mask = REDMarkClassIndex.getBit(node.getValue());
+		if (node.fLeft != null) {
+			mask |= checkClassMask((REDMark) node.fLeft.fSon);
+		}
+		if (node.fRight != null) {
+			mask |= checkClassMask((REDMark) node.fRight.fSon);
+		}
+		assertEquals(mask, node.fClassMask);
+		return mask;
+	}
+	
+	/** Check AVL balance of subtree.
+	  * @return height of subtree
+	  */
+	private int checkBalance(REDNode node) {
+		int hl = node.fLeft == null ? 0 : checkBalance(node.fLeft.fSon);
+		int hr = node.fRight == null ? 0 : checkBalance(node.fRight.fSon);
+		if (node.fUp != null) {	// balance of root is irrelevant
+			assertEquals(hl - hr, node.fBalance);
+			assertTrue(Math.abs(hl - hr) <= 1);
+			assertSame(node, node.fUp.fSon);
+		}
+		if (node.fLeft != null) {
+			assertSame(node, node.fLeft.fFather);
+		}
+		if (node.fRight != null) {
+			assertSame(node, node.fRight.fFather);
+		}
+		return Math.max(hl, hr) + 1;
+	}
+	
 	public static Test suite() {
 		return new TestSuite(RTestREDMarkTree.class);
 	}
@@ -186,6 +186,29 @@ public class RTestREDTextProtector extends RTestControllerBase {
 		assertEquals(true, fProtector.mayChange(47, 47));
 	}
 
+	public void testBulkProtection() {
+		setNumericContent();
+		int [] from = { 40, 10, 20, 23, 30, 47, 44 };
+		int [] to = { 42, 15, 25, 29, 31, 50, 46 };
+		fProtector.protect(35, 39);
+		fProtector.protect(from, to, from.length);
+		
+		REDTextProtector single = new REDTextProtector();
+		REDEditor other = new REDEditor();
+		other.addPlugin(single);
+		other.replace(fEditor.asString(), 0, 0, null);
+		single.protect(35, 39);
+		for (int i = 0; i < from.length; i++) {
+			single.protect(from[i], to[i]);
+		}
+		assertEquals(single.getNrProtectedAreas(), fProtector.getNrProtectedAreas());
+		for (int x = 0; x <= fEditor.length(); x++) {
+			for (int y = x; y <= Math.min(x + 3, fEditor.length()); y++) {
+				assertEquals("mayChange(" + x + ", " + y + ")", single.mayChange(x, y), fProtector.mayChange(x, y));
+			}
+		}
+	}
+	
 	public void testLineProtectionBug1() {
 		setLineContent();
 		fProtector.protectLines(0, 0);
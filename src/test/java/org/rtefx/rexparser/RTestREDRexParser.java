@@ -146,6 +146,21 @@ public class RTestREDRexParser extends TestCase implements REDRexParserStopper {
 		assertEquals("0/2/3/N, 0/14/15/N, 1/21/22/N, 1/34/35/N, ", act.getLog()); act.clearLog();
 	}
 	
+	public void testMaxLineLength() throws REDRexMalformedPatternException {
+		TestAction act = new TestAction();
+		fEditor.replace("n n n n n n\nn n\nn n n n n n n n", 0, 0, null);
+		fParser.addRule(fParser.defaultState(), "n", true, fParser.defaultState(), "N", act, false);
+		assertEquals(0, fParser.getMaxLineLength());
+		fParser.setMaxLineLength(5);
+		fParser.parse(fEditor.getLineSource());
+		assertEquals("0/0/1/N, 0/2/3/N, 0/4/5/N, 1/0/1/N, 1/2/3/N, 2/0/1/N, 2/2/3/N, 2/4/5/N, ", act.getLog()); act.clearLog();
+		fParser.parse(fEditor.getLineSource(), 0, fParser.defaultState(), null, true);
+		assertEquals("0/4/5/N, 0/2/3/N, 0/0/1/N, 1/2/3/N, 1/0/1/N, 2/4/5/N, 2/2/3/N, 2/0/1/N, ", act.getLog()); act.clearLog();
+		fParser.setMaxLineLength(0);
+		fParser.parse(fEditor.getLineSource());
+		assertEquals("0/0/1/N, 0/2/3/N, 0/4/5/N, 0/6/7/N, 0/8/9/N, 0/10/11/N, 1/0/1/N, 1/2/3/N, 2/0/1/N, 2/2/3/N, 2/4/5/N, 2/6/7/N, 2/8/9/N, 2/10/11/N, 2/12/13/N, 2/14/15/N, ", act.getLog()); act.clearLog();
+	}
+	
 	public boolean mustStop(REDRexParser parser, int line, int offset, int state) {
 		return line > 1;
 	}